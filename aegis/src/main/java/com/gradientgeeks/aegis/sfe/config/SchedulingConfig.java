@@ -0,0 +1,15 @@
+package com.gradientgeeks.aegis.sfe.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables scheduled background jobs (retention purges, maintenance tasks)
+ * and @Async execution on the application task executor
+ */
+@Configuration
+@EnableScheduling
+@EnableAsync
+public class SchedulingConfig {
+}
@@ -1,7 +1,9 @@
 package com.gradientgeeks.aegis.sfe.config;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -14,10 +16,19 @@ public class WebMvcConfig implements WebMvcConfigurer {
     @Autowired
     private OrganizationHeaderInterceptor organizationHeaderInterceptor;
     
+    @Value("${aegis.web.async-timeout-ms:3600000}")
+    private long asyncTimeoutMs;
+    
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
         registry.addInterceptor(organizationHeaderInterceptor)
                 .addPathPatterns("/admin/**") // Apply to admin endpoints
                 .excludePathPatterns("/auth/**", "/v1/**"); // Exclude auth and device endpoints
     }
-}
\ No newline at end of file
+    
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        // Streaming exports can run far longer than the container's default async timeout
+        configurer.setDefaultTimeout(asyncTimeoutMs);
+    }
+}
@@ -5,8 +5,11 @@ import com.gradientgeeks.aegis.sfe.entity.Device;
 import com.gradientgeeks.aegis.sfe.entity.DeviceFingerprint;
 import com.gradientgeeks.aegis.sfe.entity.User;
 import com.gradientgeeks.aegis.sfe.service.AdminService;
+import com.gradientgeeks.aegis.sfe.service.BulkDeviceStatusService;
 import com.gradientgeeks.aegis.sfe.service.DeviceFraudDetectionService;
 import com.gradientgeeks.aegis.sfe.service.DeviceRegistrationService;
+import com.gradientgeeks.aegis.sfe.service.DeviceSecretRewrapService;
+import com.gradientgeeks.aegis.sfe.service.DeviceSecretVault;
 import com.gradientgeeks.aegis.sfe.service.RegistrationKeyService;
 import com.gradientgeeks.aegis.sfe.util.SecurityUtils;
 import org.springframework.data.domain.Page;
@@ -23,9 +26,11 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/admin")
@@ -39,16 +44,25 @@ public class AdminController {
     private final AdminService adminService;
     private final DeviceRegistrationService deviceRegistrationService;
     private final DeviceFraudDetectionService deviceFraudDetectionService;
+    private final DeviceSecretVault deviceSecretVault;
+    private final DeviceSecretRewrapService deviceSecretRewrapService;
+    private final BulkDeviceStatusService bulkDeviceStatusService;
     
     @Autowired
     public AdminController(RegistrationKeyService registrationKeyService, SecurityUtils securityUtils, 
                           AdminService adminService, DeviceRegistrationService deviceRegistrationService,
-                          DeviceFraudDetectionService deviceFraudDetectionService) {
+                          DeviceFraudDetectionService deviceFraudDetectionService,
+                          DeviceSecretVault deviceSecretVault,
+                          DeviceSecretRewrapService deviceSecretRewrapService,
+                          BulkDeviceStatusService bulkDeviceStatusService) {
         this.registrationKeyService = registrationKeyService;
         this.securityUtils = securityUtils;
         this.adminService = adminService;
         this.deviceRegistrationService = deviceRegistrationService;
         this.deviceFraudDetectionService = deviceFraudDetectionService;
+        this.deviceSecretVault = deviceSecretVault;
+        this.deviceSecretRewrapService = deviceSecretRewrapService;
+        this.bulkDeviceStatusService = bulkDeviceStatusService;
     }
     
     @PostMapping("/registration-keys")
@@ -266,6 +280,50 @@ public class AdminController {
         }
     }
     
+    /**
+     * Set the registration admission limits of a client (Admin only)
+     * Omitted or null values restore the defaults
+     * 
+     * @param clientId The client identifier
+     * @param request Request containing registrationRateLimit (per minute) and registrationBurst
+     * @return Updated registration key
+     */
+    @PutMapping("/registration-keys/{clientId}/limits")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<RegistrationKeyResponse> updateRegistrationLimits(
+            @PathVariable String clientId,
+            @RequestBody Map<String, Integer> request) {
+        
+        Integer rateLimit = request.get("registrationRateLimit");
+        Integer burst = request.get("registrationBurst");
+        if ((rateLimit != null && rateLimit < 1) || (burst != null && burst < 1)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new RegistrationKeyResponse(
+                "error", "Registration rate limit and burst must be at least 1"));
+        }
+        
+        logger.info("Request to update registration limits for clientId: {}", clientId);
+        
+        try {
+            RegistrationKeyResponse response = registrationKeyService
+                .updateRegistrationLimits(clientId, rateLimit, burst);
+            
+            if ("success".equals(response.getStatus())) {
+                return ResponseEntity.ok(response);
+            } else {
+                logger.warn("Failed to update registration limits for clientId: {} - {}", 
+                    clientId, response.getMessage());
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+            }
+            
+        } catch (Exception e) {
+            logger.error("Error updating registration limits for clientId: {}", clientId, e);
+            
+            RegistrationKeyResponse errorResponse = new RegistrationKeyResponse(
+                "error", "Internal server error");
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+        }
+    }
+    
     @GetMapping("/health")
     public ResponseEntity<String> adminHealth() {
         return ResponseEntity.ok("Aegis Admin API is running");
@@ -496,6 +554,57 @@ public class AdminController {
         }
     }
     
+    /**
+     * Change the status of many devices at once (Admin or Bank only)
+     * Used to block or unblock a whole device farm during an incident
+     * 
+     * @param request Device IDs, new status and reason
+     * @return Counts of requested, skipped and updated devices
+     */
+    @PostMapping("/devices/bulk-status")
+    public ResponseEntity<?> bulkUpdateDeviceStatus(@Valid @RequestBody BulkDeviceStatusRequest request) {
+        
+        String organization = securityUtils.getCurrentUserOrganization();
+        if (organization == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        
+        logger.warn("Bulk status change of {} devices to {} by organization: {}", 
+            request.getDeviceIds().size(), request.getStatus(), organization);
+        
+        try {
+            // Banks can only change devices registered with their own client IDs
+            Set<String> organizationClientIds = securityUtils.isAdmin() ? null
+                : new HashSet<>(deviceRegistrationService.getClientIdsByOrganization(organization));
+            String reason = request.getReason() != null ? request.getReason()
+                : (securityUtils.isAdmin() ? "Bulk status change by admin" : "Bulk status change by " + organization);
+            
+            BulkDeviceStatusService.BulkStatusResult result = bulkDeviceStatusService.updateStatus(
+                request.getDeviceIds(), request.getStatus(), reason, organizationClientIds);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("status", "success");
+            response.put("deviceStatus", request.getStatus().toUpperCase());
+            response.put("requested", result.requested());
+            response.put("skipped", result.skipped());
+            response.put("updatedRegistrations", result.updatedRows());
+            response.put("durationMs", result.durationMs());
+            return ResponseEntity.ok(response);
+            
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("status", "error");
+            error.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        } catch (Exception e) {
+            logger.error("Error in bulk status change by organization: {}", organization, e);
+            Map<String, String> error = new HashMap<>();
+            error.put("status", "error");
+            error.put("message", "Internal server error");
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+    
     /**
      * Report fraud for a device (Bank only)
      * Banks use this endpoint to report suspicious devices to Aegis
@@ -564,5 +673,67 @@ public class AdminController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
         }
     }
+        /**
+     * Rotate the data encryption key that wraps device secrets (Admin only)
+     * New secrets are wrapped with the new key at once; existing secrets are
+     * re-wrapped by a background job started here
+     * 
+     * @return New key ID and re-wrap job status
+     */
+    @PostMapping("/device-secrets/rotate")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> rotateDeviceSecretKey() {
+        logger.warn("Admin rotating device secret data encryption key");
+        
+        try {
+            String dekId = deviceSecretVault.rotate();
+            Map<String, Object> response = new HashMap<>();
+            response.put("status", "success");
+            response.put("activeDekId", dekId);
+            response.put("rewrap", deviceSecretRewrapService.startRewrap());
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+            
+        } catch (IllegalStateException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("status", "error");
+            error.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+        } catch (Exception e) {
+            logger.error("Error rotating device secret key", e);
+            Map<String, String> error = new HashMap<>();
+            error.put("status", "error");
+            error.put("message", "Internal server error");
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+    
+    /**
+     * Re-wrap all device secrets not yet wrapped with the active key (Admin only)
+     * Also converts legacy plaintext secrets
+     * 
+     * @return Re-wrap job status
+     */
+    @PostMapping("/device-secrets/rewrap")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> startDeviceSecretRewrap() {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(deviceSecretRewrapService.startRewrap());
+            
+        } catch (IllegalStateException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("status", "error");
+            error.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+        }
+    }
+    
+    /**
+     * Get progress of the device secret re-wrap job on this node (Admin only)
+     */
+    @GetMapping("/device-secrets/rewrap")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getDeviceSecretRewrapStatus() {
+        return ResponseEntity.ok(deviceSecretRewrapService.getStatus());
+    }
     
 }
\ No newline at end of file
@@ -5,11 +5,13 @@ import com.gradientgeeks.aegis.sfe.dto.DeviceRegistrationResponse;
 import com.gradientgeeks.aegis.sfe.dto.SignatureValidationRequest;
 import com.gradientgeeks.aegis.sfe.dto.SignatureValidationResponse;
 import com.gradientgeeks.aegis.sfe.service.DeviceRegistrationService;
+import com.gradientgeeks.aegis.sfe.service.RegistrationAdmissionService;
 import com.gradientgeeks.aegis.sfe.service.SignatureValidationService;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -23,13 +25,16 @@ public class DeviceController {
     
     private final DeviceRegistrationService deviceRegistrationService;
     private final SignatureValidationService signatureValidationService;
+    private final RegistrationAdmissionService registrationAdmissionService;
     
     @Autowired
     public DeviceController(
             DeviceRegistrationService deviceRegistrationService,
-            SignatureValidationService signatureValidationService) {
+            SignatureValidationService signatureValidationService,
+            RegistrationAdmissionService registrationAdmissionService) {
         this.deviceRegistrationService = deviceRegistrationService;
         this.signatureValidationService = signatureValidationService;
+        this.registrationAdmissionService = registrationAdmissionService;
     }
     
     @PostMapping("/register")
@@ -39,6 +44,15 @@ public class DeviceController {
         logger.info("Device registration request received for clientId: {}", request.getClientId());
         
         try {
+            RegistrationAdmissionService.Admission admission = registrationAdmissionService.admit(request);
+            if (!admission.admitted()) {
+                logger.warn("Device registration throttled for clientId: {}, retry after {} s", 
+                    request.getClientId(), admission.retryAfterSeconds());
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(admission.retryAfterSeconds()))
+                    .body(DeviceRegistrationResponse.error("Too many registration requests, retry later"));
+            }
+            
             DeviceRegistrationResponse response = deviceRegistrationService.registerDevice(request);
             
             if ("success".equals(response.getStatus())) {
@@ -0,0 +1,69 @@
+package com.gradientgeeks.aegis.sfe.controller;
+
+import com.gradientgeeks.aegis.sfe.service.LiveEventHub;
+import com.gradientgeeks.aegis.sfe.util.SecurityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Controller for live dashboard updates over server-sent events
+ * Replaces polling of the statistics endpoints
+ */
+@RestController
+@RequestMapping("/admin/events")
+@CrossOrigin(origins = "*")
+public class EventStreamController {
+    
+    private static final Logger logger = LoggerFactory.getLogger(EventStreamController.class);
+    
+    private final SecurityUtils securityUtils;
+    private final LiveEventHub liveEventHub;
+    
+    @Autowired
+    public EventStreamController(SecurityUtils securityUtils, LiveEventHub liveEventHub) {
+        this.securityUtils = securityUtils;
+        this.liveEventHub = liveEventHub;
+    }
+    
+    /**
+     * Stream violation, fraud-block, fraud-flag, device-status and device-status-bulk events
+     * Admins receive events of every organization, users only their own.
+     * 
+     * @return text/event-stream
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER')")
+    public ResponseEntity<?> streamEvents() {
+        String organization = securityUtils.getCurrentUserOrganization();
+        if (organization == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        
+        String subscription = securityUtils.isAdmin() ? LiveEventHub.ALL_ORGANIZATIONS : organization;
+        SseEmitter emitter = liveEventHub.subscribe(subscription);
+        if (emitter == null) {
+            logger.warn("Too many event streams open for organization: {}", organization);
+            Map<String, String> error = new HashMap<>();
+            error.put("status", "error");
+            error.put("message", "Too many open event streams");
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(error);
+        }
+        
+        return ResponseEntity.ok()
+                .header("Cache-Control", "no-cache")
+                .header("X-Accel-Buffering", "no")
+                .body(emitter);
+    }
+}
@@ -0,0 +1,180 @@
+package com.gradientgeeks.aegis.sfe.controller;
+
+import com.gradientgeeks.aegis.sfe.service.DataExportService;
+import com.gradientgeeks.aegis.sfe.service.DataExportService.ExportFormat;
+import com.gradientgeeks.aegis.sfe.util.SecurityUtils;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Controller for bulk compliance exports.
+ * Exports are streamed row by row so they can be arbitrarily large.
+ */
+@RestController
+@RequestMapping("/admin/exports")
+@CrossOrigin(origins = "*")
+public class ExportController {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ExportController.class);
+    
+    private final SecurityUtils securityUtils;
+    private final DataExportService dataExportService;
+    
+    @Autowired
+    public ExportController(SecurityUtils securityUtils, DataExportService dataExportService) {
+        this.securityUtils = securityUtils;
+        this.dataExportService = dataExportService;
+    }
+    
+    /**
+     * Export policy violations of the caller's organization
+     * Admins may export another organization by passing it explicitly
+     * 
+     * @param format csv or ndjson
+     * @return Streaming file download
+     */
+    @GetMapping("/violations")
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER')")
+    public ResponseEntity<?> exportViolations(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String organization,
+            HttpServletRequest request) {
+        
+        String userOrganization = securityUtils.getCurrentUserOrganization();
+        if (userOrganization == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        
+        String exportOrganization = securityUtils.isAdmin() && organization != null && !organization.isBlank()
+                ? organization : userOrganization;
+        LocalDateTime fromDate = from != null ? from : LocalDateTime.of(1970, 1, 1, 0, 0);
+        LocalDateTime toDate = to != null ? to : LocalDateTime.now();
+        
+        ExportFormat exportFormat;
+        try {
+            exportFormat = ExportFormat.fromString(format);
+        } catch (IllegalArgumentException e) {
+            return errorResponse(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        
+        return startExport(request, "policy-violations-" + exportOrganization, exportFormat,
+                out -> dataExportService.exportViolations(exportOrganization, fromDate, toDate, exportFormat, out));
+    }
+    
+    /**
+     * Export registered devices
+     * Admins export every device (or one organization); users export their organization's devices.
+     * Device secrets are never included.
+     * 
+     * @param format csv or ndjson
+     * @return Streaming file download
+     */
+    @GetMapping("/devices")
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER')")
+    public ResponseEntity<?> exportDevices(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(required = false) String organization,
+            HttpServletRequest request) {
+        
+        String userOrganization = securityUtils.getCurrentUserOrganization();
+        if (userOrganization == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        
+        String exportOrganization;
+        if (securityUtils.isAdmin()) {
+            exportOrganization = organization != null && !organization.isBlank() ? organization : null;
+        } else {
+            exportOrganization = userOrganization;
+        }
+        
+        ExportFormat exportFormat;
+        try {
+            exportFormat = ExportFormat.fromString(format);
+        } catch (IllegalArgumentException e) {
+            return errorResponse(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        
+        return startExport(request, "devices-" + (exportOrganization != null ? exportOrganization : "all"), exportFormat,
+                out -> dataExportService.exportDevices(exportOrganization, exportFormat, out));
+    }
+    
+    private ResponseEntity<?> startExport(HttpServletRequest request, String baseName, ExportFormat format,
+                                          StreamingResponseBody body) {
+        if (!dataExportService.tryAcquireExportSlot()) {
+            logger.warn("Rejecting export {}: too many exports running", baseName);
+            return errorResponse(HttpStatus.TOO_MANY_REQUESTS, "Too many exports in progress, please retry later");
+        }
+        
+        // The body may never run (executor rejection, client gone before dispatch), so the async
+        // lifecycle releases the slot as well; whichever comes first releases it
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable releaseSlot = () -> {
+            if (released.compareAndSet(false, true)) {
+                dataExportService.releaseExportSlot();
+            }
+        };
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(ExportController.class.getName(),
+                new CallableProcessingInterceptor() {
+                    @Override
+                    public <T> Object handleTimeout(NativeWebRequest webRequest, Callable<T> task) {
+                        releaseSlot.run();
+                        return RESULT_NONE;
+                    }
+                    
+                    @Override
+                    public <T> Object handleError(NativeWebRequest webRequest, Callable<T> task, Throwable t) {
+                        releaseSlot.run();
+                        return RESULT_NONE;
+                    }
+                    
+                    @Override
+                    public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) {
+                        releaseSlot.run();
+                    }
+                });
+        
+        StreamingResponseBody releasingBody = out -> {
+            try {
+                body.writeTo(out);
+            } finally {
+                releaseSlot.run();
+            }
+        };
+        
+        String fileName = baseName.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + LocalDate.now() + "." + format.getExtension();
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .contentType(MediaType.parseMediaType(format.getContentType()))
+                .body(releasingBody);
+    }
+    
+    private ResponseEntity<?> errorResponse(HttpStatus status, String message) {
+        Map<String, String> error = new HashMap<>();
+        error.put("status", "error");
+        error.put("message", message);
+        return ResponseEntity.status(status).body(error);
+    }
+}
@@ -3,8 +3,18 @@ package com.gradientgeeks.aegis.sfe.controller;
 import com.gradientgeeks.aegis.sfe.dto.*;
 import com.gradientgeeks.aegis.sfe.entity.Device;
 import com.gradientgeeks.aegis.sfe.entity.DeviceFingerprint;
+import com.gradientgeeks.aegis.sfe.entity.FraudRescoreJob;
+import com.gradientgeeks.aegis.sfe.entity.FraudRescoreVerdict;
+import com.gradientgeeks.aegis.sfe.entity.FraudReviewFlag;
+import com.gradientgeeks.aegis.sfe.service.DeviceCounterService;
+import com.gradientgeeks.aegis.sfe.service.DeviceCounterService.DeviceCounters;
 import com.gradientgeeks.aegis.sfe.service.DeviceFraudDetectionService;
 import com.gradientgeeks.aegis.sfe.service.DeviceRegistrationService;
+import com.gradientgeeks.aegis.sfe.service.FingerprintColumnStore.SimilarFingerprint;
+import com.gradientgeeks.aegis.sfe.service.FraudRescoreService;
+import com.gradientgeeks.aegis.sfe.service.HardwareClusterStatsService;
+import com.gradientgeeks.aegis.sfe.service.StatisticsCache;
+import com.gradientgeeks.aegis.sfe.util.KeysetCursor;
 import com.gradientgeeks.aegis.sfe.util.SecurityUtils;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -39,19 +49,33 @@ public class FraudController {
     private final SecurityUtils securityUtils;
     private final DeviceRegistrationService deviceRegistrationService;
     private final DeviceFraudDetectionService deviceFraudDetectionService;
+    private final HardwareClusterStatsService hardwareClusterStatsService;
+    private final FraudRescoreService fraudRescoreService;
+    private final DeviceCounterService deviceCounterService;
+    private final StatisticsCache statisticsCache;
     
     @Autowired
     public FraudController(SecurityUtils securityUtils, 
                           DeviceRegistrationService deviceRegistrationService,
-                          DeviceFraudDetectionService deviceFraudDetectionService) {
+                          DeviceFraudDetectionService deviceFraudDetectionService,
+                          HardwareClusterStatsService hardwareClusterStatsService,
+                          FraudRescoreService fraudRescoreService,
+                          DeviceCounterService deviceCounterService,
+                          StatisticsCache statisticsCache) {
         this.securityUtils = securityUtils;
         this.deviceRegistrationService = deviceRegistrationService;
         this.deviceFraudDetectionService = deviceFraudDetectionService;
+        this.hardwareClusterStatsService = hardwareClusterStatsService;
+        this.fraudRescoreService = fraudRescoreService;
+        this.deviceCounterService = deviceCounterService;
+        this.statisticsCache = statisticsCache;
     }
     
     /**
      * Get fraud statistics
-     * Admins see all statistics, users see organization-specific statistics
+     * Admins see all statistics, users see organization-specific statistics.
+     * Device counts come from the per-client counters, reconciled nightly.
+     * Served from the statistics cache, so figures may be a few seconds old.
      * 
      * @param period Time period for statistics (e.g., "30d", "7d", "24h")
      * @return Fraud statistics
@@ -69,26 +93,10 @@ public class FraudController {
             securityUtils.isAdmin() ? "ALL" : organization, period);
         
         try {
-            Map<String, Object> statistics = new HashMap<>();
-            
-            if (securityUtils.isAdmin()) {
-                // Admin sees all statistics
-                statistics.put("totalDevices", deviceRegistrationService.getTotalDeviceCount());
-                statistics.put("blockedDevices", deviceRegistrationService.getBlockedDeviceCount());
-                statistics.put("fraudulentDevices", deviceFraudDetectionService.getFraudulentDeviceCount());
-                statistics.put("recentReports", deviceFraudDetectionService.getRecentFraudReportCount(period));
-                statistics.put("organizationBreakdown", deviceRegistrationService.getDeviceCountByOrganization());
-            } else {
-                // User sees only their organization's statistics
-                statistics.put("totalDevices", deviceRegistrationService.getTotalDeviceCountByOrganization(organization));
-                statistics.put("blockedDevices", deviceRegistrationService.getBlockedDeviceCountByOrganization(organization));
-                statistics.put("fraudulentDevices", deviceFraudDetectionService.getFraudulentDeviceCountByOrganization(organization));
-                statistics.put("recentReports", deviceFraudDetectionService.getRecentFraudReportCountByOrganization(organization, period));
-            }
-            
-            statistics.put("period", period);
-            statistics.put("generatedAt", System.currentTimeMillis());
-            
+            boolean admin = securityUtils.isAdmin();
+            String cacheKey = "fraud-statistics:" + (admin ? "*" : organization) + ":" + period;
+            Map<String, Object> statistics = statisticsCache.get(cacheKey,
+                () -> computeFraudStatistics(admin, organization, period));
             return ResponseEntity.ok(statistics);
             
         } catch (Exception e) {
@@ -100,9 +108,35 @@ public class FraudController {
         }
     }
     
+    private Map<String, Object> computeFraudStatistics(boolean admin, String organization, String period) {
+        Map<String, Object> statistics = new HashMap<>();
+        
+        if (admin) {
+            // Admin sees all statistics
+            DeviceCounters counters = deviceCounterService.getGlobalCounters();
+            statistics.put("totalDevices", counters.totalDevices());
+            statistics.put("blockedDevices", counters.blockedDevices());
+            statistics.put("fraudulentDevices", counters.fraudulentDevices());
+            statistics.put("recentReports", deviceFraudDetectionService.getRecentFraudReportCount(period));
+            statistics.put("organizationBreakdown", deviceCounterService.getCountersByOrganization());
+        } else {
+            // User sees only their organization's statistics
+            DeviceCounters counters = deviceCounterService.getOrganizationCounters(organization);
+            statistics.put("totalDevices", counters.totalDevices());
+            statistics.put("blockedDevices", counters.blockedDevices());
+            statistics.put("fraudulentDevices", counters.fraudulentDevices());
+            statistics.put("recentReports", deviceFraudDetectionService.getRecentFraudReportCountByOrganization(organization, period));
+        }
+        
+        statistics.put("period", period);
+        statistics.put("generatedAt", System.currentTimeMillis());
+        return statistics;
+    }
+    
     /**
      * Get recent fraud reports
-     * Admins see all reports, users see organization-specific reports
+     * Admins see all reports, users see organization-specific reports.
+     * Served from the statistics cache, so reports may be a few seconds old.
      * 
      * @param limit Number of reports to retrieve
      * @return List of recent fraud reports
@@ -120,15 +154,13 @@ public class FraudController {
             securityUtils.isAdmin() ? "ALL" : organization, limit);
         
         try {
-            List<Map<String, Object>> reports;
-            
-            if (securityUtils.isAdmin()) {
+            boolean admin = securityUtils.isAdmin();
+            String cacheKey = "fraud-reports:" + (admin ? "*" : organization) + ":" + limit;
+            List<Map<String, Object>> reports = statisticsCache.get(cacheKey, () -> admin
                 // Admin sees all reports
-                reports = deviceFraudDetectionService.getRecentFraudReports(limit);
-            } else {
+                ? deviceFraudDetectionService.getRecentFraudReports(limit)
                 // User sees only their organization's reports
-                reports = deviceFraudDetectionService.getRecentFraudReportsByOrganization(organization, limit);
-            }
+                : deviceFraudDetectionService.getRecentFraudReportsByOrganization(organization, limit));
             
             return ResponseEntity.ok(reports);
             
@@ -141,6 +173,67 @@ public class FraudController {
         }
     }
     
+    /**
+     * Get devices queued for review after fraud was propagated from a linked device
+     * Admin only, links span all organizations
+     * 
+     * @param status Review status (PENDING, CONFIRMED, DISMISSED)
+     * @param page Page number (0-based)
+     * @param size Page size
+     * @return Paginated review flags, newest first
+     */
+    @GetMapping("/fraud/review-queue")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getReviewQueue(
+            @RequestParam(defaultValue = "PENDING") String status,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        
+        FraudReviewFlag.ReviewStatus reviewStatus;
+        try {
+            reviewStatus = FraudReviewFlag.ReviewStatus.valueOf(status.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("status", "error");
+            error.put("message", "Invalid status: " + status);
+            return ResponseEntity.badRequest().body(error);
+        }
+        
+        logger.info("Retrieving fraud review queue with status: {}", reviewStatus);
+        
+        try {
+            Page<FraudReviewFlag> flags = deviceFraudDetectionService.getReviewQueue(
+                reviewStatus, PageRequest.of(page, Math.min(size, 100)));
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("flags", flags.getContent().stream().map(flag -> {
+                Map<String, Object> item = new HashMap<>();
+                item.put("deviceId", flag.getDeviceId());
+                item.put("sourceDeviceId", flag.getSourceDeviceId());
+                item.put("hops", flag.getHops());
+                item.put("linkPath", flag.getLinkPath());
+                item.put("status", flag.getStatus());
+                item.put("createdAt", flag.getCreatedAt());
+                return item;
+            }).collect(Collectors.toList()));
+            response.put("pagination", Map.of(
+                "page", flags.getNumber(),
+                "size", flags.getSize(),
+                "totalElements", flags.getTotalElements(),
+                "totalPages", flags.getTotalPages()
+            ));
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (Exception e) {
+            logger.error("Error retrieving fraud review queue", e);
+            Map<String, String> error = new HashMap<>();
+            error.put("status", "error");
+            error.put("message", "Internal server error");
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+    
     /**
      * Search devices by various criteria
      * Admins see all devices, users see only devices that have interacted with their organization
@@ -229,6 +322,99 @@ public class FraudController {
         }
     }
     
+    /**
+     * Search devices using keyset pagination, newest first.
+     * Unlike /devices/search this does not run a COUNT query unless includeTotal is set,
+     * and deep pages cost the same as the first one.
+     * 
+     * @param cursor Token returned as nextCursor by the previous page
+     * @param includeTotal Whether to count all matching devices
+     * @return Devices and the cursor for the next page
+     */
+    @GetMapping("/devices/search/cursor")
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER')")
+    public ResponseEntity<?> searchDevicesByCursor(
+            @RequestParam(required = false) String deviceId,
+            @RequestParam(required = false) String clientId,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "false") boolean includeTotal) {
+        
+        String organization = securityUtils.getCurrentUserOrganization();
+        if (organization == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        
+        try {
+            int pageSize = Math.max(1, Math.min(size, 100));
+            KeysetCursor position = cursor != null && !cursor.isBlank() ? KeysetCursor.decode(cursor) : null;
+            
+            List<Device> devices;
+            if (securityUtils.isAdmin()) {
+                devices = deviceRegistrationService.searchDevicesAfter(deviceId, clientId, status, position, pageSize);
+            } else {
+                devices = deviceRegistrationService.searchDevicesByOrganizationAfter(
+                    deviceId, organization, status, position, pageSize);
+            }
+            
+            boolean hasNext = devices.size() > pageSize;
+            List<Device> pageContent = hasNext ? devices.subList(0, pageSize) : devices;
+            
+            // One query for all fingerprints on the page instead of one per device
+            Map<String, DeviceFingerprint> fingerprints = deviceRegistrationService.findFingerprintsByDeviceIds(
+                pageContent.stream().map(Device::getDeviceId).collect(Collectors.toSet()));
+            
+            List<Map<String, Object>> deviceList = pageContent.stream().map(device -> {
+                Map<String, Object> deviceInfo = new HashMap<>();
+                deviceInfo.put("deviceId", device.getDeviceId());
+                deviceInfo.put("clientId", device.getClientId());
+                deviceInfo.put("status", device.getStatus().toString());
+                deviceInfo.put("registrationDate", device.getCreatedAt());
+                deviceInfo.put("lastActivity", device.getUpdatedAt());
+                
+                DeviceFingerprint fingerprint = fingerprints.get(device.getDeviceId());
+                if (fingerprint != null) {
+                    deviceInfo.put("isFraudulent", fingerprint.getIsFraudulent());
+                    deviceInfo.put("hardwareInfo", Map.of(
+                        "manufacturer", fingerprint.getManufacturer(),
+                        "model", fingerprint.getModel(),
+                        "device", fingerprint.getDeviceName()
+                    ));
+                }
+                
+                return deviceInfo;
+            }).collect(Collectors.toList());
+            
+            String nextCursor = null;
+            if (hasNext) {
+                Device last = pageContent.get(pageContent.size() - 1);
+                nextCursor = KeysetCursor.of(last.getCreatedAt(), last.getDeviceId(), last.getClientId()).encode();
+            }
+            
+            CursorPageResponse<Map<String, Object>> response = new CursorPageResponse<>(deviceList, nextCursor, pageSize);
+            if (includeTotal) {
+                response.setTotalElements(securityUtils.isAdmin()
+                    ? deviceRegistrationService.countDevices(deviceId, clientId, status)
+                    : deviceRegistrationService.countDevicesByOrganization(deviceId, organization, status));
+            }
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("status", "error");
+            error.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        } catch (Exception e) {
+            logger.error("Error searching devices", e);
+            Map<String, String> error = new HashMap<>();
+            error.put("status", "error");
+            error.put("message", "Internal server error");
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+    
     /**
      * Get device fraud status and details
      * Users can only see devices that have interacted with their organization
@@ -368,6 +554,212 @@ public class FraudController {
         }
     }
     
+    /**
+     * Get the hardware clusters whose registrations are growing fastest
+     * Admin only, clusters span all organizations
+     * 
+     * @param windowHours Recent window in hours, compared against the baseline before it
+     * @param limit Maximum number of clusters
+     * @return Clusters ordered by growth factor
+     */
+    @GetMapping("/fraud/clusters/trending")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getTrendingClusters(
+            @RequestParam(defaultValue = "1") int windowHours,
+            @RequestParam(defaultValue = "20") int limit) {
+        
+        if (windowHours < 1 || windowHours > 24 || limit < 1 || limit > 100) {
+            Map<String, String> error = new HashMap<>();
+            error.put("status", "error");
+            error.put("message", "windowHours must be between 1 and 24 and limit between 1 and 100");
+            return ResponseEntity.badRequest().body(error);
+        }
+        
+        logger.info("Retrieving trending hardware clusters for the last {} hours", windowHours);
+        
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("windowHours", windowHours);
+            response.put("baselineHours", hardwareClusterStatsService.getBaselineHours());
+            response.put("clusters", hardwareClusterStatsService.getTrendingClusters(windowHours, limit));
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (Exception e) {
+            logger.error("Error retrieving trending hardware clusters", e);
+            Map<String, String> error = new HashMap<>();
+            error.put("status", "error");
+            error.put("message", "Internal server error");
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+    
+    /**
+     * Start re-scoring all stored fingerprints against the fraudulent ones with the
+     * current thresholds, or resume the latest job if it did not complete
+     * Admin only
+     * 
+     * @return The started or resumed job
+     */
+    @PostMapping("/fraud/rescore")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> startRescore() {
+        
+        logger.info("Starting fraud re-scoring job");
+        
+        try {
+            FraudRescoreJob job = fraudRescoreService.startRescore();
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(describeRescoreJob(job));
+            
+        } catch (IllegalStateException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("status", "error");
+            error.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+        } catch (Exception e) {
+            logger.error("Error starting fraud re-scoring job", e);
+            Map<String, String> error = new HashMap<>();
+            error.put("status", "error");
+            error.put("message", "Internal server error");
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+    
+    /**
+     * Get progress of the latest re-scoring job and the devices whose verdict changed
+     * Admin only
+     * 
+     * @param page Page number (0-based)
+     * @param size Page size
+     * @return Job progress and changed devices, highest score first
+     */
+    @GetMapping("/fraud/rescore")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getRescoreStatus(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        
+        try {
+            Optional<FraudRescoreJob> latest = fraudRescoreService.getLatestJob();
+            if (latest.isEmpty()) {
+                Map<String, String> error = new HashMap<>();
+                error.put("status", "error");
+                error.put("message", "No re-scoring job has been started");
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+            }
+            
+            FraudRescoreJob job = latest.get();
+            Page<FraudRescoreVerdict> changed = fraudRescoreService.getChangedVerdicts(
+                job.getId(), PageRequest.of(page, Math.min(size, 100)));
+            
+            Map<String, Object> response = describeRescoreJob(job);
+            response.put("running", fraudRescoreService.isRunning());
+            response.put("changedDevices", changed.getContent().stream().map(verdict -> {
+                Map<String, Object> item = new HashMap<>();
+                item.put("deviceId", verdict.getDeviceId());
+                item.put("fingerprintId", verdict.getFingerprintId());
+                item.put("verdict", verdict.getVerdict());
+                item.put("currentVerdict", verdict.getCurrentVerdict());
+                item.put("score", verdict.getScore());
+                item.put("matchedDeviceId", verdict.getMatchedDeviceId());
+                return item;
+            }).collect(Collectors.toList()));
+            response.put("pagination", Map.of(
+                "page", changed.getNumber(),
+                "size", changed.getSize(),
+                "totalElements", changed.getTotalElements(),
+                "totalPages", changed.getTotalPages()
+            ));
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (Exception e) {
+            logger.error("Error retrieving fraud re-scoring status", e);
+            Map<String, String> error = new HashMap<>();
+            error.put("status", "error");
+            error.put("message", "Internal server error");
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+    
+    private Map<String, Object> describeRescoreJob(FraudRescoreJob job) {
+        Map<String, Object> description = new HashMap<>();
+        description.put("jobId", job.getId());
+        description.put("jobStatus", job.getStatus());
+        description.put("lastFingerprintId", job.getLastFingerprintId());
+        description.put("processed", job.getProcessedCount());
+        description.put("changed", job.getChangedCount());
+        description.put("startedAt", job.getStartedAt());
+        description.put("completedAt", job.getCompletedAt());
+        description.put("errorMessage", job.getErrorMessage());
+        return description;
+    }
+    
+    /**
+     * Get devices with the most similar hardware and display fingerprint
+     * Scans all stored fingerprints; admin only
+     * 
+     * @param deviceId The device identifier
+     * @param minSimilarity Lowest similarity to return (0.0 to 1.0)
+     * @param limit Maximum number of devices
+     * @param fraudulentOnly Only return devices marked fraudulent
+     * @return Similar devices, most similar first
+     */
+    @GetMapping("/fraud/devices/{deviceId}/similar")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getSimilarDevices(
+            @PathVariable String deviceId,
+            @RequestParam(defaultValue = "0.7") double minSimilarity,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(defaultValue = "false") boolean fraudulentOnly) {
+        
+        if (minSimilarity < 0.0 || minSimilarity > 1.0 || limit < 1 || limit > 100) {
+            Map<String, String> error = new HashMap<>();
+            error.put("status", "error");
+            error.put("message", "minSimilarity must be between 0 and 1 and limit between 1 and 100");
+            return ResponseEntity.badRequest().body(error);
+        }
+        
+        logger.info("Finding devices similar to: {} (minSimilarity: {})", deviceId, minSimilarity);
+        
+        try {
+            Optional<List<SimilarFingerprint>> similar = deviceFraudDetectionService.findSimilarDevices(
+                deviceId, minSimilarity, limit, fraudulentOnly);
+            if (similar.isEmpty()) {
+                Map<String, String> error = new HashMap<>();
+                error.put("status", "error");
+                error.put("message", "No fingerprint found for device: " + deviceId);
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+            }
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("deviceId", deviceId);
+            response.put("minSimilarity", minSimilarity);
+            response.put("devices", similar.get().stream().map(match -> {
+                Map<String, Object> item = new HashMap<>();
+                item.put("deviceId", match.deviceId());
+                item.put("fingerprintId", match.fingerprintId());
+                item.put("similarity", match.similarity());
+                item.put("fraudulent", match.fraudulent());
+                return item;
+            }).collect(Collectors.toList()));
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (IllegalStateException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("status", "error");
+            error.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(error);
+        } catch (Exception e) {
+            logger.error("Error finding devices similar to: {}", deviceId, e);
+            Map<String, String> error = new HashMap<>();
+            error.put("status", "error");
+            error.put("message", "Internal server error");
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+    
     /**
      * Get device transaction history
      * Shows anonymized transaction validation history for a device
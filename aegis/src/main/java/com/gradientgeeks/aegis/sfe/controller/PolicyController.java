@@ -1,12 +1,17 @@
 package com.gradientgeeks.aegis.sfe.controller;
 
+import com.gradientgeeks.aegis.sfe.dto.CursorPageResponse;
 import com.gradientgeeks.aegis.sfe.dto.PolicyFieldConfigDto;
 import com.gradientgeeks.aegis.sfe.dto.PolicyRequest;
 import com.gradientgeeks.aegis.sfe.dto.PolicyResponse;
+import com.gradientgeeks.aegis.sfe.dto.ViolationRetentionRequest;
 import com.gradientgeeks.aegis.sfe.entity.Policy;
 import com.gradientgeeks.aegis.sfe.entity.PolicyViolation;
+import com.gradientgeeks.aegis.sfe.entity.ViolationRetentionSetting;
 import com.gradientgeeks.aegis.sfe.service.PolicyFieldConfigService;
 import com.gradientgeeks.aegis.sfe.service.PolicyManagementService;
+import com.gradientgeeks.aegis.sfe.service.ViolationHeavyHitterService;
+import com.gradientgeeks.aegis.sfe.service.ViolationRetentionService;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,6 +25,7 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -40,6 +46,12 @@ public class PolicyController extends BaseController {
     @Autowired
     private PolicyFieldConfigService policyFieldConfigService;
     
+    @Autowired
+    private ViolationRetentionService violationRetentionService;
+    
+    @Autowired
+    private ViolationHeavyHitterService violationHeavyHitterService;
+    
     /**
      * Creates a new policy for an organization
      */
@@ -282,6 +294,37 @@ public class PolicyController extends BaseController {
         }
     }
     
+    /**
+     * Gets policy violations for a device using keyset pagination.
+     * Pass the returned nextCursor to fetch the following page.
+     */
+    @GetMapping("/violations/{deviceId}/cursor")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('USER')")
+    public ResponseEntity<?> getViolationHistoryByCursor(@PathVariable String deviceId,
+                                                       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                       @RequestParam(required = false) String cursor,
+                                                       @RequestParam(defaultValue = "20") int size,
+                                                       @RequestParam(defaultValue = "false") boolean includeTotal) {
+        try {
+            String userOrganization = getCurrentUserOrganization();
+            int pageSize = Math.max(1, Math.min(size, 100));
+            
+            CursorPageResponse<Map<String, Object>> violations = policyManagementService.getViolationHistoryPage(
+                    deviceId, from, to, userOrganization, cursor, pageSize, includeTotal);
+            
+            return ResponseEntity.ok(violations);
+            
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid violation history request: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Error getting violation history for device: {}", deviceId, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to get violation history"));
+        }
+    }
+    
     /**
      * Gets violation statistics for organization
      */
@@ -304,6 +347,106 @@ public class PolicyController extends BaseController {
         }
     }
     
+    /**
+     * Gets the devices, users or policies with the most violations in a recent window.
+     * Counts come from streaming top-K sketches: each count may over-estimate the
+     * true value by at most its maxError (bounded by totalViolations / capacity).
+     */
+    @GetMapping("/violations/top")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('USER')")
+    public ResponseEntity<?> getTopViolators(@RequestParam(defaultValue = "device") String dimension,
+                                            @RequestParam(defaultValue = "1h") String window,
+                                            @RequestParam(defaultValue = "10") int limit) {
+        try {
+            String userOrganization = getCurrentUserOrganization();
+            ViolationHeavyHitterService.Dimension topDimension = ViolationHeavyHitterService.Dimension.fromString(dimension);
+            int topLimit = Math.max(1, Math.min(limit, 100));
+            
+            return ResponseEntity.ok(violationHeavyHitterService.getTopViolators(
+                    userOrganization, topDimension, window, topLimit));
+            
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid top violators request: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Error getting top violators", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to get top violators"));
+        }
+    }
+    
+    /**
+     * Gets the violation retention settings for organization
+     */
+    @GetMapping("/violations/retention")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('USER')")
+    public ResponseEntity<?> getViolationRetention() {
+        try {
+            String userOrganization = getCurrentUserOrganization();
+            ViolationRetentionSetting setting = violationRetentionService.getRetentionSetting(userOrganization);
+            
+            return ResponseEntity.ok(convertToRetentionResponse(setting));
+            
+        } catch (Exception e) {
+            logger.error("Error getting violation retention settings", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to get violation retention settings"));
+        }
+    }
+    
+    /**
+     * Updates the violation retention settings for organization
+     */
+    @PutMapping("/violations/retention")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('USER')")
+    public ResponseEntity<?> updateViolationRetention(@Valid @RequestBody ViolationRetentionRequest request) {
+        try {
+            String userOrganization = getCurrentUserOrganization();
+            logger.info("Updating violation retention for organization: {} to {} days",
+                       userOrganization, request.getRetentionDays());
+            
+            ViolationRetentionSetting setting = violationRetentionService.updateRetentionSetting(
+                    userOrganization, request.getRetentionDays(), Boolean.TRUE.equals(request.getArchiveEnabled()));
+            
+            return ResponseEntity.ok(convertToRetentionResponse(setting));
+            
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid retention request: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Error updating violation retention settings", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to update violation retention settings"));
+        }
+    }
+    
+    /**
+     * Runs the violation retention purge immediately (all organizations)
+     */
+    @PostMapping("/violations/retention/purge")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> purgeExpiredViolations() {
+        try {
+            logger.info("Manual violation retention purge requested");
+            return ResponseEntity.ok(violationRetentionService.purgeExpiredViolations());
+            
+        } catch (Exception e) {
+            logger.error("Error purging expired violations", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to purge expired violations"));
+        }
+    }
+    
+    private Map<String, Object> convertToRetentionResponse(ViolationRetentionSetting setting) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("organization", setting.getOrganization());
+        response.put("retentionDays", setting.getRetentionDays());
+        response.put("archiveEnabled", setting.getArchiveEnabled());
+        response.put("lastPurgedAt", setting.getLastPurgedAt());
+        response.put("lastPurgedCount", setting.getLastPurgedCount());
+        return response;
+    }
+    
     /**
      * Converts Policy entity to response DTO
      */
@@ -0,0 +1,45 @@
+package com.gradientgeeks.aegis.sfe.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public class BulkDeviceStatusRequest {
+    
+    @NotEmpty(message = "At least one device ID is required")
+    private List<String> deviceIds;
+    
+    @NotBlank(message = "Status is required")
+    private String status;
+    
+    @Size(max = 500, message = "Reason must not exceed 500 characters")
+    private String reason;
+    
+    public BulkDeviceStatusRequest() {}
+    
+    public List<String> getDeviceIds() {
+        return deviceIds;
+    }
+    
+    public void setDeviceIds(List<String> deviceIds) {
+        this.deviceIds = deviceIds;
+    }
+    
+    public String getStatus() {
+        return status;
+    }
+    
+    public void setStatus(String status) {
+        this.status = status;
+    }
+    
+    public String getReason() {
+        return reason;
+    }
+    
+    public void setReason(String reason) {
+        this.reason = reason;
+    }
+}
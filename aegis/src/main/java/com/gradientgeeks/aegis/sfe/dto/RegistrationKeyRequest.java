@@ -1,5 +1,6 @@
 package com.gradientgeeks.aegis.sfe.dto;
 
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
 
@@ -18,6 +19,12 @@ public class RegistrationKeyRequest {
     
     private String organization;
     
+    @Min(value = 1, message = "Registration rate limit must be at least 1 per minute")
+    private Integer registrationRateLimit;
+    
+    @Min(value = 1, message = "Registration burst must be at least 1")
+    private Integer registrationBurst;
+    
     public RegistrationKeyRequest() {}
     
     public RegistrationKeyRequest(String clientId, String description, LocalDateTime expiresAt) {
@@ -58,12 +65,30 @@ public class RegistrationKeyRequest {
         this.organization = organization;
     }
     
+    public Integer getRegistrationRateLimit() {
+        return registrationRateLimit;
+    }
+    
+    public void setRegistrationRateLimit(Integer registrationRateLimit) {
+        this.registrationRateLimit = registrationRateLimit;
+    }
+    
+    public Integer getRegistrationBurst() {
+        return registrationBurst;
+    }
+    
+    public void setRegistrationBurst(Integer registrationBurst) {
+        this.registrationBurst = registrationBurst;
+    }
+    
     @Override
     public String toString() {
         return "RegistrationKeyRequest{" +
                 "clientId='" + clientId + '\'' +
                 ", description='" + description + '\'' +
                 ", expiresAt=" + expiresAt +
+                ", registrationRateLimit=" + registrationRateLimit +
+                ", registrationBurst=" + registrationBurst +
                 '}';
     }
 }
\ No newline at end of file
@@ -11,6 +11,8 @@ public class RegistrationKeyResponse {
     private Boolean isActive;
     private LocalDateTime expiresAt;
     private LocalDateTime createdAt;
+    private Integer registrationRateLimit;
+    private Integer registrationBurst;
     private String status;
     private String message;
     
@@ -98,6 +100,22 @@ public class RegistrationKeyResponse {
         this.status = status;
     }
     
+    public Integer getRegistrationRateLimit() {
+        return registrationRateLimit;
+    }
+    
+    public void setRegistrationRateLimit(Integer registrationRateLimit) {
+        this.registrationRateLimit = registrationRateLimit;
+    }
+    
+    public Integer getRegistrationBurst() {
+        return registrationBurst;
+    }
+    
+    public void setRegistrationBurst(Integer registrationBurst) {
+        this.registrationBurst = registrationBurst;
+    }
+    
     public String getMessage() {
         return message;
     }
@@ -116,6 +134,8 @@ public class RegistrationKeyResponse {
                 ", isActive=" + isActive +
                 ", expiresAt=" + expiresAt +
                 ", createdAt=" + createdAt +
+                ", registrationRateLimit=" + registrationRateLimit +
+                ", registrationBurst=" + registrationBurst +
                 ", status='" + status + '\'' +
                 ", message='" + message + '\'' +
                 '}';
@@ -0,0 +1,33 @@
+package com.gradientgeeks.aegis.sfe.dto;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+
+public class ViolationRetentionRequest {
+    
+    @NotNull(message = "Retention days is required")
+    @Min(value = 1, message = "Retention must be at least 1 day")
+    @Max(value = 3650, message = "Retention must not exceed 3650 days")
+    private Integer retentionDays;
+    
+    private Boolean archiveEnabled = false;
+    
+    public ViolationRetentionRequest() {}
+    
+    public Integer getRetentionDays() {
+        return retentionDays;
+    }
+    
+    public void setRetentionDays(Integer retentionDays) {
+        this.retentionDays = retentionDays;
+    }
+    
+    public Boolean getArchiveEnabled() {
+        return archiveEnabled;
+    }
+    
+    public void setArchiveEnabled(Boolean archiveEnabled) {
+        this.archiveEnabled = archiveEnabled;
+    }
+}
@@ -0,0 +1,60 @@
+package com.gradientgeeks.aegis.sfe.entity;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * One LSH band key of a device's app inventory MinHash signature.
+ * Fingerprints sharing any band key are candidates for near-duplicate app inventories.
+ * Rows are written and queried through JDBC by AppInventorySimilarityService.
+ */
+@Entity
+@Table(name = "app_minhash_bands", indexes = {
+    @Index(name = "idx_minhash_band_key", columnList = "bandKey, fingerprintId"),
+    @Index(name = "idx_minhash_band_fingerprint", columnList = "fingerprintId")
+})
+public class AppMinHashBand {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @NotNull
+    @Column(name = "band_key", nullable = false)
+    private Long bandKey;
+    
+    @NotNull
+    @Column(name = "fingerprint_id", nullable = false)
+    private Long fingerprintId;
+    
+    public AppMinHashBand() {}
+    
+    public AppMinHashBand(Long bandKey, Long fingerprintId) {
+        this.bandKey = bandKey;
+        this.fingerprintId = fingerprintId;
+    }
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public Long getBandKey() {
+        return bandKey;
+    }
+    
+    public void setBandKey(Long bandKey) {
+        this.bandKey = bandKey;
+    }
+    
+    public Long getFingerprintId() {
+        return fingerprintId;
+    }
+    
+    public void setFingerprintId(Long fingerprintId) {
+        this.fingerprintId = fingerprintId;
+    }
+}
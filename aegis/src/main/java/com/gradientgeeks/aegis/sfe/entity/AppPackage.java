@@ -0,0 +1,49 @@
+package com.gradientgeeks.aegis.sfe.entity;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+
+/**
+ * Dictionary entry mapping an app package name to a compact integer ID.
+ * App inventories are stored as bitmaps of these IDs (see PackageBitmap).
+ */
+@Entity
+@Table(name = "app_packages", indexes = {
+    @Index(name = "idx_app_package_name", columnList = "packageName", unique = true)
+})
+public class AppPackage {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+    
+    @NotBlank
+    @Size(max = 255)
+    // Binary collation: package names are case-sensitive
+    @Column(name = "package_name", nullable = false, unique = true, 
+            columnDefinition = "VARCHAR(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin")
+    private String packageName;
+    
+    public AppPackage() {}
+    
+    public AppPackage(String packageName) {
+        this.packageName = packageName;
+    }
+    
+    public Integer getId() {
+        return id;
+    }
+    
+    public void setId(Integer id) {
+        this.id = id;
+    }
+    
+    public String getPackageName() {
+        return packageName;
+    }
+    
+    public void setPackageName(String packageName) {
+        this.packageName = packageName;
+    }
+}
@@ -14,7 +14,9 @@ import java.util.Objects;
     @Index(name = "idx_device_id", columnList = "deviceId"),
     @Index(name = "idx_client_id", columnList = "clientId"),
     @Index(name = "idx_device_status", columnList = "status"),
-    @Index(name = "idx_device_client_composite", columnList = "deviceId,clientId", unique = true)
+    @Index(name = "idx_device_client_composite", columnList = "deviceId,clientId", unique = true),
+    @Index(name = "idx_device_created_at_keyset", columnList = "createdAt,deviceId,clientId"),
+    @Index(name = "idx_device_client_created_at", columnList = "clientId,createdAt")
 })
 @IdClass(DeviceId.class)
 public class Device {
@@ -39,6 +41,7 @@ public class Device {
     
     @NotBlank
     @Size(max = 512)
+    // Wrapped by DeviceSecretVault ("v1:<dekId>:..."), or a legacy plaintext secret
     @Column(name = "secret_key", nullable = false)
     private String secretKey;
     
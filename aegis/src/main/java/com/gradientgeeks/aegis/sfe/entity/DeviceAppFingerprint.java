@@ -29,7 +29,7 @@ public class DeviceAppFingerprint {
     @Column(name = "fingerprint_id", nullable = false)
     private Long fingerprintId;
     
-    @OneToOne
+    @OneToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "fingerprint_id", insertable = false, updatable = false)
     private DeviceFingerprint deviceFingerprint;
     
@@ -53,6 +53,17 @@ public class DeviceAppFingerprint {
     @Column(name = "app_hash", nullable = false)
     private String appHash;
     
+    // MinHash of the user and system package names, see MinHash
+    @Column(name = "minhash_signature", columnDefinition = "VARBINARY(512)")
+    private byte[] minhashSignature;
+    
+    // Package dictionary IDs of the installed apps, encoded with PackageBitmap
+    @Column(name = "user_app_bitmap", columnDefinition = "BLOB")
+    private byte[] userAppBitmap;
+    
+    @Column(name = "system_app_bitmap", columnDefinition = "BLOB")
+    private byte[] systemAppBitmap;
+    
     @OneToMany(mappedBy = "appFingerprintId", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<DeviceAppInfo> appInfoList;
     
@@ -120,6 +131,30 @@ public class DeviceAppFingerprint {
         this.appHash = appHash;
     }
     
+    public byte[] getMinhashSignature() {
+        return minhashSignature;
+    }
+    
+    public void setMinhashSignature(byte[] minhashSignature) {
+        this.minhashSignature = minhashSignature;
+    }
+    
+    public byte[] getUserAppBitmap() {
+        return userAppBitmap;
+    }
+    
+    public void setUserAppBitmap(byte[] userAppBitmap) {
+        this.userAppBitmap = userAppBitmap;
+    }
+    
+    public byte[] getSystemAppBitmap() {
+        return systemAppBitmap;
+    }
+    
+    public void setSystemAppBitmap(byte[] systemAppBitmap) {
+        this.systemAppBitmap = systemAppBitmap;
+    }
+    
     public List<DeviceAppInfo> getAppInfoList() {
         return appInfoList;
     }
@@ -1,5 +1,6 @@
 package com.gradientgeeks.aegis.sfe.entity;
 
+import com.gradientgeeks.aegis.sfe.util.SensorTypeSet;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
@@ -21,7 +22,8 @@ import java.util.Objects;
     @Index(name = "idx_device_id", columnList = "deviceId"),
     @Index(name = "idx_hardware_hash", columnList = "hardwareHash"),
     @Index(name = "idx_display_hash", columnList = "displayHash"),
-    @Index(name = "idx_fraud_status", columnList = "isFraudulent")
+    @Index(name = "idx_fraud_status", columnList = "isFraudulent"),
+    @Index(name = "idx_fingerprint_created_at", columnList = "createdAt")
 })
 public class DeviceFingerprint {
     
@@ -102,11 +104,15 @@ public class DeviceFingerprint {
     @Column(name = "display_hash", nullable = false)
     private String displayHash;
     
-    // Sensor information
-    @ElementCollection
-    @CollectionTable(name = "device_fingerprint_sensors", joinColumns = @JoinColumn(name = "fingerprint_id"))
-    @Column(name = "sensor_type")
-    private List<Integer> sensorTypes;
+    // Sensor information; types are encoded inline (see SensorTypeSet) so loading
+    // fingerprints needs no per-row collection query
+    @NotNull
+    @Column(name = "sensor_type_mask", nullable = false)
+    private Long sensorTypeMask = 0L;
+    
+    @Size(max = 512)
+    @Column(name = "sensor_types_extra", length = 512)
+    private String sensorTypesExtra;
     
     @NotNull
     @Column(name = "sensor_count", nullable = false)
@@ -292,12 +298,32 @@ public class DeviceFingerprint {
         this.displayHash = displayHash;
     }
     
+    /**
+     * Distinct sensor types in ascending order, decoded from the mask
+     */
     public List<Integer> getSensorTypes() {
-        return sensorTypes;
+        return SensorTypeSet.toList(sensorTypeMask != null ? sensorTypeMask : 0L, sensorTypesExtra);
     }
     
     public void setSensorTypes(List<Integer> sensorTypes) {
-        this.sensorTypes = sensorTypes;
+        this.sensorTypeMask = SensorTypeSet.toMask(sensorTypes);
+        this.sensorTypesExtra = SensorTypeSet.toExtraTypes(sensorTypes);
+    }
+    
+    public Long getSensorTypeMask() {
+        return sensorTypeMask;
+    }
+    
+    public void setSensorTypeMask(Long sensorTypeMask) {
+        this.sensorTypeMask = sensorTypeMask;
+    }
+    
+    public String getSensorTypesExtra() {
+        return sensorTypesExtra;
+    }
+    
+    public void setSensorTypesExtra(String sensorTypesExtra) {
+        this.sensorTypesExtra = sensorTypesExtra;
     }
     
     public Integer getSensorCount() {
@@ -0,0 +1,136 @@
+package com.gradientgeeks.aegis.sfe.entity;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * One run of re-scoring all stored fingerprints against the fraudulent ones.
+ * Progress is checkpointed in lastFingerprintId, so an interrupted job resumes
+ * after the last fully written chunk.
+ */
+@Entity
+@Table(name = "fraud_rescore_jobs", indexes = {
+    @Index(name = "idx_rescore_job_status", columnList = "status")
+})
+public class FraudRescoreJob {
+    
+    public enum JobStatus {
+        RUNNING,   // Started or interrupted; resumed on the next request
+        COMPLETED, // All fingerprints scored
+        FAILED     // Stopped on an error; resumed on the next request
+    }
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private JobStatus status = JobStatus.RUNNING;
+    
+    // Highest device fingerprint ID whose verdict is written
+    @NotNull
+    @Column(name = "last_fingerprint_id", nullable = false)
+    private Long lastFingerprintId = 0L;
+    
+    @NotNull
+    @Column(name = "processed_count", nullable = false)
+    private Long processedCount = 0L;
+    
+    // Fingerprints whose verdict differs from the previous completed job
+    @NotNull
+    @Column(name = "changed_count", nullable = false)
+    private Long changedCount = 0L;
+    
+    // Thresholds and weights the job scores with, as JSON
+    @Column(name = "settings", columnDefinition = "TEXT")
+    private String settings;
+    
+    @Column(name = "error_message", length = 500)
+    private String errorMessage;
+    
+    @CreationTimestamp
+    @Column(name = "started_at", nullable = false, updatable = false)
+    private LocalDateTime startedAt;
+    
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+    
+    public FraudRescoreJob() {}
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public JobStatus getStatus() {
+        return status;
+    }
+    
+    public void setStatus(JobStatus status) {
+        this.status = status;
+    }
+    
+    public Long getLastFingerprintId() {
+        return lastFingerprintId;
+    }
+    
+    public void setLastFingerprintId(Long lastFingerprintId) {
+        this.lastFingerprintId = lastFingerprintId;
+    }
+    
+    public Long getProcessedCount() {
+        return processedCount;
+    }
+    
+    public void setProcessedCount(Long processedCount) {
+        this.processedCount = processedCount;
+    }
+    
+    public Long getChangedCount() {
+        return changedCount;
+    }
+    
+    public void setChangedCount(Long changedCount) {
+        this.changedCount = changedCount;
+    }
+    
+    public String getSettings() {
+        return settings;
+    }
+    
+    public void setSettings(String settings) {
+        this.settings = settings;
+    }
+    
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+    
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+    
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+    
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+    
+    public LocalDateTime getCompletedAt() {
+        return completedAt;
+    }
+    
+    public void setCompletedAt(LocalDateTime completedAt) {
+        this.completedAt = completedAt;
+    }
+}
@@ -0,0 +1,118 @@
+package com.gradientgeeks.aegis.sfe.entity;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+/**
+ * Verdict of one stored fingerprint in a re-scoring job, next to how its device is
+ * treated today (BLOCK if blocked or fraudulent, ALLOW otherwise). Only fingerprints
+ * that are flagged or blocked under either get a row; all others are ALLOW in both.
+ */
+@Entity
+@Table(name = "fraud_rescore_verdicts", indexes = {
+    @Index(name = "idx_rescore_verdict_job_fingerprint", columnList = "jobId, fingerprintId", unique = true)
+})
+public class FraudRescoreVerdict {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @NotNull
+    @Column(name = "job_id", nullable = false)
+    private Long jobId;
+    
+    @NotNull
+    @Column(name = "fingerprint_id", nullable = false)
+    private Long fingerprintId;
+    
+    @NotNull
+    @Size(max = 255)
+    @Column(name = "device_id", nullable = false)
+    private String deviceId;
+    
+    // ALLOW, FLAG or BLOCK
+    @NotNull
+    @Column(name = "verdict", nullable = false, length = 10)
+    private String verdict;
+    
+    @NotNull
+    @Column(name = "current_verdict", nullable = false, length = 10)
+    private String currentVerdict;
+    
+    @NotNull
+    @Column(name = "score", nullable = false)
+    private Double score;
+    
+    // Most similar fraudulent device
+    @Size(max = 255)
+    @Column(name = "matched_device_id")
+    private String matchedDeviceId;
+    
+    public FraudRescoreVerdict() {}
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public Long getJobId() {
+        return jobId;
+    }
+    
+    public void setJobId(Long jobId) {
+        this.jobId = jobId;
+    }
+    
+    public Long getFingerprintId() {
+        return fingerprintId;
+    }
+    
+    public void setFingerprintId(Long fingerprintId) {
+        this.fingerprintId = fingerprintId;
+    }
+    
+    public String getDeviceId() {
+        return deviceId;
+    }
+    
+    public void setDeviceId(String deviceId) {
+        this.deviceId = deviceId;
+    }
+    
+    public String getVerdict() {
+        return verdict;
+    }
+    
+    public void setVerdict(String verdict) {
+        this.verdict = verdict;
+    }
+    
+    public String getCurrentVerdict() {
+        return currentVerdict;
+    }
+    
+    public void setCurrentVerdict(String currentVerdict) {
+        this.currentVerdict = currentVerdict;
+    }
+    
+    public Double getScore() {
+        return score;
+    }
+    
+    public void setScore(Double score) {
+        this.score = score;
+    }
+    
+    public String getMatchedDeviceId() {
+        return matchedDeviceId;
+    }
+    
+    public void setMatchedDeviceId(String matchedDeviceId) {
+        this.matchedDeviceId = matchedDeviceId;
+    }
+}
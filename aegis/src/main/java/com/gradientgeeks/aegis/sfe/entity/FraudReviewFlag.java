@@ -0,0 +1,130 @@
+package com.gradientgeeks.aegis.sfe.entity;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * A device linked to a device that was marked fraudulent, queued for manual review.
+ * Created by FraudLinkageGraph when fraud is propagated through shared users,
+ * clients or fingerprint hashes.
+ */
+@Entity
+@Table(name = "fraud_review_flags", indexes = {
+    @Index(name = "idx_review_flag_device_source", columnList = "deviceId, sourceDeviceId", unique = true),
+    @Index(name = "idx_review_flag_status_created", columnList = "status, createdAt")
+})
+public class FraudReviewFlag {
+    
+    public enum ReviewStatus {
+        PENDING,   // Waiting for an admin decision
+        CONFIRMED, // Confirmed as fraudulent
+        DISMISSED  // Reviewed and found legitimate
+    }
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @NotNull
+    @Size(max = 255)
+    @Column(name = "device_id", nullable = false)
+    private String deviceId;
+    
+    // The device marked fraudulent that the link was found from
+    @NotNull
+    @Size(max = 255)
+    @Column(name = "source_device_id", nullable = false)
+    private String sourceDeviceId;
+    
+    // Number of device-to-device steps from the source
+    @NotNull
+    @Column(name = "hops", nullable = false)
+    private Integer hops;
+    
+    // Shared attributes leading from the source to this device, e.g. "composite > user"
+    @Size(max = 500)
+    @Column(name = "link_path", length = 500)
+    private String linkPath;
+    
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private ReviewStatus status = ReviewStatus.PENDING;
+    
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+    
+    @Column(name = "reviewed_at")
+    private LocalDateTime reviewedAt;
+    
+    public FraudReviewFlag() {}
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public String getDeviceId() {
+        return deviceId;
+    }
+    
+    public void setDeviceId(String deviceId) {
+        this.deviceId = deviceId;
+    }
+    
+    public String getSourceDeviceId() {
+        return sourceDeviceId;
+    }
+    
+    public void setSourceDeviceId(String sourceDeviceId) {
+        this.sourceDeviceId = sourceDeviceId;
+    }
+    
+    public Integer getHops() {
+        return hops;
+    }
+    
+    public void setHops(Integer hops) {
+        this.hops = hops;
+    }
+    
+    public String getLinkPath() {
+        return linkPath;
+    }
+    
+    public void setLinkPath(String linkPath) {
+        this.linkPath = linkPath;
+    }
+    
+    public ReviewStatus getStatus() {
+        return status;
+    }
+    
+    public void setStatus(ReviewStatus status) {
+        this.status = status;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+    
+    public LocalDateTime getReviewedAt() {
+        return reviewedAt;
+    }
+    
+    public void setReviewedAt(LocalDateTime reviewedAt) {
+        this.reviewedAt = reviewedAt;
+    }
+}
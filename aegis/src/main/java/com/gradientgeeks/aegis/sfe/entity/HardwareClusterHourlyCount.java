@@ -0,0 +1,68 @@
+package com.gradientgeeks.aegis.sfe.entity;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+
+import java.time.LocalDateTime;
+
+/**
+ * Registrations of one hardware cluster within one hour.
+ * Sliding-window registration rates are sums over the most recent buckets.
+ */
+@Entity
+@Table(name = "hardware_cluster_hourly", indexes = {
+    @Index(name = "idx_cluster_hour", columnList = "clusterKey, hourStart", unique = true),
+    @Index(name = "idx_cluster_hour_start", columnList = "hourStart")
+})
+public class HardwareClusterHourlyCount {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @NotNull
+    @Column(name = "cluster_key", nullable = false, length = 64)
+    private String clusterKey;
+    
+    @NotNull
+    @Column(name = "hour_start", nullable = false)
+    private LocalDateTime hourStart;
+    
+    @NotNull
+    @Column(name = "registrations", nullable = false)
+    private Integer registrations = 0;
+    
+    public HardwareClusterHourlyCount() {}
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public String getClusterKey() {
+        return clusterKey;
+    }
+    
+    public void setClusterKey(String clusterKey) {
+        this.clusterKey = clusterKey;
+    }
+    
+    public LocalDateTime getHourStart() {
+        return hourStart;
+    }
+    
+    public void setHourStart(LocalDateTime hourStart) {
+        this.hourStart = hourStart;
+    }
+    
+    public Integer getRegistrations() {
+        return registrations;
+    }
+    
+    public void setRegistrations(Integer registrations) {
+        this.registrations = registrations;
+    }
+}
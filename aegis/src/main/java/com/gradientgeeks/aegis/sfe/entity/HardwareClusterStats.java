@@ -0,0 +1,129 @@
+package com.gradientgeeks.aegis.sfe.entity;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+import java.time.LocalDateTime;
+
+/**
+ * Maintained device count of one hardware cluster, i.e. all fingerprints sharing
+ * manufacturer, model, board and CPU architecture.
+ * Updated by HardwareClusterStatsService on every new fingerprint.
+ */
+@Entity
+@Table(name = "hardware_cluster_stats", indexes = {
+    @Index(name = "idx_cluster_key", columnList = "clusterKey", unique = true)
+})
+public class HardwareClusterStats {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    // SHA-256 of the normalized hardware tuple
+    @NotNull
+    @Size(max = 64)
+    @Column(name = "cluster_key", nullable = false, unique = true, length = 64)
+    private String clusterKey;
+    
+    @Size(max = 100)
+    @Column(name = "manufacturer", length = 100)
+    private String manufacturer;
+    
+    @Size(max = 100)
+    @Column(name = "model", length = 100)
+    private String model;
+    
+    @Size(max = 100)
+    @Column(name = "board", length = 100)
+    private String board;
+    
+    @Size(max = 200)
+    @Column(name = "cpu_architecture", length = 200)
+    private String cpuArchitecture;
+    
+    @NotNull
+    @Column(name = "device_count", nullable = false)
+    private Long deviceCount = 0L;
+    
+    @Column(name = "first_seen_at")
+    private LocalDateTime firstSeenAt;
+    
+    @Column(name = "last_seen_at")
+    private LocalDateTime lastSeenAt;
+    
+    public HardwareClusterStats() {}
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public String getClusterKey() {
+        return clusterKey;
+    }
+    
+    public void setClusterKey(String clusterKey) {
+        this.clusterKey = clusterKey;
+    }
+    
+    public String getManufacturer() {
+        return manufacturer;
+    }
+    
+    public void setManufacturer(String manufacturer) {
+        this.manufacturer = manufacturer;
+    }
+    
+    public String getModel() {
+        return model;
+    }
+    
+    public void setModel(String model) {
+        this.model = model;
+    }
+    
+    public String getBoard() {
+        return board;
+    }
+    
+    public void setBoard(String board) {
+        this.board = board;
+    }
+    
+    public String getCpuArchitecture() {
+        return cpuArchitecture;
+    }
+    
+    public void setCpuArchitecture(String cpuArchitecture) {
+        this.cpuArchitecture = cpuArchitecture;
+    }
+    
+    public Long getDeviceCount() {
+        return deviceCount;
+    }
+    
+    public void setDeviceCount(Long deviceCount) {
+        this.deviceCount = deviceCount;
+    }
+    
+    public LocalDateTime getFirstSeenAt() {
+        return firstSeenAt;
+    }
+    
+    public void setFirstSeenAt(LocalDateTime firstSeenAt) {
+        this.firstSeenAt = firstSeenAt;
+    }
+    
+    public LocalDateTime getLastSeenAt() {
+        return lastSeenAt;
+    }
+    
+    public void setLastSeenAt(LocalDateTime lastSeenAt) {
+        this.lastSeenAt = lastSeenAt;
+    }
+}
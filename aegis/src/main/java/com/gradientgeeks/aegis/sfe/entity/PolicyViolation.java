@@ -11,6 +11,8 @@ import java.util.Objects;
 /**
  * Entity representing a policy violation incident.
  * Used for audit trail and compliance reporting.
+ * No foreign key constraints are declared so the table can be range-partitioned
+ * by created_at (see db/policy_violations_partitioning.sql).
  */
 @Entity
 @Table(name = "policy_violations", indexes = {
@@ -19,7 +21,9 @@ import java.util.Objects;
     @Index(name = "idx_organization", columnList = "organization"),
     @Index(name = "idx_policy_id", columnList = "policy_id"),
     @Index(name = "idx_created_at", columnList = "createdAt"),
-    @Index(name = "idx_action_taken", columnList = "actionTaken")
+    @Index(name = "idx_action_taken", columnList = "actionTaken"),
+    @Index(name = "idx_organization_created_at", columnList = "organization,createdAt"),
+    @Index(name = "idx_org_device_created_at", columnList = "organization,deviceId,createdAt,id")
 })
 public class PolicyViolation {
     
@@ -42,11 +46,11 @@ public class PolicyViolation {
     private String organization;
     
     @ManyToOne(fetch = FetchType.LAZY)
-    @JoinColumn(name = "policy_id", nullable = false)
+    @JoinColumn(name = "policy_id", nullable = false, foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     private Policy policy;
     
     @ManyToOne(fetch = FetchType.LAZY)
-    @JoinColumn(name = "policy_rule_id")
+    @JoinColumn(name = "policy_rule_id", foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     private PolicyRule violatedRule;
     
     @NotBlank
@@ -45,6 +45,14 @@ public class RegistrationKey {
     @Column(name = "expires_at")
     private LocalDateTime expiresAt;
     
+    // Registrations per minute admitted for this client; null uses the default
+    @Column(name = "registration_rate_limit")
+    private Integer registrationRateLimit;
+    
+    // Registrations admitted at once before the rate applies; null uses the default
+    @Column(name = "registration_burst")
+    private Integer registrationBurst;
+    
     @CreationTimestamp
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -117,6 +125,22 @@ public class RegistrationKey {
         this.expiresAt = expiresAt;
     }
     
+    public Integer getRegistrationRateLimit() {
+        return registrationRateLimit;
+    }
+    
+    public void setRegistrationRateLimit(Integer registrationRateLimit) {
+        this.registrationRateLimit = registrationRateLimit;
+    }
+    
+    public Integer getRegistrationBurst() {
+        return registrationBurst;
+    }
+    
+    public void setRegistrationBurst(Integer registrationBurst) {
+        this.registrationBurst = registrationBurst;
+    }
+    
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -0,0 +1,154 @@
+package com.gradientgeeks.aegis.sfe.entity;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * Entity holding the policy violation retention settings of an organization.
+ * Violations older than the retention window are purged (and optionally archived).
+ */
+@Entity
+@Table(name = "violation_retention_settings", indexes = {
+    @Index(name = "idx_retention_organization", columnList = "organization", unique = true)
+})
+public class ViolationRetentionSetting {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @NotBlank
+    @Size(max = 100)
+    @Column(name = "organization", nullable = false, unique = true)
+    private String organization;
+    
+    @NotNull
+    @Min(1)
+    @Max(3650)
+    @Column(name = "retention_days", nullable = false)
+    private Integer retentionDays;
+    
+    @Column(name = "archive_enabled", nullable = false)
+    private Boolean archiveEnabled = false;
+    
+    @Column(name = "last_purged_at")
+    private LocalDateTime lastPurgedAt;
+    
+    @Column(name = "last_purged_count")
+    private Long lastPurgedCount;
+    
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+    
+    @UpdateTimestamp
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+    
+    // Constructors
+    public ViolationRetentionSetting() {}
+    
+    public ViolationRetentionSetting(String organization, Integer retentionDays, Boolean archiveEnabled) {
+        this.organization = organization;
+        this.retentionDays = retentionDays;
+        this.archiveEnabled = archiveEnabled;
+    }
+    
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public String getOrganization() {
+        return organization;
+    }
+    
+    public void setOrganization(String organization) {
+        this.organization = organization;
+    }
+    
+    public Integer getRetentionDays() {
+        return retentionDays;
+    }
+    
+    public void setRetentionDays(Integer retentionDays) {
+        this.retentionDays = retentionDays;
+    }
+    
+    public Boolean getArchiveEnabled() {
+        return archiveEnabled;
+    }
+    
+    public void setArchiveEnabled(Boolean archiveEnabled) {
+        this.archiveEnabled = archiveEnabled;
+    }
+    
+    public LocalDateTime getLastPurgedAt() {
+        return lastPurgedAt;
+    }
+    
+    public void setLastPurgedAt(LocalDateTime lastPurgedAt) {
+        this.lastPurgedAt = lastPurgedAt;
+    }
+    
+    public Long getLastPurgedCount() {
+        return lastPurgedCount;
+    }
+    
+    public void setLastPurgedCount(Long lastPurgedCount) {
+        this.lastPurgedCount = lastPurgedCount;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+    
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ViolationRetentionSetting that = (ViolationRetentionSetting) o;
+        return Objects.equals(id, that.id) && Objects.equals(organization, that.organization);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, organization);
+    }
+    
+    @Override
+    public String toString() {
+        return "ViolationRetentionSetting{" +
+                "id=" + id +
+                ", organization='" + organization + '\'' +
+                ", retentionDays=" + retentionDays +
+                ", archiveEnabled=" + archiveEnabled +
+                ", lastPurgedAt=" + lastPurgedAt +
+                '}';
+    }
+}
@@ -1,11 +1,13 @@
 package com.gradientgeeks.aegis.sfe.repository;
 
 import com.gradientgeeks.aegis.sfe.entity.DeviceAppFingerprint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,6 +26,14 @@ public interface DeviceAppFingerprintRepository extends JpaRepository<DeviceAppF
      */
     Optional<DeviceAppFingerprint> findByFingerprintId(Long fingerprintId);
     
+    /**
+     * Find app fingerprints for a batch of device fingerprints.
+     * 
+     * @param fingerprintIds The device fingerprint IDs
+     * @return App fingerprints of the device fingerprints that have one
+     */
+    List<DeviceAppFingerprint> findByFingerprintIdIn(Collection<Long> fingerprintIds);
+    
     /**
      * Find app fingerprint by app hash.
      * 
@@ -70,6 +80,19 @@ public interface DeviceAppFingerprintRepository extends JpaRepository<DeviceAppF
         @Param("board") String board
     );
     
+    /**
+     * Find app fingerprints missing a MinHash signature or package bitmaps, in ID order.
+     * Used to backfill rows written before those columns existed.
+     * 
+     * @param afterId Only return IDs greater than this
+     * @param pageable Batch size
+     * @return App fingerprints needing a backfill
+     */
+    @Query("SELECT daf FROM DeviceAppFingerprint daf WHERE daf.id > :afterId AND " +
+           "(daf.minhashSignature IS NULL OR daf.userAppBitmap IS NULL OR daf.systemAppBitmap IS NULL) " +
+           "ORDER BY daf.id")
+    List<DeviceAppFingerprint> findNeedingBackfill(@Param("afterId") Long afterId, Pageable pageable);
+    
     /**
      * Check if app fingerprint exists for a specific device fingerprint.
      * 
@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -60,6 +61,16 @@ public interface DeviceAppInfoRepository extends JpaRepository<DeviceAppInfo, Lo
     @Query("SELECT dai.packageName FROM DeviceAppInfo dai WHERE dai.appFingerprintId = :appFingerprintId AND dai.isSystemApp = true")
     Set<String> findSystemAppPackageNamesByFingerprintId(@Param("appFingerprintId") Long appFingerprintId);
     
+    /**
+     * Get package names of a batch of app fingerprints in one query.
+     * 
+     * @param appFingerprintIds The app fingerprint IDs
+     * @return Rows of [appFingerprintId, packageName, isSystemApp]
+     */
+    @Query("SELECT dai.appFingerprintId, dai.packageName, dai.isSystemApp FROM DeviceAppInfo dai " +
+           "WHERE dai.appFingerprintId IN :appFingerprintIds")
+    List<Object[]> findPackageNamesByAppFingerprintIds(@Param("appFingerprintIds") Collection<Long> appFingerprintIds);
+    
     /**
      * Find apps by package name across all fingerprints.
      * Used to identify common packages across devices.
@@ -8,6 +8,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import org.springframework.data.domain.Pageable;
@@ -27,6 +28,14 @@ public interface DeviceFingerprintRepository extends JpaRepository<DeviceFingerp
      */
     Optional<DeviceFingerprint> findByDeviceId(String deviceId);
     
+    /**
+     * Find fingerprints for a batch of devices.
+     * 
+     * @param deviceIds The device identifiers
+     * @return Fingerprints of the devices that have one
+     */
+    List<DeviceFingerprint> findByDeviceIdIn(Collection<String> deviceIds);
+    
     /**
      * Find fingerprint by composite hash.
      * 
@@ -43,6 +52,19 @@ public interface DeviceFingerprintRepository extends JpaRepository<DeviceFingerp
      */
     Optional<DeviceFingerprint> findByHardwareHash(String hardwareHash);
     
+    /**
+     * Find the fingerprint with a hardware hash together with every device row of
+     * its device ID, in one query for the re-registration fast path.
+     * 
+     * @param hardwareHash The hardware fingerprint hash
+     * @return Rows of [fingerprintId, deviceId, compositeHash, isFraudulent, clientId, status, isActive];
+     *         clientId, status and isActive are null if the device has no device rows
+     */
+    @Query("SELECT df.id, df.deviceId, df.compositeHash, df.isFraudulent, d.clientId, d.status, d.isActive " +
+           "FROM DeviceFingerprint df LEFT JOIN Device d ON d.deviceId = df.deviceId " +
+           "WHERE df.hardwareHash = :hardwareHash ORDER BY df.id")
+    List<Object[]> findRegistrationStateByHardwareHash(@Param("hardwareHash") String hardwareHash);
+    
     /**
      * Find all fraudulent fingerprints.
      * 
@@ -51,6 +73,16 @@ public interface DeviceFingerprintRepository extends JpaRepository<DeviceFingerp
     @Query("SELECT df FROM DeviceFingerprint df WHERE df.isFraudulent = true")
     List<DeviceFingerprint> findAllFraudulent();
     
+    /**
+     * Find non-fraudulent fingerprints after an ID in ID order, for chunked scans
+     * 
+     * @param afterId Last ID of the previous chunk, 0 for the first
+     * @param pageable Chunk size (page number must be 0)
+     * @return Next chunk of fingerprints
+     */
+    @Query("SELECT df FROM DeviceFingerprint df WHERE df.id > :afterId AND df.isFraudulent = false ORDER BY df.id")
+    List<DeviceFingerprint> findNonFraudulentAfterId(@Param("afterId") Long afterId, Pageable pageable);
+    
     /**
      * Find fingerprints with similar hardware characteristics.
      * Used for probabilistic fraud detection.
@@ -169,6 +201,13 @@ public interface DeviceFingerprintRepository extends JpaRepository<DeviceFingerp
      */
     boolean existsByDeviceId(String deviceId);
     
+    /**
+     * Check if the device has a fingerprint not yet marked as fraudulent
+     */
+    @Query("SELECT COUNT(df) > 0 FROM DeviceFingerprint df WHERE df.deviceId = :deviceId " +
+           "AND (df.isFraudulent = false OR df.isFraudulent IS NULL)")
+    boolean existsNonFraudulentByDeviceId(@Param("deviceId") String deviceId);
+    
     /**
      * Count fraudulent devices
      */
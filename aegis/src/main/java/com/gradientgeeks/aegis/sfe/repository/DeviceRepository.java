@@ -30,13 +30,48 @@ public interface DeviceRepository extends JpaRepository<Device, DeviceId>, JpaSp
     @Query("UPDATE Device d SET d.lastSeen = :lastSeen WHERE d.deviceId = :deviceId AND d.clientId = :clientId")
     void updateLastSeen(@Param("deviceId") String deviceId, @Param("clientId") String clientId, @Param("lastSeen") LocalDateTime lastSeen);
     
+    /**
+     * Re-registration of an active device: rotates the secret key and marks it seen
+     * 
+     * @return Number of rows updated, 0 if the device is missing or not active
+     */
+    @Modifying
+    @Query("UPDATE Device d SET d.secretKey = :secretKey, d.isActive = true, d.lastSeen = :now, d.updatedAt = :now " +
+           "WHERE d.deviceId = :deviceId AND d.clientId = :clientId AND d.status = :status")
+    int reRegisterDevice(@Param("deviceId") String deviceId, @Param("clientId") String clientId,
+                         @Param("secretKey") String secretKey, @Param("now") LocalDateTime now,
+                         @Param("status") Device.DeviceStatus status);
+    
+    /**
+     * Client registrations of a batch of devices, as [deviceId, clientId, status, isActive] rows
+     */
+    @Query("SELECT d.deviceId, d.clientId, d.status, d.isActive FROM Device d WHERE d.deviceId IN :deviceIds")
+    List<Object[]> findClientIdsByDeviceIds(@Param("deviceIds") java.util.Collection<String> deviceIds);
+    
+    /**
+     * Sets the status of every registration of a batch of devices, across all banks
+     * 
+     * @return Number of rows updated
+     */
+    @Modifying
+    @Query("UPDATE Device d SET d.status = :status, d.isActive = :isActive, d.updatedAt = :now " +
+           "WHERE d.deviceId IN :deviceIds")
+    int updateStatusByDeviceIds(@Param("deviceIds") java.util.Collection<String> deviceIds,
+                                @Param("status") Device.DeviceStatus status,
+                                @Param("isActive") boolean isActive,
+                                @Param("now") LocalDateTime now);
+    
     @Modifying
     @Query("UPDATE Device d SET d.isActive = false WHERE d.deviceId = :deviceId")
     void deactivateAllDevicesById(@Param("deviceId") String deviceId);
     
+    /**
+     * @return Number of rows updated, 0 if the device is missing or already inactive
+     */
     @Modifying
-    @Query("UPDATE Device d SET d.isActive = false WHERE d.deviceId = :deviceId AND d.clientId = :clientId")
-    void deactivateDevice(@Param("deviceId") String deviceId, @Param("clientId") String clientId);
+    @Query("UPDATE Device d SET d.isActive = false " +
+           "WHERE d.deviceId = :deviceId AND d.clientId = :clientId AND d.isActive = true")
+    int deactivateDevice(@Param("deviceId") String deviceId, @Param("clientId") String clientId);
     
     @Query("SELECT COUNT(d) FROM Device d WHERE d.clientId = :clientId AND d.isActive = true")
     long countActiveDevicesByClientId(@Param("clientId") String clientId);
@@ -0,0 +1,16 @@
+package com.gradientgeeks.aegis.sfe.repository;
+
+import com.gradientgeeks.aegis.sfe.entity.FraudRescoreJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface FraudRescoreJobRepository extends JpaRepository<FraudRescoreJob, Long> {
+    
+    /**
+     * Find the most recent job
+     */
+    Optional<FraudRescoreJob> findFirstByOrderByIdDesc();
+}
@@ -0,0 +1,20 @@
+package com.gradientgeeks.aegis.sfe.repository;
+
+import com.gradientgeeks.aegis.sfe.entity.FraudRescoreVerdict;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface FraudRescoreVerdictRepository extends JpaRepository<FraudRescoreVerdict, Long> {
+    
+    /**
+     * Find verdicts of a job that differ from the current treatment of the device, highest score first
+     */
+    @Query("SELECT v FROM FraudRescoreVerdict v WHERE v.jobId = :jobId AND v.verdict <> v.currentVerdict " +
+           "ORDER BY v.score DESC")
+    Page<FraudRescoreVerdict> findChangedByJobId(@Param("jobId") Long jobId, Pageable pageable);
+}
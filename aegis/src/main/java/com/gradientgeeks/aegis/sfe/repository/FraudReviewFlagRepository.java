@@ -0,0 +1,16 @@
+package com.gradientgeeks.aegis.sfe.repository;
+
+import com.gradientgeeks.aegis.sfe.entity.FraudReviewFlag;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface FraudReviewFlagRepository extends JpaRepository<FraudReviewFlag, Long> {
+    
+    /**
+     * Find review flags in a status, newest first
+     */
+    Page<FraudReviewFlag> findByStatusOrderByCreatedAtDesc(FraudReviewFlag.ReviewStatus status, Pageable pageable);
+}
@@ -36,6 +36,37 @@ public interface PolicyViolationRepository extends JpaRepository<PolicyViolation
     Page<PolicyViolation> findByOrganizationAndDeviceIdOrderByCreatedAtDesc(
             String organization, String deviceId, Pageable pageable);
     
+    /**
+     * Keyset page of an organization's violations for a device, newest first.
+     * Seeks on (createdAt, id) so deep pages cost the same as the first one.
+     */
+    @Query("SELECT pv FROM PolicyViolation pv WHERE pv.organization = :organization " +
+           "AND pv.deviceId = :deviceId " +
+           "AND pv.createdAt BETWEEN :fromDate AND :toDate " +
+           "AND (pv.createdAt < :cursorCreatedAt " +
+           "     OR (pv.createdAt = :cursorCreatedAt AND pv.id < :cursorId)) " +
+           "ORDER BY pv.createdAt DESC, pv.id DESC")
+    List<PolicyViolation> findByOrganizationAndDeviceIdBefore(
+            @Param("organization") String organization,
+            @Param("deviceId") String deviceId,
+            @Param("fromDate") LocalDateTime fromDate,
+            @Param("toDate") LocalDateTime toDate,
+            @Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+            @Param("cursorId") Long cursorId,
+            Pageable limit);
+    
+    /**
+     * Count an organization's violations for a device in time period
+     */
+    @Query("SELECT COUNT(pv) FROM PolicyViolation pv WHERE pv.organization = :organization " +
+           "AND pv.deviceId = :deviceId " +
+           "AND pv.createdAt BETWEEN :fromDate AND :toDate")
+    long countByOrganizationAndDeviceIdAndDateRange(
+            @Param("organization") String organization,
+            @Param("deviceId") String deviceId,
+            @Param("fromDate") LocalDateTime fromDate,
+            @Param("toDate") LocalDateTime toDate);
+    
     /**
      * Find violations by organization within time range
      */
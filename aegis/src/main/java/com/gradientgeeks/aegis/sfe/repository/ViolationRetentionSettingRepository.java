@@ -0,0 +1,16 @@
+package com.gradientgeeks.aegis.sfe.repository;
+
+import com.gradientgeeks.aegis.sfe.entity.ViolationRetentionSetting;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface ViolationRetentionSettingRepository extends JpaRepository<ViolationRetentionSetting, Long> {
+    
+    /**
+     * Find the retention settings of an organization
+     */
+    Optional<ViolationRetentionSetting> findByOrganization(String organization);
+}
@@ -0,0 +1,227 @@
+package com.gradientgeeks.aegis.sfe.service;
+
+import com.gradientgeeks.aegis.sfe.entity.DeviceAppFingerprint;
+import com.gradientgeeks.aegis.sfe.repository.DeviceAppFingerprintRepository;
+import com.gradientgeeks.aegis.sfe.repository.DeviceAppInfoRepository;
+import com.gradientgeeks.aegis.sfe.util.MinHash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds devices with near-duplicate installed-app inventories regardless of their
+ * reported hardware.
+ * 
+ * Every app fingerprint gets a MinHash signature of its user and system package
+ * names, and the 16 LSH band keys of that signature are stored in
+ * {@code app_minhash_bands}. A lookup computes the incoming signature, fetches
+ * the fingerprints sharing at least one band key through the band index, and
+ * estimates the Jaccard similarity of those few candidates from their stored
+ * signatures. Cost depends on the bucket sizes, not on the number of fingerprints.
+ */
+@Service
+public class AppInventorySimilarityService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(AppInventorySimilarityService.class);
+    
+    private static final String INSERT_BAND_SQL =
+        "INSERT INTO app_minhash_bands (band_key, fingerprint_id) VALUES (?, ?)";
+    
+    private final DeviceAppFingerprintRepository appFingerprintRepository;
+    private final DeviceAppInfoRepository appInfoRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PackageDictionary packageDictionary;
+    private final AppInventoryWriter appInventoryWriter;
+    
+    @Value("${aegis.fraud.minhash.max-candidates:200}")
+    private int maxCandidates;
+    
+    @Value("${aegis.fraud.minhash.backfill-batch-size:500}")
+    private int backfillBatchSize;
+    
+    @Value("${aegis.fraud.minhash.backfill:true}")
+    private boolean backfillOnStartup;
+    
+    @Autowired
+    public AppInventorySimilarityService(DeviceAppFingerprintRepository appFingerprintRepository,
+                                         DeviceAppInfoRepository appInfoRepository,
+                                         JdbcTemplate jdbcTemplate,
+                                         TransactionTemplate transactionTemplate,
+                                         PackageDictionary packageDictionary,
+                                         AppInventoryWriter appInventoryWriter) {
+        this.appFingerprintRepository = appFingerprintRepository;
+        this.appInfoRepository = appInfoRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.packageDictionary = packageDictionary;
+        this.appInventoryWriter = appInventoryWriter;
+    }
+    
+    /**
+     * Signature of an app inventory, over the union of user and system package names
+     */
+    public static int[] signatureOf(Collection<String> userPackages, Collection<String> systemPackages) {
+        Set<String> packages = new HashSet<>(userPackages);
+        packages.addAll(systemPackages);
+        return MinHash.signature(packages);
+    }
+    
+    /**
+     * Device fingerprints whose app inventory is estimated to be at least
+     * {@code minSimilarity} similar to the given signature, most similar first.
+     * 
+     * @param signature MinHash signature of the incoming inventory
+     * @param minSimilarity Minimum estimated Jaccard similarity
+     * @return Matches keyed by device fingerprint ID
+     */
+    public List<AppInventoryMatch> findNearDuplicates(int[] signature, double minSimilarity) {
+        long[] bandKeys = MinHash.bandKeys(signature);
+        String placeholders = String.join(",", Collections.nCopies(bandKeys.length, "?"));
+        
+        Object[] args = new Object[bandKeys.length + 1];
+        for (int i = 0; i < bandKeys.length; i++) {
+            args[i] = bandKeys[i];
+        }
+        args[bandKeys.length] = maxCandidates;
+        
+        // Candidates sharing more bands are more likely to be similar, so they win the cap
+        List<Long> candidateIds = jdbcTemplate.queryForList(
+            "SELECT fingerprint_id FROM app_minhash_bands WHERE band_key IN (" + placeholders + ") " +
+            "GROUP BY fingerprint_id ORDER BY COUNT(*) DESC LIMIT ?",
+            Long.class, args);
+        List<DeviceAppFingerprint> candidates = new ArrayList<>(candidateIds.isEmpty()
+            ? List.of() : appFingerprintRepository.findByFingerprintIdIn(candidateIds));
+        // Inventories still queued for writing have no band rows yet, the writer indexes them by band in memory
+        candidates.addAll(appInventoryWriter.findPendingByBands(bandKeys));
+        
+        List<AppInventoryMatch> matches = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        for (DeviceAppFingerprint candidate : candidates) {
+            if (candidate.getMinhashSignature() == null || !seen.add(candidate.getFingerprintId())) {
+                continue;
+            }
+            double similarity = MinHash.similarity(signature, MinHash.decode(candidate.getMinhashSignature()));
+            if (similarity >= minSimilarity) {
+                matches.add(new AppInventoryMatch(candidate.getFingerprintId(), similarity));
+            }
+        }
+        matches.sort(Comparator.comparingDouble(AppInventoryMatch::similarity).reversed());
+        
+        logger.debug("MinHash lookup: {} candidates, {} above {}", candidates.size(), matches.size(), minSimilarity);
+        return matches;
+    }
+    
+    /**
+     * Computes signatures, band keys and package bitmaps for app fingerprints stored before they existed
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        if (!backfillOnStartup) {
+            return;
+        }
+        
+        long startTime = System.currentTimeMillis();
+        long lastId = 0L;
+        long indexed = 0L;
+        
+        try {
+            while (true) {
+                List<DeviceAppFingerprint> batch = appFingerprintRepository
+                    .findNeedingBackfill(lastId, PageRequest.of(0, backfillBatchSize));
+                if (batch.isEmpty()) {
+                    break;
+                }
+                lastId = batch.get(batch.size() - 1).getId();
+                
+                Integer count = transactionTemplate.execute(status -> backfillBatch(batch));
+                indexed += count != null ? count : 0;
+            }
+            if (indexed > 0) {
+                logger.info("Backfilled MinHash signatures and package bitmaps for {} app fingerprints in {} ms",
+                           indexed, System.currentTimeMillis() - startTime);
+            }
+        } catch (Exception e) {
+            logger.warn("App fingerprint backfill stopped after {} app fingerprints, remaining rows are retried on next startup",
+                       indexed, e);
+        }
+    }
+    
+    private int backfillBatch(List<DeviceAppFingerprint> batch) {
+        Map<Long, Set<String>> userPackages = new HashMap<>();
+        Map<Long, Set<String>> systemPackages = new HashMap<>();
+        batch.forEach(appFingerprint -> {
+            userPackages.put(appFingerprint.getId(), new HashSet<>());
+            systemPackages.put(appFingerprint.getId(), new HashSet<>());
+        });
+        for (Object[] row : appInfoRepository.findPackageNamesByAppFingerprintIds(userPackages.keySet())) {
+            Map<Long, Set<String>> target = Boolean.TRUE.equals(row[2]) ? systemPackages : userPackages;
+            target.get((Long) row[0]).add((String) row[1]);
+        }
+        
+        List<DeviceAppFingerprint> unsigned = new ArrayList<>();
+        List<Object[]> signatureRows = new ArrayList<>();
+        List<long[]> bandKeys = new ArrayList<>();
+        List<Object[]> bitmapRows = new ArrayList<>();
+        for (DeviceAppFingerprint appFingerprint : batch) {
+            Set<String> user = userPackages.get(appFingerprint.getId());
+            Set<String> system = systemPackages.get(appFingerprint.getId());
+            if (appFingerprint.getMinhashSignature() == null) {
+                int[] signature = signatureOf(user, system);
+                unsigned.add(appFingerprint);
+                signatureRows.add(new Object[] {MinHash.encode(signature), appFingerprint.getId()});
+                bandKeys.add(MinHash.bandKeys(signature));
+            }
+            if (appFingerprint.getUserAppBitmap() == null || appFingerprint.getSystemAppBitmap() == null) {
+                bitmapRows.add(new Object[] {
+                    packageDictionary.encode(user).encode(), packageDictionary.encode(system).encode(),
+                    appFingerprint.getId()
+                });
+            }
+        }
+        
+        jdbcTemplate.batchUpdate(
+            "UPDATE device_app_fingerprints SET user_app_bitmap = ?, system_app_bitmap = ? WHERE id = ?",
+            bitmapRows);
+        
+        // Guarded on NULL so a concurrent registration that already signed the row is not duplicated
+        int[] updated = jdbcTemplate.batchUpdate(
+            "UPDATE device_app_fingerprints SET minhash_signature = ? WHERE id = ? AND minhash_signature IS NULL",
+            signatureRows);
+        List<Object[]> insertRows = new ArrayList<>();
+        for (int i = 0; i < unsigned.size(); i++) {
+            if (updated[i] != 0) {
+                for (long bandKey : bandKeys.get(i)) {
+                    insertRows.add(new Object[] {bandKey, unsigned.get(i).getFingerprintId()});
+                }
+            }
+        }
+        jdbcTemplate.batchUpdate(INSERT_BAND_SQL, insertRows);
+        return batch.size();
+    }
+    
+    /**
+     * A device fingerprint with an estimated app inventory similarity
+     */
+    public record AppInventoryMatch(Long fingerprintId, double similarity) {
+    }
+}
@@ -0,0 +1,366 @@
+package com.gradientgeeks.aegis.sfe.service;
+
+import com.gradientgeeks.aegis.sfe.dto.AppFingerprintDto;
+import com.gradientgeeks.aegis.sfe.dto.AppInfoDto;
+import com.gradientgeeks.aegis.sfe.entity.DeviceAppFingerprint;
+import com.gradientgeeks.aegis.sfe.util.MinHash;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists app inventories off the registration path.
+ * 
+ * Registration hands over a fully prepared {@link DeviceAppFingerprint} (counts,
+ * MinHash signature, package bitmaps) and returns immediately. A background thread
+ * drains the queue and writes each batch with JDBC batch inserts in one transaction:
+ * the app fingerprint rows, their LSH band keys and, if enabled, the per-app
+ * detail rows. From commit until its batch is written the inventory is served from
+ * the pending maps, by fingerprint ID and by LSH band key, so similarity checks
+ * never miss it. An inventory that fails to write stays pending and is retried
+ * with a growing delay, up to a maximum number of attempts.
+ */
+@Service
+public class AppInventoryWriter {
+    
+    private static final Logger logger = LoggerFactory.getLogger(AppInventoryWriter.class);
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate newTransaction;
+    private final BlockingQueue<PendingInventory> queue;
+    private final Map<Long, PendingInventory> pendingByFingerprintId = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Long>> pendingFingerprintIdsByBand = new ConcurrentHashMap<>();
+    // Only the writer thread takes entries out, once their retry time has passed
+    private final ConcurrentLinkedQueue<PendingInventory> retries = new ConcurrentLinkedQueue<>();
+    private final Thread writerThread;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long retryDelayMs;
+    private volatile boolean running = true;
+    
+    @Autowired
+    public AppInventoryWriter(JdbcTemplate jdbcTemplate,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${aegis.fraud.apps.writer.queue-capacity:10000}") int queueCapacity,
+                              @Value("${aegis.fraud.apps.writer.batch-size:200}") int batchSize,
+                              @Value("${aegis.fraud.apps.writer.max-attempts:5}") int maxAttempts,
+                              @Value("${aegis.fraud.apps.writer.retry-delay-ms:5000}") long retryDelayMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Writes may be triggered from afterCommit callbacks, so always use a fresh transaction
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retryDelayMs = retryDelayMs;
+        this.writerThread = new Thread(this::run, "app-inventory-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+    
+    /**
+     * Queues an app inventory for writing once the current transaction commits
+     * (immediately if there is none). The device fingerprint row must be part of
+     * that transaction or already committed.
+     * 
+     * @param appFingerprint Unsaved app fingerprint with signature and bitmaps set
+     * @param details Per-app rows to write, or null to skip them
+     */
+    public void submit(DeviceAppFingerprint appFingerprint, AppFingerprintDto details) {
+        PendingInventory pending = new PendingInventory(appFingerprint, details);
+        
+        // Not visible to other registrations before the device fingerprint row is committed
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    track(pending);
+                    enqueue(pending);
+                }
+            });
+        } else {
+            track(pending);
+            enqueue(pending);
+        }
+    }
+    
+    /**
+     * Inventories not yet written for the given device fingerprints
+     */
+    public List<DeviceAppFingerprint> findPending(Collection<Long> fingerprintIds) {
+        if (pendingByFingerprintId.isEmpty()) {
+            return List.of();
+        }
+        List<DeviceAppFingerprint> found = new ArrayList<>();
+        for (Long fingerprintId : fingerprintIds) {
+            PendingInventory pending = pendingByFingerprintId.get(fingerprintId);
+            if (pending != null) {
+                found.add(pending.appFingerprint);
+            }
+        }
+        return found;
+    }
+    
+    /**
+     * Inventories not yet written that share at least one LSH band key with the given ones
+     */
+    public List<DeviceAppFingerprint> findPendingByBands(long[] bandKeys) {
+        if (pendingByFingerprintId.isEmpty()) {
+            return List.of();
+        }
+        Set<Long> fingerprintIds = new HashSet<>();
+        for (long bandKey : bandKeys) {
+            Set<Long> inBand = pendingFingerprintIdsByBand.get(bandKey);
+            if (inBand != null) {
+                fingerprintIds.addAll(inBand);
+            }
+        }
+        return fingerprintIds.isEmpty() ? List.of() : findPending(fingerprintIds);
+    }
+    
+    public int getPendingCount() {
+        return pendingByFingerprintId.size();
+    }
+    
+    private void track(PendingInventory pending) {
+        Long fingerprintId = pending.appFingerprint.getFingerprintId();
+        PendingInventory replaced = pendingByFingerprintId.put(fingerprintId, pending);
+        if (replaced != null) {
+            removeBands(replaced);
+        }
+        for (long bandKey : pending.bandKeys) {
+            // Added inside compute so a concurrent removeBands cannot drop the set in between
+            pendingFingerprintIdsByBand.compute(bandKey, (key, fingerprintIds) -> {
+                Set<Long> inBand = fingerprintIds != null ? fingerprintIds : ConcurrentHashMap.newKeySet();
+                inBand.add(fingerprintId);
+                return inBand;
+            });
+        }
+    }
+    
+    private void untrack(PendingInventory pending) {
+        if (pendingByFingerprintId.remove(pending.appFingerprint.getFingerprintId(), pending)) {
+            removeBands(pending);
+        }
+    }
+    
+    private void removeBands(PendingInventory pending) {
+        Long fingerprintId = pending.appFingerprint.getFingerprintId();
+        for (long bandKey : pending.bandKeys) {
+            pendingFingerprintIdsByBand.computeIfPresent(bandKey, (key, fingerprintIds) -> {
+                fingerprintIds.remove(fingerprintId);
+                return fingerprintIds.isEmpty() ? null : fingerprintIds;
+            });
+        }
+    }
+    
+    private void enqueue(PendingInventory pending) {
+        if (running && queue.offer(pending)) {
+            return;
+        }
+        // Back-pressure: queue full or shutting down, so write on the caller's thread
+        logger.warn("App inventory queue full, writing inventory for fingerprint ID {} synchronously",
+                   pending.appFingerprint.getFingerprintId());
+        write(List.of(pending));
+    }
+    
+    private void run() {
+        List<PendingInventory> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingInventory first = queue.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                }
+                takeDueRetries(batch);
+                if (!batch.isEmpty()) {
+                    write(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+    
+    private void takeDueRetries(List<PendingInventory> batch) {
+        long now = System.currentTimeMillis();
+        Iterator<PendingInventory> iterator = retries.iterator();
+        while (iterator.hasNext() && batch.size() < batchSize) {
+            PendingInventory pending = iterator.next();
+            if (pending.retryAt <= now) {
+                iterator.remove();
+                batch.add(pending);
+            }
+        }
+    }
+    
+    private void write(List<PendingInventory> batch) {
+        try {
+            newTransaction.executeWithoutResult(status -> insertBatch(batch));
+            batch.forEach(this::untrack);
+            logger.debug("Wrote {} app inventories", batch.size());
+            return;
+        } catch (Exception e) {
+            logger.error("Failed to write {} app inventories, retrying one by one", batch.size(), e);
+        }
+        for (PendingInventory pending : batch) {
+            try {
+                newTransaction.executeWithoutResult(status -> insertBatch(List.of(pending)));
+                untrack(pending);
+            } catch (Exception e) {
+                retryLater(pending, e);
+            }
+        }
+    }
+    
+    /**
+     * Keeps a failed inventory pending and schedules another attempt, unless it is out of attempts
+     */
+    private void retryLater(PendingInventory pending, Exception cause) {
+        pending.attempts++;
+        if (pending.attempts >= maxAttempts || !running) {
+            logger.error("Dropping app inventory for fingerprint ID {} after {} attempts",
+                        pending.appFingerprint.getFingerprintId(), pending.attempts, cause);
+            untrack(pending);
+            return;
+        }
+        long delayMs = retryDelayMs * pending.attempts;
+        logger.warn("Failed to write app inventory for fingerprint ID {} (attempt {}), retrying in {} ms",
+                   pending.appFingerprint.getFingerprintId(), pending.attempts, delayMs, cause);
+        pending.retryAt = System.currentTimeMillis() + delayMs;
+        retries.add(pending);
+    }
+    
+    private void insertBatch(List<PendingInventory> batch) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        
+        List<Object[]> fingerprintRows = new ArrayList<>(batch.size());
+        List<Object[]> bandRows = new ArrayList<>(batch.size() * MinHash.BANDS);
+        for (PendingInventory pending : batch) {
+            DeviceAppFingerprint app = pending.appFingerprint;
+            fingerprintRows.add(new Object[] {
+                app.getFingerprintId(), app.getTotalAppCount(), app.getUserAppCount(), app.getSystemAppCount(),
+                app.getAppHash(), app.getMinhashSignature(), app.getUserAppBitmap(), app.getSystemAppBitmap(), now
+            });
+            for (long bandKey : pending.bandKeys) {
+                bandRows.add(new Object[] {bandKey, app.getFingerprintId()});
+            }
+        }
+        
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO device_app_fingerprints (fingerprint_id, total_app_count, user_app_count, " +
+            "system_app_count, app_hash, minhash_signature, user_app_bitmap, system_app_bitmap, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)",
+            fingerprintRows);
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO app_minhash_bands (band_key, fingerprint_id) VALUES (?, ?)",
+            bandRows);
+        
+        List<PendingInventory> withDetails = batch.stream()
+            .filter(pending -> pending.details != null)
+            .toList();
+        if (!withDetails.isEmpty()) {
+            insertDetails(withDetails, now);
+        }
+    }
+    
+    private void insertDetails(List<PendingInventory> batch, Timestamp now) {
+        List<Long> fingerprintIds = batch.stream()
+            .map(pending -> pending.appFingerprint.getFingerprintId())
+            .toList();
+        Map<Long, Long> appFingerprintIds = new HashMap<>();
+        jdbcTemplate.query(
+            "SELECT id, fingerprint_id FROM device_app_fingerprints WHERE fingerprint_id IN (" +
+            String.join(",", Collections.nCopies(fingerprintIds.size(), "?")) + ")",
+            rs -> {
+                appFingerprintIds.put(rs.getLong("fingerprint_id"), rs.getLong("id"));
+            },
+            fingerprintIds.toArray());
+        
+        List<Object[]> appRows = new ArrayList<>();
+        for (PendingInventory pending : batch) {
+            Long appFingerprintId = appFingerprintIds.get(pending.appFingerprint.getFingerprintId());
+            addAppRows(appRows, appFingerprintId, pending.details.getUserApps(), false, now);
+            addAppRows(appRows, appFingerprintId, pending.details.getSystemApps(), true, now);
+        }
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO device_app_info (app_fingerprint_id, package_name, first_install_time, " +
+            "last_update_time, is_system_app, created_at) VALUES (?, ?, ?, ?, ?, ?)",
+            appRows);
+    }
+    
+    private static void addAppRows(List<Object[]> rows, Long appFingerprintId, List<AppInfoDto> apps,
+                                   boolean systemApp, Timestamp now) {
+        if (apps == null) {
+            return;
+        }
+        for (AppInfoDto app : apps) {
+            rows.add(new Object[] {
+                appFingerprintId, app.getPackageName(), app.getFirstInstallTime(), app.getLastUpdateTime(), systemApp, now
+            });
+        }
+    }
+    
+    /**
+     * Stops accepting work and writes whatever is still queued
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        writerThread.join(TimeUnit.SECONDS.toMillis(30));
+        if (!queue.isEmpty() || !retries.isEmpty()) {
+            List<PendingInventory> remaining = new ArrayList<>();
+            queue.drainTo(remaining);
+            remaining.addAll(retries);
+            retries.clear();
+            logger.warn("Writing {} queued app inventories on shutdown", remaining.size());
+            write(remaining);
+        }
+    }
+    
+    private static final class PendingInventory {
+        private final DeviceAppFingerprint appFingerprint;
+        private final AppFingerprintDto details;
+        private final long[] bandKeys;
+        private int attempts;
+        private long retryAt;
+        
+        private PendingInventory(DeviceAppFingerprint appFingerprint, AppFingerprintDto details) {
+            this.appFingerprint = appFingerprint;
+            this.details = details;
+            this.bandKeys = appFingerprint.getMinhashSignature() != null
+                ? MinHash.bandKeys(MinHash.decode(appFingerprint.getMinhashSignature()))
+                : new long[0];
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.gradientgeeks.aegis.sfe.service;
+
+import com.gradientgeeks.aegis.sfe.entity.Device;
+import com.gradientgeeks.aegis.sfe.repository.DeviceRepository;
+import com.gradientgeeks.aegis.sfe.service.DeviceCounterService.DeviceCounters;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Changes the status of many devices at once, e.g. to block a whole device farm
+ * during an incident.
+ * 
+ * Device IDs are applied in chunks, each with one set-based UPDATE in its own
+ * transaction, so a large request neither holds locks for long nor loads any
+ * {@link Device} entity. Banks may only change devices registered with one of
+ * their client IDs; other IDs are skipped. Dashboards are notified with one
+ * event per organization and chunk, published from a background thread once
+ * the chunk has committed.
+ */
+@Service
+public class BulkDeviceStatusService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(BulkDeviceStatusService.class);
+    
+    private final DeviceRepository deviceRepository;
+    private final RegistrationKeyCache registrationKeyCache;
+    private final DeviceCounterService deviceCounterService;
+    private final LiveEventHub liveEventHub;
+    private final TransactionTemplate transaction;
+    private final ExecutorService notifier;
+    
+    @Value("${aegis.devices.bulk-status.chunk-size:1000}")
+    private int chunkSize;
+    
+    @Value("${aegis.devices.bulk-status.max-devices:50000}")
+    private int maxDevices;
+    
+    /**
+     * Outcome of a bulk status change
+     * 
+     * @param requested Distinct device IDs in the request
+     * @param skipped Device IDs not found, or not registered with the caller's organization
+     * @param updatedRows Device registrations updated, across all banks
+     */
+    public record BulkStatusResult(int requested, int skipped, int updatedRows, long durationMs) {}
+    
+    @Autowired
+    public BulkDeviceStatusService(DeviceRepository deviceRepository,
+                                   RegistrationKeyCache registrationKeyCache,
+                                   DeviceCounterService deviceCounterService,
+                                   LiveEventHub liveEventHub,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${aegis.devices.bulk-status.notifier-queue-size:1000}") int notifierQueueSize) {
+        this.deviceRepository = deviceRepository;
+        this.registrationKeyCache = registrationKeyCache;
+        this.deviceCounterService = deviceCounterService;
+        this.liveEventHub = liveEventHub;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.notifier = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(notifierQueueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "bulk-status-notifier");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        notifier.shutdown();
+    }
+    
+    /**
+     * Sets the status of every registration of the given devices
+     * 
+     * @param deviceIds Devices to update; duplicates and blanks are ignored
+     * @param status New status name
+     * @param reason Reason shown to dashboards
+     * @param organizationClientIds Client IDs the caller may act on, or null for an admin
+     * @throws IllegalArgumentException If the status is unknown or too many devices are given
+     */
+    public BulkStatusResult updateStatus(List<String> deviceIds, String status, String reason,
+                                         Set<String> organizationClientIds) {
+        Device.DeviceStatus newStatus;
+        try {
+            newStatus = Device.DeviceStatus.valueOf(status.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid device status: " + status);
+        }
+        
+        Set<String> distinct = new LinkedHashSet<>();
+        for (String deviceId : deviceIds) {
+            if (deviceId != null && !deviceId.isBlank()) {
+                distinct.add(deviceId.trim());
+            }
+        }
+        if (distinct.size() > maxDevices) {
+            throw new IllegalArgumentException("At most " + maxDevices + " devices can be updated at once");
+        }
+        
+        long startTime = System.currentTimeMillis();
+        List<String> ordered = new ArrayList<>(distinct);
+        int skipped = 0;
+        int updatedRows = 0;
+        for (int from = 0; from < ordered.size(); from += chunkSize) {
+            List<String> chunk = ordered.subList(from, Math.min(from + chunkSize, ordered.size()));
+            ChunkResult result = transaction.execute(tx -> updateChunk(chunk, newStatus, organizationClientIds));
+            skipped += chunk.size() - result.deviceIds().size();
+            updatedRows += result.updatedRows();
+            notifyAsync(result, newStatus, reason);
+        }
+        
+        long durationMs = System.currentTimeMillis() - startTime;
+        logger.warn("Bulk status change to {}: {} devices requested, {} skipped, {} registrations updated in {} ms",
+                   newStatus, ordered.size(), skipped, updatedRows, durationMs);
+        return new BulkStatusResult(ordered.size(), skipped, updatedRows, durationMs);
+    }
+    
+    private record ChunkResult(Set<String> deviceIds, Map<String, Set<String>> clientIdsByDevice, int updatedRows) {}
+    
+    private ChunkResult updateChunk(List<String> chunk, Device.DeviceStatus status, Set<String> organizationClientIds) {
+        Map<String, Set<String>> clientIdsByDevice = new HashMap<>();
+        List<Object[]> rows = deviceRepository.findClientIdsByDeviceIds(chunk);
+        for (Object[] row : rows) {
+            clientIdsByDevice.computeIfAbsent((String) row[0], id -> new HashSet<>()).add((String) row[1]);
+        }
+        
+        Set<String> allowed = new HashSet<>();
+        for (Map.Entry<String, Set<String>> entry : clientIdsByDevice.entrySet()) {
+            if (organizationClientIds == null
+                    || entry.getValue().stream().anyMatch(organizationClientIds::contains)) {
+                allowed.add(entry.getKey());
+            }
+        }
+        clientIdsByDevice.keySet().retainAll(allowed);
+        if (allowed.isEmpty()) {
+            return new ChunkResult(allowed, clientIdsByDevice, 0);
+        }
+        
+        boolean isActive = status == Device.DeviceStatus.ACTIVE;
+        int updatedRows = deviceRepository.updateStatusByDeviceIds(allowed, status, isActive, LocalDateTime.now());
+        
+        Map<String, DeviceCounters> counterDeltas = new HashMap<>();
+        for (Object[] row : rows) {
+            if (allowed.contains((String) row[0])) {
+                counterDeltas.merge((String) row[1], DeviceCounters.statusChange(
+                    (Device.DeviceStatus) row[2], Boolean.TRUE.equals(row[3]), status, isActive), DeviceCounters::plus);
+            }
+        }
+        deviceCounterService.applyAfterCommit(counterDeltas);
+        return new ChunkResult(allowed, clientIdsByDevice, updatedRows);
+    }
+    
+    private void notifyAsync(ChunkResult result, Device.DeviceStatus status, String reason) {
+        if (result.deviceIds().isEmpty()) {
+            return;
+        }
+        try {
+            notifier.execute(() -> publish(result, status, reason));
+        } catch (RejectedExecutionException e) {
+            // Dashboards catch up on their next refresh
+            logger.warn("Bulk status notifier queue full, dropping notification for {} devices",
+                       result.deviceIds().size());
+        }
+    }
+    
+    private void publish(ChunkResult result, Device.DeviceStatus status, String reason) {
+        Map<String, Set<String>> deviceIdsByOrganization = new HashMap<>();
+        for (Map.Entry<String, Set<String>> entry : result.clientIdsByDevice().entrySet()) {
+            for (String clientId : entry.getValue()) {
+                registrationKeyCache.findByClientId(clientId).ifPresent(key -> deviceIdsByOrganization
+                    .computeIfAbsent(key.organization(), organization -> new LinkedHashSet<>())
+                    .add(entry.getKey()));
+            }
+        }
+        
+        LocalDateTime timestamp = LocalDateTime.now();
+        for (Map.Entry<String, Set<String>> entry : deviceIdsByOrganization.entrySet()) {
+            Map<String, Object> event = new HashMap<>();
+            event.put("deviceIds", entry.getValue());
+            event.put("status", status.name());
+            event.put("reason", reason);
+            event.put("timestamp", timestamp);
+            liveEventHub.publish(entry.getKey(), LiveEventHub.EVENT_DEVICE_STATUS_BULK, event);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.gradientgeeks.aegis.sfe.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Best-effort broadcast of cache invalidations and in-memory index updates to
+ * the other application instances over Redis pub/sub.
+ * 
+ * Messages published by this node are ignored on receipt. Delivery is not
+ * guaranteed (pub/sub is fire-and-forget), so every in-memory structure kept in
+ * sync through this bus also refreshes itself periodically from the database.
+ */
+@Service
+public class ClusterEventBus {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ClusterEventBus.class);
+    
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, List<Consumer<Map<String, Object>>>> handlers = new ConcurrentHashMap<>();
+    private final String nodeId = UUID.randomUUID().toString();
+    private final String channel;
+    
+    @Autowired
+    public ClusterEventBus(StringRedisTemplate redisTemplate,
+                           RedisMessageListenerContainer listenerContainer,
+                           @Value("${aegis.cluster.channel:aegis:cluster-events}") String channel) {
+        this.redisTemplate = redisTemplate;
+        this.channel = channel;
+        listenerContainer.addMessageListener(this::onMessage, new ChannelTopic(channel));
+    }
+    
+    /**
+     * Registers a handler for events of a type published by other nodes
+     */
+    public void subscribe(String type, Consumer<Map<String, Object>> handler) {
+        handlers.computeIfAbsent(type, key -> new CopyOnWriteArrayList<>()).add(handler);
+    }
+    
+    /**
+     * Broadcasts an event to the other nodes, after the current transaction commits if there is one
+     */
+    public void publish(String type, Map<String, Object> payload) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    send(type, payload);
+                }
+            });
+        } else {
+            send(type, payload);
+        }
+    }
+    
+    public String getNodeId() {
+        return nodeId;
+    }
+    
+    private void send(String type, Map<String, Object> payload) {
+        try {
+            Map<String, Object> envelope = new HashMap<>();
+            envelope.put("origin", nodeId);
+            envelope.put("type", type);
+            envelope.put("payload", payload);
+            redisTemplate.convertAndSend(channel, objectMapper.writeValueAsString(envelope));
+        } catch (Exception e) {
+            // Peers converge on their next periodic refresh
+            logger.warn("Failed to broadcast cluster event {}: {}", type, e.getMessage());
+        }
+    }
+    
+    private void onMessage(Message message, byte[] pattern) {
+        try {
+            Map<String, Object> envelope = objectMapper.readValue(
+                    new String(message.getBody(), StandardCharsets.UTF_8), new TypeReference<Map<String, Object>>() {});
+            if (nodeId.equals(envelope.get("origin"))) {
+                return;
+            }
+            
+            String type = String.valueOf(envelope.get("type"));
+            List<Consumer<Map<String, Object>>> typeHandlers = handlers.get(type);
+            if (typeHandlers == null) {
+                return;
+            }
+            
+            @SuppressWarnings("unchecked")
+            Map<String, Object> payload = envelope.get("payload") instanceof Map<?, ?> map
+                    ? (Map<String, Object>) map : Map.of();
+            for (Consumer<Map<String, Object>> handler : typeHandlers) {
+                try {
+                    handler.accept(payload);
+                } catch (Exception e) {
+                    logger.error("Cluster event handler for {} failed", type, e);
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Ignoring malformed cluster event: {}", e.getMessage());
+        }
+    }
+}
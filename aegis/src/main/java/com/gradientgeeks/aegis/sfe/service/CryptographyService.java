@@ -21,10 +21,23 @@ public class CryptographyService {
     private static final String HMAC_SHA256 = "HmacSHA256";
     private static final SecureRandom SECURE_RANDOM = new SecureRandom();
     
+    /**
+     * @deprecated Use generateSecretKeyBytes; device secrets are stored wrapped by DeviceSecretVault
+     */
+    @Deprecated
     public String generateSecretKey() {
         return new BigInteger(256, SECURE_RANDOM).toString(32);
     }
     
+    /**
+     * Generates a raw 256-bit device secret
+     */
+    public byte[] generateSecretKeyBytes() {
+        byte[] secret = new byte[32];
+        SECURE_RANDOM.nextBytes(secret);
+        return secret;
+    }
+    
     public String generateRegistrationKey() {
         return new BigInteger(256, SECURE_RANDOM).toString(32);
     }
@@ -126,12 +139,16 @@ public class CryptographyService {
     }
     
     public String computeHmacSha256(String secretKey, String data) {
+        return computeHmacSha256(secretKey.getBytes(StandardCharsets.UTF_8), data);
+    }
+    
+    public String computeHmacSha256(byte[] secretKey, String data) {
         try {
             logger.debug("Computing HMAC-SHA256 with data length: {} characters", data.length());
             logger.trace("Data to sign: {}", data);
             
             Mac mac = Mac.getInstance(HMAC_SHA256);
-            SecretKeySpec secretKeySpec = new SecretKeySpec(secretKey.getBytes(StandardCharsets.UTF_8), HMAC_SHA256);
+            SecretKeySpec secretKeySpec = new SecretKeySpec(secretKey, HMAC_SHA256);
             mac.init(secretKeySpec);
             byte[] hashBytes = mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
             String signature = Base64.getEncoder().encodeToString(hashBytes);
@@ -145,6 +162,10 @@ public class CryptographyService {
     }
     
     public boolean verifyHmacSha256(String secretKey, String data, String expectedSignature) {
+        return verifyHmacSha256(secretKey.getBytes(StandardCharsets.UTF_8), data, expectedSignature);
+    }
+    
+    public boolean verifyHmacSha256(byte[] secretKey, String data, String expectedSignature) {
         try {
             logger.debug("Verifying HMAC-SHA256 signature");
             String computedSignature = computeHmacSha256(secretKey, data);
@@ -0,0 +1,329 @@
+package com.gradientgeeks.aegis.sfe.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Service for streaming full exports of policy violations and devices.
+ * 
+ * Rows are read through a forward-only, read-only JDBC result set with MySQL
+ * row streaming enabled (fetch size Integer.MIN_VALUE) and written straight to
+ * the response as CSV or NDJSON. No entities are hydrated, so heap usage is
+ * independent of the export size. Each running export pins one pooled
+ * connection, so the number of concurrent exports is capped.
+ */
+@Service
+public class DataExportService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(DataExportService.class);
+    
+    private static final int FLUSH_EVERY_ROWS = 1000;
+    
+    private static final String VIOLATIONS_SQL =
+            "SELECT id, device_id, anonymized_user_id, organization, client_id, policy_id, policy_rule_id, " +
+            "action_taken, severity_score, risk_score, ip_address, user_agent, violation_details, " +
+            "request_details, created_at " +
+            "FROM policy_violations WHERE organization = ? AND created_at BETWEEN ? AND ? " +
+            "ORDER BY created_at, id";
+    
+    // secret_key is intentionally never exported
+    private static final String DEVICE_COLUMNS =
+            "d.device_id, d.client_id, rk.organization, d.status, d.is_active, d.last_seen, d.created_at, d.updated_at";
+    
+    private static final String ALL_DEVICES_SQL =
+            "SELECT " + DEVICE_COLUMNS + " FROM devices d " +
+            "LEFT JOIN registration_keys rk ON rk.client_id = d.client_id";
+    
+    private static final String ORGANIZATION_DEVICES_SQL =
+            "SELECT " + DEVICE_COLUMNS + " FROM devices d " +
+            "JOIN registration_keys rk ON rk.client_id = d.client_id WHERE rk.organization = ?";
+    
+    public enum ExportFormat {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+        
+        private final String contentType;
+        private final String extension;
+        
+        ExportFormat(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+        
+        public String getContentType() {
+            return contentType;
+        }
+        
+        public String getExtension() {
+            return extension;
+        }
+        
+        public static ExportFormat fromString(String format) {
+            try {
+                return ExportFormat.valueOf(format.trim().toUpperCase());
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Unsupported export format: " + format);
+            }
+        }
+    }
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final Semaphore exportSlots;
+    
+    @Autowired
+    public DataExportService(JdbcTemplate jdbcTemplate,
+                             @Value("${aegis.export.max-concurrent:4}") int maxConcurrentExports) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.exportSlots = new Semaphore(maxConcurrentExports);
+    }
+    
+    /**
+     * Reserves one of the concurrent export slots
+     * 
+     * @return false if the maximum number of exports is already running
+     */
+    public boolean tryAcquireExportSlot() {
+        return exportSlots.tryAcquire();
+    }
+    
+    /**
+     * Releases a slot obtained with {@link #tryAcquireExportSlot()}
+     */
+    public void releaseExportSlot() {
+        exportSlots.release();
+    }
+    
+    /**
+     * Streams an organization's policy violations in (createdAt, id) order
+     * 
+     * @return Number of rows written
+     */
+    public long exportViolations(String organization, LocalDateTime from, LocalDateTime to,
+                                 ExportFormat format, OutputStream out) throws IOException {
+        logger.info("Exporting policy violations for organization: {} from: {} to: {} as {}",
+                   organization, from, to, format);
+        return stream(VIOLATIONS_SQL, format, out,
+                organization, Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+    
+    /**
+     * Streams registered devices, restricted to an organization's client IDs when one is given
+     * 
+     * @param organization Organization to export, or null for every device (admins only)
+     * @return Number of rows written
+     */
+    public long exportDevices(String organization, ExportFormat format, OutputStream out) throws IOException {
+        logger.info("Exporting devices for organization: {} as {}", organization != null ? organization : "ALL", format);
+        if (organization == null) {
+            return stream(ALL_DEVICES_SQL, format, out);
+        }
+        return stream(ORGANIZATION_DEVICES_SQL, format, out, organization);
+    }
+    
+    private long stream(String sql, ExportFormat format, OutputStream out, Object... args) throws IOException {
+        long startTime = System.currentTimeMillis();
+        RowWriter rowWriter = format == ExportFormat.CSV ? new CsvRowWriter(out) : new NdjsonRowWriter(out, jsonFactory);
+        long rowCount;
+        
+        try {
+            rowCount = jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(
+                        sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                // Connector/J streams rows one at a time instead of buffering the result
+                statement.setFetchSize(Integer.MIN_VALUE);
+                for (int i = 0; i < args.length; i++) {
+                    statement.setObject(i + 1, args[i]);
+                }
+                return statement;
+            }, (ResultSetExtractor<Long>) rs -> {
+                long rows = 0;
+                try {
+                    rowWriter.writeHeader(rs.getMetaData());
+                    while (rs.next()) {
+                        rowWriter.writeRow(rs);
+                        if (++rows % FLUSH_EVERY_ROWS == 0) {
+                            rowWriter.flush();
+                        }
+                    }
+                    rowWriter.flush();
+                } catch (IOException e) {
+                    // Client went away: kill the query while the result set is still open, since
+                    // JdbcTemplate closing a streaming result set would otherwise drain every row
+                    cancelQuietly(rs.getStatement());
+                    throw new UncheckedIOException(e);
+                }
+                return rows;
+            });
+            
+        } catch (UncheckedIOException e) {
+            logger.warn("Export aborted: {}", e.getCause().getMessage());
+            throw e.getCause();
+        }
+        
+        logger.info("Export completed: {} rows in {} ms", rowCount, System.currentTimeMillis() - startTime);
+        return rowCount;
+    }
+    
+    private void cancelQuietly(Statement statement) {
+        if (statement == null) {
+            return;
+        }
+        try {
+            statement.cancel();
+        } catch (SQLException e) {
+            logger.debug("Failed to cancel export query", e);
+        }
+    }
+    
+    private interface RowWriter {
+        void writeHeader(ResultSetMetaData metaData) throws SQLException, IOException;
+        void writeRow(ResultSet rs) throws SQLException, IOException;
+        void flush() throws IOException;
+    }
+    
+    /**
+     * RFC 4180 CSV. Text cells that a spreadsheet would evaluate as a formula are prefixed with a quote.
+     */
+    private static class CsvRowWriter implements RowWriter {
+        
+        private final Writer writer;
+        private int columnCount;
+        private int[] columnTypes;
+        
+        CsvRowWriter(OutputStream out) {
+            this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        }
+        
+        @Override
+        public void writeHeader(ResultSetMetaData metaData) throws SQLException, IOException {
+            columnCount = metaData.getColumnCount();
+            columnTypes = new int[columnCount];
+            for (int i = 1; i <= columnCount; i++) {
+                columnTypes[i - 1] = metaData.getColumnType(i);
+                if (i > 1) {
+                    writer.write(',');
+                }
+                writer.write(metaData.getColumnLabel(i));
+            }
+            writer.write("\r\n");
+        }
+        
+        @Override
+        public void writeRow(ResultSet rs) throws SQLException, IOException {
+            for (int i = 1; i <= columnCount; i++) {
+                if (i > 1) {
+                    writer.write(',');
+                }
+                Object value = rs.getObject(i);
+                if (value == null) {
+                    continue;
+                }
+                if (value instanceof Timestamp timestamp) {
+                    writer.write(timestamp.toLocalDateTime().toString());
+                } else if (value instanceof Number || value instanceof Boolean) {
+                    writer.write(value.toString());
+                } else {
+                    writeText(value.toString(), columnTypes[i - 1]);
+                }
+            }
+            writer.write("\r\n");
+        }
+        
+        private void writeText(String text, int sqlType) throws IOException {
+            boolean formulaLike = !text.isEmpty() && "=+-@\t\r".indexOf(text.charAt(0)) >= 0
+                    && sqlType != Types.NUMERIC && sqlType != Types.DECIMAL;
+            boolean needsQuotes = formulaLike || text.indexOf(',') >= 0 || text.indexOf('"') >= 0
+                    || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0;
+            if (!needsQuotes) {
+                writer.write(text);
+                return;
+            }
+            writer.write('"');
+            if (formulaLike) {
+                writer.write('\'');
+            }
+            writer.write(text.replace("\"", "\"\""));
+            writer.write('"');
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+    }
+    
+    private static class NdjsonRowWriter implements RowWriter {
+        
+        private final JsonGenerator generator;
+        private String[] columnLabels;
+        
+        NdjsonRowWriter(OutputStream out, JsonFactory jsonFactory) throws IOException {
+            this.generator = jsonFactory.createGenerator(out);
+            this.generator.setRootValueSeparator(null);
+        }
+        
+        @Override
+        public void writeHeader(ResultSetMetaData metaData) throws SQLException {
+            columnLabels = new String[metaData.getColumnCount()];
+            for (int i = 1; i <= columnLabels.length; i++) {
+                columnLabels[i - 1] = metaData.getColumnLabel(i);
+            }
+        }
+        
+        @Override
+        public void writeRow(ResultSet rs) throws SQLException, IOException {
+            generator.writeStartObject();
+            for (int i = 1; i <= columnLabels.length; i++) {
+                Object value = rs.getObject(i);
+                generator.writeFieldName(columnLabels[i - 1]);
+                if (value == null) {
+                    generator.writeNull();
+                } else if (value instanceof Timestamp timestamp) {
+                    generator.writeString(timestamp.toLocalDateTime().toString());
+                } else if (value instanceof Long longValue) {
+                    generator.writeNumber(longValue);
+                } else if (value instanceof Integer intValue) {
+                    generator.writeNumber(intValue);
+                } else if (value instanceof Boolean boolValue) {
+                    generator.writeBoolean(boolValue);
+                } else if (value instanceof Number number) {
+                    generator.writeNumber(number.toString());
+                } else {
+                    generator.writeString(value.toString());
+                }
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            generator.flush();
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.gradientgeeks.aegis.sfe.service;
+
+import com.gradientgeeks.aegis.sfe.entity.Device;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintains per-client device counters, so organization statistics are one
+ * aggregate over a handful of rows instead of counts over the devices table.
+ * 
+ * {@code client_device_counters} holds the total, active, blocked and fraudulent
+ * devices of each client ID, and {@code client_fraud_reports_daily} the devices
+ * reported as fraudulent per client and day. Registrations, status changes and
+ * fraud marking apply deltas once their transaction commits. A nightly job
+ * recomputes every counter from the source tables and corrects any drift, e.g.
+ * from a delta lost to a crash or a change racing the previous reconciliation.
+ */
+@Service
+public class DeviceCounterService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(DeviceCounterService.class);
+    
+    private static final String BLOCKED_STATUSES = "('" + Device.DeviceStatus.TEMPORARILY_BLOCKED.name()
+        + "', '" + Device.DeviceStatus.PERMANENTLY_BLOCKED.name() + "')";
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate newTransaction;
+    
+    @Value("${aegis.counters.report-retention-days:90}")
+    private int reportRetentionDays;
+    
+    @Value("${aegis.counters.backfill:true}")
+    private boolean backfillOnStartup;
+    
+    /**
+     * Device counts of a client ID, an organization or all clients
+     */
+    public record DeviceCounters(long totalDevices, long activeDevices, long blockedDevices, long fraudulentDevices) {
+        
+        public static final DeviceCounters ZERO = new DeviceCounters(0L, 0L, 0L, 0L);
+        
+        public DeviceCounters plus(DeviceCounters other) {
+            return new DeviceCounters(totalDevices + other.totalDevices, activeDevices + other.activeDevices,
+                                      blockedDevices + other.blockedDevices, fraudulentDevices + other.fraudulentDevices);
+        }
+        
+        public boolean isZero() {
+            return totalDevices == 0 && activeDevices == 0 && blockedDevices == 0 && fraudulentDevices == 0;
+        }
+        
+        /**
+         * Change of the counters when a device moves from one status and activation to another
+         */
+        public static DeviceCounters statusChange(Device.DeviceStatus oldStatus, boolean wasActive,
+                                                  Device.DeviceStatus newStatus, boolean isActive) {
+            return new DeviceCounters(0L, (isActive ? 1 : 0) - (wasActive ? 1 : 0),
+                                      (isBlocked(newStatus) ? 1 : 0) - (isBlocked(oldStatus) ? 1 : 0), 0L);
+        }
+    }
+    
+    @Autowired
+    public DeviceCounterService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Counters are updated after the change commits, in a short transaction of their own
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+    
+    /**
+     * Counts a new device registration once the surrounding transaction commits
+     */
+    public void recordRegistration(String clientId) {
+        applyAfterCommit(Map.of(clientId, new DeviceCounters(1L, 1L, 0L, 0L)));
+    }
+    
+    /**
+     * Applies counter changes per client ID once the surrounding transaction commits
+     */
+    public void applyAfterCommit(Map<String, DeviceCounters> deltasByClientId) {
+        Map<String, DeviceCounters> deltas = new HashMap<>(deltasByClientId);
+        deltas.values().removeIf(DeviceCounters::isZero);
+        if (deltas.isEmpty()) {
+            return;
+        }
+        afterCommit(() -> {
+            List<Object[]> rows = new ArrayList<>();
+            for (Map.Entry<String, DeviceCounters> entry : deltas.entrySet()) {
+                DeviceCounters delta = entry.getValue();
+                rows.add(new Object[] {
+                    entry.getKey(), delta.totalDevices(), delta.activeDevices(),
+                    delta.blockedDevices(), delta.fraudulentDevices()
+                });
+            }
+            jdbcTemplate.batchUpdate(
+                "INSERT INTO client_device_counters (client_id, total_devices, active_devices, blocked_devices, " +
+                "fraudulent_devices) VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE " +
+                "total_devices = total_devices + VALUES(total_devices), " +
+                "active_devices = active_devices + VALUES(active_devices), " +
+                "blocked_devices = blocked_devices + VALUES(blocked_devices), " +
+                "fraudulent_devices = fraudulent_devices + VALUES(fraudulent_devices)",
+                rows);
+        });
+    }
+    
+    /**
+     * Counts a device newly reported as fraudulent, for each client it is registered
+     * with, once the surrounding transaction commits
+     */
+    public void recordFraudReport(Collection<String> clientIds) {
+        if (clientIds.isEmpty()) {
+            return;
+        }
+        Map<String, DeviceCounters> deltas = new HashMap<>();
+        for (String clientId : clientIds) {
+            deltas.put(clientId, new DeviceCounters(0L, 0L, 0L, 1L));
+        }
+        applyAfterCommit(deltas);
+        
+        Date today = Date.valueOf(LocalDate.now());
+        List<Object[]> rows = clientIds.stream().distinct()
+            .map(clientId -> new Object[] { clientId, today })
+            .toList();
+        afterCommit(() -> jdbcTemplate.batchUpdate(
+            "INSERT INTO client_fraud_reports_daily (client_id, report_date, report_count) VALUES (?, ?, 1) " +
+            "ON DUPLICATE KEY UPDATE report_count = report_count + 1",
+            rows));
+    }
+    
+    /**
+     * Counters summed over every client ID of an organization
+     */
+    public DeviceCounters getOrganizationCounters(String organization) {
+        return jdbcTemplate.queryForObject(
+            "SELECT COALESCE(SUM(c.total_devices), 0), COALESCE(SUM(c.active_devices), 0), " +
+            "COALESCE(SUM(c.blocked_devices), 0), COALESCE(SUM(c.fraudulent_devices), 0) " +
+            "FROM client_device_counters c JOIN registration_keys k ON k.client_id = c.client_id " +
+            "WHERE k.organization = ?",
+            (rs, rowNum) -> new DeviceCounters(rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4)),
+            organization);
+    }
+    
+    /**
+     * Counters summed over all client IDs
+     */
+    public DeviceCounters getGlobalCounters() {
+        return jdbcTemplate.queryForObject(
+            "SELECT COALESCE(SUM(total_devices), 0), COALESCE(SUM(active_devices), 0), " +
+            "COALESCE(SUM(blocked_devices), 0), COALESCE(SUM(fraudulent_devices), 0) FROM client_device_counters",
+            (rs, rowNum) -> new DeviceCounters(rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4)));
+    }
+    
+    /**
+     * Counters per organization, keyed by organization name, largest first
+     */
+    public Map<String, Map<String, Long>> getCountersByOrganization() {
+        Map<String, Map<String, Long>> breakdown = new LinkedHashMap<>();
+        jdbcTemplate.query(
+            "SELECT k.organization, SUM(c.total_devices) AS total, SUM(c.active_devices) AS active, " +
+            "SUM(c.blocked_devices) AS blocked, SUM(c.fraudulent_devices) AS fraudulent " +
+            "FROM client_device_counters c JOIN registration_keys k ON k.client_id = c.client_id " +
+            "GROUP BY k.organization ORDER BY total DESC",
+            rs -> {
+                Map<String, Long> counters = new LinkedHashMap<>();
+                counters.put("total", rs.getLong("total"));
+                counters.put("active", rs.getLong("active"));
+                counters.put("blocked", rs.getLong("blocked"));
+                counters.put("fraudulent", rs.getLong("fraudulent"));
+                breakdown.put(rs.getString("organization"), counters);
+            });
+        return breakdown;
+    }
+    
+    /**
+     * Devices reported as fraudulent on or after the given day, over all client IDs
+     */
+    public long getFraudReportCount(LocalDate since) {
+        Long count = jdbcTemplate.queryForObject(
+            "SELECT COALESCE(SUM(report_count), 0) FROM client_fraud_reports_daily WHERE report_date >= ?",
+            Long.class, Date.valueOf(since));
+        return count != null ? count : 0L;
+    }
+    
+    /**
+     * Devices of an organization reported as fraudulent on or after the given day
+     */
+    public long getFraudReportCount(String organization, LocalDate since) {
+        Long count = jdbcTemplate.queryForObject(
+            "SELECT COALESCE(SUM(r.report_count), 0) FROM client_fraud_reports_daily r " +
+            "JOIN registration_keys k ON k.client_id = r.client_id " +
+            "WHERE k.organization = ? AND r.report_date >= ?",
+            Long.class, organization, Date.valueOf(since));
+        return count != null ? count : 0L;
+    }
+    
+    /**
+     * Recomputes every counter from the devices and fingerprints, corrects the rows
+     * that drifted and drops daily report counts past the retention period
+     */
+    @Scheduled(cron = "${aegis.counters.reconcile-cron:0 45 3 * * *}")
+    public void reconcile() {
+        long startTime = System.currentTimeMillis();
+        try {
+            Map<String, DeviceCounters> stored = new HashMap<>();
+            jdbcTemplate.query(
+                "SELECT client_id, total_devices, active_devices, blocked_devices, fraudulent_devices " +
+                "FROM client_device_counters",
+                rs -> {
+                    stored.put(rs.getString(1), new DeviceCounters(rs.getLong(2), rs.getLong(3), rs.getLong(4), rs.getLong(5)));
+                });
+            
+            Map<String, DeviceCounters> actual = new HashMap<>();
+            jdbcTemplate.query(
+                "SELECT d.client_id, COUNT(*), " +
+                "SUM(CASE WHEN d.is_active THEN 1 ELSE 0 END), " +
+                "SUM(CASE WHEN d.status IN " + BLOCKED_STATUSES + " THEN 1 ELSE 0 END), " +
+                "SUM(CASE WHEN EXISTS (SELECT 1 FROM device_fingerprints f " +
+                "    WHERE f.device_id = d.device_id AND f.is_fraudulent) THEN 1 ELSE 0 END) " +
+                "FROM devices d GROUP BY d.client_id",
+                rs -> {
+                    actual.put(rs.getString(1), new DeviceCounters(rs.getLong(2), rs.getLong(3), rs.getLong(4), rs.getLong(5)));
+                });
+            
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            List<Object[]> corrections = new ArrayList<>();
+            for (Map.Entry<String, DeviceCounters> entry : actual.entrySet()) {
+                DeviceCounters counters = entry.getValue();
+                if (!counters.equals(stored.remove(entry.getKey()))) {
+                    corrections.add(new Object[] {
+                        entry.getKey(), counters.totalDevices(), counters.activeDevices(),
+                        counters.blockedDevices(), counters.fraudulentDevices(), now
+                    });
+                }
+            }
+            // Clients left over have no devices any more
+            for (Map.Entry<String, DeviceCounters> entry : stored.entrySet()) {
+                if (!entry.getValue().isZero()) {
+                    corrections.add(new Object[] { entry.getKey(), 0L, 0L, 0L, 0L, now });
+                }
+            }
+            
+            if (!corrections.isEmpty()) {
+                jdbcTemplate.batchUpdate(
+                    "INSERT INTO client_device_counters (client_id, total_devices, active_devices, blocked_devices, " +
+                    "fraudulent_devices, reconciled_at) VALUES (?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE " +
+                    "total_devices = VALUES(total_devices), active_devices = VALUES(active_devices), " +
+                    "blocked_devices = VALUES(blocked_devices), fraudulent_devices = VALUES(fraudulent_devices), " +
+                    "reconciled_at = VALUES(reconciled_at)",
+                    corrections);
+            }
+            
+            int reportDays = reconcileFraudReports();
+            logger.info("Reconciled device counters for {} clients in {} ms: {} drifted, {} days of fraud reports",
+                       actual.size(), System.currentTimeMillis() - startTime, corrections.size(), reportDays);
+        } catch (Exception e) {
+            logger.error("Failed to reconcile device counters", e);
+        }
+    }
+    
+    /**
+     * Seeds the counters from existing devices when the table is empty
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        if (!backfillOnStartup) {
+            return;
+        }
+        Long existing = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM client_device_counters", Long.class);
+        if (existing == null || existing == 0) {
+            reconcile();
+        }
+    }
+    
+    /**
+     * Rebuilds the daily fraud report counts of the retention period; older days are dropped
+     */
+    private int reconcileFraudReports() {
+        LocalDate firstDay = LocalDate.now().minusDays(reportRetentionDays);
+        List<Object[]> rows = new ArrayList<>();
+        newTransaction.executeWithoutResult(status -> {
+            jdbcTemplate.query(
+                "SELECT d.client_id, DATE(f.fraud_reported_at) AS report_date, COUNT(DISTINCT d.device_id) " +
+                "FROM device_fingerprints f JOIN devices d ON d.device_id = f.device_id " +
+                "WHERE f.is_fraudulent AND f.fraud_reported_at >= ? " +
+                "GROUP BY d.client_id, DATE(f.fraud_reported_at)",
+                rs -> {
+                    rows.add(new Object[] { rs.getString(1), rs.getDate(2), rs.getLong(3) });
+                },
+                Timestamp.valueOf(firstDay.atStartOfDay()));
+            jdbcTemplate.update("DELETE FROM client_fraud_reports_daily");
+            if (!rows.isEmpty()) {
+                jdbcTemplate.batchUpdate(
+                    "INSERT INTO client_fraud_reports_daily (client_id, report_date, report_count) VALUES (?, ?, ?)",
+                    rows);
+            }
+        });
+        return rows.size();
+    }
+    
+    private void afterCommit(Runnable update) {
+        Runnable guarded = () -> {
+            try {
+                newTransaction.executeWithoutResult(status -> update.run());
+            } catch (Exception e) {
+                // Counters are advisory and reconciled nightly; never fail the change over them
+                logger.warn("Failed to update device counters", e);
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    guarded.run();
+                }
+            });
+        } else {
+            guarded.run();
+        }
+    }
+    
+    private static boolean isBlocked(Device.DeviceStatus status) {
+        return status == Device.DeviceStatus.TEMPORARILY_BLOCKED || status == Device.DeviceStatus.PERMANENTLY_BLOCKED;
+    }
+}
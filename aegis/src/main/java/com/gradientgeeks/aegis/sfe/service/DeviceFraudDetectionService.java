@@ -9,20 +9,34 @@ import com.gradientgeeks.aegis.sfe.dto.AppFingerprintDto;
 import com.gradientgeeks.aegis.sfe.dto.AppInfoDto;
 import com.gradientgeeks.aegis.sfe.entity.DeviceFingerprint;
 import com.gradientgeeks.aegis.sfe.entity.DeviceAppFingerprint;
-import com.gradientgeeks.aegis.sfe.entity.DeviceAppInfo;
+import com.gradientgeeks.aegis.sfe.entity.FraudReviewFlag;
 import com.gradientgeeks.aegis.sfe.repository.DeviceFingerprintRepository;
 import com.gradientgeeks.aegis.sfe.repository.DeviceAppFingerprintRepository;
 import com.gradientgeeks.aegis.sfe.repository.DeviceAppInfoRepository;
+import com.gradientgeeks.aegis.sfe.repository.FraudReviewFlagRepository;
+import com.gradientgeeks.aegis.sfe.service.AppInventorySimilarityService.AppInventoryMatch;
+import com.gradientgeeks.aegis.sfe.service.FingerprintColumnStore.SimilarFingerprint;
+import com.gradientgeeks.aegis.sfe.service.FingerprintScorer.AppProfile;
+import com.gradientgeeks.aegis.sfe.service.FingerprintScorer.PackageSets;
+import com.gradientgeeks.aegis.sfe.service.HardwareClusterStatsService.ClusterStats;
+import com.gradientgeeks.aegis.sfe.util.MinHash;
+import com.gradientgeeks.aegis.sfe.util.PackageBitmap;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Map;
@@ -30,6 +44,14 @@ import java.util.HashMap;
 import java.util.ArrayList;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -43,22 +65,114 @@ public class DeviceFraudDetectionService {
     
     private static final Logger logger = LoggerFactory.getLogger(DeviceFraudDetectionService.class);
     
-    // Similarity thresholds for fraud detection
-    private static final double HIGH_SIMILARITY_THRESHOLD = 0.9;
-    private static final double MEDIUM_SIMILARITY_THRESHOLD = 0.7;
-    private static final double LOW_SIMILARITY_THRESHOLD = 0.5;
-    
     private final DeviceFingerprintRepository fingerprintRepository;
     private final DeviceAppFingerprintRepository appFingerprintRepository;
     private final DeviceAppInfoRepository appInfoRepository;
+    private final FraudulentFingerprintIndex fraudulentFingerprintIndex;
+    private final ClusterEventBus clusterEventBus;
+    private final AppInventorySimilarityService appInventorySimilarityService;
+    private final PackageDictionary packageDictionary;
+    private final AppInventoryWriter appInventoryWriter;
+    private final HardwareClusterStatsService hardwareClusterStatsService;
+    private final FraudLinkageGraph fraudLinkageGraph;
+    private final FraudReviewFlagRepository reviewFlagRepository;
+    private final ExistenceFilterService existenceFilterService;
+    private final FingerprintScorer fingerprintScorer;
+    private final FingerprintColumnStore fingerprintColumnStore;
+    private final DeviceCounterService deviceCounterService;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ThreadPoolExecutor analysisExecutor;
+    
+    // Upper bound for all analysis stages together; on timeout the registration is allowed with monitoring
+    @Value("${aegis.fraud.analysis.timeout-ms:5000}")
+    private long analysisTimeoutMs;
+    
+    // Device farm detection on hardware cluster counters
+    @Value("${aegis.fraud.clusters.max-devices:10}")
+    private long clusterMaxDevices;
+    
+    @Value("${aegis.fraud.clusters.spike-min-registrations:20}")
+    private long clusterSpikeMinRegistrations;
+    
+    @Value("${aegis.fraud.clusters.spike-factor:5.0}")
+    private double clusterSpikeFactor;
+    
+    // Per-app rows with install times; similarity only needs the package bitmaps
+    @Value("${aegis.fraud.apps.store-details:false}")
+    private boolean storeAppDetails;
+    
+    // Cross-hardware app inventory matching (MinHash/LSH)
+    @Value("${aegis.fraud.minhash.enabled:true}")
+    private boolean appInventoryMatchingEnabled;
+    
+    @Value("${aegis.fraud.minhash.similarity-threshold:0.9}")
+    private double appInventorySimilarityThreshold;
+    
+    @Value("${aegis.fraud.minhash.min-user-apps:5}")
+    private int appInventoryMinUserApps;
+    
+    @Value("${aegis.fraud.minhash.farm-size:10}")
+    private int appInventoryFarmSize;
     
     @Autowired
     public DeviceFraudDetectionService(DeviceFingerprintRepository fingerprintRepository,
                                      DeviceAppFingerprintRepository appFingerprintRepository,
-                                     DeviceAppInfoRepository appInfoRepository) {
+                                     DeviceAppInfoRepository appInfoRepository,
+                                     FraudulentFingerprintIndex fraudulentFingerprintIndex,
+                                     ClusterEventBus clusterEventBus,
+                                     AppInventorySimilarityService appInventorySimilarityService,
+                                     PackageDictionary packageDictionary,
+                                     AppInventoryWriter appInventoryWriter,
+                                     HardwareClusterStatsService hardwareClusterStatsService,
+                                     FraudLinkageGraph fraudLinkageGraph,
+                                     FraudReviewFlagRepository reviewFlagRepository,
+                                     ExistenceFilterService existenceFilterService,
+                                     FingerprintScorer fingerprintScorer,
+                                     FingerprintColumnStore fingerprintColumnStore,
+                                     DeviceCounterService deviceCounterService,
+                                     PlatformTransactionManager transactionManager,
+                                     @Value("${aegis.fraud.analysis.threads:8}") int analysisThreads,
+                                     @Value("${aegis.fraud.analysis.queue-capacity:200}") int analysisQueueCapacity,
+                                     @Value("${spring.datasource.hikari.maximum-pool-size:10}") int connectionPoolSize) {
         this.fingerprintRepository = fingerprintRepository;
         this.appFingerprintRepository = appFingerprintRepository;
         this.appInfoRepository = appInfoRepository;
+        this.fraudulentFingerprintIndex = fraudulentFingerprintIndex;
+        this.clusterEventBus = clusterEventBus;
+        this.appInventorySimilarityService = appInventorySimilarityService;
+        this.packageDictionary = packageDictionary;
+        this.appInventoryWriter = appInventoryWriter;
+        this.hardwareClusterStatsService = hardwareClusterStatsService;
+        this.fraudLinkageGraph = fraudLinkageGraph;
+        this.reviewFlagRepository = reviewFlagRepository;
+        this.existenceFilterService = existenceFilterService;
+        this.fingerprintScorer = fingerprintScorer;
+        this.fingerprintColumnStore = fingerprintColumnStore;
+        this.deviceCounterService = deviceCounterService;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        // Bounded; when saturated the registering thread runs the stage itself instead of queueing more work.
+        // Every stage holds a connection, so leave some of the pool to registration writes and other requests
+        int threads = Math.min(analysisThreads, Math.max(1, connectionPoolSize - 2));
+        if (threads < analysisThreads) {
+            logger.info("Fraud analysis limited to {} threads by connection pool size {}", threads, connectionPoolSize);
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.analysisExecutor = new ThreadPoolExecutor(
+            threads, threads, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(analysisQueueCapacity),
+            runnable -> {
+                Thread thread = new Thread(runnable, "fraud-analysis-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+        this.analysisExecutor.allowCoreThreadTimeOut(true);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        analysisExecutor.shutdown();
     }
     
     /**
@@ -69,106 +183,206 @@ public class DeviceFraudDetectionService {
      * @return FraudDetectionResult with risk assessment
      */
     public FraudDetectionResult analyzeFingerprint(String deviceId, DeviceFingerprintDto fingerprintDto) {
+        return analyzeFingerprint(deviceId, fingerprintDto, null);
+    }
+    
+    /**
+     * Analyzes device fingerprint for potential fraud indicators.
+     * 
+     * @param deviceId The device identifier
+     * @param fingerprintDto The device fingerprint data
+     * @param knownFingerprint The stored fingerprint with the same hardware hash, or null for a new device;
+     *                         it takes the incoming composite hash, so it is judged as an exact match
+     * @return FraudDetectionResult with risk assessment
+     */
+    public FraudDetectionResult analyzeFingerprint(String deviceId, DeviceFingerprintDto fingerprintDto,
+                                                   DeviceFingerprint knownFingerprint) {
         logger.info("Analyzing fingerprint for device: {}", deviceId);
         
+        if (knownFingerprint != null) {
+            return exactMatchResult(deviceId, knownFingerprint);
+        }
+        
         try {
-            // Step 1: Check for exact composite hash match
-            Optional<DeviceFingerprint> exactMatch = fingerprintRepository
-                .findByCompositeHash(fingerprintDto.getCompositeHash());
-            
-            if (exactMatch.isPresent()) {
-                DeviceFingerprint existingFingerprint = exactMatch.get();
-                
-                if (existingFingerprint.getIsFraudulent()) {
-                    logger.warn("Exact fraudulent fingerprint match found for device: {}", deviceId);
-                    return FraudDetectionResult.blocked(
-                        "Exact match with known fraudulent device fingerprint",
-                        1.0,
-                        existingFingerprint.getDeviceId()
-                    );
-                } else if (existingFingerprint.getDeviceId().equals(deviceId)) {
-                    // Same device re-registering - this is normal (app reinstall)
-                    logger.info("Same device re-registering: {}", deviceId);
-                    return FraudDetectionResult.allowed("Same device re-registration", 0.0);
-                } else if (existingFingerprint.getDeviceId().startsWith(deviceId + "_") || 
-                          deviceId.startsWith(existingFingerprint.getDeviceId() + "_")) {
-                    // Same physical device but different bank app - this is allowed
-                    logger.info("Same physical device registering with different bank app - Base Device: {}, Related: {}", 
-                        existingFingerprint.getDeviceId(), deviceId);
-                    return FraudDetectionResult.allowed("Same device with different bank app", 0.0);
-                } else {
-                    // Different deviceId but same fingerprint
-                    // Check if this is a transition from old device ID format to new format
-                    // Old format included client ID in hash, new format doesn't
-                    logger.info("Same fingerprint with different device ID - Existing: {}, New: {}", 
-                        existingFingerprint.getDeviceId(), deviceId);
-                    
-                    // Allow the registration but log for monitoring
-                    // This handles the transition period where old device IDs are still in the database
-                    return FraudDetectionResult.allowed(
-                        "Same fingerprint detected - allowing for multi-bank support transition", 
-                        0.0
-                    );
-                }
+            // Steps 1-3 are independent reads, so they run concurrently
+            List<Supplier<FraudDetectionResult>> stages = List.of(
+                () -> checkExactMatch(deviceId, fingerprintDto),
+                () -> checkFraudulentHardware(deviceId, fingerprintDto),
+                () -> checkAppInventory(deviceId, fingerprintDto.getApps()),
+                () -> checkHardwareCluster(fingerprintDto.getHardware())
+            );
+            FraudDetectionResult result = runStages(stages);
+            if (result != null) {
+                return result;
             }
             
-            // Step 2: Check for similar hardware characteristics among fraudulent fingerprints
-            List<DeviceFingerprint> similarFraudulent = fingerprintRepository
-                .findFraudulentSimilarHardware(
-                    fingerprintDto.getHardware().getManufacturer(),
-                    fingerprintDto.getHardware().getModel(),
-                    fingerprintDto.getHardware().getBoard()
-                );
+            // Step 4: No significant fraud indicators found
+            logger.info("No fraud indicators found for device: {}", deviceId);
+            return FraudDetectionResult.allowed("No fraud indicators detected", 0.0);
             
-            if (!similarFraudulent.isEmpty()) {
-                logger.warn("Found {} similar fraudulent fingerprints for device: {}", 
-                    similarFraudulent.size(), deviceId);
-                
-                double maxSimilarity = calculateMaxSimilarity(fingerprintDto, similarFraudulent);
-                
-                if (maxSimilarity >= HIGH_SIMILARITY_THRESHOLD) {
-                    return FraudDetectionResult.blocked(
-                        "High similarity with known fraudulent device",
-                        maxSimilarity,
-                        similarFraudulent.get(0).getDeviceId()
-                    );
-                } else if (maxSimilarity >= MEDIUM_SIMILARITY_THRESHOLD) {
-                    return FraudDetectionResult.flagged(
-                        "Medium similarity with known fraudulent device",
-                        maxSimilarity,
-                        similarFraudulent.get(0).getDeviceId()
-                    );
+        } catch (TimeoutException e) {
+            // Do not fail open; report executor saturation so a starved pool is visible rather than just flagged
+            logger.error("Fraud detection analysis timed out after {} ms for device: {} (active stages: {}, queued: {})",
+                analysisTimeoutMs, deviceId, analysisExecutor.getActiveCount(), analysisExecutor.getQueue().size());
+            return FraudDetectionResult.flagged("Analysis incomplete - flagged for review", 0.0, null);
+        } catch (Exception e) {
+            logger.error("Error during fraud detection analysis for device: {}", deviceId, e);
+            // In case of error, allow registration but flag it for review
+            return FraudDetectionResult.flagged("Analysis error - flagged for review", 0.0, null);
+        }
+    }
+    
+    /**
+     * Starts all stages at once on the analysis executor and returns the result of
+     * the first stage, in list order, that reached a verdict. Remaining stages are
+     * cancelled as soon as that verdict is known, so the outcome is the same as
+     * running them one after another but the latency is that of the slowest stage
+     * that had to finish.
+     * 
+     * @return The decisive result, or null when no stage reached a verdict
+     */
+    private FraudDetectionResult runStages(List<Supplier<FraudDetectionResult>> stages) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(analysisTimeoutMs);
+        List<CompletableFuture<FraudDetectionResult>> futures = new ArrayList<>(stages.size());
+        try {
+            for (Supplier<FraudDetectionResult> stage : stages) {
+                // Worker threads do not share the caller's persistence context, so each stage reads in its own
+                futures.add(CompletableFuture.supplyAsync(
+                    () -> readOnlyTransaction.execute(status -> stage.get()), analysisExecutor));
+            }
+            for (CompletableFuture<FraudDetectionResult> future : futures) {
+                FraudDetectionResult result;
+                try {
+                    result = future.get(Math.max(deadline - System.nanoTime(), 0L), TimeUnit.NANOSECONDS);
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception cause ? cause : e;
+                }
+                if (result != null) {
+                    return result;
                 }
             }
+            return null;
+        } finally {
+            futures.forEach(future -> future.cancel(false));
+        }
+    }
+    
+    /**
+     * Step 1: Check for exact composite hash match
+     * 
+     * @return The verdict for a known fingerprint, or null when the fingerprint is new
+     */
+    private FraudDetectionResult checkExactMatch(String deviceId, DeviceFingerprintDto fingerprintDto) {
+        if (!existenceFilterService.mightContainCompositeHash(fingerprintDto.getCompositeHash())) {
+            // Never seen, which is the common case for new devices
+            return null;
+        }
+        
+        Optional<DeviceFingerprint> exactMatch = fingerprintRepository
+            .findByCompositeHash(fingerprintDto.getCompositeHash());
+        
+        return exactMatch.map(existingFingerprint -> exactMatchResult(deviceId, existingFingerprint)).orElse(null);
+    }
+    
+    /**
+     * Verdict for a device whose fingerprint is already stored
+     */
+    private FraudDetectionResult exactMatchResult(String deviceId, DeviceFingerprint existingFingerprint) {
+        if (existingFingerprint.getIsFraudulent()) {
+            logger.warn("Exact fraudulent fingerprint match found for device: {}", deviceId);
+            return FraudDetectionResult.blocked(
+                "Exact match with known fraudulent device fingerprint",
+                1.0,
+                existingFingerprint.getDeviceId()
+            );
+        } else if (existingFingerprint.getDeviceId().equals(deviceId)) {
+            // Same device re-registering - this is normal (app reinstall)
+            logger.info("Same device re-registering: {}", deviceId);
+            return FraudDetectionResult.allowed("Same device re-registration", 0.0);
+        } else if (existingFingerprint.getDeviceId().startsWith(deviceId + "_") || 
+                  deviceId.startsWith(existingFingerprint.getDeviceId() + "_")) {
+            // Same physical device but different bank app - this is allowed
+            logger.info("Same physical device registering with different bank app - Base Device: {}, Related: {}", 
+                existingFingerprint.getDeviceId(), deviceId);
+            return FraudDetectionResult.allowed("Same device with different bank app", 0.0);
+        } else {
+            // Different deviceId but same fingerprint
+            // Check if this is a transition from old device ID format to new format
+            // Old format included client ID in hash, new format doesn't
+            logger.info("Same fingerprint with different device ID - Existing: {}, New: {}", 
+                existingFingerprint.getDeviceId(), deviceId);
             
-            // Step 3: Check for suspicious patterns (multiple devices with same hardware)
-            List<DeviceFingerprint> similarHardware = fingerprintRepository
-                .findSimilarHardwareFingerprints(
-                    fingerprintDto.getHardware().getManufacturer(),
-                    fingerprintDto.getHardware().getModel(),
-                    fingerprintDto.getHardware().getBoard(),
-                    fingerprintDto.getHardware().getCpuArchitecture()
-                );
+            // Allow the registration but log for monitoring
+            // This handles the transition period where old device IDs are still in the database
+            return FraudDetectionResult.allowed(
+                "Same fingerprint detected - allowing for multi-bank support transition", 
+                0.0
+            );
+        }
+    }
+    
+    /**
+     * Step 2: Check for similar hardware characteristics among fraudulent fingerprints
+     * 
+     * @return A blocked or flagged result, or null when no fraudulent fingerprint is similar enough
+     */
+    private FraudDetectionResult checkFraudulentHardware(String deviceId, DeviceFingerprintDto fingerprintDto) {
+        List<FingerprintSnapshot> similarFraudulent = findFraudulentSimilarHardware(fingerprintDto.getHardware());
+        
+        if (!similarFraudulent.isEmpty()) {
+            logger.warn("Found {} similar fraudulent fingerprints for device: {}", 
+                similarFraudulent.size(), deviceId);
             
-            // If too many devices with identical hardware characteristics, flag for review
-            if (similarHardware.size() > 10) {
-                logger.info("High number of similar hardware fingerprints found: {}", similarHardware.size());
+            double maxSimilarity = calculateMaxSimilarity(deviceId, fingerprintDto, similarFraudulent);
+            
+            if (maxSimilarity >= fingerprintScorer.getHighSimilarityThreshold()) {
+                return FraudDetectionResult.blocked(
+                    "High similarity with known fraudulent device",
+                    maxSimilarity,
+                    similarFraudulent.get(0).getDeviceId()
+                );
+            } else if (maxSimilarity >= fingerprintScorer.getMediumSimilarityThreshold()) {
                 return FraudDetectionResult.flagged(
-                    "Suspicious: High number of devices with identical hardware characteristics",
-                    0.6,
-                    null
+                    "Medium similarity with known fraudulent device",
+                    maxSimilarity,
+                    similarFraudulent.get(0).getDeviceId()
                 );
             }
-            
-            // Step 4: No significant fraud indicators found
-            logger.info("No fraud indicators found for device: {}", deviceId);
-            return FraudDetectionResult.allowed("No fraud indicators detected", 0.0);
-            
-        } catch (Exception e) {
-            logger.error("Error during fraud detection analysis for device: {}", deviceId, e);
-            // In case of error, allow registration but log for investigation
-            return FraudDetectionResult.allowed("Analysis error - allowed with monitoring", 0.0);
         }
+        return null;
+    }
+    
+    /**
+     * Step 3: Check for suspicious patterns (multiple devices with same hardware)
+     * 
+     * @return A flagged result, or null when the hardware cluster looks normal
+     */
+    private FraudDetectionResult checkHardwareCluster(HardwareFingerprintDto hardware) {
+        ClusterStats cluster = hardwareClusterStatsService.getClusterStats(hardware);
+        
+        // If too many devices with identical hardware characteristics, flag for review
+        if (cluster.deviceCount() > clusterMaxDevices) {
+            logger.info("High number of similar hardware fingerprints found: {}", cluster.deviceCount());
+            return FraudDetectionResult.flagged(
+                "Suspicious: High number of devices with identical hardware characteristics",
+                0.6,
+                null
+            );
+        }
+        
+        // Sudden surge of registrations with this hardware compared to its usual hourly rate
+        double baselineRate = cluster.baselineHourlyRate(hardwareClusterStatsService.getBaselineHours());
+        if (cluster.currentHourRegistrations() >= clusterSpikeMinRegistrations 
+                && cluster.currentHourRegistrations() >= clusterSpikeFactor * Math.max(baselineRate, 1.0)) {
+            logger.info("Registration spike for hardware cluster: {} this hour vs {} per hour baseline", 
+                cluster.currentHourRegistrations(), baselineRate);
+            return FraudDetectionResult.flagged(
+                "Suspicious: Sudden surge of registrations with identical hardware characteristics",
+                0.6,
+                null
+            );
+        }
+        return null;
     }
     
     /**
@@ -239,12 +453,17 @@ public class DeviceFraudDetectionService {
         );
         
         DeviceFingerprint savedFingerprint = fingerprintRepository.save(fingerprint);
+        existenceFilterService.addFingerprint(savedFingerprint.getCompositeHash());
+        fingerprintColumnStore.addAfterCommit(savedFingerprint);
+        hardwareClusterStatsService.recordRegistration(
+            savedFingerprint.getManufacturer(), savedFingerprint.getModel(), 
+            savedFingerprint.getBoard(), savedFingerprint.getCpuArchitecture());
         
         // Save app fingerprint data if available
         if (fingerprintDto.getApps() != null) {
             try {
                 saveAppFingerprint(savedFingerprint.getId(), fingerprintDto.getApps());
-                logger.info("App fingerprint data saved for device: {}", deviceId);
+                logger.info("App fingerprint data queued for device: {}", deviceId);
             } catch (Exception e) {
                 logger.error("Failed to save app fingerprint data for device: {}", deviceId, e);
                 // Don't fail the entire operation if app data save fails
@@ -266,19 +485,29 @@ public class DeviceFraudDetectionService {
         logger.warn("Marking device as fraudulent: {} - Reason: {}", deviceId, reason);
         
         try {
-            fingerprintRepository.markAsFraudulent(deviceId, reason, LocalDateTime.now());
+            LocalDateTime reportedAt = LocalDateTime.now();
+            fingerprintRepository.markAsFraudulent(deviceId, reason, reportedAt);
+            fraudLinkageGraph.propagateAfterCommit(deviceId);
             
-            // Also mark similar fingerprints for review
+            // Linked devices are queued for review in the background; also report the hardware cluster size
             Optional<DeviceFingerprint> deviceFingerprint = fingerprintRepository.findByDeviceId(deviceId);
             if (deviceFingerprint.isPresent()) {
                 DeviceFingerprint fp = deviceFingerprint.get();
-                List<DeviceFingerprint> similar = fingerprintRepository
-                    .findSimilarHardwareFingerprints(
-                        fp.getManufacturer(), fp.getModel(), 
-                        fp.getBoard(), fp.getCpuArchitecture()
-                    );
                 
-                logger.info("Found {} similar fingerprints that may need review", similar.size());
+                // The bulk update bypasses the persistence context, so sync the loaded entity
+                fp.setIsFraudulent(true);
+                fp.setFraudReason(reason);
+                fp.setFraudReportedAt(reportedAt);
+                fraudulentFingerprintIndex.addAfterCommit(fp);
+                fingerprintColumnStore.markFraudulentAfterCommit(fp.getId());
+                clusterEventBus.publish(FraudulentFingerprintIndex.EVENT_FINGERPRINT_FRAUDULENT,
+                                        Map.of("fingerprintId", fp.getId()));
+                
+                ClusterStats cluster = hardwareClusterStatsService.getClusterStats(
+                    fp.getManufacturer(), fp.getModel(), fp.getBoard(), fp.getCpuArchitecture());
+                
+                logger.info("Found {} similar fingerprints that may need review", 
+                    Math.max(cluster.deviceCount() - 1, 0));
             }
             
             return true;
@@ -289,200 +518,208 @@ public class DeviceFraudDetectionService {
     }
     
     /**
-     * Calculates maximum similarity score with a list of fingerprints.
+     * Step 2b: Looks up devices whose installed apps are near-identical to the incoming inventory.
+     * Catches device farms and fraudsters that spoof hardware fields. Inventories with
+     * only a few user apps are skipped, since stock installs of one model look alike.
+     * 
+     * @return A flagged result, or null when the inventory raises no concern
      */
-    private double calculateMaxSimilarity(DeviceFingerprintDto incoming, List<DeviceFingerprint> existing) {
-        double maxSimilarity = 0.0;
-        
-        for (DeviceFingerprint fingerprint : existing) {
-            double similarity = calculateSimilarity(incoming, fingerprint);
-            if (similarity > maxSimilarity) {
-                maxSimilarity = similarity;
-            }
+    private FraudDetectionResult checkAppInventory(String deviceId, AppFingerprintDto apps) {
+        if (!appInventoryMatchingEnabled || apps == null || apps.getUserApps() == null 
+                || apps.getUserApps().size() < appInventoryMinUserApps) {
+            return null;
         }
         
-        return maxSimilarity;
-    }
-    
-    /**
-     * Calculates similarity between incoming fingerprint and existing fingerprint.
-     */
-    private double calculateSimilarity(DeviceFingerprintDto incoming, DeviceFingerprint existing) {
-        // Hardware similarity (most important)
-        double hardwareSimilarity = calculateHardwareSimilarity(incoming, existing);
+        int[] signature = AppInventorySimilarityService.signatureOf(
+            packageNames(apps.getUserApps()), packageNames(apps.getSystemApps()));
+        List<AppInventoryMatch> matches = appInventorySimilarityService
+            .findNearDuplicates(signature, appInventorySimilarityThreshold);
+        if (matches.isEmpty()) {
+            return null;
+        }
         
-        // Display similarity
-        double displaySimilarity = calculateDisplaySimilarity(incoming, existing);
+        Map<Long, DeviceFingerprint> fingerprintsById = fingerprintRepository
+            .findAllById(matches.stream().map(AppInventoryMatch::fingerprintId).collect(Collectors.toList()))
+            .stream()
+            .collect(Collectors.toMap(DeviceFingerprint::getId, fingerprint -> fingerprint));
         
-        // App similarity (for device reinstall detection)
-        double appSimilarity = calculateAppSimilarity(incoming, existing);
+        int otherDevices = 0;
+        for (AppInventoryMatch match : matches) {
+            DeviceFingerprint fingerprint = fingerprintsById.get(match.fingerprintId());
+            if (fingerprint == null || isSameDevice(deviceId, fingerprint.getDeviceId())) {
+                continue;
+            }
+            if (Boolean.TRUE.equals(fingerprint.getIsFraudulent())) {
+                logger.warn("App inventory of device {} matches fraudulent device {} (estimated similarity {})", 
+                    deviceId, fingerprint.getDeviceId(), match.similarity());
+                return FraudDetectionResult.flagged(
+                    "Installed apps nearly identical to known fraudulent device",
+                    match.similarity(),
+                    fingerprint.getDeviceId()
+                );
+            }
+            otherDevices++;
+        }
         
-        // Weighted average: hardware is most critical, app data helps with reinstall detection
-        if (appSimilarity >= 0.0) {
-            // When app data is available, include it in similarity calculation
-            return (hardwareSimilarity * 0.5) + (displaySimilarity * 0.25) + (appSimilarity * 0.25);
-        } else {
-            // Original calculation when no app data
-            return (hardwareSimilarity * 0.7) + (displaySimilarity * 0.3);
+        if (otherDevices >= appInventoryFarmSize) {
+            logger.warn("App inventory of device {} is shared by {} other devices", deviceId, otherDevices);
+            return FraudDetectionResult.flagged(
+                "Suspicious: Many devices with near-identical installed apps",
+                matches.get(0).similarity(),
+                null
+            );
         }
+        return null;
     }
     
-    /**
-     * Calculates hardware similarity score.
-     */
-    private double calculateHardwareSimilarity(DeviceFingerprintDto incoming, DeviceFingerprint existing) {
-        int matches = 0;
-        int total = 0;
-        
-        // Core hardware characteristics (weighted)
-        if (incoming.getHardware().getManufacturer().equals(existing.getManufacturer())) matches += 3;
-        total += 3;
-        
-        if (incoming.getHardware().getModel().equals(existing.getModel())) matches += 3;
-        total += 3;
-        
-        if (incoming.getHardware().getDevice().equals(existing.getDeviceName())) matches += 2;
-        total += 2;
-        
-        if (incoming.getHardware().getBoard().equals(existing.getBoard())) matches += 2;
-        total += 2;
-        
-        if (incoming.getHardware().getCpuArchitecture().equals(existing.getCpuArchitecture())) matches += 2;
-        total += 2;
-        
-        if (incoming.getHardware().getBrand().equals(existing.getBrand())) matches += 1;
-        total += 1;
-        
-        return (double) matches / total;
+    private static boolean isSameDevice(String deviceId, String otherDeviceId) {
+        return otherDeviceId.equals(deviceId) 
+            || otherDeviceId.startsWith(deviceId + "_") 
+            || deviceId.startsWith(otherDeviceId + "_");
+    }
+    
+    private static List<String> packageNames(List<AppInfoDto> apps) {
+        if (apps == null) {
+            return List.of();
+        }
+        return apps.stream().map(AppInfoDto::getPackageName).collect(Collectors.toList());
     }
     
     /**
-     * Calculates display similarity score.
+     * Fraudulent fingerprints with the same manufacturer, model and board.
+     * Served from the in-memory index, or from the database until the index is loaded.
      */
-    private double calculateDisplaySimilarity(DeviceFingerprintDto incoming, DeviceFingerprint existing) {
-        return incoming.getDisplay().getWidthPixels().equals(existing.getWidthPixels()) &&
-               incoming.getDisplay().getHeightPixels().equals(existing.getHeightPixels()) &&
-               incoming.getDisplay().getDensityDpi().equals(existing.getDensityDpi()) ? 1.0 : 0.0;
+    private List<FingerprintSnapshot> findFraudulentSimilarHardware(HardwareFingerprintDto hardware) {
+        return fraudulentFingerprintIndex
+            .findByHardware(hardware.getManufacturer(), hardware.getModel(), hardware.getBoard())
+            .orElseGet(() -> fingerprintRepository
+                .findFraudulentSimilarHardware(hardware.getManufacturer(), hardware.getModel(), hardware.getBoard())
+                .stream()
+                .map(FingerprintSnapshot::from)
+                .collect(Collectors.toList()));
     }
     
     /**
-     * Calculates app similarity score for device reinstall detection.
-     * Returns -1.0 if app data is not available, otherwise returns similarity score (0.0 to 1.0).
+     * Calculates maximum similarity score with a list of fingerprints.
+     * App data for all candidates is fetched up front in one query, so the
+     * cost in round-trips does not grow with the number of candidates.
      */
-    private double calculateAppSimilarity(DeviceFingerprintDto incoming, DeviceFingerprint existing) {
-        AppFingerprintDto incomingApps = incoming.getApps();
-        if (incomingApps == null) {
-            return -1.0; // No app data available
-        }
-        
-        // Find existing app fingerprint for the device
-        Optional<DeviceAppFingerprint> existingAppFingerprint = appFingerprintRepository.findByFingerprintId(existing.getId());
-        if (!existingAppFingerprint.isPresent()) {
-            logger.debug("No existing app fingerprint found for device fingerprint ID: {}", existing.getId());
-            return -1.0; // No existing app data to compare
-        }
-        
-        DeviceAppFingerprint existingApps = existingAppFingerprint.get();
-        logger.debug("Comparing app fingerprints - Incoming: Total={}, User={}, System={} | Existing: Total={}, User={}, System={}", 
-            incomingApps.getTotalAppCount(), incomingApps.getUserAppCount(), incomingApps.getSystemAppCount(),
-            existingApps.getTotalAppCount(), existingApps.getUserAppCount(), existingApps.getSystemAppCount());
-        
-        // Calculate basic count-based similarity
-        double countSimilarity = calculateAppCountSimilarity(incomingApps, existingApps);
+    private double calculateMaxSimilarity(String deviceId, DeviceFingerprintDto incoming,
+                                          List<FingerprintSnapshot> existing) {
+        FingerprintSnapshot incomingSnapshot = FingerprintSnapshot.from(deviceId, incoming);
+        AppProfile incomingApps = incoming.getApps() != null ? incomingAppProfile(incoming.getApps()) : null;
+        Map<Long, AppProfile> candidateApps = incomingApps != null
+            ? loadAppProfiles(existing)
+            : Map.of();
         
-        // Calculate package name overlap similarity
-        double packageSimilarity = calculatePackageNameSimilarity(incomingApps, existingApps.getId());
-        
-        // Weighted combination: package similarity is more important than counts
-        double finalSimilarity = (countSimilarity * 0.3) + (packageSimilarity * 0.7);
+        double maxSimilarity = 0.0;
         
-        logger.debug("App similarity calculation - Count: {}, Package: {}, Final: {}", 
-            countSimilarity, packageSimilarity, finalSimilarity);
+        for (FingerprintSnapshot fingerprint : existing) {
+            double similarity = fingerprintScorer.score(incomingSnapshot, incomingApps, fingerprint,
+                                                        candidateApps.get(fingerprint.getId()));
+            if (similarity > maxSimilarity) {
+                maxSimilarity = similarity;
+            }
+        }
         
-        return finalSimilarity;
+        return maxSimilarity;
     }
     
     /**
-     * Calculates similarity based on app counts.
+     * Bulk-loads app profiles of stored fingerprints, keyed by device fingerprint ID.
+     * Package sets come from the stored bitmaps; only rows written before bitmaps
+     * existed need their package names read from device_app_info.
      */
-    private double calculateAppCountSimilarity(AppFingerprintDto incoming, DeviceAppFingerprint existing) {
-        // Total app count similarity
-        double totalCountSimilarity = 1.0 - ((double) Math.abs(incoming.getTotalAppCount() - existing.getTotalAppCount()) / 
-                                            (double) Math.max(incoming.getTotalAppCount(), existing.getTotalAppCount()));
+    @Transactional(readOnly = true)
+    public Map<Long, AppProfile> loadAppProfiles(Collection<FingerprintSnapshot> fingerprints) {
+        if (fingerprints.isEmpty()) {
+            return Map.of();
+        }
+        
+        Set<Long> fingerprintIds = fingerprints.stream()
+            .map(FingerprintSnapshot::getId)
+            .collect(Collectors.toSet());
+        List<DeviceAppFingerprint> appFingerprints = new ArrayList<>(
+            appFingerprintRepository.findByFingerprintIdIn(fingerprintIds));
+        // Inventories still queued for writing are read from memory
+        appFingerprints.addAll(appInventoryWriter.findPending(fingerprintIds));
+        if (appFingerprints.isEmpty()) {
+            return Map.of();
+        }
+        
+        Map<Long, DeviceAppFingerprint> byFingerprintId = new HashMap<>();
+        for (DeviceAppFingerprint appFingerprint : appFingerprints) {
+            byFingerprintId.putIfAbsent(appFingerprint.getFingerprintId(), appFingerprint);
+        }
         
-        // User app count similarity
-        double userCountSimilarity = 1.0 - ((double) Math.abs(incoming.getUserAppCount() - existing.getUserAppCount()) / 
-                                           (double) Math.max(incoming.getUserAppCount(), existing.getUserAppCount()));
+        // Keyed by device fingerprint ID: inventories still pending have no app fingerprint ID yet
+        Map<Long, PackageSets> packagesByFingerprintId = new HashMap<>();
+        Map<Long, Long> legacyFingerprintIds = new HashMap<>();
+        byFingerprintId.forEach((fingerprintId, appFingerprint) -> {
+            if (appFingerprint.getUserAppBitmap() != null && appFingerprint.getSystemAppBitmap() != null) {
+                try {
+                    packagesByFingerprintId.put(fingerprintId, PackageSets.of(
+                        PackageBitmap.decode(appFingerprint.getUserAppBitmap()),
+                        PackageBitmap.decode(appFingerprint.getSystemAppBitmap())));
+                } catch (IllegalArgumentException e) {
+                    logger.error("Corrupt package bitmap for fingerprint ID: {}", fingerprintId, e);
+                }
+            } else if (appFingerprint.getId() != null) {
+                legacyFingerprintIds.put(appFingerprint.getId(), fingerprintId);
+            }
+        });
         
-        // System app count similarity
-        double systemCountSimilarity = 1.0 - ((double) Math.abs(incoming.getSystemAppCount() - existing.getSystemAppCount()) / 
-                                             (double) Math.max(incoming.getSystemAppCount(), existing.getSystemAppCount()));
+        if (!legacyFingerprintIds.isEmpty()) {
+            loadLegacyPackageSets(legacyFingerprintIds.keySet()).forEach((appFingerprintId, packages) ->
+                packagesByFingerprintId.put(legacyFingerprintIds.get(appFingerprintId), packages));
+        }
         
-        // Weighted average: user apps are more distinctive than system apps
-        return (totalCountSimilarity * 0.4) + (userCountSimilarity * 0.4) + (systemCountSimilarity * 0.2);
+        Map<Long, AppProfile> profiles = new HashMap<>();
+        byFingerprintId.forEach((fingerprintId, appFingerprint) -> profiles.put(fingerprintId,
+            AppProfile.of(appFingerprint, packagesByFingerprintId.get(fingerprintId))));
+        return profiles;
     }
     
-    /**
-     * Calculates similarity based on package name overlap.
-     */
-    private double calculatePackageNameSimilarity(AppFingerprintDto incoming, Long existingAppFingerprintId) {
+    private Map<Long, PackageSets> loadLegacyPackageSets(Set<Long> appFingerprintIds) {
         try {
-            // Get existing package names
-            Set<String> existingUserApps = appInfoRepository.findUserAppPackageNamesByFingerprintId(existingAppFingerprintId);
-            Set<String> existingSystemApps = appInfoRepository.findSystemAppPackageNamesByFingerprintId(existingAppFingerprintId);
-            
-            // Get incoming package names
-            Set<String> incomingUserApps = incoming.getUserApps().stream()
-                .map(AppInfoDto::getPackageName)
-                .collect(Collectors.toSet());
-            Set<String> incomingSystemApps = incoming.getSystemApps().stream()
-                .map(AppInfoDto::getPackageName)
-                .collect(Collectors.toSet());
-            
-            // Calculate user app similarity (more important for device identification)
-            double userAppSimilarity = calculateSetSimilarity(incomingUserApps, existingUserApps);
-            
-            // Calculate system app similarity
-            double systemAppSimilarity = calculateSetSimilarity(incomingSystemApps, existingSystemApps);
-            
-            // Weighted combination: user apps are more distinctive
-            double packageSimilarity = (userAppSimilarity * 0.7) + (systemAppSimilarity * 0.3);
-            
-            logger.debug("Package similarity - User apps: {} common out of {} total, System apps: {} common out of {} total", 
-                incomingUserApps.stream().filter(existingUserApps::contains).count(), 
-                incomingUserApps.size() + existingUserApps.size(),
-                incomingSystemApps.stream().filter(existingSystemApps::contains).count(),
-                incomingSystemApps.size() + existingSystemApps.size());
-            
-            return packageSimilarity;
-            
+            Map<Long, Set<String>> userApps = new HashMap<>();
+            Map<Long, Set<String>> systemApps = new HashMap<>();
+            for (Object[] row : appInfoRepository.findPackageNamesByAppFingerprintIds(appFingerprintIds)) {
+                Map<Long, Set<String>> target = Boolean.TRUE.equals(row[2]) ? systemApps : userApps;
+                target.computeIfAbsent((Long) row[0], id -> new HashSet<>()).add((String) row[1]);
+            }
+            // Read-only against the dictionary, like the incoming profile, so a read-only transaction never writes
+            Map<Long, PackageSets> packages = new HashMap<>();
+            for (Long appFingerprintId : appFingerprintIds) {
+                Set<String> user = userApps.getOrDefault(appFingerprintId, Set.of());
+                Set<String> system = systemApps.getOrDefault(appFingerprintId, Set.of());
+                packages.put(appFingerprintId, new PackageSets(packageDictionary.encodeKnown(user), user.size(),
+                                                               packageDictionary.encodeKnown(system), system.size()));
+            }
+            return packages;
         } catch (Exception e) {
-            logger.error("Error calculating package name similarity", e);
-            return 0.0;
+            // Matches the per-candidate behaviour: package overlap scores 0 when it cannot be read
+            logger.error("Error loading package names for {} app fingerprints", appFingerprintIds.size(), e);
+            return Map.of();
         }
     }
     
     /**
-     * Calculates Jaccard similarity between two sets.
+     * App profile of the incoming inventory. Package sets are read-only against
+     * the dictionary, so analysis never writes.
      */
-    private double calculateSetSimilarity(Set<String> set1, Set<String> set2) {
-        if (set1.isEmpty() && set2.isEmpty()) {
-            return 1.0; // Both empty, perfect match
-        }
-        
-        Set<String> intersection = new HashSet<>(set1);
-        intersection.retainAll(set2);
-        
-        Set<String> union = new HashSet<>(set1);
-        union.addAll(set2);
-        
-        return union.isEmpty() ? 0.0 : (double) intersection.size() / union.size();
+    private AppProfile incomingAppProfile(AppFingerprintDto apps) {
+        Set<String> userApps = new HashSet<>(packageNames(apps.getUserApps()));
+        Set<String> systemApps = new HashSet<>(packageNames(apps.getSystemApps()));
+        return AppProfile.of(apps, new PackageSets(packageDictionary.encodeKnown(userApps), userApps.size(),
+                                                   packageDictionary.encodeKnown(systemApps), systemApps.size()));
     }
     
     /**
-     * Saves app fingerprint data to database.
+     * Prepares app fingerprint data and hands it to the background writer.
+     * The rows are written after the registration commits; until then the
+     * inventory is visible to similarity checks through the writer's pending copy.
      */
-    @Transactional
     private void saveAppFingerprint(Long deviceFingerprintId, AppFingerprintDto appFingerprintDto) {
         logger.debug("Saving app fingerprint for device fingerprint ID: {}", deviceFingerprintId);
         
@@ -495,75 +732,52 @@ public class DeviceFraudDetectionService {
             appFingerprintDto.getHash()
         );
         
-        DeviceAppFingerprint savedAppFingerprint = appFingerprintRepository.save(appFingerprint);
+        // MinHash signature for cross-hardware inventory matching
+        int[] signature = AppInventorySimilarityService.signatureOf(
+            packageNames(appFingerprintDto.getUserApps()), packageNames(appFingerprintDto.getSystemApps()));
+        appFingerprint.setMinhashSignature(MinHash.encode(signature));
         
-        // Save individual app info
-        List<DeviceAppInfo> appInfoList = new ArrayList<>();
+        // Installed packages as dictionary ID bitmaps, replacing one row per app
+        appFingerprint.setUserAppBitmap(
+            packageDictionary.encode(packageNames(appFingerprintDto.getUserApps())).encode());
+        appFingerprint.setSystemAppBitmap(
+            packageDictionary.encode(packageNames(appFingerprintDto.getSystemApps())).encode());
         
-        // Save user apps
-        for (AppInfoDto userApp : appFingerprintDto.getUserApps()) {
-            appInfoList.add(new DeviceAppInfo(
-                savedAppFingerprint.getId(),
-                userApp.getPackageName(),
-                userApp.getFirstInstallTime(),
-                userApp.getLastUpdateTime(),
-                false // user app
-            ));
-        }
-        
-        // Save system apps
-        for (AppInfoDto systemApp : appFingerprintDto.getSystemApps()) {
-            appInfoList.add(new DeviceAppInfo(
-                savedAppFingerprint.getId(),
-                systemApp.getPackageName(),
-                systemApp.getFirstInstallTime(),
-                systemApp.getLastUpdateTime(),
-                true // system app
-            ));
-        }
+        // Per-app rows (install and update times) only when enabled
+        appInventoryWriter.submit(appFingerprint, storeAppDetails ? appFingerprintDto : null);
         
-        // Batch save app info
-        appInfoRepository.saveAll(appInfoList);
-        
-        logger.debug("Saved {} user apps and {} system apps for device fingerprint ID: {}", 
+        logger.debug("Queued app fingerprint with {} user apps and {} system apps for device fingerprint ID: {}", 
             appFingerprintDto.getUserAppCount(), appFingerprintDto.getSystemAppCount(), deviceFingerprintId);
     }
     
     /**
-     * Get total count of fraudulent devices
+     * Get total count of fraudulent devices, from the maintained counters
      */
-    @Transactional(readOnly = true)
     public long getFraudulentDeviceCount() {
-        return fingerprintRepository.countByIsFraudulent(true);
+        return deviceCounterService.getGlobalCounters().fraudulentDevices();
     }
     
     /**
-     * Get count of fraudulent devices by organization
+     * Get count of fraudulent devices by organization, from the maintained counters
      */
-    @Transactional(readOnly = true)
     public long getFraudulentDeviceCountByOrganization(String organization) {
-        // This would require joining with Device table in a real implementation
-        // For now, return 0
-        return 0;
+        return deviceCounterService.getOrganizationCounters(organization).fraudulentDevices();
     }
     
     /**
-     * Get recent fraud report count for the specified period
+     * Get recent fraud report count for the specified period, from the daily report counters.
+     * Counted per day, so the period starts at the beginning of its first day.
      */
-    @Transactional(readOnly = true)
     public long getRecentFraudReportCount(String period) {
-        LocalDateTime startDate = getStartDateForPeriod(period);
-        return fingerprintRepository.countByIsFraudulentAndFraudReportedAtAfter(true, startDate);
+        return deviceCounterService.getFraudReportCount(getStartDateForPeriod(period).toLocalDate());
     }
     
     /**
-     * Get recent fraud report count by organization for the specified period
+     * Get recent fraud report count by organization for the specified period.
+     * Counted per day, so the period starts at the beginning of its first day.
      */
-    @Transactional(readOnly = true)
     public long getRecentFraudReportCountByOrganization(String organization, String period) {
-        // This would require joining with Device table in a real implementation
-        // For now, return 0
-        return 0;
+        return deviceCounterService.getFraudReportCount(organization, getStartDateForPeriod(period).toLocalDate());
     }
     
     /**
@@ -585,6 +799,29 @@ public class DeviceFraudDetectionService {
         }).collect(Collectors.toList());
     }
     
+    /**
+     * Get devices queued for review because they are linked to a fraudulent device
+     */
+    @Transactional(readOnly = true)
+    public Page<FraudReviewFlag> getReviewQueue(FraudReviewFlag.ReviewStatus status, Pageable pageable) {
+        return reviewFlagRepository.findByStatusOrderByCreatedAtDesc(status, pageable);
+    }
+    
+    /**
+     * Devices whose stored fingerprint is most similar in hardware and display to
+     * the given device's, scanned over all stored fingerprints in memory.
+     * 
+     * @return Matches, most similar first, or empty if the device has no fingerprint
+     * @throws IllegalStateException If the fingerprint column store is not loaded yet
+     */
+    @Transactional(readOnly = true)
+    public Optional<List<SimilarFingerprint>> findSimilarDevices(String deviceId, double minSimilarity,
+                                                                 int limit, boolean fraudulentOnly) {
+        return fingerprintRepository.findByDeviceId(deviceId)
+            .map(FingerprintSnapshot::from)
+            .map(snapshot -> fingerprintColumnStore.findSimilar(snapshot, minSimilarity, limit, fraudulentOnly));
+    }
+    
     /**
      * Get recent fraud reports by organization
      */
@@ -5,27 +5,36 @@ import com.gradientgeeks.aegis.sfe.dto.DeviceRegistrationResponse;
 import com.gradientgeeks.aegis.sfe.dto.HardwareFingerprintDto;
 import com.gradientgeeks.aegis.sfe.entity.Device;
 import com.gradientgeeks.aegis.sfe.entity.DeviceFingerprint;
-import com.gradientgeeks.aegis.sfe.entity.RegistrationKey;
 import com.gradientgeeks.aegis.sfe.repository.DeviceFingerprintRepository;
 import com.gradientgeeks.aegis.sfe.repository.DeviceRepository;
-import com.gradientgeeks.aegis.sfe.repository.RegistrationKeyRepository;
 import com.gradientgeeks.aegis.sfe.dto.RegistrationKeyResponse;
+import com.gradientgeeks.aegis.sfe.service.DeviceCounterService.DeviceCounters;
+import com.gradientgeeks.aegis.sfe.service.RegistrationKeyCache.CachedRegistrationKey;
+import com.gradientgeeks.aegis.sfe.util.KeysetCursor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.util.Optional;
 
 import jakarta.persistence.criteria.Predicate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -36,30 +45,57 @@ public class DeviceRegistrationService {
     
     private final DeviceRepository deviceRepository;
     private final DeviceFingerprintRepository fingerprintRepository;
-    private final RegistrationKeyRepository registrationKeyRepository;
     private final CryptographyService cryptographyService;
     private final IntegrityValidationService integrityValidationService;
     private final DeviceFraudDetectionService fraudDetectionService;
     private final RegistrationKeyService registrationKeyService;
+    private final LiveEventHub liveEventHub;
+    private final FraudLinkageGraph fraudLinkageGraph;
+    private final ExistenceFilterService existenceFilterService;
+    private final RegistrationKeyCache registrationKeyCache;
+    private final DeviceSecretVault deviceSecretVault;
+    private final DeviceCounterService deviceCounterService;
+    private final TransactionTemplate transaction;
+    private final TransactionTemplate readOnlyTransaction;
     
     @Autowired
     public DeviceRegistrationService(
             DeviceRepository deviceRepository,
             DeviceFingerprintRepository fingerprintRepository,
-            RegistrationKeyRepository registrationKeyRepository,
             CryptographyService cryptographyService,
             IntegrityValidationService integrityValidationService,
             DeviceFraudDetectionService fraudDetectionService,
-            RegistrationKeyService registrationKeyService) {
+            RegistrationKeyService registrationKeyService,
+            LiveEventHub liveEventHub,
+            FraudLinkageGraph fraudLinkageGraph,
+            ExistenceFilterService existenceFilterService,
+            RegistrationKeyCache registrationKeyCache,
+            DeviceSecretVault deviceSecretVault,
+            DeviceCounterService deviceCounterService,
+            PlatformTransactionManager transactionManager) {
         this.deviceRepository = deviceRepository;
         this.fingerprintRepository = fingerprintRepository;
-        this.registrationKeyRepository = registrationKeyRepository;
         this.cryptographyService = cryptographyService;
         this.integrityValidationService = integrityValidationService;
         this.fraudDetectionService = fraudDetectionService;
         this.registrationKeyService = registrationKeyService;
+        this.liveEventHub = liveEventHub;
+        this.fraudLinkageGraph = fraudLinkageGraph;
+        this.existenceFilterService = existenceFilterService;
+        this.registrationKeyCache = registrationKeyCache;
+        this.deviceSecretVault = deviceSecretVault;
+        this.deviceCounterService = deviceCounterService;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
     }
     
+    /**
+     * Registers a device. Runs without a surrounding transaction: fraud analysis reads
+     * on its own worker threads, so the registration holds no connection while it
+     * waits, and all writes happen afterwards in one transaction.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public DeviceRegistrationResponse registerDevice(DeviceRegistrationRequest request) {
         logger.info("Starting device registration for clientId: {}", request.getClientId());
         
@@ -69,7 +105,8 @@ public class DeviceRegistrationService {
                 return DeviceRegistrationResponse.error("Integrity validation failed");
             }
             
-            Optional<RegistrationKey> registrationKeyOpt = registrationKeyRepository
+            // Served from memory; revocations and regenerations reach every node's cache
+            Optional<CachedRegistrationKey> registrationKeyOpt = registrationKeyCache
                     .findActiveByRegistrationKey(request.getRegistrationKey());
             
             if (registrationKeyOpt.isEmpty()) {
@@ -77,11 +114,11 @@ public class DeviceRegistrationService {
                 return DeviceRegistrationResponse.error("Invalid registration key");
             }
             
-            RegistrationKey registrationKey = registrationKeyOpt.get();
+            CachedRegistrationKey registrationKey = registrationKeyOpt.get();
             
-            if (!registrationKey.getClientId().equals(request.getClientId())) {
+            if (!registrationKey.clientId().equals(request.getClientId())) {
                 logger.warn("Client ID mismatch for registration key. Expected: {}, Got: {}", 
-                    registrationKey.getClientId(), request.getClientId());
+                    registrationKey.clientId(), request.getClientId());
                 return DeviceRegistrationResponse.error("Client ID mismatch");
             }
             
@@ -99,6 +136,13 @@ public class DeviceRegistrationService {
             // First check if a device with this fingerprint already exists
             // Use hardware hash for consistent device identification across app reinstalls
             String hardwareHash = request.getDeviceFingerprint().getHardware().getHash();
+            
+            // App reinstall on a known device: one query and one update instead of the full path
+            Optional<DeviceRegistrationResponse> reRegistration = transaction.execute(
+                status -> tryFastReRegistration(request, hardwareHash));
+            if (reRegistration != null && reRegistration.isPresent()) {
+                return reRegistration.get();
+            }
             logger.info("Checking for existing device with hardware hash: {}", hardwareHash);
             
             // Log detailed hardware fingerprint information for device identification debugging
@@ -110,131 +154,259 @@ public class DeviceRegistrationService {
                 hardware.getBoard(),
                 hardware.getBuildFingerprint());
             
-            // Look for existing device fingerprint by hardware hash
-            Optional<DeviceFingerprint> existingFingerprint = fingerprintRepository.findByHardwareHash(hardwareHash);
+            // Look for existing device fingerprint by hardware hash. Always queried: a miss that is
+            // only late to reach this node would insert a duplicate fingerprint row
+            Optional<DeviceFingerprint> existingFingerprint = readOnlyTransaction.execute(
+                status -> fingerprintRepository.findByHardwareHash(hardwareHash));
             String deviceId;
             
             if (existingFingerprint.isPresent()) {
                 // Device fingerprint already exists - reuse the existing device ID
                 deviceId = existingFingerprint.get().getDeviceId();
                 logger.info("Found existing device with ID: {} for hardware hash: {}", deviceId, hardwareHash);
-                
-                // Update the composite hash if it changed (due to network changes etc)
-                if (!existingFingerprint.get().getCompositeHash().equals(request.getDeviceFingerprint().getCompositeHash())) {
-                    logger.info("Updating composite hash for device: {} from {} to {}", 
-                        deviceId, 
-                        existingFingerprint.get().getCompositeHash(), 
-                        request.getDeviceFingerprint().getCompositeHash());
-                    existingFingerprint.get().setCompositeHash(request.getDeviceFingerprint().getCompositeHash());
-                    existingFingerprint.get().setUpdatedAt(LocalDateTime.now());
-                    fingerprintRepository.save(existingFingerprint.get());
-                }
             } else {
                 // No existing device found - generate new device ID from hardware hash only
                 deviceId = cryptographyService.generatePersistentDeviceIdFromHardware(hardwareHash);
                 logger.info("No existing device found, generated new device ID: {} for hardware hash: {}", deviceId, hardwareHash);
             }
             
-            // Analyze device fingerprint for fraud indicators
+            // Analyze device fingerprint for fraud indicators. A known fingerprint is judged as an exact
+            // match, as its composite hash is updated to the incoming one below
             logger.info("Performing fraud detection for device: {}", deviceId);
             FraudDetectionResult fraudResult = fraudDetectionService.analyzeFingerprint(
-                deviceId, request.getDeviceFingerprint());
+                deviceId, request.getDeviceFingerprint(), existingFingerprint.orElse(null));
             
             if (fraudResult.isBlocked()) {
                 logger.warn("Device registration blocked due to fraud detection - Device: {}, Reason: {}, Similarity: {}", 
                     deviceId, fraudResult.getReason(), fraudResult.getSimilarityScore());
+                publishFraudEvent(LiveEventHub.EVENT_FRAUD_BLOCK, registrationKey, deviceId, fraudResult);
                 return DeviceRegistrationResponse.error("Device registration denied: " + fraudResult.getReason());
             }
             
             if (fraudResult.isFlagged()) {
                 logger.warn("Device flagged for review - Device: {}, Reason: {}, Similarity: {}", 
                     deviceId, fraudResult.getReason(), fraudResult.getSimilarityScore());
+                publishFraudEvent(LiveEventHub.EVENT_FRAUD_FLAG, registrationKey, deviceId, fraudResult);
                 // Continue with registration but log for manual review
             }
             
-            // Check if any device with this deviceId is blocked
-            List<Device> devicesWithSameId = deviceRepository.findAllByDeviceId(deviceId);
-            for (Device device : devicesWithSameId) {
-                if (device.getStatus() == Device.DeviceStatus.TEMPORARILY_BLOCKED || 
-                    device.getStatus() == Device.DeviceStatus.PERMANENTLY_BLOCKED) {
-                    logger.warn("Blocked device attempting to register - Device: {}, Status: {}, Bank: {}", 
-                        deviceId, device.getStatus(), request.getClientId());
-                    return DeviceRegistrationResponse.error(
-                        "Device is blocked and cannot be registered with any banking app. Status: " + device.getStatus()
-                    );
-                }
-            }
+            String registeredDeviceId = deviceId;
+            return transaction.execute(status -> completeRegistration(
+                request, registeredDeviceId, hardwareHash, existingFingerprint));
             
-            // Check if this specific device-client combination already exists
-            Optional<Device> existingDevice = deviceRepository.findByDeviceIdAndClientId(deviceId, request.getClientId());
-            Device savedDevice;
-            
-            if (existingDevice.isPresent()) {
-                // Same device re-registering with same bank app
-                logger.info("Device re-registering with same bank app: {} for client: {}", deviceId, request.getClientId());
-                savedDevice = existingDevice.get();
-                
-                if (savedDevice.getStatus() == Device.DeviceStatus.ACTIVE) {
-                    savedDevice.setLastSeen(LocalDateTime.now());
-                    savedDevice.setIsActive(true);
-                    // Generate new secret key for security
-                    String newSecretKey = cryptographyService.generateSecretKey();
-                    savedDevice.setSecretKey(newSecretKey);
-                    savedDevice.setUpdatedAt(LocalDateTime.now());
-                    savedDevice = deviceRepository.save(savedDevice);
-                    logger.info("Active device re-registered: {} with client: {}", deviceId, request.getClientId());
-                } else {
-                    logger.warn("Device in unexpected status attempting to re-register - Device: {}, Status: {}", 
-                        deviceId, savedDevice.getStatus());
-                    return DeviceRegistrationResponse.error(
-                        "Device cannot be re-registered in current status: " + savedDevice.getStatus()
-                    );
-                }
-            } else {
-                // New registration (either new device or existing device with new bank)
-                String secretKey = cryptographyService.generateSecretKey();
-                Device device = new Device(deviceId, request.getClientId(), secretKey);
-                device.setLastSeen(LocalDateTime.now());
-                savedDevice = deviceRepository.save(device);
-                logger.info("Device registered: {} with client: {}", deviceId, request.getClientId());
+        } catch (Exception e) {
+            logger.error("Error during device registration for clientId: {}", request.getClientId(), e);
+            return DeviceRegistrationResponse.error("Internal server error during registration");
+        }
+    }
+    
+    /**
+     * Writes of a registration that passed fraud analysis, in one transaction
+     */
+    private DeviceRegistrationResponse completeRegistration(DeviceRegistrationRequest request, String deviceId,
+                                                            String hardwareHash,
+                                                            Optional<DeviceFingerprint> existingFingerprint) {
+        // Update the composite hash if it changed (due to network changes etc). Re-read, so a
+        // concurrent fraud report on the fingerprint is not overwritten
+        if (existingFingerprint.isPresent()
+                && !existingFingerprint.get().getCompositeHash().equals(request.getDeviceFingerprint().getCompositeHash())) {
+            fingerprintRepository.findById(existingFingerprint.get().getId()).ifPresent(fingerprint -> {
+                logger.info("Updating composite hash for device: {} from {} to {}", 
+                    deviceId, 
+                    fingerprint.getCompositeHash(), 
+                    request.getDeviceFingerprint().getCompositeHash());
+                fingerprint.setCompositeHash(request.getDeviceFingerprint().getCompositeHash());
+                fingerprint.setUpdatedAt(LocalDateTime.now());
+                fingerprintRepository.save(fingerprint);
+                existenceFilterService.addFingerprint(request.getDeviceFingerprint().getCompositeHash());
+            });
+        }
+        
+        // Check if any device with this deviceId is blocked
+        List<Device> devicesWithSameId = deviceRepository.findAllByDeviceId(deviceId);
+        for (Device device : devicesWithSameId) {
+            if (device.getStatus() == Device.DeviceStatus.TEMPORARILY_BLOCKED || 
+                device.getStatus() == Device.DeviceStatus.PERMANENTLY_BLOCKED) {
+                logger.warn("Blocked device attempting to register - Device: {}, Status: {}, Bank: {}", 
+                    deviceId, device.getStatus(), request.getClientId());
+                return DeviceRegistrationResponse.error(
+                    "Device is blocked and cannot be registered with any banking app. Status: " + device.getStatus()
+                );
             }
-            
-            // Step 7: Save or update device fingerprint for future fraud detection
-            // Only save if no existing fingerprint was found earlier
-            if (!existingFingerprint.isPresent()) {
-                try {
-                    fraudDetectionService.saveFingerprint(savedDevice.getDeviceId(), request.getDeviceFingerprint());
-                    logger.info("Device fingerprint saved successfully for device: {}", savedDevice.getDeviceId());
-                } catch (Exception e) {
-                    logger.error("Failed to save device fingerprint for device: {}", savedDevice.getDeviceId(), e);
-                    // Don't fail registration if fingerprint save fails, but log for investigation
+        }
+        
+        // Check if this specific device-client combination already exists
+        Optional<Device> existingDevice = deviceRepository.findByDeviceIdAndClientId(deviceId, request.getClientId());
+        Device savedDevice;
+        byte[] secretKey;
+        
+        if (existingDevice.isPresent()) {
+            // Same device re-registering with same bank app
+            logger.info("Device re-registering with same bank app: {} for client: {}", deviceId, request.getClientId());
+            savedDevice = existingDevice.get();
+            
+            if (savedDevice.getStatus() == Device.DeviceStatus.ACTIVE) {
+                if (!Boolean.TRUE.equals(savedDevice.getIsActive())) {
+                    deviceCounterService.applyAfterCommit(Map.of(request.getClientId(),
+                        new DeviceCounters(0L, 1L, 0L, 0L)));
                 }
+                savedDevice.setLastSeen(LocalDateTime.now());
+                savedDevice.setIsActive(true);
+                // Generate new secret key for security
+                secretKey = cryptographyService.generateSecretKeyBytes();
+                savedDevice.setSecretKey(deviceSecretVault.wrap(deviceId, secretKey));
+                savedDevice.setUpdatedAt(LocalDateTime.now());
+                savedDevice = deviceRepository.save(savedDevice);
+                logger.info("Active device re-registered: {} with client: {}", deviceId, request.getClientId());
             } else {
-                logger.debug("Fingerprint already exists for device: {}, skipping save", savedDevice.getDeviceId());
+                logger.warn("Device in unexpected status attempting to re-register - Device: {}, Status: {}", 
+                    deviceId, savedDevice.getStatus());
+                return DeviceRegistrationResponse.error(
+                    "Device cannot be re-registered in current status: " + savedDevice.getStatus()
+                );
             }
-            
-            logger.info("Device registered successfully with deviceId: {} for clientId: {}", 
-                deviceId, request.getClientId());
-            
-            // Encode the secret key as Base64 for the response
-            // The Android SDK expects the secret key to be Base64 encoded
-            String base64SecretKey = java.util.Base64.getEncoder()
-                .encodeToString(savedDevice.getSecretKey().getBytes(java.nio.charset.StandardCharsets.UTF_8));
-            
-            return DeviceRegistrationResponse.success(savedDevice.getDeviceId(), base64SecretKey);
-            
-        } catch (Exception e) {
-            logger.error("Error during device registration for clientId: {}", request.getClientId(), e);
-            return DeviceRegistrationResponse.error("Internal server error during registration");
+        } else {
+            // New registration (either new device or existing device with new bank)
+            secretKey = cryptographyService.generateSecretKeyBytes();
+            Device device = new Device(deviceId, request.getClientId(), deviceSecretVault.wrap(deviceId, secretKey));
+            device.setLastSeen(LocalDateTime.now());
+            savedDevice = deviceRepository.save(device);
+            existenceFilterService.addDevice(deviceId);
+            deviceCounterService.recordRegistration(request.getClientId());
+            logger.info("Device registered: {} with client: {}", deviceId, request.getClientId());
+        }
+        
+        // Step 7: Save or update device fingerprint for future fraud detection
+        // Only save if no existing fingerprint was found earlier
+        if (!existingFingerprint.isPresent()) {
+            try {
+                fraudDetectionService.saveFingerprint(savedDevice.getDeviceId(), request.getDeviceFingerprint());
+                logger.info("Device fingerprint saved successfully for device: {}", savedDevice.getDeviceId());
+            } catch (Exception e) {
+                logger.error("Failed to save device fingerprint for device: {}", savedDevice.getDeviceId(), e);
+                // Don't fail registration if fingerprint save fails, but log for investigation
+            }
+        } else {
+            logger.debug("Fingerprint already exists for device: {}, skipping save", savedDevice.getDeviceId());
         }
+        
+        fraudLinkageGraph.linkRegistration(savedDevice.getDeviceId(), request.getClientId(),
+            request.getDeviceFingerprint().getCompositeHash(), hardwareHash);
+        
+        logger.info("Device registered successfully with deviceId: {} for clientId: {}", 
+            deviceId, request.getClientId());
+        
+        return DeviceRegistrationResponse.success(savedDevice.getDeviceId(), encodeSecretKey(secretKey));
     }
     
-    private boolean validateIntegrityToken(String integrityToken) {
-        if (integrityToken == null || integrityToken.trim().isEmpty()) {
-            logger.debug("No integrity token provided - proceeding for hackathon demo");
-            return true;
+    /**
+     * Fast path for a known device re-registering with a bank it is already active
+     * with, typically after an app reinstall. The fingerprint, every device row of
+     * the device and their statuses come from one joined query.
+     * 
+     * It only applies when the stored fingerprint is not fraudulent and its composite
+     * hash is unchanged. Fraud analysis would then always stop at the exact match
+     * ("Same device re-registration"), so the other stages are skipped.
+     * 
+     * @return The registration response, or empty when the full path has to run
+     */
+    private Optional<DeviceRegistrationResponse> tryFastReRegistration(DeviceRegistrationRequest request,
+                                                                       String hardwareHash) {
+        List<Object[]> rows = fingerprintRepository.findRegistrationStateByHardwareHash(hardwareHash);
+        if (rows.isEmpty()) {
+            return Optional.empty();
+        }
+        
+        Object[] first = rows.get(0);
+        Long fingerprintId = (Long) first[0];
+        String deviceId = (String) first[1];
+        String compositeHash = (String) first[2];
+        if (Boolean.TRUE.equals(first[3])
+                || !compositeHash.equals(request.getDeviceFingerprint().getCompositeHash())) {
+            return Optional.empty();
+        }
+        
+        boolean registeredWithClient = false;
+        boolean wasActive = false;
+        for (Object[] row : rows) {
+            if (!fingerprintId.equals(row[0]) || row[4] == null) {
+                continue;
+            }
+            Device.DeviceStatus status = (Device.DeviceStatus) row[5];
+            if (status == Device.DeviceStatus.TEMPORARILY_BLOCKED || status == Device.DeviceStatus.PERMANENTLY_BLOCKED) {
+                logger.warn("Blocked device attempting to register - Device: {}, Status: {}, Bank: {}", 
+                    deviceId, status, request.getClientId());
+                return Optional.of(DeviceRegistrationResponse.error(
+                    "Device is blocked and cannot be registered with any banking app. Status: " + status
+                ));
+            }
+            if (request.getClientId().equals(row[4])) {
+                registeredWithClient = true;
+                wasActive = Boolean.TRUE.equals(row[6]);
+            }
+        }
+        if (!registeredWithClient) {
+            return Optional.empty();
+        }
+        
+        byte[] secretKey = cryptographyService.generateSecretKeyBytes();
+        int updated = deviceRepository.reRegisterDevice(deviceId, request.getClientId(),
+                                                        deviceSecretVault.wrap(deviceId, secretKey),
+                                                        LocalDateTime.now(), Device.DeviceStatus.ACTIVE);
+        if (updated == 0) {
+            // Status changed since the read; the full path reports it
+            return Optional.empty();
+        }
+        if (!wasActive) {
+            // Reinstall after a deactivation reactivates the device
+            deviceCounterService.applyAfterCommit(Map.of(request.getClientId(),
+                new DeviceCounters(0L, 1L, 0L, 0L)));
+        }
+        
+        fraudLinkageGraph.linkRegistration(deviceId, request.getClientId(), compositeHash, hardwareHash);
+        logger.info("Known device re-registered via fast path: {} with client: {}", deviceId, request.getClientId());
+        return Optional.of(DeviceRegistrationResponse.success(deviceId, encodeSecretKey(secretKey)));
+    }
+    
+    /**
+     * Encode the secret key as Base64 for the response.
+     * The Android SDK decodes it and uses the raw bytes as the HMAC key.
+     */
+    private static String encodeSecretKey(byte[] secretKey) {
+        return java.util.Base64.getEncoder().encodeToString(secretKey);
+    }
+    
+    private void publishFraudEvent(String type, CachedRegistrationKey registrationKey, String deviceId,
+                                   FraudDetectionResult fraudResult) {
+        Map<String, Object> event = new HashMap<>();
+        event.put("deviceId", deviceId);
+        event.put("clientId", registrationKey.clientId());
+        event.put("reason", fraudResult.getReason());
+        event.put("similarityScore", fraudResult.getSimilarityScore());
+        event.put("timestamp", LocalDateTime.now());
+        liveEventHub.publish(registrationKey.organization(), type, event);
+    }
+    
+    /**
+     * Notifies the organizations a device is registered with about a status change
+     */
+    private void publishDeviceStatusEvent(List<Device> devices, String deviceId, String status, String reason) {
+        Set<String> organizations = new HashSet<>();
+        for (Device device : devices) {
+            registrationKeyCache.findByClientId(device.getClientId())
+                .ifPresent(key -> organizations.add(key.organization()));
         }
         
+        Map<String, Object> event = new HashMap<>();
+        event.put("deviceId", deviceId);
+        event.put("status", status);
+        event.put("reason", reason);
+        event.put("timestamp", LocalDateTime.now());
+        liveEventHub.publish(organizations, LiveEventHub.EVENT_DEVICE_STATUS, event);
+    }
+    
+    private boolean validateIntegrityToken(String integrityToken) {
+        // Missing tokens are only accepted while verification is disabled
         return integrityValidationService.validatePlayIntegrityToken(integrityToken);
     }
     
@@ -254,7 +426,10 @@ public class DeviceRegistrationService {
     
     public void deactivateDevice(String deviceId, String clientId) {
         logger.info("Deactivating device: {} for client: {}", deviceId, clientId);
-        deviceRepository.deactivateDevice(deviceId, clientId);
+        if (deviceRepository.deactivateDevice(deviceId, clientId) > 0) {
+            deviceCounterService.applyAfterCommit(Map.of(clientId,
+                new DeviceCounters(0L, -1L, 0L, 0L)));
+        }
     }
     
     /**
@@ -275,8 +450,17 @@ public class DeviceRegistrationService {
                 deactivateDevice(device.getDeviceId(), device.getClientId());
             }
             
-            // Mark fingerprint as fraudulent for future detection
-            return fraudDetectionService.markDeviceAsFraudulent(deviceId, reason);
+            // Mark fingerprint as fraudulent for future detection; only a first report is counted
+            boolean newlyFraudulent = fingerprintRepository.existsNonFraudulentByDeviceId(deviceId);
+            boolean marked = fraudDetectionService.markDeviceAsFraudulent(deviceId, reason);
+            if (marked) {
+                if (newlyFraudulent) {
+                    deviceCounterService.recordFraudReport(
+                        devices.stream().map(Device::getClientId).collect(Collectors.toSet()));
+                }
+                publishDeviceStatusEvent(devices, deviceId, "FRAUDULENT", reason);
+            }
+            return marked;
             
         } catch (Exception e) {
             logger.error("Error marking device as fraudulent: {}", deviceId, e);
@@ -329,6 +513,24 @@ public class DeviceRegistrationService {
      */
     @Transactional(readOnly = true)
     public Page<Device> searchDevices(String deviceId, String clientId, String status, Pageable pageable) {
+        return deviceRepository.findAll(buildSearchSpecification(deviceId, clientId, status), pageable);
+    }
+    
+    /**
+     * Keyset variant of {@link #searchDevices}: returns up to {@code limit + 1} devices
+     * ordered by (createdAt, deviceId, clientId) descending, starting after the cursor.
+     * The extra row only signals that another page exists. No count query is issued.
+     * 
+     * @param cursor Position after the last device of the previous page, or null for the first page
+     */
+    @Transactional(readOnly = true)
+    public List<Device> searchDevicesAfter(String deviceId, String clientId, String status,
+                                           KeysetCursor cursor, int limit) {
+        Specification<Device> spec = buildSearchSpecification(deviceId, clientId, status);
+        return findDevicesAfter(spec, cursor, limit);
+    }
+    
+    private Specification<Device> buildSearchSpecification(String deviceId, String clientId, String status) {
         Specification<Device> spec = (root, query, cb) -> cb.conjunction();
         
         if (deviceId != null && !deviceId.trim().isEmpty()) {
@@ -348,7 +550,33 @@ public class DeviceRegistrationService {
             }
         }
         
-        return deviceRepository.findAll(spec, pageable);
+        return spec;
+    }
+    
+    private List<Device> findDevicesAfter(Specification<Device> spec, KeysetCursor cursor, int limit) {
+        if (cursor != null) {
+            LocalDateTime cursorCreatedAt = cursor.getCreatedAt();
+            String cursorDeviceId = cursor.getKey(0);
+            String cursorClientId = cursor.getKey(1);
+            
+            // (createdAt, deviceId, clientId) < (cursor) in descending order
+            spec = spec.and((root, query, cb) -> cb.or(
+                cb.lessThan(root.get("createdAt"), cursorCreatedAt),
+                cb.and(
+                    cb.equal(root.get("createdAt"), cursorCreatedAt),
+                    cb.or(
+                        cb.lessThan(root.get("deviceId"), cursorDeviceId),
+                        cb.and(
+                            cb.equal(root.get("deviceId"), cursorDeviceId),
+                            cb.lessThan(root.get("clientId"), cursorClientId)
+                        )
+                    )
+                )
+            ));
+        }
+        
+        Sort keysetSort = Sort.by(Sort.Direction.DESC, "createdAt", "deviceId", "clientId");
+        return deviceRepository.findBy(spec, query -> query.sortBy(keysetSort).limit(limit + 1).all());
     }
     
     /**
@@ -379,26 +607,22 @@ public class DeviceRegistrationService {
                 return false;
             }
             
-            // Update status for all devices with this deviceId (across all banks)
+            // Update status for all devices with this deviceId (across all banks) in one statement;
+            // blocking deactivates the device, unblocking reactivates it
+            boolean isActive = status == Device.DeviceStatus.ACTIVE;
+            deviceRepository.updateStatusByDeviceIds(List.of(deviceId), status, isActive, LocalDateTime.now());
+            
+            Map<String, DeviceCounters> counterDeltas = new HashMap<>();
             for (Device device : devices) {
-                device.setStatus(status);
-                device.setUpdatedAt(LocalDateTime.now());
-                
-                // If blocking, deactivate the device
-                if (status == Device.DeviceStatus.TEMPORARILY_BLOCKED || 
-                    status == Device.DeviceStatus.PERMANENTLY_BLOCKED) {
-                    device.setIsActive(false);
-                } else if (status == Device.DeviceStatus.ACTIVE) {
-                    device.setIsActive(true);
-                }
-                
-                deviceRepository.save(device);
-                logger.info("Device status updated for bank: {} - Device: {} -> {}", 
-                    device.getClientId(), deviceId, newStatus);
+                counterDeltas.merge(device.getClientId(), DeviceCounters.statusChange(
+                    device.getStatus(), Boolean.TRUE.equals(device.getIsActive()), status, isActive),
+                    DeviceCounters::plus);
             }
+            deviceCounterService.applyAfterCommit(counterDeltas);
             
             logger.info("Device status updated across all {} banks: {} -> {}", 
                 devices.size(), deviceId, newStatus);
+            publishDeviceStatusEvent(devices, deviceId, status.name(), reason);
             
             return true;
             
@@ -482,19 +706,11 @@ public class DeviceRegistrationService {
     }
     
     /**
-     * Get total device count for a specific organization
+     * Get total device count for a specific organization, from the maintained counters
      */
     @Transactional(readOnly = true)
     public long getTotalDeviceCountByOrganization(String organization) {
-        List<String> organizationClientIds = getClientIdsByOrganization(organization);
-        if (organizationClientIds.isEmpty()) {
-            return 0;
-        }
-        
-        // Count devices for all client IDs of the organization
-        return organizationClientIds.stream()
-            .mapToLong(clientId -> deviceRepository.countByClientId(clientId))
-            .sum();
+        return deviceCounterService.getOrganizationCounters(organization).totalDevices();
     }
     
     /**
@@ -509,32 +725,19 @@ public class DeviceRegistrationService {
     }
     
     /**
-     * Get blocked device count for a specific organization
+     * Get blocked device count for a specific organization, from the maintained counters
      */
     @Transactional(readOnly = true)
     public long getBlockedDeviceCountByOrganization(String organization) {
-        List<String> organizationClientIds = getClientIdsByOrganization(organization);
-        if (organizationClientIds.isEmpty()) {
-            return 0;
-        }
-        
-        // Count blocked devices for all client IDs of the organization
-        return organizationClientIds.stream()
-            .mapToLong(clientId -> deviceRepository.countByClientIdAndStatusIn(clientId, List.of(
-                Device.DeviceStatus.TEMPORARILY_BLOCKED,
-                Device.DeviceStatus.PERMANENTLY_BLOCKED
-            )))
-            .sum();
+        return deviceCounterService.getOrganizationCounters(organization).blockedDevices();
     }
     
     /**
-     * Get device count breakdown by organization
+     * Get device count breakdown by organization, from the maintained counters
      */
     @Transactional(readOnly = true)
-    public List<Map<String, Object>> getDeviceCountByOrganization() {
-        // This would typically be implemented with a custom query
-        // For now, return an empty list
-        return new ArrayList<>();
+    public Map<String, Map<String, Long>> getDeviceCountByOrganization() {
+        return deviceCounterService.getCountersByOrganization();
     }
     
     /**
@@ -564,7 +767,65 @@ public class DeviceRegistrationService {
             return Page.empty(pageable);
         }
         
-        Specification<Device> spec = (root, query, criteriaBuilder) -> {
+        Specification<Device> spec = buildOrganizationSearchSpecification(deviceId, organizationClientIds, status);
+        return deviceRepository.findAll(spec, pageable);
+    }
+    
+    /**
+     * Keyset variant of {@link #searchDevicesByOrganization}.
+     * 
+     * @see #searchDevicesAfter(String, String, String, KeysetCursor, int)
+     */
+    @Transactional(readOnly = true)
+    public List<Device> searchDevicesByOrganizationAfter(String deviceId, String organization, String status,
+                                                         KeysetCursor cursor, int limit) {
+        List<String> organizationClientIds = getClientIdsByOrganization(organization);
+        
+        if (organizationClientIds.isEmpty()) {
+            logger.info("No client IDs found for organization: {}", organization);
+            return List.of();
+        }
+        
+        Specification<Device> spec = buildOrganizationSearchSpecification(deviceId, organizationClientIds, status);
+        return findDevicesAfter(spec, cursor, limit);
+    }
+    
+    /**
+     * Counts devices matching a search. Only used when a caller explicitly asks for totals.
+     */
+    @Transactional(readOnly = true)
+    public long countDevices(String deviceId, String clientId, String status) {
+        return deviceRepository.count(buildSearchSpecification(deviceId, clientId, status));
+    }
+    
+    /**
+     * Counts an organization's devices matching a search
+     */
+    @Transactional(readOnly = true)
+    public long countDevicesByOrganization(String deviceId, String organization, String status) {
+        List<String> organizationClientIds = getClientIdsByOrganization(organization);
+        if (organizationClientIds.isEmpty()) {
+            return 0;
+        }
+        return deviceRepository.count(buildOrganizationSearchSpecification(deviceId, organizationClientIds, status));
+    }
+    
+    /**
+     * Gets fingerprints for a batch of devices keyed by device ID
+     */
+    @Transactional(readOnly = true)
+    public Map<String, DeviceFingerprint> findFingerprintsByDeviceIds(Collection<String> deviceIds) {
+        if (deviceIds.isEmpty()) {
+            return Map.of();
+        }
+        return fingerprintRepository.findByDeviceIdIn(deviceIds).stream()
+                .collect(Collectors.toMap(DeviceFingerprint::getDeviceId, fingerprint -> fingerprint,
+                                          (first, second) -> first));
+    }
+    
+    private Specification<Device> buildOrganizationSearchSpecification(String deviceId, List<String> organizationClientIds,
+                                                                       String status) {
+        return (root, query, criteriaBuilder) -> {
             List<Predicate> predicates = new ArrayList<>();
             
             // Filter by organization's client IDs
@@ -590,7 +851,5 @@ public class DeviceRegistrationService {
             
             return criteriaBuilder.and(predicates.toArray(new Predicate[0]));
         };
-        
-        return deviceRepository.findAll(spec, pageable);
     }
-}
\ No newline at end of file
+}
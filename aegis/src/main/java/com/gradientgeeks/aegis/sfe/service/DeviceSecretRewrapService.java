@@ -0,0 +1,174 @@
+package com.gradientgeeks.aegis.sfe.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background job that re-wraps every device secret not yet wrapped with the active
+ * DEK: secrets wrapped with an older DEK after a rotation, and legacy plaintext
+ * secrets.
+ * 
+ * Devices are read in primary-key order in small batches with a pause between
+ * batches, so the job does not compete with registrations and validations. Each
+ * update only applies if the stored secret is unchanged, so a device that
+ * re-registers meanwhile keeps its new secret. The job is idempotent and can be
+ * started again after a failure or restart.
+ */
+@Service
+public class DeviceSecretRewrapService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(DeviceSecretRewrapService.class);
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final DeviceSecretVault deviceSecretVault;
+    private final ExecutorService jobExecutor;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong rewrapped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+    private volatile String targetDekId;
+    private volatile String errorMessage;
+    
+    @Value("${aegis.secrets.rewrap.batch-size:500}")
+    private int batchSize;
+    
+    @Value("${aegis.secrets.rewrap.pause-ms:200}")
+    private long pauseMs;
+    
+    @Autowired
+    public DeviceSecretRewrapService(JdbcTemplate jdbcTemplate, DeviceSecretVault deviceSecretVault) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.deviceSecretVault = deviceSecretVault;
+        this.jobExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "device-secret-rewrap");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+    }
+    
+    /**
+     * Starts re-wrapping in the background
+     * 
+     * @throws IllegalStateException If a job is already running on this node
+     */
+    public synchronized Map<String, Object> startRewrap() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A re-wrap job is already running");
+        }
+        scanned.set(0L);
+        rewrapped.set(0L);
+        failed.set(0L);
+        startedAt = LocalDateTime.now();
+        finishedAt = null;
+        errorMessage = null;
+        targetDekId = deviceSecretVault.getActiveDekId();
+        logger.info("Started re-wrapping device secrets with DEK {}", targetDekId);
+        jobExecutor.submit(this::run);
+        return getStatus();
+    }
+    
+    /**
+     * Progress of the current or last job on this node
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("running", running.get());
+        status.put("activeDekId", deviceSecretVault.getActiveDekId());
+        status.put("targetDekId", targetDekId);
+        status.put("scanned", scanned.get());
+        status.put("rewrapped", rewrapped.get());
+        status.put("failed", failed.get());
+        status.put("startedAt", startedAt);
+        status.put("finishedAt", finishedAt);
+        status.put("errorMessage", errorMessage);
+        return status;
+    }
+    
+    private void run() {
+        String lastDeviceId = "";
+        String lastClientId = "";
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                    "SELECT device_id, client_id, secret_key FROM devices " +
+                    "WHERE (device_id, client_id) > (?, ?) ORDER BY device_id, client_id LIMIT ?",
+                    lastDeviceId, lastClientId, batchSize);
+                if (rows.isEmpty()) {
+                    break;
+                }
+                
+                List<Object[]> updates = new ArrayList<>();
+                for (Map<String, Object> row : rows) {
+                    String deviceId = (String) row.get("device_id");
+                    String secretKey = (String) row.get("secret_key");
+                    if (!deviceSecretVault.isWrappedWithActiveKey(secretKey)) {
+                        try {
+                            byte[] secret = deviceSecretVault.unwrap(deviceId, secretKey);
+                            updates.add(new Object[] {
+                                deviceSecretVault.wrap(deviceId, secret), deviceId, row.get("client_id"), secretKey
+                            });
+                        } catch (RuntimeException e) {
+                            // e.g. a DEK missing from the keystore; the row keeps its secret
+                            failed.incrementAndGet();
+                            logger.warn("Skipping device secret that could not be re-wrapped - Device: {}, Client: {}",
+                                       deviceId, row.get("client_id"), e);
+                        }
+                    }
+                    lastDeviceId = deviceId;
+                    lastClientId = (String) row.get("client_id");
+                }
+                
+                if (!updates.isEmpty()) {
+                    int[] counts = jdbcTemplate.batchUpdate(
+                        "UPDATE devices SET secret_key = ? WHERE device_id = ? AND client_id = ? AND secret_key = ?",
+                        updates);
+                    for (int count : counts) {
+                        // Drivers may report SUCCESS_NO_INFO (-2) for batched statements
+                        if (count != 0) {
+                            rewrapped.incrementAndGet();
+                        }
+                    }
+                }
+                scanned.addAndGet(rows.size());
+                
+                if (rows.size() < batchSize) {
+                    break;
+                }
+                Thread.sleep(pauseMs);
+            }
+            logger.info("Re-wrapped {} of {} device secrets with DEK {}, {} failed",
+                       rewrapped.get(), scanned.get(), targetDekId, failed.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            errorMessage = "Interrupted";
+        } catch (Exception e) {
+            logger.error("Re-wrapping device secrets failed after {} devices", scanned.get(), e);
+            errorMessage = e.getMessage();
+        } finally {
+            finishedAt = LocalDateTime.now();
+            running.set(false);
+        }
+    }
+}
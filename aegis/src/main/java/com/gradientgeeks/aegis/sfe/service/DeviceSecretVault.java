@@ -0,0 +1,282 @@
+package com.gradientgeeks.aegis.sfe.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Envelope encryption of device secrets. A secret is stored as
+ * {@code v1:<dekId>:<base64(iv || AES-GCM ciphertext)>}, wrapped with a data
+ * encryption key (DEK) from a local PKCS12 keystore and bound to the device ID.
+ * 
+ * Unwrapped secrets are kept in a bounded LRU cache keyed by the stored value, so
+ * signature validation decrypts only on a miss; a re-registration or re-wrap
+ * changes the stored value and naturally misses. Values without the prefix are
+ * legacy plaintext secrets, whose key bytes are their UTF-8 bytes.
+ * 
+ * The newest DEK in the keystore wraps new secrets. The keystore is reloaded when
+ * the file changes, so a DEK added on a shared keystore reaches every node. Every
+ * node must use the same keystore, so a missing keystore fails startup unless
+ * creating one is explicitly enabled, and the default password is only accepted
+ * with the {@code dev} profile.
+ */
+@Service
+public class DeviceSecretVault {
+    
+    private static final Logger logger = LoggerFactory.getLogger(DeviceSecretVault.class);
+    
+    private static final String PREFIX = "v1:";
+    private static final String CIPHER = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+    private static final DateTimeFormatter DEK_ID_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+    private static final String DEV_KEYSTORE_PASSWORD = "aegis-dev-keystore";
+    
+    private final Environment environment;
+    
+    @Value("${aegis.secrets.keystore-path:./data/device-secret-keys.p12}")
+    private String keystorePath;
+    
+    @Value("${aegis.secrets.keystore-password:" + DEV_KEYSTORE_PASSWORD + "}")
+    private String keystorePassword;
+    
+    @Value("${aegis.secrets.create-keystore:false}")
+    private boolean createKeystore;
+    
+    @Value("${aegis.secrets.cache-size:100000}")
+    private int cacheSize;
+    
+    private volatile Keys keys = new Keys(Map.of(), null, 0L);
+    private Map<String, byte[]> unwrapped;
+    
+    private record Keys(Map<String, SecretKey> byId, String activeId, long modifiedAt) {}
+    
+    @Autowired
+    public DeviceSecretVault(Environment environment) {
+        this.environment = environment;
+    }
+    
+    @PostConstruct
+    public void init() {
+        unwrapped = Collections.synchronizedMap(new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        if (DEV_KEYSTORE_PASSWORD.equals(keystorePassword)) {
+            if (!environment.acceptsProfiles(Profiles.of("dev"))) {
+                throw new IllegalStateException(
+                    "Device secret keystore uses the default password; set aegis.secrets.keystore-password");
+            }
+            logger.warn("Device secret keystore uses the default password, accepted for the dev profile only");
+        }
+        try {
+            if (!Files.exists(Paths.get(keystorePath))) {
+                if (!createKeystore) {
+                    throw new IllegalStateException("Device secret keystore not found: " + keystorePath
+                        + "; provide the shared keystore, or set aegis.secrets.create-keystore=true to create one");
+                }
+                logger.info("Creating device secret keystore at {}", keystorePath);
+                rotate();
+            } else {
+                load();
+            }
+        } catch (GeneralSecurityException | IOException e) {
+            throw new IllegalStateException("Failed to load device secret keystore " + keystorePath, e);
+        }
+    }
+    
+    /**
+     * Wraps a raw secret for storage with the active DEK
+     */
+    public String wrap(String deviceId, byte[] secret) {
+        Keys current = keys;
+        try {
+            byte[] iv = new byte[IV_LENGTH];
+            SECURE_RANDOM.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.ENCRYPT_MODE, current.byId().get(current.activeId()), new GCMParameterSpec(TAG_BITS, iv));
+            cipher.updateAAD(deviceId.getBytes(StandardCharsets.UTF_8));
+            byte[] ciphertext = cipher.doFinal(secret);
+            byte[] payload = ByteBuffer.allocate(iv.length + ciphertext.length).put(iv).put(ciphertext).array();
+            String stored = PREFIX + current.activeId() + ':' + Base64.getEncoder().encodeToString(payload);
+            unwrapped.put(stored, secret);
+            return stored;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to wrap device secret", e);
+        }
+    }
+    
+    /**
+     * Raw secret of a stored value, from the cache when possible. The returned
+     * array is shared and must not be modified.
+     */
+    public byte[] unwrap(String deviceId, String stored) {
+        if (!stored.startsWith(PREFIX)) {
+            return stored.getBytes(StandardCharsets.UTF_8);
+        }
+        byte[] secret = unwrapped.get(stored);
+        if (secret != null) {
+            return secret;
+        }
+        
+        int separator = stored.indexOf(':', PREFIX.length());
+        if (separator < 0) {
+            throw new IllegalArgumentException("Malformed device secret for deviceId: " + deviceId);
+        }
+        String dekId = stored.substring(PREFIX.length(), separator);
+        SecretKey dek = keys.byId().get(dekId);
+        if (dek == null) {
+            // Possibly added to the keystore by another node since the last check
+            reloadIfChanged();
+            dek = keys.byId().get(dekId);
+            if (dek == null) {
+                throw new IllegalStateException("Unknown device secret DEK: " + dekId);
+            }
+        }
+        
+        try {
+            byte[] payload = Base64.getDecoder().decode(stored.substring(separator + 1));
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.DECRYPT_MODE, dek, new GCMParameterSpec(TAG_BITS, payload, 0, IV_LENGTH));
+            cipher.updateAAD(deviceId.getBytes(StandardCharsets.UTF_8));
+            secret = cipher.doFinal(payload, IV_LENGTH, payload.length - IV_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to unwrap device secret for deviceId: " + deviceId, e);
+        }
+        unwrapped.put(stored, secret);
+        return secret;
+    }
+    
+    /**
+     * Whether a stored value is already wrapped with the active DEK
+     */
+    public boolean isWrappedWithActiveKey(String stored) {
+        return stored.startsWith(PREFIX + keys.activeId() + ':');
+    }
+    
+    public String getActiveDekId() {
+        return keys.activeId();
+    }
+    
+    /**
+     * Adds a new DEK to the keystore and makes it the active one. Secrets wrapped
+     * with older DEKs stay readable until re-wrapped.
+     * 
+     * @return ID of the new DEK
+     */
+    public synchronized String rotate() throws GeneralSecurityException, IOException {
+        Path path = Paths.get(keystorePath);
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        if (Files.exists(path)) {
+            try (InputStream in = Files.newInputStream(path)) {
+                keyStore.load(in, keystorePassword.toCharArray());
+            }
+        } else {
+            keyStore.load(null, null);
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+        }
+        
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(256, SECURE_RANDOM);
+        String dekId = "dek-" + LocalDateTime.now().format(DEK_ID_FORMAT);
+        while (keyStore.containsAlias(dekId)) {
+            dekId = dekId + "a";
+        }
+        KeyStore.ProtectionParameter protection = new KeyStore.PasswordProtection(keystorePassword.toCharArray());
+        keyStore.setEntry(dekId, new KeyStore.SecretKeyEntry(generator.generateKey()), protection);
+        
+        // Write to a temporary file first so other nodes never read a partial keystore
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temporary)) {
+            keyStore.store(out, keystorePassword.toCharArray());
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        load();
+        logger.info("Rotated device secret DEK, new active DEK: {}", dekId);
+        return dekId;
+    }
+    
+    /**
+     * Picks up DEKs added to the keystore file by another node or an operator
+     */
+    @Scheduled(fixedDelayString = "${aegis.secrets.keystore-refresh-interval-ms:60000}",
+               initialDelayString = "${aegis.secrets.keystore-refresh-interval-ms:60000}")
+    public synchronized void reloadIfChanged() {
+        try {
+            if (Files.getLastModifiedTime(Paths.get(keystorePath)).toMillis() != keys.modifiedAt()) {
+                load();
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to reload device secret keystore, keeping the loaded DEKs", e);
+        }
+    }
+    
+    private synchronized void load() throws GeneralSecurityException, IOException {
+        Path path = Paths.get(keystorePath);
+        long modifiedAt = Files.getLastModifiedTime(path).toMillis();
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = Files.newInputStream(path)) {
+            keyStore.load(in, keystorePassword.toCharArray());
+        }
+        
+        Map<String, SecretKey> byId = new HashMap<>();
+        String activeId = null;
+        Date activeCreated = null;
+        for (String alias : Collections.list(keyStore.aliases())) {
+            if (!(keyStore.getKey(alias, keystorePassword.toCharArray()) instanceof SecretKey dek)) {
+                continue;
+            }
+            byId.put(alias, dek);
+            Date created = keyStore.getCreationDate(alias);
+            // Newest DEK wins; IDs sort by creation time as a tie-breaker
+            if (activeId == null || created.after(activeCreated)
+                    || (created.equals(activeCreated) && alias.compareTo(activeId) > 0)) {
+                activeId = alias;
+                activeCreated = created;
+            }
+        }
+        if (activeId == null) {
+            throw new IllegalStateException("Device secret keystore contains no DEK: " + keystorePath);
+        }
+        if (!activeId.equals(keys.activeId())) {
+            logger.info("Device secret keystore loaded: {} DEKs, active DEK: {}", byId.size(), activeId);
+        }
+        keys = new Keys(byId, activeId, modifiedAt);
+    }
+}
@@ -0,0 +1,316 @@
+package com.gradientgeeks.aegis.sfe.service;
+
+import com.gradientgeeks.aegis.sfe.util.ScalableBloomFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bloom filters of known composite fingerprint hashes and registered device IDs,
+ * so lookups for values that were never stored are answered without a database
+ * query.
+ * 
+ * A positive answer only means "maybe", and the query runs as before. A negative
+ * answer is definite for values written on this node. Values written on other
+ * nodes arrive by broadcast, or at the latest with the next catch-up if the
+ * broadcast was lost. {@link #isDefinitelyUnknownDeviceId} therefore only trusts a
+ * miss while the last successful catch-up is recent; otherwise callers fall back
+ * to the database. Until the filters are loaded every answer is positive.
+ * 
+ * Values are added locally as soon as they are written and broadcast to the other
+ * nodes after commit. A periodic catch-up loads rows inserted since the last load,
+ * which covers broadcasts that were lost. Rows can commit after rows with a later
+ * key were read, so each catch-up also re-scans rows created in the overlap window;
+ * adding a value twice is harmless. A periodic full rebuild also drops values that
+ * no longer exist.
+ */
+@Service
+public class ExistenceFilterService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ExistenceFilterService.class);
+    
+    static final String EVENT_EXISTENCE_ADD = "existence-filter.add";
+    
+    private static final int LOAD_BATCH_SIZE = 10000;
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final ClusterEventBus clusterEventBus;
+    
+    private volatile Filters filters;
+    private volatile Filters rebuilding;
+    private volatile boolean ready = false;
+    private volatile long lastSyncedAt = 0L;
+    
+    // Catch-up positions of the current filters
+    private long lastFingerprintId = 0L;
+    private Timestamp lastDeviceCreatedAt = new Timestamp(0L);
+    private String lastDeviceId = "";
+    private String lastDeviceClientId = "";
+    
+    @Value("${aegis.existence-filter.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${aegis.existence-filter.initial-capacity:1000000}")
+    private long initialCapacity;
+    
+    @Value("${aegis.existence-filter.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+    
+    @Value("${aegis.existence-filter.catch-up-overlap-seconds:600}")
+    private int catchUpOverlapSeconds;
+    
+    // Misses are only trusted while the last successful load or catch-up is at most this old
+    @Value("${aegis.existence-filter.max-sync-lag-ms:120000}")
+    private long maxSyncLagMs;
+    
+    @Autowired
+    public ExistenceFilterService(JdbcTemplate jdbcTemplate, ClusterEventBus clusterEventBus) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.clusterEventBus = clusterEventBus;
+        clusterEventBus.subscribe(EVENT_EXISTENCE_ADD, payload -> addLocally(
+            (String) payload.get("deviceId"),
+            (String) payload.get("compositeHash")));
+    }
+    
+    /**
+     * False only if no fingerprint was ever stored with this composite hash
+     */
+    public boolean mightContainCompositeHash(String compositeHash) {
+        Filters current = filters;
+        return !ready || compositeHash == null || current.compositeHashes.mightContain(compositeHash);
+    }
+    
+    /**
+     * True if no device was ever registered with this device ID and the filters are
+     * in sync, so the miss covers devices registered on other nodes too
+     */
+    public boolean isDefinitelyUnknownDeviceId(String deviceId) {
+        return deviceId != null && isInSync() && !filters.deviceIds.mightContain(deviceId);
+    }
+    
+    /**
+     * Whether the last successful load or catch-up is recent enough to trust misses
+     */
+    public boolean isInSync() {
+        return ready && System.currentTimeMillis() - lastSyncedAt <= maxSyncLagMs;
+    }
+    
+    /**
+     * Records a stored fingerprint
+     */
+    public void addFingerprint(String compositeHash) {
+        addLocally(null, compositeHash);
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("compositeHash", compositeHash);
+        clusterEventBus.publish(EVENT_EXISTENCE_ADD, payload);
+    }
+    
+    /**
+     * Records a registered device
+     */
+    public void addDevice(String deviceId) {
+        addLocally(deviceId, null);
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("deviceId", deviceId);
+        clusterEventBus.publish(EVENT_EXISTENCE_ADD, payload);
+    }
+    
+    public boolean isReady() {
+        return ready;
+    }
+    
+    /**
+     * Sizes and memory of the filters, for monitoring
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("ready", ready);
+        statistics.put("inSync", isInSync());
+        Filters current = filters;
+        if (current != null) {
+            statistics.put("compositeHashes", current.compositeHashes.size());
+            statistics.put("deviceIds", current.deviceIds.size());
+            statistics.put("memoryBytes", current.compositeHashes.memoryBytes() + current.deviceIds.memoryBytes());
+        }
+        return statistics;
+    }
+    
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        rebuild();
+    }
+    
+    /**
+     * Builds fresh filters from the database and swaps them in. Values added while
+     * the rebuild runs go into both the old and the new filters.
+     */
+    @Scheduled(fixedDelayString = "${aegis.existence-filter.rebuild-interval-ms:21600000}",
+               initialDelayString = "${aegis.existence-filter.rebuild-interval-ms:21600000}")
+    public synchronized void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        Filters fresh = new Filters(initialCapacity, falsePositiveRate);
+        if (filters == null) {
+            // First load: fill the live filters directly, they answer only once ready
+            filters = fresh;
+        } else {
+            rebuilding = fresh;
+        }
+        
+        long previousFingerprintId = lastFingerprintId;
+        Timestamp previousDeviceCreatedAt = lastDeviceCreatedAt;
+        String previousDeviceId = lastDeviceId;
+        String previousDeviceClientId = lastDeviceClientId;
+        lastFingerprintId = 0L;
+        lastDeviceCreatedAt = new Timestamp(0L);
+        lastDeviceId = "";
+        lastDeviceClientId = "";
+        try {
+            long rows = loadFingerprints(fresh) + loadDevices(fresh);
+            filters = fresh;
+            ready = true;
+            lastSyncedAt = System.currentTimeMillis();
+            logger.info("Built existence filters from {} rows in {} ms ({} bytes)",
+                       rows, System.currentTimeMillis() - startTime, getStatistics().get("memoryBytes"));
+        } catch (Exception e) {
+            logger.warn("Failed to build existence filters, keeping the previous ones", e);
+            if (ready) {
+                // Catch-up continues where the previous filters left off
+                lastFingerprintId = previousFingerprintId;
+                lastDeviceCreatedAt = previousDeviceCreatedAt;
+                lastDeviceId = previousDeviceId;
+                lastDeviceClientId = previousDeviceClientId;
+            }
+        } finally {
+            rebuilding = null;
+        }
+    }
+    
+    /**
+     * Adds rows inserted since the last load, including those from other nodes,
+     * and re-adds rows created within the overlap window
+     */
+    @Scheduled(fixedDelayString = "${aegis.existence-filter.catch-up-interval-ms:60000}",
+               initialDelayString = "${aegis.existence-filter.catch-up-interval-ms:60000}")
+    public synchronized void catchUp() {
+        Filters current = filters;
+        if (!enabled || !ready || current == null) {
+            return;
+        }
+        try {
+            long rows = loadFingerprints(current) + loadDevices(current);
+            if (rows > 0) {
+                logger.debug("Added {} new rows to the existence filters", rows);
+            }
+            rescanRecent(current);
+            lastSyncedAt = System.currentTimeMillis();
+        } catch (Exception e) {
+            logger.warn("Existence filter catch-up failed, retrying on the next run", e);
+        }
+    }
+    
+    private void addLocally(String deviceId, String compositeHash) {
+        // Read in this order so a rebuild finishing in between cannot drop the value
+        Filters next = rebuilding;
+        Filters current = filters;
+        for (Filters target : new Filters[] {current, next}) {
+            if (target == null) {
+                continue;
+            }
+            if (deviceId != null) {
+                target.deviceIds.add(deviceId);
+            }
+            if (compositeHash != null) {
+                target.compositeHashes.add(compositeHash);
+            }
+        }
+    }
+    
+    /**
+     * Re-adds rows created within the overlap window. A row committing after a later
+     * key was read is behind the catch-up positions, but still inside this window as
+     * long as its transaction took less than the overlap.
+     */
+    private void rescanRecent(Filters target) {
+        jdbcTemplate.query(
+            "SELECT composite_hash FROM device_fingerprints " +
+            "WHERE created_at >= TIMESTAMPADD(SECOND, -?, CURRENT_TIMESTAMP)",
+            rs -> {
+                target.compositeHashes.add(rs.getString(1));
+            },
+            catchUpOverlapSeconds);
+        jdbcTemplate.query(
+            "SELECT device_id FROM devices WHERE created_at >= TIMESTAMPADD(SECOND, -?, CURRENT_TIMESTAMP)",
+            rs -> {
+                target.deviceIds.add(rs.getString(1));
+            },
+            catchUpOverlapSeconds);
+    }
+    
+    private long loadFingerprints(Filters target) {
+        long loaded = 0L;
+        while (true) {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT id, composite_hash FROM device_fingerprints " +
+                "WHERE id > ? ORDER BY id LIMIT ?", lastFingerprintId, LOAD_BATCH_SIZE);
+            for (Map<String, Object> row : rows) {
+                target.compositeHashes.add((String) row.get("composite_hash"));
+                lastFingerprintId = ((Number) row.get("id")).longValue();
+            }
+            loaded += rows.size();
+            if (rows.size() < LOAD_BATCH_SIZE) {
+                return loaded;
+            }
+        }
+    }
+    
+    private long loadDevices(Filters target) {
+        long loaded = 0L;
+        while (true) {
+            // Keyset on (created_at, device_id, client_id), served by idx_device_created_at_keyset
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT device_id, client_id, created_at FROM devices " +
+                "WHERE (created_at, device_id, client_id) > (?, ?, ?) " +
+                "ORDER BY created_at, device_id, client_id LIMIT ?",
+                lastDeviceCreatedAt, lastDeviceId, lastDeviceClientId, LOAD_BATCH_SIZE);
+            for (Map<String, Object> row : rows) {
+                lastDeviceId = (String) row.get("device_id");
+                lastDeviceClientId = (String) row.get("client_id");
+                Object createdAt = row.get("created_at");
+                lastDeviceCreatedAt = createdAt instanceof Timestamp timestamp
+                    ? timestamp : Timestamp.valueOf((LocalDateTime) createdAt);
+                target.deviceIds.add(lastDeviceId);
+            }
+            loaded += rows.size();
+            if (rows.size() < LOAD_BATCH_SIZE) {
+                return loaded;
+            }
+        }
+    }
+    
+    private static final class Filters {
+        private final ScalableBloomFilter compositeHashes;
+        private final ScalableBloomFilter deviceIds;
+        
+        private Filters(long initialCapacity, double falsePositiveRate) {
+            this.compositeHashes = new ScalableBloomFilter(initialCapacity, falsePositiveRate);
+            this.deviceIds = new ScalableBloomFilter(initialCapacity, falsePositiveRate);
+        }
+    }
+}
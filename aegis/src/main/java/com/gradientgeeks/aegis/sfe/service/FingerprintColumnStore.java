@@ -0,0 +1,557 @@
+package com.gradientgeeks.aegis.sfe.service;
+
+import com.gradientgeeks.aegis.sfe.entity.DeviceFingerprint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Column-oriented in-memory copy of the hardware and display attributes of all
+ * stored fingerprints, for scoring one device against the whole corpus.
+ * 
+ * Categorical attributes (manufacturer, model, device name, board, brand, CPU
+ * architecture) are dictionary-encoded to ints; display dimensions are kept as
+ * primitive ints. A scan compares a handful of int arrays in one sequential pass,
+ * with no object dereferences per row.
+ * 
+ * Scores use the hardware and display weights of {@link FingerprintScorer} for
+ * fingerprints without app data, so they are equal to or, where app data exists,
+ * an approximation of the registration-time score.
+ * 
+ * New fingerprints are appended locally after commit; rows written on other nodes
+ * are picked up by a periodic catch-up, and a periodic rebuild refreshes fraud flags.
+ */
+@Service
+public class FingerprintColumnStore {
+    
+    private static final Logger logger = LoggerFactory.getLogger(FingerprintColumnStore.class);
+    
+    private static final int LOAD_BATCH_SIZE = 10000;
+    
+    // Stored for null attributes; never equal to the code of an incoming value
+    private static final int NULL_CODE = 0;
+    // Used for incoming values that are null or not in the dictionary; never stored
+    private static final int NO_MATCH_CODE = -1;
+    private static final int NULL_DIMENSION = Integer.MIN_VALUE;
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final FingerprintScorer fingerprintScorer;
+    
+    private volatile Corpus corpus;
+    private volatile Corpus rebuilding;
+    private volatile boolean ready = false;
+    
+    // Catch-up position of the current corpus
+    private long lastFingerprintId = 0L;
+    
+    @Value("${aegis.fraud.column-store.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${aegis.fraud.column-store.initial-capacity:100000}")
+    private int initialCapacity;
+    
+    /**
+     * A fingerprint found by a scan
+     */
+    public record SimilarFingerprint(long fingerprintId, String deviceId, double similarity, boolean fraudulent) {}
+    
+    @Autowired
+    public FingerprintColumnStore(JdbcTemplate jdbcTemplate, FingerprintScorer fingerprintScorer,
+                                  ClusterEventBus clusterEventBus) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.fingerprintScorer = fingerprintScorer;
+        clusterEventBus.subscribe(FraudulentFingerprintIndex.EVENT_FINGERPRINT_FRAUDULENT, payload -> {
+            if (payload.get("fingerprintId") instanceof Number id) {
+                markFraudulentLocally(id.longValue());
+            }
+        });
+    }
+    
+    public boolean isReady() {
+        return ready;
+    }
+    
+    /**
+     * Number of stored fingerprints
+     */
+    public int size() {
+        Corpus current = corpus;
+        return current != null ? current.size : 0;
+    }
+    
+    /**
+     * Scores a fingerprint against every stored fingerprint of other devices.
+     * 
+     * @param probe Fingerprint to compare
+     * @param minSimilarity Lowest similarity to return
+     * @param limit Maximum number of results
+     * @param fraudulentOnly Only return fingerprints marked fraudulent
+     * @return Matches, most similar first
+     * @throws IllegalStateException If the store is not loaded yet
+     */
+    public List<SimilarFingerprint> findSimilar(FingerprintSnapshot probe, double minSimilarity,
+                                                int limit, boolean fraudulentOnly) {
+        Corpus current = corpus;
+        if (!ready || current == null) {
+            throw new IllegalStateException("Fingerprint column store is not loaded yet");
+        }
+        
+        // Read size before columns: a grown column set always holds at least `size` rows
+        int size = current.size;
+        Columns columns = current.columns;
+        
+        int manufacturer = current.lookup(probe.getManufacturer());
+        int model = current.lookup(probe.getModel());
+        int deviceName = current.lookup(probe.getDeviceName());
+        int board = current.lookup(probe.getBoard());
+        int brand = current.lookup(probe.getBrand());
+        int cpuArchitecture = current.lookup(probe.getCpuArchitecture());
+        boolean hasDisplay = probe.getWidthPixels() != null && probe.getHeightPixels() != null
+            && probe.getDensityDpi() != null;
+        int width = hasDisplay ? probe.getWidthPixels() : NULL_DIMENSION;
+        int height = hasDisplay ? probe.getHeightPixels() : NULL_DIMENSION;
+        int density = hasDisplay ? probe.getDensityDpi() : NULL_DIMENSION;
+        
+        // Every possible score is (hardware points, display match), so precompute which pass
+        double[] scores = scoreTable();
+        boolean[] passes = new boolean[scores.length];
+        for (int i = 0; i < scores.length; i++) {
+            passes[i] = scores[i] >= minSimilarity;
+        }
+        
+        int[] manufacturers = columns.manufacturer;
+        int[] models = columns.model;
+        int[] deviceNames = columns.deviceName;
+        int[] boards = columns.board;
+        int[] brands = columns.brand;
+        int[] cpuArchitectures = columns.cpuArchitecture;
+        int[] widths = columns.width;
+        int[] heights = columns.height;
+        int[] densities = columns.density;
+        boolean[] fraudulent = columns.fraudulent;
+        
+        // Only the best `limit` rows are kept while scanning, so a low threshold does not allocate per row
+        TopMatches top = new TopMatches(scores, limit);
+        for (int row = 0; row < size; row++) {
+            if (fraudulentOnly && !fraudulent[row]) {
+                continue;
+            }
+            int points = (manufacturers[row] == manufacturer ? FingerprintScorer.MANUFACTURER_POINTS : 0)
+                + (models[row] == model ? FingerprintScorer.MODEL_POINTS : 0)
+                + (deviceNames[row] == deviceName ? FingerprintScorer.DEVICE_NAME_POINTS : 0)
+                + (boards[row] == board ? FingerprintScorer.BOARD_POINTS : 0)
+                + (cpuArchitectures[row] == cpuArchitecture ? FingerprintScorer.CPU_ARCHITECTURE_POINTS : 0)
+                + (brands[row] == brand ? FingerprintScorer.BRAND_POINTS : 0);
+            int displayMatch = hasDisplay && widths[row] == width && heights[row] == height
+                && densities[row] == density ? 1 : 0;
+            int key = (points << 1) | displayMatch;
+            if (passes[key] && top.accepts(row, key) && !columns.deviceIds[row].equals(probe.getDeviceId())) {
+                top.add(row, key);
+            }
+        }
+        
+        int[][] ranked = top.drain();
+        List<SimilarFingerprint> matches = new ArrayList<>(ranked[0].length);
+        for (int i = 0; i < ranked[0].length; i++) {
+            int row = ranked[0][i];
+            matches.add(new SimilarFingerprint(columns.ids[row], columns.deviceIds[row],
+                                               scores[ranked[1][i]], fraudulent[row]));
+        }
+        return matches;
+    }
+    
+    /**
+     * Appends a fingerprint once the surrounding transaction (if any) has committed
+     */
+    public void addAfterCommit(DeviceFingerprint fingerprint) {
+        FingerprintSnapshot snapshot = FingerprintSnapshot.from(fingerprint);
+        boolean fraudulent = Boolean.TRUE.equals(fingerprint.getIsFraudulent());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    addLocally(snapshot, fraudulent);
+                }
+            });
+        } else {
+            addLocally(snapshot, fraudulent);
+        }
+    }
+    
+    /**
+     * Sets the fraud flag of a fingerprint once the surrounding transaction (if any) has committed
+     */
+    public void markFraudulentAfterCommit(Long fingerprintId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    markFraudulentLocally(fingerprintId);
+                }
+            });
+        } else {
+            markFraudulentLocally(fingerprintId);
+        }
+    }
+    
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        rebuild();
+    }
+    
+    /**
+     * Builds a fresh corpus from the database and swaps it in. Fingerprints added
+     * while the rebuild runs go into both the old and the new corpus.
+     */
+    @Scheduled(fixedDelayString = "${aegis.fraud.column-store.rebuild-interval-ms:21600000}",
+               initialDelayString = "${aegis.fraud.column-store.rebuild-interval-ms:21600000}")
+    public synchronized void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        Corpus fresh = new Corpus(initialCapacity);
+        if (corpus == null) {
+            // First load: fill the live corpus directly, it answers only once ready
+            corpus = fresh;
+        } else {
+            rebuilding = fresh;
+        }
+        
+        long previousFingerprintId = lastFingerprintId;
+        lastFingerprintId = 0L;
+        try {
+            long rows = load(fresh);
+            corpus = fresh;
+            ready = true;
+            logger.info("Loaded {} fingerprints into the column store ({} dictionary entries) in {} ms",
+                       rows, fresh.dictionary.size(), System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            logger.warn("Failed to build the fingerprint column store, keeping the previous one", e);
+            if (ready) {
+                lastFingerprintId = previousFingerprintId;
+            }
+        } finally {
+            rebuilding = null;
+        }
+    }
+    
+    /**
+     * Appends fingerprints inserted since the last load, including those from other nodes
+     */
+    @Scheduled(fixedDelayString = "${aegis.fraud.column-store.catch-up-interval-ms:60000}",
+               initialDelayString = "${aegis.fraud.column-store.catch-up-interval-ms:60000}")
+    public synchronized void catchUp() {
+        Corpus current = corpus;
+        if (!enabled || !ready || current == null) {
+            return;
+        }
+        try {
+            long rows = load(current);
+            if (rows > 0) {
+                logger.debug("Added {} new fingerprints to the column store", rows);
+            }
+        } catch (Exception e) {
+            logger.warn("Fingerprint column store catch-up failed, retrying on the next run", e);
+        }
+    }
+    
+    /**
+     * Similarity for each key (hardware points << 1 | display match)
+     */
+    private double[] scoreTable() {
+        double hardwareWeight = fingerprintScorer.getHardwareWeightWithoutApps();
+        double displayWeight = fingerprintScorer.getDisplayWeightWithoutApps();
+        double[] scores = new double[(FingerprintScorer.HARDWARE_POINTS + 1) << 1];
+        for (int points = 0; points <= FingerprintScorer.HARDWARE_POINTS; points++) {
+            double hardwareSimilarity = (double) points / FingerprintScorer.HARDWARE_POINTS;
+            scores[points << 1] = hardwareSimilarity * hardwareWeight;
+            scores[(points << 1) | 1] = hardwareSimilarity * hardwareWeight + displayWeight;
+        }
+        return scores;
+    }
+    
+    private void addLocally(FingerprintSnapshot snapshot, boolean fraudulent) {
+        // Read in this order so a rebuild finishing in between cannot drop the row
+        Corpus next = rebuilding;
+        Corpus current = corpus;
+        for (Corpus target : new Corpus[] {current, next}) {
+            if (target != null) {
+                target.append(snapshot.getId(), snapshot.getDeviceId(), snapshot.getManufacturer(),
+                              snapshot.getModel(), snapshot.getDeviceName(), snapshot.getBoard(),
+                              snapshot.getBrand(), snapshot.getCpuArchitecture(), snapshot.getWidthPixels(),
+                              snapshot.getHeightPixels(), snapshot.getDensityDpi(), fraudulent);
+            }
+        }
+    }
+    
+    private void markFraudulentLocally(long fingerprintId) {
+        Corpus next = rebuilding;
+        Corpus current = corpus;
+        for (Corpus target : new Corpus[] {current, next}) {
+            if (target != null) {
+                target.markFraudulent(fingerprintId);
+            }
+        }
+    }
+    
+    private long load(Corpus target) {
+        long loaded = 0L;
+        while (true) {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT id, device_id, manufacturer, model, device_name, board, brand, cpu_architecture, " +
+                "width_pixels, height_pixels, density_dpi, is_fraudulent FROM device_fingerprints " +
+                "WHERE id > ? ORDER BY id LIMIT ?", lastFingerprintId, LOAD_BATCH_SIZE);
+            for (Map<String, Object> row : rows) {
+                lastFingerprintId = ((Number) row.get("id")).longValue();
+                target.append(lastFingerprintId, (String) row.get("device_id"),
+                              (String) row.get("manufacturer"), (String) row.get("model"),
+                              (String) row.get("device_name"), (String) row.get("board"),
+                              (String) row.get("brand"), (String) row.get("cpu_architecture"),
+                              toInteger(row.get("width_pixels")), toInteger(row.get("height_pixels")),
+                              toInteger(row.get("density_dpi")), Boolean.TRUE.equals(row.get("is_fraudulent")));
+            }
+            loaded += rows.size();
+            if (rows.size() < LOAD_BATCH_SIZE) {
+                return loaded;
+            }
+        }
+    }
+    
+    private static Integer toInteger(Object value) {
+        return value != null ? ((Number) value).intValue() : null;
+    }
+    
+    /**
+     * One generation of the store: the dictionary and the columns built with it.
+     * Writers are serialized on the corpus; readers never lock.
+     */
+    private static final class Corpus {
+        private final Map<String, Integer> dictionary = new ConcurrentHashMap<>();
+        private final Map<Long, Integer> rowById = new HashMap<>();
+        private volatile Columns columns;
+        private volatile int size = 0;
+        
+        private Corpus(int initialCapacity) {
+            this.columns = new Columns(Math.max(initialCapacity, 16));
+        }
+        
+        /**
+         * Dictionary code of an incoming value, without adding it
+         */
+        private int lookup(String value) {
+            if (value == null) {
+                return NO_MATCH_CODE;
+            }
+            Integer code = dictionary.get(value);
+            return code != null ? code : NO_MATCH_CODE;
+        }
+        
+        private int encode(String value) {
+            if (value == null) {
+                return NULL_CODE;
+            }
+            return dictionary.computeIfAbsent(value, v -> dictionary.size() + 1);
+        }
+        
+        private synchronized void append(Long id, String deviceId, String manufacturer, String model,
+                                         String deviceName, String board, String brand, String cpuArchitecture,
+                                         Integer width, Integer height, Integer density, boolean fraudulent) {
+            if (id == null || rowById.containsKey(id)) {
+                return;
+            }
+            Columns target = columns;
+            int row = size;
+            if (row == target.ids.length) {
+                target = target.grow();
+                columns = target;
+            }
+            target.ids[row] = id;
+            target.deviceIds[row] = deviceId;
+            target.manufacturer[row] = encode(manufacturer);
+            target.model[row] = encode(model);
+            target.deviceName[row] = encode(deviceName);
+            target.board[row] = encode(board);
+            target.brand[row] = encode(brand);
+            target.cpuArchitecture[row] = encode(cpuArchitecture);
+            target.width[row] = width != null ? width : NULL_DIMENSION;
+            target.height[row] = height != null ? height : NULL_DIMENSION;
+            target.density[row] = density != null ? density : NULL_DIMENSION;
+            target.fraudulent[row] = fraudulent;
+            rowById.put(id, row);
+            // Publishes the row to readers
+            size = row + 1;
+        }
+        
+        private synchronized void markFraudulent(long id) {
+            Integer row = rowById.get(id);
+            if (row != null) {
+                columns.fraudulent[row] = true;
+            }
+        }
+    }
+    
+    /**
+     * Bounded min-heap of (row, score key) holding the best rows seen so far. The
+     * worst kept row is at the root; among equal scores the earlier row ranks
+     * higher, as a stable sort of all matches would have it.
+     */
+    private static final class TopMatches {
+        private final double[] scores;
+        private final int limit;
+        private int[] rows;
+        private int[] keys;
+        private int count;
+        
+        TopMatches(double[] scores, int limit) {
+            this.scores = scores;
+            this.limit = Math.max(limit, 0);
+            this.rows = new int[Math.min(this.limit, 64)];
+            this.keys = new int[rows.length];
+        }
+        
+        /**
+         * Whether a row with this key would be kept; rows are offered in ascending order
+         */
+        boolean accepts(int row, int key) {
+            return count < limit || (limit > 0 && worse(rows[0], keys[0], row, key));
+        }
+        
+        void add(int row, int key) {
+            if (count < limit) {
+                if (count == rows.length) {
+                    int grown = (int) Math.min((long) count * 2, limit);
+                    rows = Arrays.copyOf(rows, grown);
+                    keys = Arrays.copyOf(keys, grown);
+                }
+                int i = count++;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (!worse(row, key, rows[parent], keys[parent])) {
+                        break;
+                    }
+                    rows[i] = rows[parent];
+                    keys[i] = keys[parent];
+                    i = parent;
+                }
+                rows[i] = row;
+                keys[i] = key;
+            } else {
+                siftDown(row, key);
+            }
+        }
+        
+        /**
+         * Rows and keys, best first; empties the heap
+         */
+        int[][] drain() {
+            int[] rankedRows = new int[count];
+            int[] rankedKeys = new int[count];
+            while (count > 0) {
+                rankedRows[count - 1] = rows[0];
+                rankedKeys[count - 1] = keys[0];
+                count--;
+                if (count > 0) {
+                    siftDown(rows[count], keys[count]);
+                }
+            }
+            return new int[][] {rankedRows, rankedKeys};
+        }
+        
+        /**
+         * Replaces the root with the given row and restores the heap over the first `count` entries
+         */
+        private void siftDown(int row, int key) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= count) {
+                    break;
+                }
+                if (child + 1 < count && worse(rows[child + 1], keys[child + 1], rows[child], keys[child])) {
+                    child++;
+                }
+                if (!worse(rows[child], keys[child], row, key)) {
+                    break;
+                }
+                rows[i] = rows[child];
+                keys[i] = keys[child];
+                i = child;
+            }
+            rows[i] = row;
+            keys[i] = key;
+        }
+        
+        private boolean worse(int rowA, int keyA, int rowB, int keyB) {
+            return scores[keyA] < scores[keyB] || (scores[keyA] == scores[keyB] && rowA > rowB);
+        }
+    }
+    
+    /**
+     * Parallel primitive arrays, one element per fingerprint
+     */
+    private static final class Columns {
+        private final long[] ids;
+        private final String[] deviceIds;
+        private final int[] manufacturer;
+        private final int[] model;
+        private final int[] deviceName;
+        private final int[] board;
+        private final int[] brand;
+        private final int[] cpuArchitecture;
+        private final int[] width;
+        private final int[] height;
+        private final int[] density;
+        private final boolean[] fraudulent;
+        
+        private Columns(int capacity) {
+            this(new long[capacity], new String[capacity], new int[capacity], new int[capacity],
+                 new int[capacity], new int[capacity], new int[capacity], new int[capacity],
+                 new int[capacity], new int[capacity], new int[capacity], new boolean[capacity]);
+        }
+        
+        private Columns(long[] ids, String[] deviceIds, int[] manufacturer, int[] model, int[] deviceName,
+                        int[] board, int[] brand, int[] cpuArchitecture, int[] width, int[] height,
+                        int[] density, boolean[] fraudulent) {
+            this.ids = ids;
+            this.deviceIds = deviceIds;
+            this.manufacturer = manufacturer;
+            this.model = model;
+            this.deviceName = deviceName;
+            this.board = board;
+            this.brand = brand;
+            this.cpuArchitecture = cpuArchitecture;
+            this.width = width;
+            this.height = height;
+            this.density = density;
+            this.fraudulent = fraudulent;
+        }
+        
+        private Columns grow() {
+            int capacity = ids.length * 2;
+            return new Columns(Arrays.copyOf(ids, capacity), Arrays.copyOf(deviceIds, capacity),
+                               Arrays.copyOf(manufacturer, capacity), Arrays.copyOf(model, capacity),
+                               Arrays.copyOf(deviceName, capacity), Arrays.copyOf(board, capacity),
+                               Arrays.copyOf(brand, capacity), Arrays.copyOf(cpuArchitecture, capacity),
+                               Arrays.copyOf(width, capacity), Arrays.copyOf(height, capacity),
+                               Arrays.copyOf(density, capacity), Arrays.copyOf(fraudulent, capacity));
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package com.gradientgeeks.aegis.sfe.service;
+
+import com.gradientgeeks.aegis.sfe.dto.AppFingerprintDto;
+import com.gradientgeeks.aegis.sfe.entity.DeviceAppFingerprint;
+import com.gradientgeeks.aegis.sfe.util.PackageBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Similarity scoring between two device fingerprints, with configurable
+ * thresholds and weights.
+ * 
+ * Pure computation over snapshots and pre-loaded app profiles, so it is safe to
+ * call from any thread and does no I/O. Used for registration analysis and for
+ * re-scoring stored fingerprints when the settings change.
+ */
+@Service
+public class FingerprintScorer {
+    
+    private static final Logger logger = LoggerFactory.getLogger(FingerprintScorer.class);
+    
+    // Points per matching hardware field
+    static final int MANUFACTURER_POINTS = 3;
+    static final int MODEL_POINTS = 3;
+    static final int DEVICE_NAME_POINTS = 2;
+    static final int BOARD_POINTS = 2;
+    static final int CPU_ARCHITECTURE_POINTS = 2;
+    static final int BRAND_POINTS = 1;
+    static final int HARDWARE_POINTS = MANUFACTURER_POINTS + MODEL_POINTS + DEVICE_NAME_POINTS
+        + BOARD_POINTS + CPU_ARCHITECTURE_POINTS + BRAND_POINTS;
+    
+    /**
+     * Outcome of a similarity score against the thresholds
+     */
+    public enum Verdict {
+        ALLOW,
+        FLAG,
+        BLOCK
+    }
+    
+    // Similarity thresholds for fraud detection
+    @Value("${aegis.fraud.scoring.high-threshold:0.9}")
+    private double highSimilarityThreshold;
+    
+    @Value("${aegis.fraud.scoring.medium-threshold:0.7}")
+    private double mediumSimilarityThreshold;
+    
+    @Value("${aegis.fraud.scoring.low-threshold:0.5}")
+    private double lowSimilarityThreshold;
+    
+    // Overall weights when both devices have app data
+    @Value("${aegis.fraud.scoring.weights.hardware:0.5}")
+    private double hardwareWeight;
+    
+    @Value("${aegis.fraud.scoring.weights.display:0.25}")
+    private double displayWeight;
+    
+    @Value("${aegis.fraud.scoring.weights.apps:0.25}")
+    private double appWeight;
+    
+    // Overall weights when app data is missing on either side
+    @Value("${aegis.fraud.scoring.weights.hardware-without-apps:0.7}")
+    private double hardwareWeightWithoutApps;
+    
+    @Value("${aegis.fraud.scoring.weights.display-without-apps:0.3}")
+    private double displayWeightWithoutApps;
+    
+    // Split of the app score between app counts and package overlap
+    @Value("${aegis.fraud.scoring.weights.app-counts:0.3}")
+    private double appCountWeight;
+    
+    @Value("${aegis.fraud.scoring.weights.app-packages:0.7}")
+    private double appPackageWeight;
+    
+    // Split of the package overlap between user and system apps
+    @Value("${aegis.fraud.scoring.weights.user-packages:0.7}")
+    private double userPackageWeight;
+    
+    @Value("${aegis.fraud.scoring.weights.system-packages:0.3}")
+    private double systemPackageWeight;
+    
+    /**
+     * Calculates similarity between incoming fingerprint and existing fingerprint.
+     * 
+     * @param incomingApps App profile of the incoming fingerprint, or null if it has none
+     * @param existingApps App profile of the existing fingerprint, or null if it has none
+     * @return Weighted similarity from 0.0 to 1.0
+     */
+    public double score(FingerprintSnapshot incoming, AppProfile incomingApps,
+                        FingerprintSnapshot existing, AppProfile existingApps) {
+        // Hardware similarity (most important)
+        double hardwareSimilarity = calculateHardwareSimilarity(incoming, existing);
+        
+        // Display similarity
+        double displaySimilarity = calculateDisplaySimilarity(incoming, existing);
+        
+        // App similarity (for device reinstall detection)
+        double appSimilarity = calculateAppSimilarity(incomingApps, existing, existingApps);
+        
+        // Weighted average: hardware is most critical, app data helps with reinstall detection
+        if (appSimilarity >= 0.0) {
+            // When app data is available, include it in similarity calculation
+            return (hardwareSimilarity * hardwareWeight) + (displaySimilarity * displayWeight)
+                + (appSimilarity * appWeight);
+        } else {
+            // Original calculation when no app data
+            return (hardwareSimilarity * hardwareWeightWithoutApps) + (displaySimilarity * displayWeightWithoutApps);
+        }
+    }
+    
+    /**
+     * Verdict for a similarity with a known fraudulent fingerprint
+     */
+    public Verdict classify(double similarity) {
+        if (similarity >= highSimilarityThreshold) {
+            return Verdict.BLOCK;
+        } else if (similarity >= mediumSimilarityThreshold) {
+            return Verdict.FLAG;
+        }
+        return Verdict.ALLOW;
+    }
+    
+    public double getHighSimilarityThreshold() {
+        return highSimilarityThreshold;
+    }
+    
+    public double getMediumSimilarityThreshold() {
+        return mediumSimilarityThreshold;
+    }
+    
+    public double getLowSimilarityThreshold() {
+        return lowSimilarityThreshold;
+    }
+    
+    public double getHardwareWeightWithoutApps() {
+        return hardwareWeightWithoutApps;
+    }
+    
+    public double getDisplayWeightWithoutApps() {
+        return displayWeightWithoutApps;
+    }
+    
+    /**
+     * Current thresholds and weights, recorded with re-scoring jobs
+     */
+    public Map<String, Double> getSettings() {
+        Map<String, Double> settings = new LinkedHashMap<>();
+        settings.put("highThreshold", highSimilarityThreshold);
+        settings.put("mediumThreshold", mediumSimilarityThreshold);
+        settings.put("lowThreshold", lowSimilarityThreshold);
+        settings.put("hardwareWeight", hardwareWeight);
+        settings.put("displayWeight", displayWeight);
+        settings.put("appWeight", appWeight);
+        settings.put("hardwareWeightWithoutApps", hardwareWeightWithoutApps);
+        settings.put("displayWeightWithoutApps", displayWeightWithoutApps);
+        settings.put("appCountWeight", appCountWeight);
+        settings.put("appPackageWeight", appPackageWeight);
+        settings.put("userPackageWeight", userPackageWeight);
+        settings.put("systemPackageWeight", systemPackageWeight);
+        return settings;
+    }
+    
+    /**
+     * Calculates hardware similarity score.
+     */
+    private double calculateHardwareSimilarity(FingerprintSnapshot incoming, FingerprintSnapshot existing) {
+        int matches = 0;
+        int total = 0;
+        
+        // Core hardware characteristics (weighted)
+        if (matches(incoming.getManufacturer(), existing.getManufacturer())) matches += MANUFACTURER_POINTS;
+        total += MANUFACTURER_POINTS;
+        
+        if (matches(incoming.getModel(), existing.getModel())) matches += MODEL_POINTS;
+        total += MODEL_POINTS;
+        
+        if (matches(incoming.getDeviceName(), existing.getDeviceName())) matches += DEVICE_NAME_POINTS;
+        total += DEVICE_NAME_POINTS;
+        
+        if (matches(incoming.getBoard(), existing.getBoard())) matches += BOARD_POINTS;
+        total += BOARD_POINTS;
+        
+        if (matches(incoming.getCpuArchitecture(), existing.getCpuArchitecture())) matches += CPU_ARCHITECTURE_POINTS;
+        total += CPU_ARCHITECTURE_POINTS;
+        
+        if (matches(incoming.getBrand(), existing.getBrand())) matches += BRAND_POINTS;
+        total += BRAND_POINTS;
+        
+        return (double) matches / total;
+    }
+    
+    /**
+     * Calculates display similarity score.
+     */
+    private double calculateDisplaySimilarity(FingerprintSnapshot incoming, FingerprintSnapshot existing) {
+        return matches(incoming.getWidthPixels(), existing.getWidthPixels()) &&
+               matches(incoming.getHeightPixels(), existing.getHeightPixels()) &&
+               matches(incoming.getDensityDpi(), existing.getDensityDpi()) ? 1.0 : 0.0;
+    }
+    
+    /**
+     * Calculates app similarity score for device reinstall detection.
+     * Returns -1.0 if app data is not available, otherwise returns similarity score (0.0 to 1.0).
+     */
+    private double calculateAppSimilarity(AppProfile incomingApps, FingerprintSnapshot existing, AppProfile existingApps) {
+        if (incomingApps == null) {
+            return -1.0; // No app data available
+        }
+        
+        if (existingApps == null) {
+            logger.debug("No existing app fingerprint found for device fingerprint ID: {}", existing.getId());
+            return -1.0; // No existing app data to compare
+        }
+        
+        logger.debug("Comparing app fingerprints - Incoming: Total={}, User={}, System={} | Existing: Total={}, User={}, System={}",
+            incomingApps.totalAppCount, incomingApps.userAppCount, incomingApps.systemAppCount,
+            existingApps.totalAppCount, existingApps.userAppCount, existingApps.systemAppCount);
+        
+        // Calculate basic count-based similarity
+        double countSimilarity = calculateAppCountSimilarity(incomingApps, existingApps);
+        
+        // Calculate package name overlap similarity
+        double packageSimilarity = incomingApps.packages != null && existingApps.packages != null
+            ? calculatePackageNameSimilarity(incomingApps.packages, existingApps.packages)
+            : 0.0;
+        
+        // Weighted combination: package similarity is more important than counts
+        double finalSimilarity = (countSimilarity * appCountWeight) + (packageSimilarity * appPackageWeight);
+        
+        logger.debug("App similarity calculation - Count: {}, Package: {}, Final: {}",
+            countSimilarity, packageSimilarity, finalSimilarity);
+        
+        return finalSimilarity;
+    }
+    
+    /**
+     * Calculates similarity based on app counts.
+     */
+    private double calculateAppCountSimilarity(AppProfile incoming, AppProfile existing) {
+        // Total app count similarity
+        double totalCountSimilarity = 1.0 - ((double) Math.abs(incoming.totalAppCount - existing.totalAppCount) /
+                                            (double) Math.max(incoming.totalAppCount, existing.totalAppCount));
+        
+        // User app count similarity
+        double userCountSimilarity = 1.0 - ((double) Math.abs(incoming.userAppCount - existing.userAppCount) /
+                                           (double) Math.max(incoming.userAppCount, existing.userAppCount));
+        
+        // System app count similarity
+        double systemCountSimilarity = 1.0 - ((double) Math.abs(incoming.systemAppCount - existing.systemAppCount) /
+                                             (double) Math.max(incoming.systemAppCount, existing.systemAppCount));
+        
+        // Weighted average: user apps are more distinctive than system apps
+        return (totalCountSimilarity * 0.4) + (userCountSimilarity * 0.4) + (systemCountSimilarity * 0.2);
+    }
+    
+    /**
+     * Calculates similarity based on package name overlap.
+     */
+    private double calculatePackageNameSimilarity(PackageSets incoming, PackageSets existing) {
+        // Calculate user app similarity (more important for device identification)
+        double userAppSimilarity = calculateSetSimilarity(
+            incoming.userApps, incoming.userAppCount, existing.userApps, existing.userAppCount);
+        
+        // Calculate system app similarity
+        double systemAppSimilarity = calculateSetSimilarity(
+            incoming.systemApps, incoming.systemAppCount, existing.systemApps, existing.systemAppCount);
+        
+        // Weighted combination: user apps are more distinctive
+        double packageSimilarity = (userAppSimilarity * userPackageWeight) + (systemAppSimilarity * systemPackageWeight);
+        
+        logger.debug("Package similarity - User apps: {}, System apps: {}", userAppSimilarity, systemAppSimilarity);
+        
+        return packageSimilarity;
+    }
+    
+    /**
+     * Calculates Jaccard similarity between two package sets with word-level bitmap operations.
+     * Set sizes are passed separately because incoming names that are not in the
+     * dictionary yet have no bit, but still belong to the union.
+     */
+    private static double calculateSetSimilarity(PackageBitmap set1, int size1, PackageBitmap set2, int size2) {
+        if (size1 == 0 && size2 == 0) {
+            return 1.0; // Both empty, perfect match
+        }
+        
+        int intersection = set1.andCardinality(set2);
+        int union = size1 + size2 - intersection;
+        return union == 0 ? 0.0 : (double) intersection / union;
+    }
+    
+    private static boolean matches(Object incoming, Object existing) {
+        return incoming != null && incoming.equals(existing);
+    }
+    
+    /**
+     * User and system packages of one device as dictionary ID bitmaps.
+     */
+    public static final class PackageSets {
+        private final PackageBitmap userApps;
+        private final int userAppCount;
+        private final PackageBitmap systemApps;
+        private final int systemAppCount;
+        
+        public PackageSets(PackageBitmap userApps, int userAppCount, PackageBitmap systemApps, int systemAppCount) {
+            this.userApps = userApps;
+            this.userAppCount = userAppCount;
+            this.systemApps = systemApps;
+            this.systemAppCount = systemAppCount;
+        }
+        
+        public static PackageSets of(PackageBitmap userApps, PackageBitmap systemApps) {
+            return new PackageSets(userApps, userApps.cardinality(), systemApps, systemApps.cardinality());
+        }
+    }
+    
+    /**
+     * App counts and package sets of one device, as far as they are known.
+     */
+    public static final class AppProfile {
+        private final int totalAppCount;
+        private final int userAppCount;
+        private final int systemAppCount;
+        // Null when the package sets could not be read
+        private final PackageSets packages;
+        
+        private AppProfile(Integer totalAppCount, Integer userAppCount, Integer systemAppCount, PackageSets packages) {
+            this.totalAppCount = totalAppCount != null ? totalAppCount : 0;
+            this.userAppCount = userAppCount != null ? userAppCount : 0;
+            this.systemAppCount = systemAppCount != null ? systemAppCount : 0;
+            this.packages = packages;
+        }
+        
+        public static AppProfile of(DeviceAppFingerprint appFingerprint, PackageSets packages) {
+            return new AppProfile(appFingerprint.getTotalAppCount(), appFingerprint.getUserAppCount(),
+                                  appFingerprint.getSystemAppCount(), packages);
+        }
+        
+        public static AppProfile of(AppFingerprintDto apps, PackageSets packages) {
+            return new AppProfile(apps.getTotalAppCount(), apps.getUserAppCount(), apps.getSystemAppCount(), packages);
+        }
+        
+        public PackageSets getPackages() {
+            return packages;
+        }
+    }
+}
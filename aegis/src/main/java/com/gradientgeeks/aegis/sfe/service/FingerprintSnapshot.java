@@ -0,0 +1,123 @@
+package com.gradientgeeks.aegis.sfe.service;
+
+import com.gradientgeeks.aegis.sfe.dto.DeviceFingerprintDto;
+import com.gradientgeeks.aegis.sfe.entity.DeviceFingerprint;
+
+import java.time.LocalDateTime;
+
+/**
+ * Immutable copy of the fingerprint attributes used for similarity scoring.
+ * Safe to keep in long-lived in-memory indexes and to share between threads,
+ * unlike managed (or detached, lazily initialised) DeviceFingerprint entities.
+ */
+public final class FingerprintSnapshot {
+    
+    private final Long id;
+    private final String deviceId;
+    private final String manufacturer;
+    private final String model;
+    private final String deviceName;
+    private final String board;
+    private final String brand;
+    private final String cpuArchitecture;
+    private final Integer widthPixels;
+    private final Integer heightPixels;
+    private final Integer densityDpi;
+    private final LocalDateTime fraudReportedAt;
+    private final String fraudReason;
+    
+    private FingerprintSnapshot(DeviceFingerprint fingerprint) {
+        this.id = fingerprint.getId();
+        this.deviceId = fingerprint.getDeviceId();
+        this.manufacturer = fingerprint.getManufacturer();
+        this.model = fingerprint.getModel();
+        this.deviceName = fingerprint.getDeviceName();
+        this.board = fingerprint.getBoard();
+        this.brand = fingerprint.getBrand();
+        this.cpuArchitecture = fingerprint.getCpuArchitecture();
+        this.widthPixels = fingerprint.getWidthPixels();
+        this.heightPixels = fingerprint.getHeightPixels();
+        this.densityDpi = fingerprint.getDensityDpi();
+        this.fraudReportedAt = fingerprint.getFraudReportedAt();
+        this.fraudReason = fingerprint.getFraudReason();
+    }
+    
+    private FingerprintSnapshot(String deviceId, DeviceFingerprintDto fingerprint) {
+        this.id = null;
+        this.deviceId = deviceId;
+        this.manufacturer = fingerprint.getHardware().getManufacturer();
+        this.model = fingerprint.getHardware().getModel();
+        this.deviceName = fingerprint.getHardware().getDevice();
+        this.board = fingerprint.getHardware().getBoard();
+        this.brand = fingerprint.getHardware().getBrand();
+        this.cpuArchitecture = fingerprint.getHardware().getCpuArchitecture();
+        this.widthPixels = fingerprint.getDisplay() != null ? fingerprint.getDisplay().getWidthPixels() : null;
+        this.heightPixels = fingerprint.getDisplay() != null ? fingerprint.getDisplay().getHeightPixels() : null;
+        this.densityDpi = fingerprint.getDisplay() != null ? fingerprint.getDisplay().getDensityDpi() : null;
+        this.fraudReportedAt = null;
+        this.fraudReason = null;
+    }
+    
+    public static FingerprintSnapshot from(DeviceFingerprint fingerprint) {
+        return new FingerprintSnapshot(fingerprint);
+    }
+    
+    /**
+     * Snapshot of an incoming, not yet stored fingerprint; it has no ID
+     */
+    public static FingerprintSnapshot from(String deviceId, DeviceFingerprintDto fingerprint) {
+        return new FingerprintSnapshot(deviceId, fingerprint);
+    }
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public String getDeviceId() {
+        return deviceId;
+    }
+    
+    public String getManufacturer() {
+        return manufacturer;
+    }
+    
+    public String getModel() {
+        return model;
+    }
+    
+    public String getDeviceName() {
+        return deviceName;
+    }
+    
+    public String getBoard() {
+        return board;
+    }
+    
+    public String getBrand() {
+        return brand;
+    }
+    
+    public String getCpuArchitecture() {
+        return cpuArchitecture;
+    }
+    
+    public Integer getWidthPixels() {
+        return widthPixels;
+    }
+    
+    public Integer getHeightPixels() {
+        return heightPixels;
+    }
+    
+    public Integer getDensityDpi() {
+        return densityDpi;
+    }
+    
+    public LocalDateTime getFraudReportedAt() {
+        return fraudReportedAt;
+    }
+    
+    public String getFraudReason() {
+        return fraudReason;
+    }
+}
@@ -0,0 +1,393 @@
+package com.gradientgeeks.aegis.sfe.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * In-memory graph linking devices through what they share: anonymized users,
+ * client IDs, composite fingerprint hashes and hardware hashes.
+ * 
+ * Every attribute is a node and every device is connected to the attribute nodes
+ * it was seen with, so two devices are one hop apart when they share any of them.
+ * Edges are added as devices register and users validate transactions on this
+ * node, and loaded incrementally from the database so links made on other nodes
+ * arrive with the next refresh.
+ * 
+ * When a device is marked fraudulent, a bounded breadth-first search runs on a
+ * background thread and queues every linked device for review in
+ * {@code fraud_review_flags}. Attribute nodes shared by more than
+ * {@code max-fanout} devices (a bank's client ID, a popular hardware model) are
+ * not expanded, since linking through them says nothing about a device.
+ */
+@Service
+public class FraudLinkageGraph {
+    
+    private static final Logger logger = LoggerFactory.getLogger(FraudLinkageGraph.class);
+    
+    private static final String DEVICE = "device";
+    private static final String USER = "user";
+    private static final String CLIENT = "client";
+    private static final String COMPOSITE = "composite";
+    private static final String HARDWARE = "hardware";
+    
+    private static final int LOAD_BATCH_SIZE = 10000;
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<String, Set<String>> adjacency = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor propagationExecutor;
+    private final AtomicBoolean capacityWarned = new AtomicBoolean();
+    
+    // Incremental load positions
+    private long lastFingerprintId = 0L;
+    private long lastContextId = 0L;
+    private Timestamp lastDeviceCreatedAt = new Timestamp(0L);
+    private String lastDeviceId = "";
+    private String lastDeviceClientId = "";
+    
+    @Value("${aegis.fraud.linkage.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${aegis.fraud.linkage.max-nodes:2000000}")
+    private int maxNodes;
+    
+    @Value("${aegis.fraud.linkage.max-depth:2}")
+    private int maxDepth;
+    
+    @Value("${aegis.fraud.linkage.max-fanout:50}")
+    private int maxFanout;
+    
+    @Value("${aegis.fraud.linkage.max-flagged:200}")
+    private int maxFlagged;
+    
+    @Autowired
+    public FraudLinkageGraph(JdbcTemplate jdbcTemplate,
+                             @Value("${aegis.fraud.linkage.queue-capacity:100}") int queueCapacity) {
+        this.jdbcTemplate = jdbcTemplate;
+        // One search at a time; when the backlog is full further searches are dropped, never the admin request
+        this.propagationExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+                Thread thread = new Thread(runnable, "fraud-linkage");
+                thread.setDaemon(true);
+                return thread;
+            },
+            (runnable, executor) -> logger.warn("Fraud propagation queue full, dropping propagation request"));
+    }
+    
+    /**
+     * Links a registered device to its client and fingerprint hashes once the transaction commits
+     */
+    public void linkRegistration(String deviceId, String clientId, String compositeHash, String hardwareHash) {
+        afterCommit(() -> {
+            link(deviceId, CLIENT, clientId);
+            link(deviceId, COMPOSITE, compositeHash);
+            link(deviceId, HARDWARE, hardwareHash);
+        });
+    }
+    
+    /**
+     * Links a device to an anonymized user of an organization once the transaction commits
+     */
+    public void linkUser(String deviceId, String organization, String anonymizedUserId, String clientId) {
+        afterCommit(() -> {
+            if (anonymizedUserId != null && !"unknown".equals(anonymizedUserId)) {
+                // Anonymized IDs are only unique within an organization
+                link(deviceId, USER, organization + ":" + anonymizedUserId);
+            }
+            link(deviceId, CLIENT, clientId);
+        });
+    }
+    
+    /**
+     * Queues the devices linked to a fraudulent device for review, in the background
+     * after the current transaction commits
+     */
+    public void propagateAfterCommit(String sourceDeviceId) {
+        if (!enabled) {
+            return;
+        }
+        afterCommit(() -> propagationExecutor.execute(() -> {
+            try {
+                propagate(sourceDeviceId);
+            } catch (Exception e) {
+                logger.error("Fraud propagation failed for device: {}", sourceDeviceId, e);
+            }
+        }));
+    }
+    
+    /**
+     * Breadth-first search from a fraudulent device, bounded by depth, fan-out
+     * and the number of devices flagged.
+     * 
+     * @return Number of review flags created
+     */
+    int propagate(String sourceDeviceId) {
+        long startTime = System.currentTimeMillis();
+        String source = node(DEVICE, sourceDeviceId);
+        
+        // Device node -> (hops, path of link types from the source)
+        Map<String, LinkedDevice> found = new LinkedHashMap<>();
+        Set<String> visited = new HashSet<>();
+        visited.add(source);
+        Queue<LinkedDevice> frontier = new ArrayDeque<>();
+        frontier.add(new LinkedDevice(source, 0, ""));
+        
+        while (!frontier.isEmpty() && found.size() < maxFlagged) {
+            LinkedDevice current = frontier.poll();
+            if (current.hops() >= maxDepth) {
+                continue;
+            }
+            for (String attribute : adjacency.getOrDefault(current.node(), Set.of())) {
+                if (!visited.add(attribute)) {
+                    continue;
+                }
+                Set<String> devices = adjacency.getOrDefault(attribute, Set.of());
+                if (devices.size() > maxFanout) {
+                    logger.debug("Not expanding {} shared by {} devices", attribute, devices.size());
+                    continue;
+                }
+                String path = current.path().isEmpty() ? type(attribute) : current.path() + " > " + type(attribute);
+                for (String device : devices) {
+                    if (!visited.add(device)) {
+                        continue;
+                    }
+                    LinkedDevice linked = new LinkedDevice(device, current.hops() + 1, path);
+                    found.put(device, linked);
+                    frontier.add(linked);
+                    if (found.size() >= maxFlagged) {
+                        break;
+                    }
+                }
+                if (found.size() >= maxFlagged) {
+                    break;
+                }
+            }
+        }
+        
+        int flagged = insertReviewFlags(sourceDeviceId, found.values());
+        logger.info("Fraud propagation from device {}: {} linked devices, {} queued for review in {} ms",
+                   sourceDeviceId, found.size(), flagged, System.currentTimeMillis() - startTime);
+        return flagged;
+    }
+    
+    private int insertReviewFlags(String sourceDeviceId, Collection<LinkedDevice> linked) {
+        if (linked.isEmpty()) {
+            return 0;
+        }
+        Map<String, LinkedDevice> byDeviceId = new HashMap<>();
+        linked.forEach(device -> byDeviceId.put(id(device.node()), device));
+        
+        // Devices already known to be fraudulent need no review
+        List<String> deviceIds = new ArrayList<>(byDeviceId.keySet());
+        jdbcTemplate.queryForList(
+            "SELECT device_id FROM device_fingerprints WHERE is_fraudulent = TRUE AND device_id IN (" +
+            String.join(",", Collections.nCopies(deviceIds.size(), "?")) + ")",
+            String.class, deviceIds.toArray()).forEach(byDeviceId::remove);
+        
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(byDeviceId.size());
+        byDeviceId.forEach((deviceId, device) -> rows.add(new Object[] {
+            deviceId, sourceDeviceId, device.hops(), truncate(device.path(), 500), "PENDING", now
+        }));
+        // IGNORE: a device already queued from the same source keeps its original flag
+        int[] inserted = jdbcTemplate.batchUpdate(
+            "INSERT IGNORE INTO fraud_review_flags (device_id, source_device_id, hops, link_path, status, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?)",
+            rows);
+        int count = 0;
+        for (int result : inserted) {
+            count += result > 0 || result == Statement.SUCCESS_NO_INFO ? 1 : 0;
+        }
+        return count;
+    }
+    
+    /**
+     * Loads links stored since the previous load, including those made on other nodes.
+     * The first run loads the whole graph.
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        refresh();
+    }
+    
+    @Scheduled(fixedDelayString = "${aegis.fraud.linkage.refresh-interval-ms:300000}",
+               initialDelayString = "${aegis.fraud.linkage.refresh-interval-ms:300000}")
+    public synchronized void refresh() {
+        if (!enabled) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        try {
+            long links = loadFingerprints() + loadDevices() + loadUserContexts();
+            if (links > 0) {
+                logger.info("Loaded {} fraud linkage rows in {} ms, graph has {} nodes",
+                           links, System.currentTimeMillis() - startTime, adjacency.size());
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to refresh fraud linkage graph, continuing from the last loaded position", e);
+        }
+    }
+    
+    public int getNodeCount() {
+        return adjacency.size();
+    }
+    
+    private long loadFingerprints() {
+        long loaded = 0L;
+        while (true) {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT id, device_id, composite_hash, hardware_hash FROM device_fingerprints " +
+                "WHERE id > ? ORDER BY id LIMIT ?", lastFingerprintId, LOAD_BATCH_SIZE);
+            for (Map<String, Object> row : rows) {
+                String deviceId = (String) row.get("device_id");
+                link(deviceId, COMPOSITE, (String) row.get("composite_hash"));
+                link(deviceId, HARDWARE, (String) row.get("hardware_hash"));
+                lastFingerprintId = ((Number) row.get("id")).longValue();
+            }
+            loaded += rows.size();
+            if (rows.size() < LOAD_BATCH_SIZE) {
+                return loaded;
+            }
+        }
+    }
+    
+    private long loadDevices() {
+        long loaded = 0L;
+        while (true) {
+            // Keyset on (created_at, device_id, client_id), served by idx_device_created_at_keyset
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT device_id, client_id, created_at FROM devices " +
+                "WHERE (created_at, device_id, client_id) > (?, ?, ?) " +
+                "ORDER BY created_at, device_id, client_id LIMIT ?",
+                lastDeviceCreatedAt, lastDeviceId, lastDeviceClientId, LOAD_BATCH_SIZE);
+            for (Map<String, Object> row : rows) {
+                lastDeviceId = (String) row.get("device_id");
+                lastDeviceClientId = (String) row.get("client_id");
+                lastDeviceCreatedAt = toTimestamp(row.get("created_at"));
+                link(lastDeviceId, CLIENT, lastDeviceClientId);
+            }
+            loaded += rows.size();
+            if (rows.size() < LOAD_BATCH_SIZE) {
+                return loaded;
+            }
+        }
+    }
+    
+    private long loadUserContexts() {
+        long loaded = 0L;
+        while (true) {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT id, device_id, organization, anonymized_user_id, client_id FROM user_device_context " +
+                "WHERE id > ? ORDER BY id LIMIT ?", lastContextId, LOAD_BATCH_SIZE);
+            for (Map<String, Object> row : rows) {
+                String deviceId = (String) row.get("device_id");
+                String anonymizedUserId = (String) row.get("anonymized_user_id");
+                if (anonymizedUserId != null && !"unknown".equals(anonymizedUserId)) {
+                    link(deviceId, USER, row.get("organization") + ":" + anonymizedUserId);
+                }
+                link(deviceId, CLIENT, (String) row.get("client_id"));
+                lastContextId = ((Number) row.get("id")).longValue();
+            }
+            loaded += rows.size();
+            if (rows.size() < LOAD_BATCH_SIZE) {
+                return loaded;
+            }
+        }
+    }
+    
+    private void link(String deviceId, String type, String value) {
+        if (deviceId == null || value == null || value.isEmpty()) {
+            return;
+        }
+        String device = node(DEVICE, deviceId);
+        String attribute = node(type, value);
+        if (adjacency.size() >= maxNodes && (!adjacency.containsKey(device) || !adjacency.containsKey(attribute))) {
+            if (capacityWarned.compareAndSet(false, true)) {
+                logger.warn("Fraud linkage graph reached {} nodes, new devices and attributes are no longer linked",
+                           maxNodes);
+            }
+            return;
+        }
+        adjacency.computeIfAbsent(device, key -> ConcurrentHashMap.newKeySet()).add(attribute);
+        adjacency.computeIfAbsent(attribute, key -> ConcurrentHashMap.newKeySet()).add(device);
+    }
+    
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+    
+    private static String node(String type, String value) {
+        return type + "|" + value;
+    }
+    
+    private static String type(String node) {
+        return node.substring(0, node.indexOf('|'));
+    }
+    
+    private static String id(String node) {
+        return node.substring(node.indexOf('|') + 1);
+    }
+    
+    private static Timestamp toTimestamp(Object value) {
+        if (value instanceof Timestamp timestamp) {
+            return timestamp;
+        }
+        return Timestamp.valueOf((LocalDateTime) value);
+    }
+    
+    private static String truncate(String value, int maxLength) {
+        return value.length() <= maxLength ? value : value.substring(0, maxLength);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        propagationExecutor.shutdownNow();
+    }
+    
+    /**
+     * A device reached by the search, with its distance and the link types on the way
+     */
+    private record LinkedDevice(String node, int hops, String path) {
+    }
+}
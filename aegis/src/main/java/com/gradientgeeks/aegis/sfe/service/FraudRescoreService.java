@@ -0,0 +1,355 @@
+package com.gradientgeeks.aegis.sfe.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gradientgeeks.aegis.sfe.entity.FraudRescoreJob;
+import com.gradientgeeks.aegis.sfe.entity.FraudRescoreVerdict;
+import com.gradientgeeks.aegis.sfe.repository.DeviceFingerprintRepository;
+import com.gradientgeeks.aegis.sfe.repository.FraudRescoreJobRepository;
+import com.gradientgeeks.aegis.sfe.repository.FraudRescoreVerdictRepository;
+import com.gradientgeeks.aegis.sfe.service.FingerprintScorer.AppProfile;
+import com.gradientgeeks.aegis.sfe.service.FingerprintScorer.Verdict;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Re-scores every stored, non-fraudulent fingerprint against the current set of
+ * fraudulent fingerprints with the current thresholds and weights, and reports
+ * the devices whose verdict differs from how they are treated today: BLOCK for a
+ * blocked device or one with a fraudulent fingerprint, ALLOW otherwise.
+ * 
+ * Fingerprints are read in ID-ordered chunks. Each chunk is scored in parallel on
+ * a dedicated fork-join pool, and its verdicts are written in the same transaction
+ * that advances the job's checkpoint, so an interrupted job resumes after the last
+ * written chunk. The job only reports; it does not change any device status.
+ */
+@Service
+public class FraudRescoreService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(FraudRescoreService.class);
+    
+    private final DeviceFingerprintRepository fingerprintRepository;
+    private final FraudRescoreJobRepository jobRepository;
+    private final FraudRescoreVerdictRepository verdictRepository;
+    private final FraudulentFingerprintIndex fraudulentFingerprintIndex;
+    private final DeviceFraudDetectionService deviceFraudDetectionService;
+    private final FingerprintScorer fingerprintScorer;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ForkJoinPool scoringPool;
+    private final ExecutorService jobExecutor;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    @Value("${aegis.fraud.rescore.chunk-size:1000}")
+    private int chunkSize;
+    
+    @Autowired
+    public FraudRescoreService(DeviceFingerprintRepository fingerprintRepository,
+                               FraudRescoreJobRepository jobRepository,
+                               FraudRescoreVerdictRepository verdictRepository,
+                               FraudulentFingerprintIndex fraudulentFingerprintIndex,
+                               DeviceFraudDetectionService deviceFraudDetectionService,
+                               FingerprintScorer fingerprintScorer,
+                               JdbcTemplate jdbcTemplate,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${aegis.fraud.rescore.parallelism:4}") int parallelism) {
+        this.fingerprintRepository = fingerprintRepository;
+        this.jobRepository = jobRepository;
+        this.verdictRepository = verdictRepository;
+        this.fraudulentFingerprintIndex = fraudulentFingerprintIndex;
+        this.deviceFraudDetectionService = deviceFraudDetectionService;
+        this.fingerprintScorer = fingerprintScorer;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        // Separate from the common pool so a re-scoring job cannot starve other parallel streams
+        this.scoringPool = new ForkJoinPool(parallelism);
+        this.jobExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fraud-rescore");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+        scoringPool.shutdownNow();
+    }
+    
+    /**
+     * Starts a re-scoring job in the background, or resumes the latest one if it did
+     * not complete and was started with the same settings.
+     * 
+     * @return The started or resumed job
+     * @throws IllegalStateException If a job is already running or the fraud set is not loaded yet
+     */
+    public synchronized FraudRescoreJob startRescore() {
+        if (!fraudulentFingerprintIndex.isReady()) {
+            throw new IllegalStateException("Fraudulent fingerprint index is not loaded yet");
+        }
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A re-scoring job is already running");
+        }
+        
+        try {
+            String settings = objectMapper.writeValueAsString(fingerprintScorer.getSettings());
+            FraudRescoreJob job = jobRepository.findFirstByOrderByIdDesc()
+                .filter(latest -> latest.getStatus() != FraudRescoreJob.JobStatus.COMPLETED)
+                .orElse(null);
+            
+            if (job != null && !settings.equals(job.getSettings())) {
+                // Verdicts written so far used other settings and cannot be mixed with new ones
+                logger.info("Abandoning re-scoring job {}: settings changed since it was started", job.getId());
+                job.setStatus(FraudRescoreJob.JobStatus.FAILED);
+                job.setErrorMessage("Superseded by a job with different settings");
+                jobRepository.save(job);
+                job = null;
+            }
+            
+            if (job == null) {
+                job = new FraudRescoreJob();
+                job.setSettings(settings);
+                job = jobRepository.save(job);
+                logger.info("Started re-scoring job {} with settings {}", job.getId(), settings);
+            } else {
+                job.setStatus(FraudRescoreJob.JobStatus.RUNNING);
+                job.setErrorMessage(null);
+                job = jobRepository.save(job);
+                logger.info("Resuming re-scoring job {} after fingerprint ID {}", job.getId(), job.getLastFingerprintId());
+            }
+            
+            Long jobId = job.getId();
+            jobExecutor.execute(() -> run(jobId));
+            return job;
+        } catch (JsonProcessingException e) {
+            running.set(false);
+            throw new IllegalStateException("Failed to serialize scoring settings", e);
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+    }
+    
+    public boolean isRunning() {
+        return running.get();
+    }
+    
+    /**
+     * Latest job, if any
+     */
+    public Optional<FraudRescoreJob> getLatestJob() {
+        return jobRepository.findFirstByOrderByIdDesc();
+    }
+    
+    /**
+     * Devices whose verdict in a job differs from their current treatment
+     */
+    public Page<FraudRescoreVerdict> getChangedVerdicts(Long jobId, Pageable pageable) {
+        return verdictRepository.findChangedByJobId(jobId, pageable);
+    }
+    
+    private void run(Long jobId) {
+        long startTime = System.currentTimeMillis();
+        try {
+            FraudRescoreJob job = jobRepository.findById(jobId)
+                .orElseThrow(() -> new IllegalStateException("Re-scoring job not found: " + jobId));
+            
+            long lastFingerprintId = job.getLastFingerprintId();
+            long processed = 0L;
+            while (!Thread.currentThread().isInterrupted()) {
+                long afterId = lastFingerprintId;
+                List<FingerprintSnapshot> chunk = readOnlyTransaction.execute(status -> fingerprintRepository
+                    .findNonFraudulentAfterId(afterId, PageRequest.of(0, chunkSize))
+                    .stream()
+                    .map(FingerprintSnapshot::from)
+                    .collect(Collectors.toList()));
+                if (chunk == null || chunk.isEmpty()) {
+                    break;
+                }
+                
+                List<ScoredFingerprint> scored = scoreChunk(chunk);
+                lastFingerprintId = chunk.get(chunk.size() - 1).getId();
+                Set<String> blockedDeviceIds = loadBlockedDeviceIds(chunk);
+                writeChunk(jobId, scored, blockedDeviceIds, lastFingerprintId);
+                processed += chunk.size();
+                logger.debug("Re-scoring job {}: scored fingerprints up to ID {}", jobId, lastFingerprintId);
+            }
+            
+            if (Thread.currentThread().isInterrupted()) {
+                logger.info("Re-scoring job {} interrupted after fingerprint ID {}", jobId, lastFingerprintId);
+                return;
+            }
+            
+            FraudRescoreJob completed = jobRepository.findById(jobId).orElseThrow();
+            completed.setStatus(FraudRescoreJob.JobStatus.COMPLETED);
+            completed.setCompletedAt(LocalDateTime.now());
+            jobRepository.save(completed);
+            logger.info("Re-scoring job {} completed: {} fingerprints in this run, {} changed verdicts in total ({} ms)",
+                       jobId, processed, completed.getChangedCount(), System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            logger.error("Re-scoring job {} failed, it resumes from its last checkpoint on the next start", jobId, e);
+            markFailed(jobId, e);
+        } finally {
+            running.set(false);
+        }
+    }
+    
+    /**
+     * Scores a chunk on the scoring pool. App profiles of the chunk and of all its
+     * candidates are loaded up front, so scoring itself does no I/O.
+     */
+    private List<ScoredFingerprint> scoreChunk(List<FingerprintSnapshot> chunk)
+            throws InterruptedException, ExecutionException {
+        Map<Long, List<FingerprintSnapshot>> candidatesById = new HashMap<>();
+        Map<Long, FingerprintSnapshot> profiled = new HashMap<>();
+        for (FingerprintSnapshot fingerprint : chunk) {
+            List<FingerprintSnapshot> candidates = fraudulentFingerprintIndex
+                .findByHardware(fingerprint.getManufacturer(), fingerprint.getModel(), fingerprint.getBoard())
+                .orElse(List.of());
+            if (!candidates.isEmpty()) {
+                candidatesById.put(fingerprint.getId(), candidates);
+                profiled.put(fingerprint.getId(), fingerprint);
+                candidates.forEach(candidate -> profiled.putIfAbsent(candidate.getId(), candidate));
+            }
+        }
+        Map<Long, AppProfile> appProfiles = deviceFraudDetectionService.loadAppProfiles(profiled.values());
+        
+        return scoringPool.submit(() -> chunk.parallelStream()
+                .map(fingerprint -> score(fingerprint, candidatesById.getOrDefault(fingerprint.getId(), List.of()),
+                                          appProfiles))
+                .collect(Collectors.toList()))
+            .get();
+    }
+    
+    private ScoredFingerprint score(FingerprintSnapshot fingerprint, List<FingerprintSnapshot> candidates,
+                                    Map<Long, AppProfile> appProfiles) {
+        AppProfile apps = appProfiles.get(fingerprint.getId());
+        double maxSimilarity = 0.0;
+        String matchedDeviceId = null;
+        for (FingerprintSnapshot candidate : candidates) {
+            if (candidate.getDeviceId().equals(fingerprint.getDeviceId())) {
+                continue;
+            }
+            double similarity = fingerprintScorer.score(fingerprint, apps, candidate, appProfiles.get(candidate.getId()));
+            if (similarity > maxSimilarity) {
+                maxSimilarity = similarity;
+                matchedDeviceId = candidate.getDeviceId();
+            }
+        }
+        return new ScoredFingerprint(fingerprint, fingerprintScorer.classify(maxSimilarity), maxSimilarity, matchedDeviceId);
+    }
+    
+    /**
+     * Devices of a chunk that are blocked for any client or have a fraudulent fingerprint
+     */
+    private Set<String> loadBlockedDeviceIds(List<FingerprintSnapshot> chunk) {
+        List<String> deviceIds = chunk.stream()
+            .map(FingerprintSnapshot::getDeviceId)
+            .distinct()
+            .collect(Collectors.toList());
+        String placeholders = String.join(",", Collections.nCopies(deviceIds.size(), "?"));
+        List<Object> args = new ArrayList<>(deviceIds);
+        args.addAll(deviceIds);
+        Set<String> blocked = new HashSet<>();
+        jdbcTemplate.query(
+            "SELECT device_id FROM devices WHERE status <> 'ACTIVE' AND device_id IN (" + placeholders + ") " +
+            "UNION SELECT device_id FROM device_fingerprints WHERE is_fraudulent = TRUE " +
+            "AND device_id IN (" + placeholders + ")",
+            rs -> {
+                blocked.add(rs.getString("device_id"));
+            },
+            args.toArray());
+        return blocked;
+    }
+    
+    /**
+     * Writes the verdicts of a chunk and advances the checkpoint in one transaction
+     */
+    private void writeChunk(Long jobId, List<ScoredFingerprint> scored, Set<String> blockedDeviceIds,
+                            long lastFingerprintId) {
+        List<Object[]> rows = new ArrayList<>();
+        long changed = 0L;
+        for (ScoredFingerprint result : scored) {
+            Verdict currentVerdict = blockedDeviceIds.contains(result.fingerprint.getDeviceId())
+                ? Verdict.BLOCK : Verdict.ALLOW;
+            if (result.verdict == Verdict.ALLOW && currentVerdict == Verdict.ALLOW) {
+                continue;
+            }
+            if (result.verdict != currentVerdict) {
+                changed++;
+            }
+            rows.add(new Object[] {jobId, result.fingerprint.getId(), result.fingerprint.getDeviceId(),
+                                   result.verdict.name(), currentVerdict.name(), result.score, result.matchedDeviceId});
+        }
+        
+        long changedInChunk = changed;
+        transaction.executeWithoutResult(status -> {
+            if (!rows.isEmpty()) {
+                jdbcTemplate.batchUpdate(
+                    "INSERT INTO fraud_rescore_verdicts (job_id, fingerprint_id, device_id, verdict, " +
+                    "current_verdict, score, matched_device_id) VALUES (?, ?, ?, ?, ?, ?, ?)", rows);
+            }
+            jdbcTemplate.update(
+                "UPDATE fraud_rescore_jobs SET last_fingerprint_id = ?, processed_count = processed_count + ?, " +
+                "changed_count = changed_count + ? WHERE id = ?",
+                lastFingerprintId, scored.size(), changedInChunk, jobId);
+        });
+    }
+    
+    private void markFailed(Long jobId, Exception cause) {
+        try {
+            jobRepository.findById(jobId).ifPresent(job -> {
+                String message = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+                job.setStatus(FraudRescoreJob.JobStatus.FAILED);
+                job.setErrorMessage(message.length() > 500 ? message.substring(0, 500) : message);
+                jobRepository.save(job);
+            });
+        } catch (Exception e) {
+            logger.error("Failed to record failure of re-scoring job {}", jobId, e);
+        }
+    }
+    
+    private static final class ScoredFingerprint {
+        private final FingerprintSnapshot fingerprint;
+        private final Verdict verdict;
+        private final double score;
+        private final String matchedDeviceId;
+        
+        private ScoredFingerprint(FingerprintSnapshot fingerprint, Verdict verdict, double score, String matchedDeviceId) {
+            this.fingerprint = fingerprint;
+            this.verdict = verdict;
+            this.score = score;
+            this.matchedDeviceId = matchedDeviceId;
+        }
+    }
+}
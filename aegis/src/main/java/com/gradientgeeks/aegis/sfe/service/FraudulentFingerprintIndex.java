@@ -0,0 +1,189 @@
+package com.gradientgeeks.aegis.sfe.service;
+
+import com.gradientgeeks.aegis.sfe.entity.DeviceFingerprint;
+import com.gradientgeeks.aegis.sfe.repository.DeviceFingerprintRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory index of fraudulent fingerprints keyed by (manufacturer, model, board).
+ * 
+ * Fraudulent fingerprints are a small, slowly changing set, so registration-time
+ * lookups are served from memory instead of querying MySQL. The index is loaded at
+ * startup, updated when a device is marked fraudulent (locally and, through the
+ * {@link ClusterEventBus}, on the other nodes) and fully reloaded periodically to
+ * pick up anything a node missed. Until the first load completes, callers fall
+ * back to the database.
+ */
+@Service
+public class FraudulentFingerprintIndex {
+    
+    private static final Logger logger = LoggerFactory.getLogger(FraudulentFingerprintIndex.class);
+    
+    static final String EVENT_FINGERPRINT_FRAUDULENT = "fraud-index.add";
+    
+    private final DeviceFingerprintRepository fingerprintRepository;
+    
+    // Lists are immutable and replaced on write, so readers never lock
+    private volatile Map<String, List<FingerprintSnapshot>> byHardware = new ConcurrentHashMap<>();
+    private volatile boolean ready = false;
+    
+    // Additions made while a reload is reading the database, replayed onto the rebuilt index
+    private final Object reloadLock = new Object();
+    private List<FingerprintSnapshot> addedDuringReload;
+    
+    @Autowired
+    public FraudulentFingerprintIndex(DeviceFingerprintRepository fingerprintRepository,
+                                      ClusterEventBus clusterEventBus) {
+        this.fingerprintRepository = fingerprintRepository;
+        clusterEventBus.subscribe(EVENT_FINGERPRINT_FRAUDULENT, payload -> {
+            Object fingerprintId = payload.get("fingerprintId");
+            if (fingerprintId instanceof Number id) {
+                fingerprintRepository.findById(id.longValue())
+                        .filter(fingerprint -> Boolean.TRUE.equals(fingerprint.getIsFraudulent()))
+                        .ifPresent(fingerprint -> add(FingerprintSnapshot.from(fingerprint)));
+            }
+        });
+    }
+    
+    /**
+     * Whether the index has been loaded and can answer lookups
+     */
+    public boolean isReady() {
+        return ready;
+    }
+    
+    /**
+     * Fraudulent fingerprints sharing manufacturer, model and board. One hash lookup.
+     * 
+     * @return Matching fingerprints, or empty if the index is not loaded yet
+     */
+    public Optional<List<FingerprintSnapshot>> findByHardware(String manufacturer, String model, String board) {
+        if (!ready) {
+            return Optional.empty();
+        }
+        return Optional.of(byHardware.getOrDefault(key(manufacturer, model, board), List.of()));
+    }
+    
+    /**
+     * Adds a fingerprint once the surrounding transaction (if any) has committed
+     */
+    public void addAfterCommit(DeviceFingerprint fingerprint) {
+        FingerprintSnapshot snapshot = FingerprintSnapshot.from(fingerprint);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    add(snapshot);
+                }
+            });
+        } else {
+            add(snapshot);
+        }
+    }
+    
+    /**
+     * Number of indexed fingerprints
+     */
+    public int size() {
+        return byHardware.values().stream().mapToInt(List::size).sum();
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        reload();
+    }
+    
+    /**
+     * Full rebuild from the database; heals updates missed over the cluster bus
+     */
+    @Scheduled(fixedDelayString = "${aegis.fraud.index.refresh-interval-ms:1800000}",
+               initialDelayString = "${aegis.fraud.index.refresh-interval-ms:1800000}")
+    public void reload() {
+        long startTime = System.currentTimeMillis();
+        synchronized (reloadLock) {
+            addedDuringReload = new ArrayList<>();
+        }
+        try {
+            Map<String, List<FingerprintSnapshot>> rebuilt = new HashMap<>();
+            for (DeviceFingerprint fingerprint : fingerprintRepository.findAllFraudulent()) {
+                rebuilt.computeIfAbsent(key(fingerprint.getManufacturer(), fingerprint.getModel(), fingerprint.getBoard()),
+                                        k -> new ArrayList<>())
+                       .add(FingerprintSnapshot.from(fingerprint));
+            }
+            
+            Map<String, List<FingerprintSnapshot>> index = new ConcurrentHashMap<>();
+            rebuilt.forEach((hardwareKey, snapshots) -> index.put(hardwareKey, List.copyOf(snapshots)));
+            
+            List<FingerprintSnapshot> replay;
+            synchronized (reloadLock) {
+                byHardware = index;
+                replay = addedDuringReload;
+                addedDuringReload = null;
+            }
+            replay.forEach(snapshot -> addTo(index, snapshot));
+            ready = true;
+            
+            logger.info("Fraudulent fingerprint index loaded: {} fingerprints in {} hardware groups ({} ms)",
+                       size(), index.size(), System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            synchronized (reloadLock) {
+                addedDuringReload = null;
+            }
+            logger.error("Failed to load fraudulent fingerprint index, lookups {} the database",
+                        ready ? "keep the previous index instead of" : "fall back to", e);
+        }
+    }
+    
+    private void add(FingerprintSnapshot snapshot) {
+        synchronized (reloadLock) {
+            if (addedDuringReload != null) {
+                addedDuringReload.add(snapshot);
+            }
+        }
+        addTo(byHardware, snapshot);
+        logger.debug("Indexed fraudulent fingerprint {} for device {}", snapshot.getId(), snapshot.getDeviceId());
+    }
+    
+    private static void addTo(Map<String, List<FingerprintSnapshot>> index, FingerprintSnapshot snapshot) {
+        index.compute(key(snapshot.getManufacturer(), snapshot.getModel(), snapshot.getBoard()),
+                (hardwareKey, existing) -> {
+                    List<FingerprintSnapshot> updated = new ArrayList<>();
+                    if (existing != null) {
+                        for (FingerprintSnapshot current : existing) {
+                            if (!current.getId().equals(snapshot.getId())) {
+                                updated.add(current);
+                            }
+                        }
+                    }
+                    updated.add(snapshot);
+                    return List.copyOf(updated);
+                });
+    }
+    
+    /**
+     * Case-insensitive like the default MySQL collation used by the equivalent query
+     */
+    private static String key(String manufacturer, String model, String board) {
+        return normalize(manufacturer) + '\u0000' + normalize(model) + '\u0000' + normalize(board);
+    }
+    
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,284 @@
+package com.gradientgeeks.aegis.sfe.service;
+
+import com.gradientgeeks.aegis.sfe.dto.HardwareFingerprintDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Maintains per-hardware-cluster registration counters for device farm detection.
+ * 
+ * A cluster is every fingerprint sharing manufacturer, model, board and CPU
+ * architecture. Each new fingerprint increments the cluster's total in
+ * {@code hardware_cluster_stats} and its current hour in {@code hardware_cluster_hourly}.
+ * Farm checks then read one row plus at most a day of hourly buckets instead of
+ * loading every matching fingerprint.
+ */
+@Service
+public class HardwareClusterStatsService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(HardwareClusterStatsService.class);
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate newTransaction;
+    
+    @Value("${aegis.fraud.clusters.baseline-hours:24}")
+    private int baselineHours;
+    
+    @Value("${aegis.fraud.clusters.hourly-retention-hours:168}")
+    private int hourlyRetentionHours;
+    
+    @Value("${aegis.fraud.clusters.backfill:true}")
+    private boolean backfillOnStartup;
+    
+    @Autowired
+    public HardwareClusterStatsService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Counters are updated after the registration commits, in a short transaction of their own
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+    
+    /**
+     * Counts a new fingerprint once the surrounding transaction commits.
+     * Kept out of the registration transaction so hot clusters do not hold row locks for its duration.
+     */
+    public void recordRegistration(String manufacturer, String model, String board, String cpuArchitecture) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    increment(manufacturer, model, board, cpuArchitecture);
+                }
+            });
+        } else {
+            increment(manufacturer, model, board, cpuArchitecture);
+        }
+    }
+    
+    /**
+     * Current statistics of the cluster the given hardware belongs to
+     */
+    public ClusterStats getClusterStats(HardwareFingerprintDto hardware) {
+        return getClusterStats(hardware.getManufacturer(), hardware.getModel(),
+                               hardware.getBoard(), hardware.getCpuArchitecture());
+    }
+    
+    public ClusterStats getClusterStats(String manufacturer, String model, String board, String cpuArchitecture) {
+        String clusterKey = clusterKey(manufacturer, model, board, cpuArchitecture);
+        LocalDateTime currentHour = currentHour();
+        
+        List<Long> totals = jdbcTemplate.queryForList(
+            "SELECT device_count FROM hardware_cluster_stats WHERE cluster_key = ?", Long.class, clusterKey);
+        long deviceCount = totals.isEmpty() ? 0L : totals.get(0);
+        if (deviceCount == 0) {
+            return new ClusterStats(0L, 0L, 0L);
+        }
+        
+        Map<String, Object> window = jdbcTemplate.queryForMap(
+            "SELECT COALESCE(SUM(CASE WHEN hour_start >= ? THEN registrations ELSE 0 END), 0) AS recent, " +
+            "COALESCE(SUM(CASE WHEN hour_start < ? THEN registrations ELSE 0 END), 0) AS baseline " +
+            "FROM hardware_cluster_hourly WHERE cluster_key = ? AND hour_start >= ?",
+            Timestamp.valueOf(currentHour), Timestamp.valueOf(currentHour), clusterKey,
+            Timestamp.valueOf(currentHour.minusHours(baselineHours)));
+        
+        return new ClusterStats(deviceCount,
+                                ((Number) window.get("recent")).longValue(),
+                                ((Number) window.get("baseline")).longValue());
+    }
+    
+    /**
+     * Clusters whose registrations in the recent window grew the most relative to
+     * their hourly baseline.
+     * 
+     * @param windowHours Length of the recent window in hours
+     * @param limit Maximum number of clusters
+     * @return Clusters ordered by growth, fastest first
+     */
+    public List<Map<String, Object>> getTrendingClusters(int windowHours, int limit) {
+        LocalDateTime recentStart = currentHour().minusHours(windowHours - 1L);
+        LocalDateTime baselineStart = recentStart.minusHours(baselineHours);
+        
+        return jdbcTemplate.query(
+            "SELECT s.manufacturer, s.model, s.board, s.cpu_architecture, s.device_count, s.first_seen_at, " +
+            "t.recent, t.baseline FROM (" +
+            "  SELECT cluster_key, " +
+            "  SUM(CASE WHEN hour_start >= ? THEN registrations ELSE 0 END) AS recent, " +
+            "  SUM(CASE WHEN hour_start < ? THEN registrations ELSE 0 END) AS baseline " +
+            "  FROM hardware_cluster_hourly WHERE hour_start >= ? GROUP BY cluster_key" +
+            ") t JOIN hardware_cluster_stats s ON s.cluster_key = t.cluster_key " +
+            "WHERE t.recent > 0 " +
+            // Recent hourly rate over baseline hourly rate, smoothed so new clusters do not divide by zero
+            "ORDER BY (t.recent / ?) / ((t.baseline + 1) / ?) DESC, t.recent DESC LIMIT ?",
+            (rs, rowNum) -> {
+                long recent = rs.getLong("recent");
+                long baseline = rs.getLong("baseline");
+                double recentRate = (double) recent / windowHours;
+                double baselineRate = (double) baseline / baselineHours;
+                
+                Map<String, Object> cluster = new LinkedHashMap<>();
+                cluster.put("manufacturer", rs.getString("manufacturer"));
+                cluster.put("model", rs.getString("model"));
+                cluster.put("board", rs.getString("board"));
+                cluster.put("cpuArchitecture", rs.getString("cpu_architecture"));
+                cluster.put("deviceCount", rs.getLong("device_count"));
+                Timestamp firstSeen = rs.getTimestamp("first_seen_at");
+                cluster.put("firstSeenAt", firstSeen != null ? firstSeen.toLocalDateTime() : null);
+                cluster.put("recentRegistrations", recent);
+                cluster.put("baselineRegistrations", baseline);
+                cluster.put("recentHourlyRate", recentRate);
+                cluster.put("baselineHourlyRate", baselineRate);
+                cluster.put("growthFactor", baselineRate > 0 ? recentRate / baselineRate : null);
+                return cluster;
+            },
+            Timestamp.valueOf(recentStart), Timestamp.valueOf(recentStart), Timestamp.valueOf(baselineStart),
+            windowHours, baselineHours, limit);
+    }
+    
+    public int getBaselineHours() {
+        return baselineHours;
+    }
+    
+    /**
+     * Drops hourly buckets older than the retention period
+     */
+    @Scheduled(cron = "${aegis.fraud.clusters.purge-cron:0 15 * * * *}")
+    public void purgeHourlyCounts() {
+        int deleted = jdbcTemplate.update("DELETE FROM hardware_cluster_hourly WHERE hour_start < ?",
+            Timestamp.valueOf(currentHour().minusHours(hourlyRetentionHours)));
+        if (deleted > 0) {
+            logger.debug("Purged {} hardware cluster hourly buckets", deleted);
+        }
+    }
+    
+    /**
+     * Seeds the cluster totals from existing fingerprints when the table is empty
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        if (!backfillOnStartup) {
+            return;
+        }
+        
+        try {
+            Long existing = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM hardware_cluster_stats", Long.class);
+            if (existing != null && existing > 0) {
+                return;
+            }
+            
+            long startTime = System.currentTimeMillis();
+            List<Object[]> rows = new ArrayList<>();
+            jdbcTemplate.query(
+                "SELECT manufacturer, model, board, cpu_architecture, COUNT(*) AS devices, " +
+                "MIN(created_at) AS first_seen, MAX(created_at) AS last_seen " +
+                "FROM device_fingerprints GROUP BY manufacturer, model, board, cpu_architecture",
+                rs -> {
+                    String manufacturer = rs.getString("manufacturer");
+                    String model = rs.getString("model");
+                    String board = rs.getString("board");
+                    String cpuArchitecture = rs.getString("cpu_architecture");
+                    rows.add(new Object[] {
+                        clusterKey(manufacturer, model, board, cpuArchitecture),
+                        manufacturer, model, board, cpuArchitecture, rs.getLong("devices"),
+                        rs.getTimestamp("first_seen"), rs.getTimestamp("last_seen")
+                    });
+                });
+            
+            // GREATEST: registrations counted live while the backfill ran are not lost
+            jdbcTemplate.batchUpdate(
+                "INSERT INTO hardware_cluster_stats (cluster_key, manufacturer, model, board, cpu_architecture, " +
+                "device_count, first_seen_at, last_seen_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE device_count = GREATEST(device_count, VALUES(device_count)), " +
+                "first_seen_at = LEAST(first_seen_at, VALUES(first_seen_at))",
+                rows);
+            logger.info("Seeded {} hardware clusters from existing fingerprints in {} ms",
+                       rows.size(), System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            logger.warn("Failed to seed hardware cluster statistics", e);
+        }
+    }
+    
+    private void increment(String manufacturer, String model, String board, String cpuArchitecture) {
+        String clusterKey = clusterKey(manufacturer, model, board, cpuArchitecture);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        
+        try {
+            newTransaction.executeWithoutResult(status -> {
+                jdbcTemplate.update(
+                    "INSERT INTO hardware_cluster_stats (cluster_key, manufacturer, model, board, cpu_architecture, " +
+                    "device_count, first_seen_at, last_seen_at) VALUES (?, ?, ?, ?, ?, 1, ?, ?) " +
+                    "ON DUPLICATE KEY UPDATE device_count = device_count + 1, last_seen_at = VALUES(last_seen_at)",
+                    clusterKey, manufacturer, model, board, cpuArchitecture, now, now);
+                jdbcTemplate.update(
+                    "INSERT INTO hardware_cluster_hourly (cluster_key, hour_start, registrations) VALUES (?, ?, 1) " +
+                    "ON DUPLICATE KEY UPDATE registrations = registrations + 1",
+                    clusterKey, Timestamp.valueOf(currentHour()));
+            });
+        } catch (Exception e) {
+            // Counters are advisory; never fail a registration over them
+            logger.warn("Failed to update hardware cluster statistics for {} {}", manufacturer, model, e);
+        }
+    }
+    
+    /**
+     * Case-insensitive like the default MySQL collation the fingerprint queries used
+     */
+    static String clusterKey(String manufacturer, String model, String board, String cpuArchitecture) {
+        String normalized = normalize(manufacturer) + '\u0000' + normalize(model) + '\u0000'
+            + normalize(board) + '\u0000' + normalize(cpuArchitecture);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(normalized.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    private static LocalDateTime currentHour() {
+        return LocalDateTime.now().truncatedTo(ChronoUnit.HOURS);
+    }
+    
+    /**
+     * Size of a hardware cluster and its registrations in the current hour
+     * and in the preceding baseline window
+     */
+    public record ClusterStats(long deviceCount, long currentHourRegistrations, long baselineRegistrations) {
+        
+        /**
+         * Average registrations per hour over the baseline window
+         */
+        public double baselineHourlyRate(int baselineHours) {
+            return baselineHours > 0 ? (double) baselineRegistrations / baselineHours : 0.0;
+        }
+    }
+}
@@ -1,29 +1,167 @@
 package com.gradientgeeks.aegis.sfe.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.AlgorithmParameters;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Verifies Play Integrity verdicts locally: the token is a JWS whose signature is
+ * checked against a JWKS file on disk, and whose payload must carry the required
+ * app and device verdicts and be recent enough. Tokens as issued by Play are a JWE
+ * (A256KW, A256GCM) wrapping that JWS; they are decrypted first with the app's
+ * decryption key.
+ * 
+ * Keys are parsed once and reloaded when the file changes, so no registration
+ * makes a network call. Verdicts are cached by token hash until the token
+ * expires or gets too old, so a retried registration is not verified again. With
+ * verification disabled every token, or none, is accepted as before; with it
+ * enabled a missing token is rejected.
+ */
 @Service
 public class IntegrityValidationService {
     
     private static final Logger logger = LoggerFactory.getLogger(IntegrityValidationService.class);
     
+    private static final Base64.Decoder BASE64_URL = Base64.getUrlDecoder();
+    
+    private final CryptographyService cryptographyService;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    private volatile Map<String, PublicKey> keysById = Map.of();
+    private volatile long jwksModifiedAt = -1L;
+    private Map<String, CachedVerdict> verdicts;
+    
+    @Value("${aegis.integrity.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${aegis.integrity.jwks-path:./config/play-integrity-jwks.json}")
+    private String jwksPath;
+    
+    // Base64 AES-256 key from the Play Console, for tokens that are still encrypted
+    @Value("${aegis.integrity.decryption-key:}")
+    private String decryptionKey;
+    
+    @Value("${aegis.integrity.package-name:}")
+    private String expectedPackageName;
+    
+    @Value("${aegis.integrity.require-play-recognized:true}")
+    private boolean requirePlayRecognized;
+    
+    @Value("${aegis.integrity.required-device-verdict:MEETS_DEVICE_INTEGRITY}")
+    private String requiredDeviceVerdict;
+    
+    @Value("${aegis.integrity.max-token-age-ms:300000}")
+    private long maxTokenAgeMs;
+    
+    @Value("${aegis.integrity.verdict-cache-size:10000}")
+    private int verdictCacheSize;
+    
+    private record CachedVerdict(boolean valid, long expiresAtMillis) {}
+    
+    @Autowired
+    public IntegrityValidationService(CryptographyService cryptographyService) {
+        this.cryptographyService = cryptographyService;
+    }
+    
+    @PostConstruct
+    public void init() {
+        verdicts = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedVerdict> eldest) {
+                return size() > verdictCacheSize;
+            }
+        });
+        if (enabled) {
+            reloadKeysIfChanged();
+        }
+    }
+    
     public boolean validatePlayIntegrityToken(String integrityToken) {
-        logger.debug("Validating Play Integrity token: {}", 
+        logger.debug("Validating Play Integrity token: {}",
             integrityToken != null ? "[PRESENT]" : "null");
         
-        if (integrityToken == null || integrityToken.trim().isEmpty()) {
-            logger.debug("No integrity token provided - allowing for hackathon demo");
+        if (!enabled) {
+            logger.debug("Play Integrity verification disabled - accepting token");
             return true;
         }
         
+        if (integrityToken == null || integrityToken.trim().isEmpty()) {
+            logger.warn("No integrity token provided while Play Integrity verification is enabled");
+            return false;
+        }
+        
+        String tokenHash = cryptographyService.hashString(integrityToken);
+        CachedVerdict cached = verdicts.get(tokenHash);
+        if (cached != null && cached.expiresAtMillis() > System.currentTimeMillis()) {
+            logger.debug("Using cached integrity verdict: {}", cached.valid());
+            return cached.valid();
+        }
+        
         try {
-            logger.info("HACKATHON MODE: Bypassing Play Integrity API validation");
-            logger.info("In production, this would validate the JWS token against Google's public keys");
-            logger.info("Expected checks: appIntegrity=PLAY_RECOGNIZED, deviceIntegrity=MEETS_DEVICE_INTEGRITY");
+            String[] parts = integrityToken.trim().split("\\.", -1);
+            if (parts.length == 5) {
+                if (decryptionKey.isEmpty()) {
+                    logger.warn("Integrity token is encrypted but aegis.integrity.decryption-key is not set");
+                    return false;
+                }
+                parts = decryptJwe(parts).split("\\.", -1);
+            }
+            if (parts.length != 3) {
+                logger.warn("Integrity token is not a compact JWS");
+                return false;
+            }
+            if (!validateJwsSignature(parts)) {
+                logger.warn("Integrity token signature is invalid");
+                return false;
+            }
             
-            return true;
+            // Signature is valid, so the payload's timestamps can be trusted for caching
+            JsonNode payload = objectMapper.readTree(BASE64_URL.decode(parts[1]));
+            long issuedAtMillis = payload.path("requestDetails").path("timestampMillis").asLong(0L);
+            long expiresAtMillis = payload.hasNonNull("exp")
+                ? payload.get("exp").asLong() * 1000L : issuedAtMillis + maxTokenAgeMs;
+            boolean valid = checkIntegrityVerdict(payload, issuedAtMillis, expiresAtMillis);
+            // A cached verdict must not outlive the age limit, or a replayed token would pass
+            long cacheUntilMillis = Math.min(expiresAtMillis, issuedAtMillis + maxTokenAgeMs);
+            if (cacheUntilMillis > System.currentTimeMillis()) {
+                verdicts.put(tokenHash, new CachedVerdict(valid, cacheUntilMillis));
+            }
+            return valid;
             
         } catch (Exception e) {
             logger.error("Error validating integrity token", e);
@@ -31,13 +169,179 @@ public class IntegrityValidationService {
         }
     }
     
-    private boolean validateJwsSignature(String token) {
-        logger.debug("PRODUCTION IMPLEMENTATION: Would validate JWS signature here");
-        return true;
+    /**
+     * Reloads the JWKS file if it changed since the last load
+     */
+    @Scheduled(fixedDelayString = "${aegis.integrity.jwks-refresh-interval-ms:60000}",
+               initialDelayString = "${aegis.integrity.jwks-refresh-interval-ms:60000}")
+    public synchronized void reloadKeysIfChanged() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Path path = Paths.get(jwksPath);
+            long modifiedAt = Files.getLastModifiedTime(path).toMillis();
+            if (modifiedAt == jwksModifiedAt) {
+                return;
+            }
+            Map<String, PublicKey> loaded = new HashMap<>();
+            JsonNode keys = objectMapper.readTree(path.toFile()).path("keys");
+            for (JsonNode jwk : keys) {
+                try {
+                    PublicKey key = parseJwk(jwk);
+                    loaded.put(jwk.path("kid").asText("key-" + loaded.size()), key);
+                } catch (Exception e) {
+                    logger.warn("Skipping unsupported or malformed JWK with kid: {}", jwk.path("kid").asText(), e);
+                }
+            }
+            keysById = loaded;
+            jwksModifiedAt = modifiedAt;
+            logger.info("Loaded {} Play Integrity verification keys from {}", loaded.size(), jwksPath);
+        } catch (Exception e) {
+            logger.error("Failed to load Play Integrity JWKS from {}, keeping {} loaded keys",
+                        jwksPath, keysById.size(), e);
+        }
+    }
+    
+    private boolean validateJwsSignature(String[] parts) throws Exception {
+        JsonNode header = objectMapper.readTree(BASE64_URL.decode(parts[0]));
+        String algorithm = header.path("alg").asText();
+        String jcaAlgorithm;
+        switch (algorithm) {
+            case "RS256" -> jcaAlgorithm = "SHA256withRSA";
+            case "ES256" -> jcaAlgorithm = "SHA256withECDSA";
+            default -> {
+                logger.warn("Unsupported integrity token algorithm: {}", algorithm);
+                return false;
+            }
+        }
+        
+        byte[] signingInput = (parts[0] + "." + parts[1]).getBytes(StandardCharsets.US_ASCII);
+        byte[] signature = BASE64_URL.decode(parts[2]);
+        if ("ES256".equals(algorithm)) {
+            if (signature.length != 64) {
+                return false;
+            }
+            signature = toDerSignature(signature);
+        }
+        
+        Map<String, PublicKey> keys = keysById;
+        String kid = header.path("kid").asText(null);
+        Iterable<PublicKey> candidates = kid != null
+            ? (keys.containsKey(kid) ? List.of(keys.get(kid)) : List.of())
+            : keys.values();
+        for (PublicKey key : candidates) {
+            boolean matchesType = "RS256".equals(algorithm) ? key instanceof RSAPublicKey : key instanceof ECPublicKey;
+            if (!matchesType) {
+                continue;
+            }
+            Signature verifier = Signature.getInstance(jcaAlgorithm);
+            verifier.initVerify(key);
+            verifier.update(signingInput);
+            if (verifier.verify(signature)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Decrypts a compact JWE (A256KW key wrapping, A256GCM content encryption) to the JWS it carries
+     */
+    private String decryptJwe(String[] parts) throws Exception {
+        JsonNode header = objectMapper.readTree(BASE64_URL.decode(parts[0]));
+        if (!"A256KW".equals(header.path("alg").asText()) || !"A256GCM".equals(header.path("enc").asText())) {
+            throw new IllegalArgumentException("Unsupported integrity token encryption: "
+                + header.path("alg").asText() + "/" + header.path("enc").asText());
+        }
+        
+        Cipher unwrap = Cipher.getInstance("AESWrap");
+        unwrap.init(Cipher.UNWRAP_MODE, new SecretKeySpec(Base64.getDecoder().decode(decryptionKey), "AES"));
+        Key contentKey = unwrap.unwrap(BASE64_URL.decode(parts[1]), "AES", Cipher.SECRET_KEY);
+        
+        byte[] ciphertext = BASE64_URL.decode(parts[3]);
+        byte[] tag = BASE64_URL.decode(parts[4]);
+        byte[] sealed = Arrays.copyOf(ciphertext, ciphertext.length + tag.length);
+        System.arraycopy(tag, 0, sealed, ciphertext.length, tag.length);
+        
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, (SecretKey) contentKey,
+                    new GCMParameterSpec(tag.length * 8, BASE64_URL.decode(parts[2])));
+        cipher.updateAAD(parts[0].getBytes(StandardCharsets.US_ASCII));
+        return new String(cipher.doFinal(sealed), StandardCharsets.US_ASCII);
+    }
+    
+    private boolean checkIntegrityVerdict(JsonNode payload, long issuedAtMillis, long expiresAtMillis) {
+        long now = System.currentTimeMillis();
+        if (issuedAtMillis <= 0 || now - issuedAtMillis > maxTokenAgeMs || now > expiresAtMillis) {
+            logger.warn("Integrity token is missing a timestamp or has expired");
+            return false;
+        }
+        
+        JsonNode appIntegrity = payload.path("appIntegrity");
+        if (requirePlayRecognized && !"PLAY_RECOGNIZED".equals(appIntegrity.path("appRecognitionVerdict").asText())) {
+            logger.warn("App not recognized by Play: {}", appIntegrity.path("appRecognitionVerdict").asText());
+            return false;
+        }
+        if (!expectedPackageName.isEmpty()
+                && !expectedPackageName.equals(payload.path("requestDetails").path("requestPackageName").asText())) {
+            logger.warn("Integrity token issued for another package: {}",
+                       payload.path("requestDetails").path("requestPackageName").asText());
+            return false;
+        }
+        
+        for (JsonNode verdict : payload.path("deviceIntegrity").path("deviceRecognitionVerdict")) {
+            if (requiredDeviceVerdict.equals(verdict.asText())) {
+                return true;
+            }
+        }
+        logger.warn("Device integrity verdict does not include {}", requiredDeviceVerdict);
+        return false;
+    }
+    
+    private static PublicKey parseJwk(JsonNode jwk) throws Exception {
+        switch (jwk.path("kty").asText()) {
+            case "RSA": {
+                BigInteger modulus = new BigInteger(1, BASE64_URL.decode(jwk.path("n").asText()));
+                BigInteger exponent = new BigInteger(1, BASE64_URL.decode(jwk.path("e").asText()));
+                return KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(modulus, exponent));
+            }
+            case "EC": {
+                if (!"P-256".equals(jwk.path("crv").asText())) {
+                    throw new IllegalArgumentException("Unsupported curve: " + jwk.path("crv").asText());
+                }
+                AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+                parameters.init(new ECGenParameterSpec("secp256r1"));
+                ECPoint point = new ECPoint(new BigInteger(1, BASE64_URL.decode(jwk.path("x").asText())),
+                                            new BigInteger(1, BASE64_URL.decode(jwk.path("y").asText())));
+                return KeyFactory.getInstance("EC").generatePublic(
+                    new ECPublicKeySpec(point, parameters.getParameterSpec(ECParameterSpec.class)));
+            }
+            default:
+                throw new IllegalArgumentException("Unsupported key type: " + jwk.path("kty").asText());
+        }
+    }
+    
+    /**
+     * Converts a JWS ECDSA signature (R || S, 32 bytes each) to the DER form the JCA expects
+     */
+    private static byte[] toDerSignature(byte[] raw) {
+        byte[] r = derInteger(raw, 0);
+        byte[] s = derInteger(raw, 32);
+        byte[] der = new byte[2 + r.length + s.length];
+        der[0] = 0x30;
+        der[1] = (byte) (r.length + s.length);
+        System.arraycopy(r, 0, der, 2, r.length);
+        System.arraycopy(s, 0, der, 2 + r.length, s.length);
+        return der;
     }
     
-    private boolean checkIntegrityVerdict(String payload) {
-        logger.debug("PRODUCTION IMPLEMENTATION: Would check integrity verdict here");
-        return true;
+    private static byte[] derInteger(byte[] raw, int offset) {
+        byte[] value = new BigInteger(1, Arrays.copyOfRange(raw, offset, offset + 32)).toByteArray();
+        byte[] encoded = new byte[2 + value.length];
+        encoded[0] = 0x02;
+        encoded[1] = (byte) value.length;
+        System.arraycopy(value, 0, encoded, 2, value.length);
+        return encoded;
     }
-}
\ No newline at end of file
+}
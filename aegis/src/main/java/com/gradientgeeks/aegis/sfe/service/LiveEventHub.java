@@ -0,0 +1,306 @@
+package com.gradientgeeks.aegis.sfe.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory fan-out hub pushing live violation and fraud events to portal dashboards over SSE.
+ * 
+ * Each subscriber owns a small bounded buffer. When a client cannot keep up the
+ * oldest buffered events are dropped and a "dropped" event tells the dashboard to
+ * refresh its aggregates, so a slow browser tab never slows down the request path
+ * or grows the heap. Events are serialized once per publish and written to the
+ * sockets by a small dispatcher pool. Events raised inside a transaction are only
+ * published after it commits.
+ */
+@Service
+public class LiveEventHub {
+    
+    private static final Logger logger = LoggerFactory.getLogger(LiveEventHub.class);
+    
+    /** Subscription key for admins receiving every organization's events */
+    public static final String ALL_ORGANIZATIONS = "*";
+    
+    public static final String EVENT_VIOLATION = "violation";
+    public static final String EVENT_FRAUD_BLOCK = "fraud-block";
+    public static final String EVENT_FRAUD_FLAG = "fraud-flag";
+    public static final String EVENT_DEVICE_STATUS = "device-status";
+    public static final String EVENT_DEVICE_STATUS_BULK = "device-status-bulk";
+    
+    private static final String EVENT_DROPPED = "dropped";
+    private static final String EVENT_HEARTBEAT = "heartbeat";
+    
+    private final Map<String, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicLong eventSequence = new AtomicLong();
+    private final AtomicInteger dispatcherThreadCount = new AtomicInteger();
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    
+    private final ExecutorService dispatcher;
+    private final int bufferSize;
+    private final int maxSubscribersPerOrganization;
+    private final long emitterTimeoutMs;
+    
+    public LiveEventHub(@Value("${aegis.events.buffer-size:256}") int bufferSize,
+                        @Value("${aegis.events.max-subscribers-per-org:50}") int maxSubscribersPerOrganization,
+                        @Value("${aegis.events.emitter-timeout-ms:1800000}") long emitterTimeoutMs,
+                        @Value("${aegis.events.dispatcher-threads:4}") int dispatcherThreads) {
+        this.bufferSize = bufferSize;
+        this.maxSubscribersPerOrganization = maxSubscribersPerOrganization;
+        this.emitterTimeoutMs = emitterTimeoutMs;
+        this.dispatcher = new ThreadPoolExecutor(dispatcherThreads, dispatcherThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "sse-dispatch-" + dispatcherThreadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+    
+    /**
+     * Opens a new event stream for an organization
+     * 
+     * @param organization Organization to receive events for, or {@link #ALL_ORGANIZATIONS}
+     * @return Emitter to return from the controller, or null if the organization has too many open streams
+     */
+    public SseEmitter subscribe(String organization) {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        Subscriber subscriber = new Subscriber(organization, emitter);
+        AtomicBoolean accepted = new AtomicBoolean(false);
+        
+        subscribers.compute(organization, (key, organizationSubscribers) -> {
+            Set<Subscriber> current = organizationSubscribers != null
+                    ? organizationSubscribers : ConcurrentHashMap.newKeySet();
+            if (current.size() < maxSubscribersPerOrganization) {
+                current.add(subscriber);
+                accepted.set(true);
+            }
+            return current.isEmpty() ? null : current;
+        });
+        
+        if (!accepted.get()) {
+            logger.warn("Rejecting event stream for organization: {} - too many streams open", organization);
+            return null;
+        }
+        
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(error -> remove(subscriber));
+        
+        logger.info("Event stream opened for organization: {}", organization);
+        subscriber.offer(new LiveEvent(eventSequence.incrementAndGet(), EVENT_HEARTBEAT, "{}"));
+        return emitter;
+    }
+    
+    /**
+     * Publishes an event to an organization's subscribers and to admin subscribers.
+     * Inside a transaction the event is deferred until after commit.
+     */
+    public void publish(String organization, String type, Map<String, Object> payload) {
+        publish(Set.of(organization), type, payload);
+    }
+    
+    /**
+     * Publishes one event to several organizations; admin subscribers receive it once
+     */
+    public void publish(Collection<String> organizations, String type, Map<String, Object> payload) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dispatch(organizations, type, payload);
+                }
+            });
+        } else {
+            dispatch(organizations, type, payload);
+        }
+    }
+    
+    /**
+     * Number of open streams across all organizations
+     */
+    public int getSubscriberCount() {
+        return subscribers.values().stream().mapToInt(Set::size).sum();
+    }
+    
+    /**
+     * Keeps idle connections open through proxies and detects dead clients
+     */
+    @Scheduled(fixedDelayString = "${aegis.events.heartbeat-interval-ms:15000}")
+    public void sendHeartbeats() {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        LiveEvent heartbeat = new LiveEvent(eventSequence.incrementAndGet(), EVENT_HEARTBEAT, "{}");
+        for (Set<Subscriber> organizationSubscribers : subscribers.values()) {
+            for (Subscriber subscriber : organizationSubscribers) {
+                subscriber.offer(heartbeat);
+            }
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        for (Set<Subscriber> organizationSubscribers : subscribers.values()) {
+            for (Subscriber subscriber : organizationSubscribers) {
+                subscriber.emitter.complete();
+            }
+        }
+        subscribers.clear();
+        dispatcher.shutdownNow();
+    }
+    
+    private void dispatch(Collection<String> organizations, String type, Map<String, Object> payload) {
+        String data;
+        try {
+            data = objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            logger.error("Failed to serialize {} event", type, e);
+            return;
+        }
+        
+        LiveEvent event = new LiveEvent(eventSequence.incrementAndGet(), type, data);
+        for (String organization : organizations) {
+            if (organization != null && !ALL_ORGANIZATIONS.equals(organization)) {
+                deliver(subscribers.get(organization), event);
+            }
+        }
+        deliver(subscribers.get(ALL_ORGANIZATIONS), event);
+    }
+    
+    private void deliver(Set<Subscriber> organizationSubscribers, LiveEvent event) {
+        if (organizationSubscribers == null) {
+            return;
+        }
+        for (Subscriber subscriber : organizationSubscribers) {
+            subscriber.offer(event);
+        }
+    }
+    
+    private void remove(Subscriber subscriber) {
+        subscriber.closed = true;
+        subscribers.computeIfPresent(subscriber.organization, (key, organizationSubscribers) -> {
+            organizationSubscribers.remove(subscriber);
+            return organizationSubscribers.isEmpty() ? null : organizationSubscribers;
+        });
+        logger.debug("Event stream closed for organization: {}", subscriber.organization);
+    }
+    
+    private record LiveEvent(long id, String type, String data) {}
+    
+    /**
+     * One open stream with its bounded drop-oldest buffer
+     */
+    private class Subscriber {
+        
+        private final String organization;
+        private final SseEmitter emitter;
+        private final ArrayDeque<LiveEvent> buffer = new ArrayDeque<>();
+        private final AtomicBoolean draining = new AtomicBoolean(false);
+        private long droppedEvents;
+        private volatile boolean closed;
+        
+        Subscriber(String organization, SseEmitter emitter) {
+            this.organization = organization;
+            this.emitter = emitter;
+        }
+        
+        void offer(LiveEvent event) {
+            if (closed) {
+                return;
+            }
+            synchronized (buffer) {
+                if (buffer.size() >= bufferSize) {
+                    buffer.pollFirst();
+                    droppedEvents++;
+                }
+                buffer.addLast(event);
+            }
+            scheduleDrain();
+        }
+        
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    dispatcher.execute(this::drain);
+                } catch (RuntimeException e) {
+                    draining.set(false);
+                }
+            }
+        }
+        
+        private void drain() {
+            try {
+                while (!closed) {
+                    LiveEvent event;
+                    long dropped;
+                    synchronized (buffer) {
+                        event = buffer.pollFirst();
+                        dropped = droppedEvents;
+                        droppedEvents = 0;
+                    }
+                    if (dropped > 0) {
+                        send(new LiveEvent(eventSequence.incrementAndGet(), EVENT_DROPPED,
+                                "{\"count\":" + dropped + "}"));
+                    }
+                    if (event == null) {
+                        break;
+                    }
+                    send(event);
+                }
+            } finally {
+                draining.set(false);
+            }
+            
+            // An event may have been offered after the last poll but before draining was cleared
+            boolean pending;
+            synchronized (buffer) {
+                pending = !buffer.isEmpty();
+            }
+            if (pending && !closed) {
+                scheduleDrain();
+            }
+        }
+        
+        private void send(LiveEvent event) {
+            try {
+                emitter.send(SseEmitter.event()
+                        .id(String.valueOf(event.id()))
+                        .name(event.type())
+                        .data(event.data()));
+            } catch (IOException | IllegalStateException e) {
+                remove(this);
+                emitter.completeWithError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.gradientgeeks.aegis.sfe.service;
+
+import com.gradientgeeks.aegis.sfe.util.PackageBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps app package names to compact integer IDs backed by the {@code app_packages} table.
+ * 
+ * IDs never change once assigned, so they are cached in memory; the cache is
+ * filled on demand and stops growing at {@code aegis.fraud.package-dictionary.cache-size}.
+ * New names are committed in their own transaction, so a rolled back registration
+ * can never leave a cached ID that does not exist in the table.
+ */
+@Service
+public class PackageDictionary {
+    
+    private static final Logger logger = LoggerFactory.getLogger(PackageDictionary.class);
+    
+    private static final int MAX_IN_CLAUSE = 500;
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate newTransaction;
+    private final Map<String, Integer> idsByName = new ConcurrentHashMap<>();
+    
+    @Value("${aegis.fraud.package-dictionary.cache-size:500000}")
+    private int maxCachedNames;
+    
+    @Autowired
+    public PackageDictionary(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+    
+    /**
+     * Bitmap of the given package names, assigning IDs to names seen for the first time
+     */
+    public PackageBitmap encode(Collection<String> packageNames) {
+        Map<String, Integer> ids = lookup(packageNames, true);
+        
+        Set<String> missing = new LinkedHashSet<>(packageNames);
+        missing.removeAll(ids.keySet());
+        if (!missing.isEmpty()) {
+            Map<String, Integer> added = newTransaction.execute(status -> {
+                insertMissing(missing);
+                return lookup(missing, false);
+            });
+            added.forEach(this::cache);
+            ids.putAll(added);
+            if (ids.size() < new LinkedHashSet<>(packageNames).size()) {
+                throw new IllegalStateException("Failed to assign package IDs");
+            }
+        }
+        return toBitmap(ids.values());
+    }
+    
+    /**
+     * Bitmap of the package names that already have an ID. Never writes; names
+     * without an ID cannot occur in any stored bitmap, so callers only need to
+     * count them towards set sizes.
+     */
+    public PackageBitmap encodeKnown(Collection<String> packageNames) {
+        return toBitmap(lookup(packageNames, true).values());
+    }
+    
+    /**
+     * IDs of the names present in the table; cached names are served from memory.
+     * Only pass {@code cacheResults} when the read cannot see uncommitted rows.
+     */
+    private Map<String, Integer> lookup(Collection<String> packageNames, boolean cacheResults) {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> uncached = new ArrayList<>();
+        for (String name : packageNames) {
+            Integer id = idsByName.get(name);
+            if (id != null) {
+                ids.put(name, id);
+            } else {
+                uncached.add(name);
+            }
+        }
+        
+        for (int from = 0; from < uncached.size(); from += MAX_IN_CLAUSE) {
+            List<String> chunk = uncached.subList(from, Math.min(from + MAX_IN_CLAUSE, uncached.size()));
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            jdbcTemplate.query(
+                "SELECT id, package_name FROM app_packages WHERE package_name IN (" + placeholders + ")",
+                rs -> {
+                    ids.put(rs.getString("package_name"), rs.getInt("id"));
+                },
+                chunk.toArray());
+        }
+        if (cacheResults) {
+            uncached.forEach(name -> {
+                Integer id = ids.get(name);
+                if (id != null) {
+                    cache(name, id);
+                }
+            });
+        }
+        return ids;
+    }
+    
+    private void insertMissing(Set<String> missing) {
+        List<Object[]> rows = new ArrayList<>(missing.size());
+        for (String name : missing) {
+            rows.add(new Object[] {name});
+        }
+        // IGNORE: another node or request may have added the same name concurrently
+        jdbcTemplate.batchUpdate("INSERT IGNORE INTO app_packages (package_name) VALUES (?)", rows);
+        logger.debug("Added {} package names to the dictionary", missing.size());
+    }
+    
+    private void cache(String name, int id) {
+        if (idsByName.size() < maxCachedNames) {
+            idsByName.put(name, id);
+        }
+    }
+    
+    private static PackageBitmap toBitmap(Collection<Integer> ids) {
+        int[] values = new int[ids.size()];
+        int i = 0;
+        for (Integer id : ids) {
+            values[i++] = id;
+        }
+        return PackageBitmap.of(values);
+    }
+}
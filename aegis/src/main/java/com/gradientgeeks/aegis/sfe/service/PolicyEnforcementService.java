@@ -13,6 +13,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -30,6 +31,12 @@ public class PolicyEnforcementService {
     @Autowired
     private RegistrationKeyRepository registrationKeyRepository;
     
+    @Autowired
+    private LiveEventHub liveEventHub;
+    
+    @Autowired
+    private ViolationHeavyHitterService violationHeavyHitterService;
+    
     private final ObjectMapper objectMapper = new ObjectMapper();
     
     /**
@@ -52,6 +59,8 @@ public class PolicyEnforcementService {
             
             // Log the violation
             PolicyViolation violation = logViolation(validationResult, request, organization);
+            violationHeavyHitterService.record(violation);
+            publishViolationEvent(violation, validationResult);
             
             // Apply enforcement based on level
             Policy.EnforcementLevel enforcementLevel = validationResult.getEnforcementLevel();
@@ -108,6 +117,26 @@ public class PolicyEnforcementService {
         }
     }
     
+    /**
+     * Pushes the violation to live dashboards once the transaction commits
+     */
+    private void publishViolationEvent(PolicyViolation violation,
+                                       PolicyValidationService.PolicyValidationResult validationResult) {
+        Map<String, Object> event = new HashMap<>();
+        event.put("violationId", violation.getId());
+        event.put("deviceId", violation.getDeviceId());
+        event.put("clientId", violation.getClientId());
+        event.put("anonymizedUserId", violation.getAnonymizedUserId());
+        event.put("policyId", violation.getPolicy() != null ? violation.getPolicy().getId() : null);
+        event.put("policyName", validationResult.getViolatedPolicy() != null
+                ? validationResult.getViolatedPolicy().getPolicyName() : null);
+        event.put("actionTaken", violation.getActionTaken());
+        event.put("severityScore", violation.getSeverityScore());
+        event.put("riskScore", violation.getRiskScore());
+        event.put("createdAt", violation.getCreatedAt());
+        liveEventHub.publish(violation.getOrganization(), LiveEventHub.EVENT_VIOLATION, event);
+    }
+    
     /**
      * Applies enforcement action based on level
      */
@@ -1,5 +1,6 @@
 package com.gradientgeeks.aegis.sfe.service;
 
+import com.gradientgeeks.aegis.sfe.dto.CursorPageResponse;
 import com.gradientgeeks.aegis.sfe.dto.PolicyRequest;
 import com.gradientgeeks.aegis.sfe.entity.Policy;
 import com.gradientgeeks.aegis.sfe.entity.PolicyRule;
@@ -7,15 +8,18 @@ import com.gradientgeeks.aegis.sfe.entity.PolicyViolation;
 import com.gradientgeeks.aegis.sfe.repository.PolicyRepository;
 import com.gradientgeeks.aegis.sfe.repository.PolicyViolationRepository;
 import com.gradientgeeks.aegis.sfe.repository.RegistrationKeyRepository;
+import com.gradientgeeks.aegis.sfe.util.KeysetCursor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -182,6 +186,74 @@ public class PolicyManagementService {
                 userOrganization, deviceId, pageable);
     }
     
+    /**
+     * Gets a keyset page of violation history for a device, newest first.
+     * Avoids OFFSET scans and only counts matching rows when {@code includeTotal} is set.
+     * 
+     * @param cursor Token from the previous page, or null for the first page
+     */
+    @Transactional(readOnly = true)
+    public CursorPageResponse<Map<String, Object>> getViolationHistoryPage(String deviceId, LocalDateTime from,
+                                                                           LocalDateTime to, String userOrganization,
+                                                                           String cursor, int size, boolean includeTotal) {
+        if (userOrganization == null || userOrganization.trim().isEmpty()) {
+            throw new IllegalArgumentException("User organization is required");
+        }
+        
+        LocalDateTime fromDate = from != null ? from : LocalDateTime.of(1970, 1, 1, 0, 0);
+        LocalDateTime toDate = to != null ? to : LocalDateTime.now();
+        
+        // First page starts at (toDate, +inf)
+        LocalDateTime cursorCreatedAt = toDate;
+        Long cursorId = Long.MAX_VALUE;
+        if (cursor != null && !cursor.isBlank()) {
+            KeysetCursor position = KeysetCursor.decode(cursor);
+            cursorCreatedAt = position.getCreatedAt();
+            try {
+                cursorId = Long.parseLong(position.getKey(0));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+        }
+        
+        List<PolicyViolation> violations = policyViolationRepository.findByOrganizationAndDeviceIdBefore(
+                userOrganization, deviceId, fromDate, toDate, cursorCreatedAt, cursorId, PageRequest.of(0, size + 1));
+        
+        boolean hasNext = violations.size() > size;
+        List<PolicyViolation> pageContent = hasNext ? violations.subList(0, size) : violations;
+        
+        String nextCursor = null;
+        if (hasNext) {
+            PolicyViolation last = pageContent.get(pageContent.size() - 1);
+            nextCursor = KeysetCursor.of(last.getCreatedAt(), String.valueOf(last.getId())).encode();
+        }
+        
+        CursorPageResponse<Map<String, Object>> response = new CursorPageResponse<>(
+                pageContent.stream().map(this::toViolationSummary).collect(Collectors.toList()), nextCursor, size);
+        if (includeTotal) {
+            response.setTotalElements(policyViolationRepository.countByOrganizationAndDeviceIdAndDateRange(
+                    userOrganization, deviceId, fromDate, toDate));
+        }
+        return response;
+    }
+    
+    private Map<String, Object> toViolationSummary(PolicyViolation violation) {
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("id", violation.getId());
+        summary.put("deviceId", violation.getDeviceId());
+        summary.put("anonymizedUserId", violation.getAnonymizedUserId());
+        summary.put("clientId", violation.getClientId());
+        summary.put("policyId", violation.getPolicy() != null ? violation.getPolicy().getId() : null);
+        summary.put("ruleId", violation.getViolatedRule() != null ? violation.getViolatedRule().getId() : null);
+        summary.put("actionTaken", violation.getActionTaken());
+        summary.put("violationDetails", violation.getViolationDetails());
+        summary.put("ipAddress", violation.getIpAddress());
+        summary.put("severityScore", violation.getSeverityScore());
+        summary.put("riskScore", violation.getRiskScore());
+        summary.put("createdAt", violation.getCreatedAt());
+        return summary;
+    }
+    
     /**
      * Gets violation statistics for an organization
      */
@@ -36,6 +36,9 @@ public class PolicyValidationService {
     @Autowired
     private UserDeviceContextRepository userDeviceContextRepository;
     
+    @Autowired
+    private FraudLinkageGraph fraudLinkageGraph;
+    
     /**
      * Validates user metadata against organization policies
      */
@@ -361,7 +364,9 @@ public class PolicyValidationService {
         // Create new context
         UserDeviceContext context = new UserDeviceContext(anonymizedUserId, deviceId, organization, clientId);
         updateContextFromMetadata(context, userMetadata);
-        return userDeviceContextRepository.save(context);
+        UserDeviceContext saved = userDeviceContextRepository.save(context);
+        fraudLinkageGraph.linkUser(deviceId, organization, anonymizedUserId, clientId);
+        return saved;
     }
     
     /**
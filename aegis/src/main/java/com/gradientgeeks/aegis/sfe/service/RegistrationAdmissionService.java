@@ -0,0 +1,330 @@
+package com.gradientgeeks.aegis.sfe.service;
+
+import com.gradientgeeks.aegis.sfe.dto.DeviceRegistrationRequest;
+import com.gradientgeeks.aegis.sfe.dto.HardwareFingerprintDto;
+import com.gradientgeeks.aegis.sfe.service.RegistrationKeyCache.CachedRegistrationKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Admission control for device registration: a token bucket per client and one per
+ * hardware cluster, so a fleet of devices re-registering after an app update is
+ * spread out instead of running the full fraud analysis all at once.
+ * 
+ * A request that does not conform reserves the next free slot in both buckets and
+ * waits for it, up to a short maximum wait, which serves waiters first come first
+ * served. Each client may hold only part of the waiting slots so one client cannot
+ * starve the others. Requests that would wait longer, or find the queue full, are
+ * rejected with the time after which a retry would be admitted.
+ * 
+ * Buckets are local. Every node periodically adds its admissions to a counter per
+ * bucket in Redis and charges its local buckets with what the other nodes admitted
+ * since the last sync, so the limits hold across the cluster. When Redis is down
+ * the buckets keep working per node.
+ */
+@Service
+public class RegistrationAdmissionService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(RegistrationAdmissionService.class);
+    
+    private static final String REDIS_KEY_PREFIX = "aegis:admission:";
+    private static final String CLIENT_PREFIX = "client:";
+    private static final String CLUSTER_PREFIX = "cluster:";
+    
+    // Buckets untouched this long are dropped; they are full again by then
+    private static final long IDLE_EVICTION_NANOS = TimeUnit.MINUTES.toNanos(10);
+    private static final long MAX_CLUSTER_DEBT_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final long REDIS_COUNTER_TTL_SECONDS = TimeUnit.MINUTES.toSeconds(15);
+    
+    private final RegistrationKeyCache registrationKeyCache;
+    private final StringRedisTemplate redisTemplate;
+    
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> queuedByClient = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private volatile boolean redisAvailable = true;
+    
+    @Value("${aegis.registration.admission.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${aegis.registration.admission.client-rate-per-minute:600}")
+    private int defaultClientRatePerMinute;
+    
+    @Value("${aegis.registration.admission.client-burst:100}")
+    private int defaultClientBurst;
+    
+    @Value("${aegis.registration.admission.cluster-rate-per-minute:300}")
+    private int clusterRatePerMinute;
+    
+    @Value("${aegis.registration.admission.cluster-burst:50}")
+    private int clusterBurst;
+    
+    @Value("${aegis.registration.admission.max-wait-ms:500}")
+    private long maxWaitMs;
+    
+    @Value("${aegis.registration.admission.max-queued:200}")
+    private int maxQueued;
+    
+    @Value("${aegis.registration.admission.max-queued-per-client:50}")
+    private int maxQueuedPerClient;
+    
+    /**
+     * Outcome of an admission check
+     * 
+     * @param admitted Whether the registration may proceed
+     * @param retryAfterSeconds When rejected, seconds after which a retry would be admitted
+     */
+    public record Admission(boolean admitted, long retryAfterSeconds) {
+        
+        static final Admission ADMITTED = new Admission(true, 0L);
+        
+        static Admission rejected(long waitNanos) {
+            return new Admission(false, Math.max(1L, (waitNanos + 999_999_999L) / 1_000_000_000L));
+        }
+    }
+    
+    @Autowired
+    public RegistrationAdmissionService(RegistrationKeyCache registrationKeyCache,
+                                        StringRedisTemplate redisTemplate) {
+        this.registrationKeyCache = registrationKeyCache;
+        this.redisTemplate = redisTemplate;
+    }
+    
+    /**
+     * Admits a registration, waiting briefly for a slot if needed. Requests for
+     * unknown clients skip the client bucket; they are rejected by the
+     * registration-key check anyway.
+     */
+    public Admission admit(DeviceRegistrationRequest request) {
+        if (!enabled) {
+            return Admission.ADMITTED;
+        }
+        
+        String clientId = request.getClientId();
+        Bucket clientBucket = null;
+        Optional<CachedRegistrationKey> registrationKey = registrationKeyCache.findByClientId(clientId);
+        if (registrationKey.isPresent()) {
+            CachedRegistrationKey key = registrationKey.get();
+            int rate = key.registrationRateLimit() != null ? key.registrationRateLimit() : defaultClientRatePerMinute;
+            int burst = key.registrationBurst() != null ? key.registrationBurst() : defaultClientBurst;
+            clientBucket = bucket(CLIENT_PREFIX + clientId, rate, burst);
+        }
+        Bucket clusterBucket = bucket(CLUSTER_PREFIX + clusterKey(request), clusterRatePerMinute, clusterBurst);
+        
+        long now = System.nanoTime();
+        long maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        long clientWait = clientBucket != null ? clientBucket.reserve(now, maxWaitNanos) : 0L;
+        if (clientWait > maxWaitNanos) {
+            return Admission.rejected(clientWait);
+        }
+        long clusterWait = clusterBucket.reserve(now, maxWaitNanos);
+        if (clusterWait > maxWaitNanos) {
+            if (clientBucket != null) {
+                clientBucket.refund();
+            }
+            return Admission.rejected(clusterWait);
+        }
+        
+        long wait = Math.max(clientWait, clusterWait);
+        if (wait <= 0) {
+            return Admission.ADMITTED;
+        }
+        
+        // Unknown clients share one slot allowance
+        String queueKey = clientBucket != null ? clientId : "";
+        AtomicInteger clientQueued = queuedByClient.computeIfAbsent(queueKey, id -> new AtomicInteger());
+        int totalWaiting = queued.incrementAndGet();
+        int clientWaiting = clientQueued.incrementAndGet();
+        try {
+            if (totalWaiting > maxQueued || clientWaiting > maxQueuedPerClient) {
+                if (clientBucket != null) {
+                    clientBucket.refund();
+                }
+                clusterBucket.refund();
+                logger.debug("Registration queue full, rejecting clientId: {}", clientId);
+                return Admission.rejected(wait);
+            }
+            // Reservations are handed out in arrival order, so waiters run in that order too
+            long deadline = now + wait;
+            long remaining;
+            while ((remaining = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(remaining);
+                if (Thread.interrupted()) {
+                    Thread.currentThread().interrupt();
+                    return Admission.rejected(Math.max(remaining, 0L));
+                }
+            }
+            return Admission.ADMITTED;
+        } finally {
+            queued.decrementAndGet();
+            clientQueued.decrementAndGet();
+        }
+    }
+    
+    /**
+     * Publishes local admissions to Redis and charges local buckets with the
+     * admissions of the other nodes. Also drops idle buckets.
+     */
+    @Scheduled(fixedDelayString = "${aegis.registration.admission.sync-interval-ms:1000}",
+               initialDelayString = "${aegis.registration.admission.sync-interval-ms:1000}")
+    public void reconcile() {
+        if (!enabled || buckets.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        List<Bucket> active = new ArrayList<>();
+        List<Long> deltas = new ArrayList<>();
+        for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+            Bucket bucket = entry.getValue();
+            if (bucket.isIdle(now)) {
+                buckets.remove(entry.getKey(), bucket);
+                continue;
+            }
+            active.add(bucket);
+            deltas.add(bucket.drainLocalAdmissions());
+        }
+        if (active.isEmpty()) {
+            return;
+        }
+        
+        List<Object> results;
+        try {
+            results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (int i = 0; i < active.size(); i++) {
+                    byte[] key = (REDIS_KEY_PREFIX + active.get(i).key).getBytes(StandardCharsets.UTF_8);
+                    connection.stringCommands().incrBy(key, deltas.get(i));
+                    connection.keyCommands().expire(key, REDIS_COUNTER_TTL_SECONDS);
+                }
+                return null;
+            });
+            if (!redisAvailable) {
+                logger.info("Redis reachable again, registration admission limits are cluster-wide");
+            }
+            redisAvailable = true;
+        } catch (Exception e) {
+            if (redisAvailable) {
+                logger.warn("Redis unavailable, registration admission limits apply per node", e);
+            }
+            redisAvailable = false;
+            // Keep the admissions for the next attempt
+            for (int i = 0; i < active.size(); i++) {
+                active.get(i).restoreLocalAdmissions(deltas.get(i));
+            }
+            return;
+        }
+        
+        for (int i = 0; i < active.size(); i++) {
+            Object total = results.get(2 * i);
+            if (total instanceof Long clusterTotal) {
+                active.get(i).applyClusterTotal(clusterTotal, deltas.get(i), now);
+            }
+        }
+    }
+    
+    private Bucket bucket(String key, int ratePerMinute, int burst) {
+        Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket(k, ratePerMinute, burst));
+        bucket.configure(ratePerMinute, burst);
+        return bucket;
+    }
+    
+    private static String clusterKey(DeviceRegistrationRequest request) {
+        HardwareFingerprintDto hardware = request.getDeviceFingerprint() != null
+            ? request.getDeviceFingerprint().getHardware() : null;
+        if (hardware == null) {
+            return HardwareClusterStatsService.clusterKey(null, null, null, null);
+        }
+        return HardwareClusterStatsService.clusterKey(hardware.getManufacturer(), hardware.getModel(),
+                                                      hardware.getBoard(), hardware.getCpuArchitecture());
+    }
+    
+    /**
+     * Token bucket kept as the time at which it will be full again (GCRA). A slot is
+     * due at {@code fullAt + interval - burst * interval}; reserving it moves
+     * {@code fullAt} forward by one interval.
+     */
+    private static final class Bucket {
+        private final String key;
+        private long intervalNanos;
+        private long toleranceNanos;
+        private long fullAt;
+        private long lastUsed;
+        private long localAdmissions;
+        private long lastClusterTotal = -1L;
+        
+        private Bucket(String key, int ratePerMinute, int burst) {
+            this.key = key;
+            this.fullAt = System.nanoTime();
+            this.lastUsed = fullAt;
+            configure(ratePerMinute, burst);
+        }
+        
+        private synchronized void configure(int ratePerMinute, int burst) {
+            intervalNanos = TimeUnit.MINUTES.toNanos(1) / Math.max(1, ratePerMinute);
+            toleranceNanos = intervalNanos * Math.max(1, burst);
+        }
+        
+        /**
+         * Reserves the next slot and returns how long to wait for it. Nothing is
+         * reserved when the wait exceeds the maximum.
+         */
+        private synchronized long reserve(long now, long maxWaitNanos) {
+            lastUsed = now;
+            long next = Math.max(fullAt, now) + intervalNanos;
+            long wait = next - toleranceNanos - now;
+            if (wait > maxWaitNanos) {
+                return wait;
+            }
+            fullAt = next;
+            localAdmissions++;
+            return wait;
+        }
+        
+        private synchronized void refund() {
+            fullAt -= intervalNanos;
+            localAdmissions--;
+        }
+        
+        private synchronized boolean isIdle(long now) {
+            return localAdmissions == 0 && now - lastUsed > IDLE_EVICTION_NANOS && fullAt < now;
+        }
+        
+        private synchronized long drainLocalAdmissions() {
+            long drained = localAdmissions;
+            localAdmissions = 0;
+            return drained;
+        }
+        
+        private synchronized void restoreLocalAdmissions(long admissions) {
+            localAdmissions += admissions;
+        }
+        
+        /**
+         * Charges the bucket with what the other nodes admitted since the last sync
+         */
+        private synchronized void applyClusterTotal(long clusterTotal, long ownDelta, long now) {
+            long others = lastClusterTotal < 0 ? 0L : clusterTotal - lastClusterTotal - ownDelta;
+            lastClusterTotal = clusterTotal;
+            if (others > 0) {
+                // Capped so a miscount cannot lock the bucket for long
+                fullAt = Math.min(Math.max(fullAt, now) + others * intervalNanos,
+                                  now + toleranceNanos + MAX_CLUSTER_DEBT_NANOS);
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.gradientgeeks.aegis.sfe.service;
+
+import com.gradientgeeks.aegis.sfe.entity.RegistrationKey;
+import com.gradientgeeks.aegis.sfe.repository.RegistrationKeyRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory copy of all registration keys, keyed by the SHA-256 hash of the key,
+ * so device registration validates keys without a database query.
+ * 
+ * Keys are loaded at startup. Generating, revoking or regenerating a key updates
+ * the local copy after commit and tells the other nodes, over the
+ * {@link ClusterEventBus}, to reload that client's key. A periodic full reload
+ * covers lost broadcasts. Until the first load completes, lookups go to the
+ * database.
+ */
+@Service
+public class RegistrationKeyCache {
+    
+    private static final Logger logger = LoggerFactory.getLogger(RegistrationKeyCache.class);
+    
+    static final String EVENT_REGISTRATION_KEY_CHANGED = "registration-key.changed";
+    
+    private final RegistrationKeyRepository registrationKeyRepository;
+    private final CryptographyService cryptographyService;
+    private final ClusterEventBus clusterEventBus;
+    
+    // Replaced as a whole on reload; single-client updates go into the current maps
+    private volatile Map<String, CachedRegistrationKey> byKeyHash = new ConcurrentHashMap<>();
+    private volatile Map<String, CachedRegistrationKey> byClientId = new ConcurrentHashMap<>();
+    private volatile boolean ready = false;
+    
+    /**
+     * The registration key fields needed to validate a registration; never the key itself
+     */
+    public record CachedRegistrationKey(Long id, String clientId, String organization, String keyHash,
+                                        boolean active, LocalDateTime expiresAt,
+                                        Integer registrationRateLimit, Integer registrationBurst) {
+        
+        public boolean isExpired() {
+            return expiresAt != null && LocalDateTime.now().isAfter(expiresAt);
+        }
+    }
+    
+    @Autowired
+    public RegistrationKeyCache(RegistrationKeyRepository registrationKeyRepository,
+                                CryptographyService cryptographyService,
+                                ClusterEventBus clusterEventBus) {
+        this.registrationKeyRepository = registrationKeyRepository;
+        this.cryptographyService = cryptographyService;
+        this.clusterEventBus = clusterEventBus;
+        clusterEventBus.subscribe(EVENT_REGISTRATION_KEY_CHANGED, payload -> {
+            if (payload.get("clientId") instanceof String clientId) {
+                reloadClient(clientId);
+            }
+        });
+    }
+    
+    /**
+     * Active registration key matching the given key, expired or not
+     */
+    public Optional<CachedRegistrationKey> findActiveByRegistrationKey(String registrationKey) {
+        if (registrationKey == null) {
+            return Optional.empty();
+        }
+        if (!ready) {
+            return registrationKeyRepository.findActiveByRegistrationKey(registrationKey).map(this::toCached);
+        }
+        return Optional.ofNullable(byKeyHash.get(cryptographyService.hashString(registrationKey)))
+            .filter(CachedRegistrationKey::active);
+    }
+    
+    /**
+     * Registration key of a client, active or not
+     */
+    public Optional<CachedRegistrationKey> findByClientId(String clientId) {
+        if (!ready) {
+            return registrationKeyRepository.findByClientId(clientId).map(this::toCached);
+        }
+        return Optional.ofNullable(byClientId.get(clientId));
+    }
+    
+    /**
+     * Updates the local copy once the surrounding transaction (if any) has committed,
+     * and tells the other nodes to reload the client's key
+     */
+    public void updateAfterCommit(RegistrationKey registrationKey) {
+        CachedRegistrationKey cached = toCached(registrationKey);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    put(cached);
+                }
+            });
+        } else {
+            put(cached);
+        }
+        clusterEventBus.publish(EVENT_REGISTRATION_KEY_CHANGED, Map.of("clientId", cached.clientId()));
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        reload();
+    }
+    
+    /**
+     * Full reload from the database; heals updates missed over the cluster bus
+     */
+    @Scheduled(fixedDelayString = "${aegis.registration-keys.refresh-interval-ms:60000}",
+               initialDelayString = "${aegis.registration-keys.refresh-interval-ms:60000}")
+    public synchronized void reload() {
+        try {
+            Map<String, CachedRegistrationKey> keys = new ConcurrentHashMap<>();
+            Map<String, CachedRegistrationKey> clients = new ConcurrentHashMap<>();
+            for (RegistrationKey registrationKey : registrationKeyRepository.findAll()) {
+                CachedRegistrationKey cached = toCached(registrationKey);
+                keys.put(cached.keyHash(), cached);
+                clients.put(cached.clientId(), cached);
+            }
+            byKeyHash = keys;
+            byClientId = clients;
+            if (!ready) {
+                logger.info("Registration key cache loaded: {} keys", keys.size());
+            }
+            ready = true;
+        } catch (Exception e) {
+            logger.error("Failed to load registration keys, lookups {} the database",
+                        ready ? "keep the previous cache instead of" : "fall back to", e);
+        }
+    }
+    
+    private void reloadClient(String clientId) {
+        try {
+            Optional<RegistrationKey> registrationKey = registrationKeyRepository.findByClientId(clientId);
+            if (registrationKey.isPresent()) {
+                put(toCached(registrationKey.get()));
+            } else {
+                remove(clientId);
+            }
+        } catch (Exception e) {
+            // The periodic reload picks the change up
+            logger.warn("Failed to reload registration key for clientId: {}", clientId, e);
+        }
+    }
+    
+    private synchronized void put(CachedRegistrationKey cached) {
+        CachedRegistrationKey previous = byClientId.put(cached.clientId(), cached);
+        if (previous != null && !previous.keyHash().equals(cached.keyHash())) {
+            // Regenerated: the old key stops working immediately
+            byKeyHash.remove(previous.keyHash());
+        }
+        byKeyHash.put(cached.keyHash(), cached);
+    }
+    
+    private synchronized void remove(String clientId) {
+        CachedRegistrationKey previous = byClientId.remove(clientId);
+        if (previous != null) {
+            byKeyHash.remove(previous.keyHash());
+        }
+    }
+    
+    private CachedRegistrationKey toCached(RegistrationKey registrationKey) {
+        return new CachedRegistrationKey(
+            registrationKey.getId(),
+            registrationKey.getClientId(),
+            registrationKey.getOrganization(),
+            cryptographyService.hashString(registrationKey.getRegistrationKey()),
+            Boolean.TRUE.equals(registrationKey.getIsActive()),
+            registrationKey.getExpiresAt(),
+            registrationKey.getRegistrationRateLimit(),
+            registrationKey.getRegistrationBurst()
+        );
+    }
+}
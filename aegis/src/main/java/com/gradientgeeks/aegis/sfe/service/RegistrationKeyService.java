@@ -22,13 +22,16 @@ public class RegistrationKeyService {
     
     private final RegistrationKeyRepository registrationKeyRepository;
     private final CryptographyService cryptographyService;
+    private final RegistrationKeyCache registrationKeyCache;
     
     @Autowired
     public RegistrationKeyService(
             RegistrationKeyRepository registrationKeyRepository,
-            CryptographyService cryptographyService) {
+            CryptographyService cryptographyService,
+            RegistrationKeyCache registrationKeyCache) {
         this.registrationKeyRepository = registrationKeyRepository;
         this.cryptographyService = cryptographyService;
+        this.registrationKeyCache = registrationKeyCache;
     }
     
     public RegistrationKeyResponse generateRegistrationKey(RegistrationKeyRequest request) {
@@ -49,20 +52,15 @@ public class RegistrationKeyService {
             );
             entity.setOrganization(request.getOrganization());
             entity.setExpiresAt(request.getExpiresAt());
+            entity.setRegistrationRateLimit(request.getRegistrationRateLimit());
+            entity.setRegistrationBurst(request.getRegistrationBurst());
             
             RegistrationKey savedEntity = registrationKeyRepository.save(entity);
+            registrationKeyCache.updateAfterCommit(savedEntity);
             
             logger.info("Registration key generated successfully for clientId: {}", request.getClientId());
             
-            return new RegistrationKeyResponse(
-                savedEntity.getId(),
-                savedEntity.getClientId(),
-                savedEntity.getRegistrationKey(),
-                savedEntity.getDescription(),
-                savedEntity.getIsActive(),
-                savedEntity.getExpiresAt(),
-                savedEntity.getCreatedAt()
-            );
+            return convertToResponse(savedEntity);
             
         } catch (Exception e) {
             logger.error("Error generating registration key for clientId: {}", request.getClientId(), e);
@@ -103,6 +101,7 @@ public class RegistrationKeyService {
             registrationKey.setIsActive(false);
             
             RegistrationKey savedEntity = registrationKeyRepository.save(registrationKey);
+            registrationKeyCache.updateAfterCommit(savedEntity);
             
             logger.info("Registration key revoked successfully for clientId: {}", clientId);
             
@@ -131,6 +130,7 @@ public class RegistrationKeyService {
             registrationKey.setIsActive(true);
             
             RegistrationKey savedEntity = registrationKeyRepository.save(registrationKey);
+            registrationKeyCache.updateAfterCommit(savedEntity);
             
             logger.info("Registration key regenerated successfully for clientId: {}", clientId);
             
@@ -142,8 +142,38 @@ public class RegistrationKeyService {
         }
     }
     
+    /**
+     * Sets the registration admission limits of a client; null restores the default
+     */
+    public RegistrationKeyResponse updateRegistrationLimits(String clientId, Integer rateLimit, Integer burst) {
+        logger.info("Updating registration limits for clientId: {} to {} per minute, burst {}",
+                   clientId, rateLimit, burst);
+        
+        try {
+            Optional<RegistrationKey> optionalKey = registrationKeyRepository.findByClientId(clientId);
+            
+            if (optionalKey.isEmpty()) {
+                logger.warn("Registration key not found for clientId: {}", clientId);
+                return new RegistrationKeyResponse("error", "Registration key not found");
+            }
+            
+            RegistrationKey registrationKey = optionalKey.get();
+            registrationKey.setRegistrationRateLimit(rateLimit);
+            registrationKey.setRegistrationBurst(burst);
+            
+            RegistrationKey savedEntity = registrationKeyRepository.save(registrationKey);
+            registrationKeyCache.updateAfterCommit(savedEntity);
+            
+            return convertToResponse(savedEntity);
+            
+        } catch (Exception e) {
+            logger.error("Error updating registration limits for clientId: {}", clientId, e);
+            return new RegistrationKeyResponse("error", "Internal server error during limit update");
+        }
+    }
+    
     private RegistrationKeyResponse convertToResponse(RegistrationKey entity) {
-        return new RegistrationKeyResponse(
+        RegistrationKeyResponse response = new RegistrationKeyResponse(
             entity.getId(),
             entity.getClientId(),
             entity.getRegistrationKey(),
@@ -152,6 +182,9 @@ public class RegistrationKeyService {
             entity.getExpiresAt(),
             entity.getCreatedAt()
         );
+        response.setRegistrationRateLimit(entity.getRegistrationRateLimit());
+        response.setRegistrationBurst(entity.getRegistrationBurst());
+        return response;
     }
     
     public List<RegistrationKeyResponse> getRegistrationKeysByOrganization(String organization) {
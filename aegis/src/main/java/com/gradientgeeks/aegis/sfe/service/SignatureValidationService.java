@@ -10,6 +10,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.time.LocalDateTime;
 import java.util.Optional;
 
@@ -23,17 +25,23 @@ public class SignatureValidationService {
     private final CryptographyService cryptographyService;
     private final PolicyValidationService policyValidationService;
     private final PolicyEnforcementService policyEnforcementService;
+    private final ExistenceFilterService existenceFilterService;
+    private final DeviceSecretVault deviceSecretVault;
     
     @Autowired
     public SignatureValidationService(
             DeviceRepository deviceRepository,
             CryptographyService cryptographyService,
             PolicyValidationService policyValidationService,
-            PolicyEnforcementService policyEnforcementService) {
+            PolicyEnforcementService policyEnforcementService,
+            ExistenceFilterService existenceFilterService,
+            DeviceSecretVault deviceSecretVault) {
         this.deviceRepository = deviceRepository;
         this.cryptographyService = cryptographyService;
         this.policyValidationService = policyValidationService;
         this.policyEnforcementService = policyEnforcementService;
+        this.existenceFilterService = existenceFilterService;
+        this.deviceSecretVault = deviceSecretVault;
     }
     
     public SignatureValidationResponse validateSignature(SignatureValidationRequest request) {
@@ -46,6 +54,14 @@ public class SignatureValidationService {
                 return new SignatureValidationResponse(false, "Client ID is required");
             }
             
+            // Device IDs that were never registered are rejected without a query while the
+            // filter is in sync; during catch-up lag every miss is checked against the database
+            if (existenceFilterService.isDefinitelyUnknownDeviceId(request.getDeviceId())) {
+                logger.warn("Device not found or inactive - Device: {}, Client: {}", 
+                    request.getDeviceId(), request.getClientId());
+                return new SignatureValidationResponse(false, "Device not found or inactive");
+            }
+            
             // Find the device using composite key (deviceId + clientId)
             Optional<Device> deviceOpt = deviceRepository.findActiveByDeviceIdAndClientId(
                 request.getDeviceId(), request.getClientId());
@@ -67,21 +83,19 @@ public class SignatureValidationService {
                 return new SignatureValidationResponse(false, "Invalid signature format");
             }
             
-            // Mask the secret key for logging (show first 8 and last 4 characters)
-            String maskedKey = maskSecretKey(device.getSecretKey());
-            logger.debug("Using secret key (masked): {}", maskedKey);
+            // Unwrapped secrets are cached, so this only decrypts on a cache miss
+            byte[] secretKey = deviceSecretVault.unwrap(device.getDeviceId(), device.getSecretKey());
             
-            // Compute expected signature for comparison
+            // Compute expected signature once and compare in constant time
             String expectedSignature = cryptographyService.computeHmacSha256(
-                device.getSecretKey(),
+                secretKey,
                 request.getStringToSign()
             );
             logger.debug("Expected signature: {}", expectedSignature);
             
-            boolean isValid = cryptographyService.verifyHmacSha256(
-                device.getSecretKey(),
-                request.getStringToSign(),
-                request.getSignature()
+            boolean isValid = MessageDigest.isEqual(
+                expectedSignature.getBytes(StandardCharsets.UTF_8),
+                request.getSignature().getBytes(StandardCharsets.UTF_8)
             );
             
             if (isValid) {
@@ -162,13 +176,6 @@ public class SignatureValidationService {
         }
     }
     
-    private String maskSecretKey(String secretKey) {
-        if (secretKey == null || secretKey.length() < 12) {
-            return "***INVALID***";
-        }
-        return secretKey.substring(0, 8) + "..." + secretKey.substring(secretKey.length() - 4);
-    }
-    
     @Transactional(readOnly = true)
     public boolean isDeviceActive(String deviceId, String clientId) {
         return deviceRepository.findActiveByDeviceIdAndClientId(deviceId, clientId).isPresent();
@@ -181,7 +188,8 @@ public class SignatureValidationService {
         }
         
         Device device = deviceOpt.get();
-        return cryptographyService.computeHmacSha256(device.getSecretKey(), stringToSign);
+        return cryptographyService.computeHmacSha256(
+            deviceSecretVault.unwrap(device.getDeviceId(), device.getSecretKey()), stringToSign);
     }
     
 }
\ No newline at end of file
@@ -0,0 +1,154 @@
+package com.gradientgeeks.aegis.sfe.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Stale-while-revalidate cache for dashboard statistics, keyed by e.g.
+ * organization and period.
+ * 
+ * A value younger than the freshness window is served as is. An older value is
+ * still served up to the stale limit while one background refresh recomputes it.
+ * Beyond that, or on a miss, the caller waits for the computation. Concurrent
+ * requests for the same key share a single computation, so a burst of portal
+ * refreshes runs each query once. Cached values are shared and must not be modified.
+ */
+@Service
+public class StatisticsCache {
+    
+    private static final Logger logger = LoggerFactory.getLogger(StatisticsCache.class);
+    
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor refreshExecutor;
+    private Map<String, Entry> entries;
+    
+    @Value("${aegis.statistics.cache.fresh-ms:10000}")
+    private long freshMs;
+    
+    @Value("${aegis.statistics.cache.max-stale-ms:300000}")
+    private long maxStaleMs;
+    
+    @Value("${aegis.statistics.cache.max-entries:1000}")
+    private int maxEntries;
+    
+    private record Entry(Object value, long loadedAt) {}
+    
+    public StatisticsCache(@Value("${aegis.statistics.cache.refresh-threads:2}") int refreshThreads,
+                           @Value("${aegis.statistics.cache.refresh-queue-size:100}") int refreshQueueSize) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.refreshExecutor = new ThreadPoolExecutor(
+            refreshThreads, refreshThreads, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(refreshQueueSize),
+            runnable -> {
+                Thread thread = new Thread(runnable, "statistics-refresh-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.refreshExecutor.allowCoreThreadTimeOut(true);
+    }
+    
+    @PostConstruct
+    public void init() {
+        entries = Collections.synchronizedMap(new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+    
+    /**
+     * Cached value of a key, computed with the loader when missing or too stale
+     * 
+     * @param key Cache key, including everything the value depends on
+     * @param loader Computes the value; exceptions reach the callers waiting for it
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Supplier<T> loader) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            long age = System.currentTimeMillis() - entry.loadedAt();
+            if (age < freshMs) {
+                return (T) entry.value();
+            }
+            if (age < maxStaleMs) {
+                refreshAsync(key, loader);
+                return (T) entry.value();
+            }
+        }
+        
+        CompletableFuture<Object> computation = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, computation);
+        if (existing != null) {
+            return (T) await(existing);
+        }
+        load(key, loader, computation);
+        return (T) await(computation);
+    }
+    
+    private void refreshAsync(String key, Supplier<?> loader) {
+        CompletableFuture<Object> computation = new CompletableFuture<>();
+        if (inFlight.putIfAbsent(key, computation) != null) {
+            return;
+        }
+        computation.exceptionally(e -> {
+            logger.warn("Failed to refresh statistics for {}, serving the stale value", key, e);
+            return null;
+        });
+        try {
+            refreshExecutor.execute(() -> load(key, loader, computation));
+        } catch (RejectedExecutionException e) {
+            // Refresh pool saturated; requests may already be waiting on this computation
+            load(key, loader, computation);
+        }
+    }
+    
+    private void load(String key, Supplier<?> loader, CompletableFuture<Object> computation) {
+        try {
+            Object value = loader.get();
+            entries.put(key, new Entry(value, System.currentTimeMillis()));
+            computation.complete(value);
+        } catch (Throwable e) {
+            // Errors too, otherwise callers waiting on this computation would block forever
+            computation.completeExceptionally(e);
+        } finally {
+            inFlight.remove(key, computation);
+        }
+    }
+    
+    private static Object await(CompletableFuture<Object> computation) {
+        try {
+            return computation.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+}
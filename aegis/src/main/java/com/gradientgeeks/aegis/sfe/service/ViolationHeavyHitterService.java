@@ -0,0 +1,309 @@
+package com.gradientgeeks.aegis.sfe.service;
+
+import com.gradientgeeks.aegis.sfe.entity.Policy;
+import com.gradientgeeks.aegis.sfe.entity.PolicyViolation;
+import com.gradientgeeks.aegis.sfe.repository.PolicyRepository;
+import com.gradientgeeks.aegis.sfe.util.SpaceSavingSketch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Tracks the devices, users and policies that trip policies most often, per organization,
+ * without GROUP BY queries over policy_violations.
+ * 
+ * Each organization keeps a ring of hourly {@link SpaceSavingSketch}es per dimension.
+ * Recording a violation is O(1); a query merges the sketches of the requested window.
+ * With capacity k and N violations in the window, every reported count is an
+ * over-estimate by at most its reported error, which is bounded by N / k, and any
+ * key with more than N / k violations is guaranteed to be listed. Counts are kept
+ * per application instance.
+ */
+@Service
+public class ViolationHeavyHitterService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ViolationHeavyHitterService.class);
+    
+    public enum Dimension {
+        DEVICE, USER, POLICY;
+        
+        public static Dimension fromString(String value) {
+            try {
+                return Dimension.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Unsupported dimension: " + value);
+            }
+        }
+    }
+    
+    private final Map<String, AtomicReferenceArray<HourSlot>> organizationRings = new ConcurrentHashMap<>();
+    private final PolicyRepository policyRepository;
+    private final JdbcTemplate jdbcTemplate;
+    
+    // Violations from this point on are recorded live; warm-up only replays older rows
+    private final LocalDateTime liveSince = LocalDateTime.now();
+    
+    @Value("${aegis.violations.heavy-hitters.capacity:256}")
+    private int capacity;
+    
+    @Value("${aegis.violations.heavy-hitters.window-hours:24}")
+    private int maxWindowHours;
+    
+    @Value("${aegis.violations.heavy-hitters.warm-up:true}")
+    private boolean warmUpOnStartup;
+    
+    @Autowired
+    public ViolationHeavyHitterService(PolicyRepository policyRepository, JdbcTemplate jdbcTemplate) {
+        this.policyRepository = policyRepository;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+    
+    /**
+     * Records a violation in the current hour's sketches
+     */
+    public void record(PolicyViolation violation) {
+        record(violation.getOrganization(), violation.getDeviceId(), violation.getAnonymizedUserId(),
+               violation.getPolicy() != null ? violation.getPolicy().getId() : null,
+               currentEpochHour());
+    }
+    
+    private void record(String organization, String deviceId, String anonymizedUserId, Long policyId, long epochHour) {
+        if (organization == null) {
+            return;
+        }
+        HourSlot slot = slotFor(organization, epochHour);
+        if (slot == null) {
+            return;
+        }
+        if (deviceId != null) {
+            slot.device.offer(deviceId);
+        }
+        if (anonymizedUserId != null) {
+            slot.user.offer(anonymizedUserId);
+        }
+        if (policyId != null) {
+            slot.policy.offer(String.valueOf(policyId));
+        }
+    }
+    
+    /**
+     * Gets the most frequent violators of an organization
+     * 
+     * @param window Window length such as "1h", "6h" or "24h"; covers the current partial hour
+     *               plus the preceding full hours
+     */
+    public Map<String, Object> getTopViolators(String organization, Dimension dimension, String window, int limit) {
+        if (organization == null || organization.trim().isEmpty()) {
+            throw new IllegalArgumentException("User organization is required");
+        }
+        int windowHours = parseWindowHours(window);
+        long currentHour = currentEpochHour();
+        
+        List<SpaceSavingSketch> sketches = new ArrayList<>();
+        AtomicReferenceArray<HourSlot> ring = organizationRings.get(organization);
+        if (ring != null) {
+            for (long hour = currentHour - windowHours + 1; hour <= currentHour; hour++) {
+                HourSlot slot = ring.get(slotIndex(hour));
+                if (slot != null && slot.epochHour == hour) {
+                    sketches.add(slot.sketch(dimension));
+                }
+            }
+        }
+        
+        long totalViolations = 0;
+        long errorBound = 0;
+        for (SpaceSavingSketch sketch : sketches) {
+            totalViolations += sketch.getTotalCount();
+            errorBound += sketch.getMinCount();
+        }
+        
+        List<SpaceSavingSketch.Estimate> top = SpaceSavingSketch.mergeTop(sketches, limit);
+        Map<String, String> policyNames = dimension == Dimension.POLICY ? lookupPolicyNames(top) : Map.of();
+        
+        List<Map<String, Object>> items = new ArrayList<>(top.size());
+        for (SpaceSavingSketch.Estimate estimate : top) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("key", estimate.item());
+            if (dimension == Dimension.POLICY) {
+                item.put("policyName", policyNames.get(estimate.item()));
+            }
+            item.put("count", estimate.count());
+            item.put("guaranteedCount", estimate.guaranteedCount());
+            item.put("maxError", estimate.error());
+            items.add(item);
+        }
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("organization", organization);
+        result.put("dimension", dimension.name().toLowerCase(Locale.ROOT));
+        result.put("window", windowHours + "h");
+        result.put("totalViolations", totalViolations);
+        result.put("capacity", capacity);
+        result.put("errorBound", errorBound);
+        result.put("items", items);
+        return result;
+    }
+    
+    /**
+     * Rebuilds the sketches from recent violations so a restart does not blank the view
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!warmUpOnStartup) {
+            return;
+        }
+        
+        long startTime = System.currentTimeMillis();
+        long currentHour = currentEpochHour();
+        LocalDateTime since = LocalDateTime.ofInstant(
+                Instant.ofEpochSecond((currentHour - maxWindowHours + 1) * 3600), ZoneId.systemDefault());
+        long[] rows = {0};
+        
+        try {
+            jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(
+                        "SELECT organization, device_id, anonymized_user_id, policy_id, created_at " +
+                        "FROM policy_violations WHERE created_at >= ? AND created_at < ?",
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                statement.setFetchSize(Integer.MIN_VALUE);
+                statement.setTimestamp(1, Timestamp.valueOf(since));
+                statement.setTimestamp(2, Timestamp.valueOf(liveSince));
+                return statement;
+            }, (ResultSet rs) -> {
+                long policyId = rs.getLong("policy_id");
+                Long policy = rs.wasNull() ? null : policyId;
+                long epochHour = toEpochHour(rs.getTimestamp("created_at").toLocalDateTime());
+                record(rs.getString("organization"), rs.getString("device_id"),
+                       rs.getString("anonymized_user_id"), policy, epochHour);
+                rows[0]++;
+            });
+            logger.info("Heavy-hitter sketches warmed up from {} violations in {} ms",
+                       rows[0], System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            logger.warn("Failed to warm up heavy-hitter sketches", e);
+        }
+    }
+    
+    private HourSlot slotFor(String organization, long epochHour) {
+        AtomicReferenceArray<HourSlot> ring = organizationRings.computeIfAbsent(
+                organization, key -> new AtomicReferenceArray<>(maxWindowHours));
+        int index = slotIndex(epochHour);
+        
+        while (true) {
+            HourSlot slot = ring.get(index);
+            if (slot != null && slot.epochHour == epochHour) {
+                return slot;
+            }
+            if (slot != null && slot.epochHour > epochHour) {
+                // Older than the ring (late warm-up row); nothing to record into
+                return null;
+            }
+            HourSlot fresh = new HourSlot(epochHour, capacity);
+            if (ring.compareAndSet(index, slot, fresh)) {
+                return fresh;
+            }
+        }
+    }
+    
+    private Map<String, String> lookupPolicyNames(List<SpaceSavingSketch.Estimate> estimates) {
+        List<Long> ids = new ArrayList<>();
+        for (SpaceSavingSketch.Estimate estimate : estimates) {
+            try {
+                ids.add(Long.parseLong(estimate.item()));
+            } catch (NumberFormatException e) {
+                // Not a policy id
+            }
+        }
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, String> names = new HashMap<>();
+        for (Policy policy : policyRepository.findAllById(ids)) {
+            names.put(String.valueOf(policy.getId()), policy.getPolicyName());
+        }
+        return names;
+    }
+    
+    private int parseWindowHours(String window) {
+        if (window == null || window.isBlank()) {
+            return maxWindowHours;
+        }
+        try {
+            String value = window.trim().toLowerCase(Locale.ROOT);
+            int hours;
+            if (value.endsWith("h")) {
+                hours = Integer.parseInt(value.substring(0, value.length() - 1));
+            } else if (value.endsWith("d")) {
+                hours = Integer.parseInt(value.substring(0, value.length() - 1)) * 24;
+            } else {
+                hours = (int) Duration.parse(value.toUpperCase(Locale.ROOT)).toHours();
+            }
+            if (hours < 1 || hours > maxWindowHours) {
+                throw new IllegalArgumentException("Window must be between 1h and " + maxWindowHours + "h");
+            }
+            return hours;
+        } catch (NumberFormatException | java.time.format.DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid window: " + window);
+        }
+    }
+    
+    private int slotIndex(long epochHour) {
+        return (int) Math.floorMod(epochHour, (long) maxWindowHours);
+    }
+    
+    private static long currentEpochHour() {
+        return System.currentTimeMillis() / 3_600_000L;
+    }
+    
+    private static long toEpochHour(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toEpochSecond() / 3600;
+    }
+    
+    /**
+     * Sketches for one organization and one clock hour
+     */
+    private static final class HourSlot {
+        private final long epochHour;
+        private final SpaceSavingSketch device;
+        private final SpaceSavingSketch user;
+        private final SpaceSavingSketch policy;
+        
+        HourSlot(long epochHour, int capacity) {
+            this.epochHour = epochHour;
+            this.device = new SpaceSavingSketch(capacity);
+            this.user = new SpaceSavingSketch(capacity);
+            this.policy = new SpaceSavingSketch(capacity);
+        }
+        
+        SpaceSavingSketch sketch(Dimension dimension) {
+            return switch (dimension) {
+                case DEVICE -> device;
+                case USER -> user;
+                case POLICY -> policy;
+            };
+        }
+    }
+}
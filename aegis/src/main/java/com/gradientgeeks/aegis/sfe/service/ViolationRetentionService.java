@@ -0,0 +1,481 @@
+package com.gradientgeeks.aegis.sfe.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gradientgeeks.aegis.sfe.entity.ViolationRetentionSetting;
+import com.gradientgeeks.aegis.sfe.repository.ViolationRetentionSettingRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Service enforcing per-organization retention of policy violations.
+ * 
+ * When policy_violations is range-partitioned by month of created_at (see
+ * db/policy_violations_partitioning.sql), partitions that are older than every
+ * organization's retention window are dropped whole. Remaining expired rows are
+ * deleted in small chunks ordered by (created_at, id) so each statement only
+ * holds short-lived locks. Organizations with archiving enabled get their expired
+ * rows written to gzip-compressed NDJSON files before they are removed.
+ */
+@Service
+public class ViolationRetentionService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ViolationRetentionService.class);
+    
+    private static final String TABLE_NAME = "policy_violations";
+    private static final String MAX_PARTITION = "pmax";
+    private static final long MYSQL_DAYS_AT_EPOCH = 719528L; // TO_DAYS('1970-01-01')
+    private static final Pattern SAFE_IDENTIFIER = Pattern.compile("[A-Za-z0-9_]+");
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final DateTimeFormatter ARCHIVE_STAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final ViolationRetentionSettingRepository settingRepository;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicBoolean purgeRunning = new AtomicBoolean(false);
+    // Keeps archive names unique when one run archives an organization several times within a second
+    private final AtomicLong archiveSequence = new AtomicLong();
+    
+    @Value("${aegis.violations.retention.enabled:true}")
+    private boolean retentionEnabled;
+    
+    @Value("${aegis.violations.retention.default-days:365}")
+    private int defaultRetentionDays;
+    
+    @Value("${aegis.violations.retention.chunk-size:1000}")
+    private int chunkSize;
+    
+    @Value("${aegis.violations.retention.archive-dir:archive/policy-violations}")
+    private String archiveDir;
+    
+    @Value("${aegis.violations.retention.partitions-ahead:3}")
+    private int partitionsAhead;
+    
+    @Autowired
+    public ViolationRetentionService(JdbcTemplate jdbcTemplate,
+                                     ViolationRetentionSettingRepository settingRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.settingRepository = settingRepository;
+    }
+    
+    /**
+     * Gets the retention settings of an organization, falling back to the default window
+     */
+    public ViolationRetentionSetting getRetentionSetting(String organization) {
+        return settingRepository.findByOrganization(organization)
+                .orElseGet(() -> new ViolationRetentionSetting(organization, defaultRetentionDays, false));
+    }
+    
+    /**
+     * Creates or updates the retention settings of an organization
+     */
+    @Transactional
+    public ViolationRetentionSetting updateRetentionSetting(String organization, int retentionDays, boolean archiveEnabled) {
+        if (retentionDays < 1) {
+            throw new IllegalArgumentException("Retention must be at least 1 day");
+        }
+        
+        ViolationRetentionSetting setting = settingRepository.findByOrganization(organization)
+                .orElseGet(() -> new ViolationRetentionSetting(organization, retentionDays, archiveEnabled));
+        setting.setRetentionDays(retentionDays);
+        setting.setArchiveEnabled(archiveEnabled);
+        
+        logger.info("Updated violation retention for organization: {} to {} days (archive: {})",
+                   organization, retentionDays, archiveEnabled);
+        return settingRepository.save(setting);
+    }
+    
+    /**
+     * Nightly retention run. Disable with aegis.violations.retention.enabled=false on
+     * all but one node when running several instances against the same database.
+     */
+    @Scheduled(cron = "${aegis.violations.retention.cron:0 30 2 * * *}")
+    public void scheduledPurge() {
+        if (!retentionEnabled) {
+            return;
+        }
+        purgeExpiredViolations();
+    }
+    
+    /**
+     * Removes every violation that is older than its organization's retention window
+     * 
+     * @return Summary of the run
+     */
+    public Map<String, Object> purgeExpiredViolations() {
+        if (!purgeRunning.compareAndSet(false, true)) {
+            logger.info("Violation retention purge already running, skipping");
+            return Map.of("status", "skipped", "message", "Purge already running");
+        }
+        
+        long startTime = System.currentTimeMillis();
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            Map<String, ViolationRetentionSetting> settings = loadEffectiveSettings();
+            Map<String, Long> purgedRows = new LinkedHashMap<>();
+            
+            boolean partitioned = isPartitioned();
+            int droppedPartitions = 0;
+            if (partitioned) {
+                ensureFuturePartitions(now.toLocalDate());
+                droppedPartitions = dropExpiredPartitions(now.toLocalDate(), settings, purgedRows);
+            }
+            
+            for (ViolationRetentionSetting setting : settings.values()) {
+                LocalDateTime cutoff = now.minusDays(setting.getRetentionDays());
+                PurgeResult result = purgeOrganization(setting.getOrganization(), cutoff,
+                                                       Boolean.TRUE.equals(setting.getArchiveEnabled()), "expired");
+                purgedRows.merge(setting.getOrganization(), result.deleted(), Long::sum);
+                recordPurge(setting, purgedRows.get(setting.getOrganization()), now);
+            }
+            
+            long duration = System.currentTimeMillis() - startTime;
+            logger.info("Violation retention purge completed in {} ms: {} partitions dropped, rows purged: {}",
+                       duration, droppedPartitions, purgedRows);
+            
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("status", "success");
+            summary.put("partitioned", partitioned);
+            summary.put("droppedPartitions", droppedPartitions);
+            summary.put("purgedRows", purgedRows);
+            summary.put("durationMs", duration);
+            return summary;
+            
+        } finally {
+            purgeRunning.set(false);
+        }
+    }
+    
+    /**
+     * Deletes expired violations of one organization in key-ordered chunks
+     * 
+     * @param archiveLabel Part of the archive file name, telling apart archives written in one run
+     * @return Rows deleted, and whether every expired row was archived (if enabled) and deleted
+     */
+    private PurgeResult purgeOrganization(String organization, LocalDateTime cutoff, boolean archive,
+                                          String archiveLabel) {
+        Timestamp cutoffTimestamp = Timestamp.valueOf(cutoff);
+        long deleted = 0;
+        boolean complete = false;
+        ViolationArchive archiveFile = null;
+        
+        try {
+            while (true) {
+                List<Long> ids;
+                if (archive) {
+                    List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                            "SELECT * FROM " + TABLE_NAME + " WHERE organization = ? AND created_at < ? " +
+                            "ORDER BY created_at, id LIMIT ?",
+                            organization, cutoffTimestamp, chunkSize);
+                    if (rows.isEmpty()) {
+                        break;
+                    }
+                    // Opened on the first expired row, so runs without expired rows leave no empty files
+                    if (archiveFile == null) {
+                        archiveFile = openArchive(organization, archiveLabel);
+                    }
+                    ids = new ArrayList<>(rows.size());
+                    for (Map<String, Object> row : rows) {
+                        archiveFile.write(row);
+                        ids.add(((Number) row.get("id")).longValue());
+                    }
+                    archiveFile.flush();
+                } else {
+                    ids = jdbcTemplate.queryForList(
+                            "SELECT id FROM " + TABLE_NAME + " WHERE organization = ? AND created_at < ? " +
+                            "ORDER BY created_at, id LIMIT ?",
+                            Long.class, organization, cutoffTimestamp, chunkSize);
+                }
+                
+                if (ids.isEmpty()) {
+                    break;
+                }
+                
+                deleted += deleteChunk(ids, cutoffTimestamp);
+                
+                if (ids.size() < chunkSize) {
+                    break;
+                }
+            }
+            if (archiveFile != null) {
+                // Writes the gzip trailer; a failure leaves the archive unreadable to standard tools
+                archiveFile.close();
+                archiveFile = null;
+            }
+            complete = true;
+        } catch (IOException e) {
+            logger.error("Failed to archive violations for organization: {}, purge stopped after {} rows",
+                        organization, deleted, e);
+        } catch (DataAccessException e) {
+            logger.error("Failed to purge violations for organization: {} after {} rows",
+                        organization, deleted, e);
+        } finally {
+            if (archiveFile != null) {
+                try {
+                    archiveFile.close();
+                } catch (IOException e) {
+                    logger.warn("Failed to close violation archive for organization: {}", organization, e);
+                }
+            }
+        }
+        
+        if (deleted > 0) {
+            logger.info("Purged {} violations older than {} for organization: {}", deleted, cutoff, organization);
+        }
+        return new PurgeResult(deleted, complete);
+    }
+    
+    private int deleteChunk(List<Long> ids, Timestamp cutoff) {
+        String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+        Object[] args = new Object[ids.size() + 1];
+        // created_at lets MySQL prune partitions when the table is partitioned
+        args[0] = cutoff;
+        for (int i = 0; i < ids.size(); i++) {
+            args[i + 1] = ids.get(i);
+        }
+        return jdbcTemplate.update(
+                "DELETE FROM " + TABLE_NAME + " WHERE created_at < ? AND id IN (" + placeholders + ")", args);
+    }
+    
+    /**
+     * Drops monthly partitions whose rows are past the longest retention window
+     */
+    private int dropExpiredPartitions(LocalDate today, Map<String, ViolationRetentionSetting> settings,
+                                      Map<String, Long> purgedRows) {
+        int maxRetentionDays = defaultRetentionDays;
+        for (ViolationRetentionSetting setting : settings.values()) {
+            maxRetentionDays = Math.max(maxRetentionDays, setting.getRetentionDays());
+        }
+        LocalDate floor = today.minusDays(maxRetentionDays);
+        
+        int dropped = 0;
+        for (PartitionInfo partition : listPartitions()) {
+            if (partition.upperBound() == null || partition.upperBound().isAfter(floor)) {
+                continue;
+            }
+            if (!SAFE_IDENTIFIER.matcher(partition.name()).matches()) {
+                logger.warn("Skipping partition with unexpected name: {}", partition.name());
+                continue;
+            }
+            
+            // Archiving organizations get their rows written out before the partition goes away
+            LocalDateTime boundary = partition.upperBound().atStartOfDay();
+            List<String> unarchived = new ArrayList<>();
+            for (ViolationRetentionSetting setting : settings.values()) {
+                if (Boolean.TRUE.equals(setting.getArchiveEnabled())) {
+                    PurgeResult result = purgeOrganization(setting.getOrganization(), boundary, true, partition.name());
+                    purgedRows.merge(setting.getOrganization(), result.deleted(), Long::sum);
+                    if (!result.complete()) {
+                        unarchived.add(setting.getOrganization());
+                    }
+                }
+            }
+            if (!unarchived.isEmpty()) {
+                // Dropping now would destroy rows that were never archived; retried on the next run
+                logger.warn("Not dropping partition {}: archiving did not finish for organizations {}",
+                           partition.name(), unarchived);
+                continue;
+            }
+            
+            try {
+                jdbcTemplate.execute("ALTER TABLE " + TABLE_NAME + " DROP PARTITION " + partition.name());
+                dropped++;
+                logger.info("Dropped policy violation partition {} (rows before {})",
+                           partition.name(), partition.upperBound());
+            } catch (DataAccessException e) {
+                logger.error("Failed to drop partition {}", partition.name(), e);
+            }
+        }
+        return dropped;
+    }
+    
+    /**
+     * Splits upcoming months out of the catch-all partition so new rows land in droppable partitions
+     */
+    private void ensureFuturePartitions(LocalDate today) {
+        List<PartitionInfo> partitions = listPartitions();
+        boolean hasMaxPartition = partitions.stream()
+                .anyMatch(p -> p.upperBound() == null && MAX_PARTITION.equals(p.name()));
+        if (!hasMaxPartition) {
+            logger.warn("Partitioned {} has no '{}' partition, not adding future partitions", TABLE_NAME, MAX_PARTITION);
+            return;
+        }
+        
+        LocalDate highestBound = partitions.stream()
+                .map(PartitionInfo::upperBound)
+                .filter(bound -> bound != null)
+                .max(LocalDate::compareTo)
+                .orElse(LocalDate.MIN);
+        
+        YearMonth month = YearMonth.from(today);
+        for (int i = 0; i <= partitionsAhead; i++, month = month.plusMonths(1)) {
+            LocalDate upperBound = month.plusMonths(1).atDay(1);
+            if (!upperBound.isAfter(highestBound)) {
+                continue;
+            }
+            String name = "p" + month.format(PARTITION_SUFFIX);
+            try {
+                jdbcTemplate.execute("ALTER TABLE " + TABLE_NAME + " REORGANIZE PARTITION " + MAX_PARTITION + " INTO (" +
+                        "PARTITION " + name + " VALUES LESS THAN (TO_DAYS('" + upperBound + "')), " +
+                        "PARTITION " + MAX_PARTITION + " VALUES LESS THAN MAXVALUE)");
+                highestBound = upperBound;
+                logger.info("Added policy violation partition {} (rows before {})", name, upperBound);
+            } catch (DataAccessException e) {
+                logger.error("Failed to add partition {}", name, e);
+                return;
+            }
+        }
+    }
+    
+    private boolean isPartitioned() {
+        try {
+            Integer count = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM information_schema.PARTITIONS " +
+                    "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL",
+                    Integer.class, TABLE_NAME);
+            return count != null && count > 0;
+        } catch (DataAccessException e) {
+            logger.debug("Partition metadata not available, using chunked deletes only", e);
+            return false;
+        }
+    }
+    
+    private List<PartitionInfo> listPartitions() {
+        return jdbcTemplate.query(
+                "SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL " +
+                "ORDER BY PARTITION_ORDINAL_POSITION",
+                (rs, rowNum) -> {
+                    String description = rs.getString("PARTITION_DESCRIPTION");
+                    LocalDate upperBound = null;
+                    if (description != null && !"MAXVALUE".equalsIgnoreCase(description)) {
+                        upperBound = LocalDate.ofEpochDay(Long.parseLong(description.trim()) - MYSQL_DAYS_AT_EPOCH);
+                    }
+                    return new PartitionInfo(rs.getString("PARTITION_NAME"), upperBound);
+                },
+                TABLE_NAME);
+    }
+    
+    /**
+     * Merges stored settings with every organization that currently has violations
+     */
+    private Map<String, ViolationRetentionSetting> loadEffectiveSettings() {
+        Map<String, ViolationRetentionSetting> settings = new LinkedHashMap<>();
+        for (ViolationRetentionSetting setting : settingRepository.findAll()) {
+            settings.put(setting.getOrganization(), setting);
+        }
+        
+        List<String> organizations = jdbcTemplate.queryForList(
+                "SELECT DISTINCT organization FROM " + TABLE_NAME, String.class);
+        for (String organization : organizations) {
+            settings.computeIfAbsent(organization,
+                    org -> new ViolationRetentionSetting(org, defaultRetentionDays, false));
+        }
+        return settings;
+    }
+    
+    private void recordPurge(ViolationRetentionSetting setting, long purgedCount, LocalDateTime purgedAt) {
+        if (setting.getId() == null) {
+            return;
+        }
+        try {
+            setting.setLastPurgedAt(purgedAt);
+            setting.setLastPurgedCount(purgedCount);
+            settingRepository.save(setting);
+        } catch (Exception e) {
+            logger.warn("Failed to record purge result for organization: {}", setting.getOrganization(), e);
+        }
+    }
+    
+    private ViolationArchive openArchive(String organization, String label) throws IOException {
+        String safeOrganization = organization.replaceAll("[^A-Za-z0-9._-]", "_");
+        Path directory = Paths.get(archiveDir, safeOrganization);
+        Files.createDirectories(directory);
+        Path file = directory.resolve(TABLE_NAME + "-" + LocalDateTime.now().format(ARCHIVE_STAMP) + "-" +
+                label + "-" + archiveSequence.incrementAndGet() + ".ndjson.gz");
+        logger.info("Archiving expired violations for organization: {} to {}", organization, file);
+        return new ViolationArchive(file, objectMapper);
+    }
+    
+    private record PartitionInfo(String name, LocalDate upperBound) {}
+    
+    private record PurgeResult(long deleted, boolean complete) {}
+    
+    /**
+     * Gzip-compressed NDJSON writer for archived violation rows
+     */
+    private static class ViolationArchive implements Closeable {
+        
+        private final FileChannel channel;
+        private final BufferedWriter writer;
+        private final ObjectMapper objectMapper;
+        
+        ViolationArchive(Path file, ObjectMapper objectMapper) throws IOException {
+            // Never reuses an existing file: its rows may already be deleted from the table
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            // syncFlush so a flush pushes every row written so far through the compressor
+            this.writer = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(Channels.newOutputStream(channel), 64 * 1024, true), StandardCharsets.UTF_8));
+            this.objectMapper = objectMapper;
+        }
+        
+        void write(Map<String, Object> row) throws IOException {
+            Map<String, Object> record = new LinkedHashMap<>(row.size());
+            for (Map.Entry<String, Object> column : row.entrySet()) {
+                Object value = column.getValue();
+                if (value instanceof Timestamp timestamp) {
+                    value = timestamp.toLocalDateTime().toString();
+                }
+                record.put(column.getKey(), value);
+            }
+            writer.write(objectMapper.writeValueAsString(record));
+            writer.newLine();
+        }
+        
+        /**
+         * Flushes the rows written so far and forces them to disk, so they survive a
+         * crash once their rows are deleted
+         */
+        void flush() throws IOException {
+            writer.flush();
+            channel.force(false);
+        }
+        
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+}
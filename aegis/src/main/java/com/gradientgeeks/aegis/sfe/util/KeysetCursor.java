@@ -0,0 +1,108 @@
+package com.gradientgeeks.aegis.sfe.util;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Opaque continuation token for keyset (seek) pagination.
+ * 
+ * A cursor captures the sort key of the last row returned - its createdAt plus
+ * one or more tie-breaker keys - so the next page can be fetched with a
+ * "WHERE (created_at, key) < (:createdAt, :key)" seek instead of an OFFSET.
+ * Clients must treat the token as opaque; its layout may change.
+ */
+public final class KeysetCursor {
+    
+    private static final String VERSION = "1";
+    private static final String SEPARATOR = ".";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    
+    private final LocalDateTime createdAt;
+    private final List<String> keys;
+    
+    private KeysetCursor(LocalDateTime createdAt, List<String> keys) {
+        this.createdAt = createdAt;
+        this.keys = keys;
+    }
+    
+    /**
+     * Creates a cursor positioned after a row with the given sort keys
+     */
+    public static KeysetCursor of(LocalDateTime createdAt, String... keys) {
+        if (createdAt == null) {
+            throw new IllegalArgumentException("Cursor timestamp is required");
+        }
+        return new KeysetCursor(createdAt, List.of(keys));
+    }
+    
+    /**
+     * Decodes a token produced by {@link #encode()}
+     * 
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static KeysetCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            throw new IllegalArgumentException("Cursor is required");
+        }
+        try {
+            String[] parts = token.split("\\" + SEPARATOR);
+            if (parts.length < 2 || !VERSION.equals(decodePart(parts[0]))) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            LocalDateTime createdAt = LocalDateTime.parse(decodePart(parts[1]));
+            String[] keys = new String[parts.length - 2];
+            for (int i = 2; i < parts.length; i++) {
+                keys[i - 2] = decodePart(parts[i]);
+            }
+            return new KeysetCursor(createdAt, List.of(keys));
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+    
+    /**
+     * Encodes the cursor as a URL-safe token
+     */
+    public String encode() {
+        StringBuilder token = new StringBuilder(encodePart(VERSION))
+                .append(SEPARATOR).append(encodePart(createdAt.toString()));
+        for (String key : keys) {
+            token.append(SEPARATOR).append(encodePart(key));
+        }
+        return token.toString();
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public List<String> getKeys() {
+        return Collections.unmodifiableList(keys);
+    }
+    
+    /**
+     * Gets a tie-breaker key by position
+     * 
+     * @throws IllegalArgumentException if the cursor does not carry that key
+     */
+    public String getKey(int index) {
+        if (index < 0 || index >= keys.size()) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return keys.get(index);
+    }
+    
+    private static String encodePart(String value) {
+        return ENCODER.encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static String decodePart(String value) {
+        return new String(DECODER.decode(value), StandardCharsets.UTF_8);
+    }
+}
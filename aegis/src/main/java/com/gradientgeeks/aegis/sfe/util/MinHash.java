@@ -0,0 +1,133 @@
+package com.gradientgeeks.aegis.sfe.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * MinHash signatures and LSH band keys for sets of strings.
+ * 
+ * A signature holds {@link #NUM_HASHES} minimum hash values; the fraction of
+ * positions on which two signatures agree is an unbiased estimate of the Jaccard
+ * similarity of the underlying sets. For locality-sensitive hashing the signature
+ * is cut into {@link #BANDS} bands of {@link #ROWS_PER_BAND} rows: two sets with
+ * Jaccard similarity s share at least one band with probability
+ * 1 - (1 - s^8)^16, i.e. about 0.97 at s = 0.8 and under 0.02 at s = 0.4.
+ * 
+ * Hash seeds are fixed, so signatures are stable across nodes and restarts and
+ * can be persisted.
+ */
+public final class MinHash {
+    
+    public static final int NUM_HASHES = 128;
+    public static final int BANDS = 16;
+    public static final int ROWS_PER_BAND = NUM_HASHES / BANDS;
+    public static final int SIGNATURE_BYTES = NUM_HASHES * Integer.BYTES;
+    
+    private static final long[] SEEDS = new long[NUM_HASHES];
+    
+    static {
+        long state = 0x2545F4914F6CDD1DL;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            SEEDS[i] = mix(state);
+        }
+    }
+    
+    private MinHash() {
+    }
+    
+    /**
+     * Computes the signature of a set. An empty set yields a signature of all
+     * {@link Integer#MAX_VALUE}.
+     */
+    public static int[] signature(Collection<String> elements) {
+        int[] signature = new int[NUM_HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        
+        for (String element : elements) {
+            long base = hash64(element);
+            for (int i = 0; i < NUM_HASHES; i++) {
+                // Drop the sign bit so the comparison is over non-negative values
+                int value = (int) (mix(base ^ SEEDS[i]) >>> 33);
+                if (value < signature[i]) {
+                    signature[i] = value;
+                }
+            }
+        }
+        return signature;
+    }
+    
+    /**
+     * Estimated Jaccard similarity of the sets behind two signatures
+     */
+    public static double similarity(int[] a, int[] b) {
+        if (a.length != NUM_HASHES || b.length != NUM_HASHES) {
+            throw new IllegalArgumentException("Signatures must have " + NUM_HASHES + " values");
+        }
+        int equal = 0;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / NUM_HASHES;
+    }
+    
+    /**
+     * One key per band. The band number is mixed in, so equal rows in different
+     * bands do not collide.
+     */
+    public static long[] bandKeys(int[] signature) {
+        long[] keys = new long[BANDS];
+        for (int band = 0; band < BANDS; band++) {
+            long key = mix(band + 1L);
+            for (int row = 0; row < ROWS_PER_BAND; row++) {
+                key = mix(key ^ (signature[band * ROWS_PER_BAND + row] & 0xFFFFFFFFL));
+            }
+            keys[band] = key;
+        }
+        return keys;
+    }
+    
+    public static byte[] encode(int[] signature) {
+        ByteBuffer buffer = ByteBuffer.allocate(SIGNATURE_BYTES);
+        for (int value : signature) {
+            buffer.putInt(value);
+        }
+        return buffer.array();
+    }
+    
+    public static int[] decode(byte[] bytes) {
+        if (bytes == null || bytes.length != SIGNATURE_BYTES) {
+            throw new IllegalArgumentException("Invalid MinHash signature");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int[] signature = new int[NUM_HASHES];
+        for (int i = 0; i < NUM_HASHES; i++) {
+            signature[i] = buffer.getInt();
+        }
+        return signature;
+    }
+    
+    /**
+     * 64-bit FNV-1a over the UTF-16 code units, finalized with {@link #mix(long)}
+     */
+    private static long hash64(String value) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+    
+    /**
+     * SplitMix64 finalizer
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
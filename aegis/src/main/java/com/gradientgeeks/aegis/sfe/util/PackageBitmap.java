@@ -0,0 +1,186 @@
+package com.gradientgeeks.aegis.sfe.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Immutable sparse bitmap of package dictionary IDs.
+ * 
+ * Only non-zero 64-bit words are kept, as parallel arrays of word index and word,
+ * sorted by index. Intersection cardinality is a merge over the word indexes with
+ * one AND and popcount per shared word, so set similarity needs no allocation and
+ * no string hashing.
+ * 
+ * The serialized form is a varint word count followed by, per word, the varint
+ * delta to the previous word index and the 8-byte word.
+ */
+public final class PackageBitmap {
+    
+    private static final PackageBitmap EMPTY = new PackageBitmap(new int[0], new long[0]);
+    
+    private final int[] wordIndexes;
+    private final long[] words;
+    private final int cardinality;
+    
+    private PackageBitmap(int[] wordIndexes, long[] words) {
+        this.wordIndexes = wordIndexes;
+        this.words = words;
+        int bits = 0;
+        for (long word : words) {
+            bits += Long.bitCount(word);
+        }
+        this.cardinality = bits;
+    }
+    
+    public static PackageBitmap empty() {
+        return EMPTY;
+    }
+    
+    /**
+     * Builds a bitmap from IDs in any order; duplicates are ignored
+     */
+    public static PackageBitmap of(int[] ids) {
+        if (ids.length == 0) {
+            return EMPTY;
+        }
+        int[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        if (sorted[0] < 0) {
+            throw new IllegalArgumentException("Package IDs must not be negative");
+        }
+        
+        int[] wordIndexes = new int[sorted.length];
+        long[] words = new long[sorted.length];
+        int count = 0;
+        for (int id : sorted) {
+            int wordIndex = id >>> 6;
+            if (count == 0 || wordIndexes[count - 1] != wordIndex) {
+                wordIndexes[count] = wordIndex;
+                count++;
+            }
+            words[count - 1] |= 1L << (id & 63);
+        }
+        return new PackageBitmap(Arrays.copyOf(wordIndexes, count), Arrays.copyOf(words, count));
+    }
+    
+    public int cardinality() {
+        return cardinality;
+    }
+    
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+    
+    public boolean contains(int id) {
+        int position = Arrays.binarySearch(wordIndexes, id >>> 6);
+        return position >= 0 && (words[position] & (1L << (id & 63))) != 0;
+    }
+    
+    /**
+     * Size of the intersection with another bitmap
+     */
+    public int andCardinality(PackageBitmap other) {
+        int i = 0;
+        int j = 0;
+        int bits = 0;
+        while (i < wordIndexes.length && j < other.wordIndexes.length) {
+            int a = wordIndexes[i];
+            int b = other.wordIndexes[j];
+            if (a == b) {
+                bits += Long.bitCount(words[i] & other.words[j]);
+                i++;
+                j++;
+            } else if (a < b) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return bits;
+    }
+    
+    /**
+     * Size of the union with another bitmap
+     */
+    public int orCardinality(PackageBitmap other) {
+        return cardinality + other.cardinality - andCardinality(other);
+    }
+    
+    /**
+     * The IDs in ascending order
+     */
+    public int[] toIds() {
+        int[] ids = new int[cardinality];
+        int count = 0;
+        for (int i = 0; i < words.length; i++) {
+            long word = words[i];
+            while (word != 0) {
+                ids[count++] = (wordIndexes[i] << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return ids;
+    }
+    
+    public byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(2 + words.length * 10);
+        writeVarint(out, words.length);
+        int previous = 0;
+        for (int i = 0; i < words.length; i++) {
+            writeVarint(out, wordIndexes[i] - previous);
+            previous = wordIndexes[i];
+            long word = words[i];
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (word >>> shift));
+            }
+        }
+        return out.toByteArray();
+    }
+    
+    public static PackageBitmap decode(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return EMPTY;
+        }
+        int[] position = {0};
+        int count = readVarint(bytes, position);
+        int[] wordIndexes = new int[count];
+        long[] words = new long[count];
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += readVarint(bytes, position);
+            wordIndexes[i] = previous;
+            if (position[0] + 8 > bytes.length) {
+                throw new IllegalArgumentException("Truncated package bitmap");
+            }
+            long word = 0;
+            for (int k = 0; k < 8; k++) {
+                word = (word << 8) | (bytes[position[0]++] & 0xFF);
+            }
+            words[i] = word;
+        }
+        return new PackageBitmap(wordIndexes, words);
+    }
+    
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+    
+    private static int readVarint(byte[] bytes, int[] position) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (position[0] >= bytes.length) {
+                throw new IllegalArgumentException("Truncated package bitmap");
+            }
+            byte b = bytes[position[0]++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in package bitmap");
+    }
+}
@@ -0,0 +1,180 @@
+package com.gradientgeeks.aegis.sfe.util;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe scalable Bloom filter of strings (Almeida et al., 2007).
+ * 
+ * Elements go into the newest of a chain of plain Bloom filters. When it holds
+ * its capacity, a new filter with twice the capacity and a tighter error rate is
+ * appended, so the overall false positive rate stays below the configured bound
+ * however many elements are added. {@link #mightContain(String)} never returns
+ * false for an added element; it returns true for an absent one with at most the
+ * configured probability.
+ * 
+ * Bits are set with compare-and-set, so adds and lookups need no locking.
+ */
+public final class ScalableBloomFilter {
+    
+    private static final int GROWTH_FACTOR = 2;
+    private static final double TIGHTENING_RATIO = 0.8;
+    
+    private final List<Stage> stages = new CopyOnWriteArrayList<>();
+    
+    /**
+     * @param initialCapacity Elements the first stage holds before a new one is added
+     * @param falsePositiveRate Upper bound of the overall false positive rate
+     */
+    public ScalableBloomFilter(long initialCapacity, double falsePositiveRate) {
+        if (initialCapacity < 1 || falsePositiveRate <= 0.0 || falsePositiveRate >= 1.0) {
+            throw new IllegalArgumentException("Invalid Bloom filter parameters");
+        }
+        // Stage error rates p0, p0 r, p0 r^2, ... sum to at most p0 / (1 - r)
+        stages.add(new Stage(initialCapacity, falsePositiveRate * (1.0 - TIGHTENING_RATIO)));
+    }
+    
+    public boolean mightContain(String value) {
+        long hash1 = hash64(value);
+        long hash2 = mix(hash1 ^ 0x9E3779B97F4A7C15L) | 1L;
+        for (Stage stage : stages) {
+            if (stage.mightContain(hash1, hash2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Adds a value; adding it again has no effect
+     */
+    public void add(String value) {
+        long hash1 = hash64(value);
+        long hash2 = mix(hash1 ^ 0x9E3779B97F4A7C15L) | 1L;
+        for (Stage stage : stages) {
+            if (stage.mightContain(hash1, hash2)) {
+                return;
+            }
+        }
+        Stage current = stages.get(stages.size() - 1);
+        if (current.count.get() >= current.capacity) {
+            current = grow(current);
+        }
+        current.add(hash1, hash2);
+    }
+    
+    /**
+     * Approximate number of distinct values added
+     */
+    public long size() {
+        long size = 0L;
+        for (Stage stage : stages) {
+            size += stage.count.get();
+        }
+        return size;
+    }
+    
+    /**
+     * Total size of the bit arrays in bytes
+     */
+    public long memoryBytes() {
+        long bytes = 0L;
+        for (Stage stage : stages) {
+            bytes += (long) stage.bits.length() * Long.BYTES;
+        }
+        return bytes;
+    }
+    
+    private synchronized Stage grow(Stage full) {
+        Stage last = stages.get(stages.size() - 1);
+        if (last != full) {
+            // Another thread already added a stage
+            return last;
+        }
+        Stage next = new Stage(full.capacity * GROWTH_FACTOR, full.falsePositiveRate * TIGHTENING_RATIO);
+        stages.add(next);
+        return next;
+    }
+    
+    /**
+     * 64-bit FNV-1a over the UTF-16 code units, finalized with {@link #mix(long)}
+     */
+    private static long hash64(String value) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+    
+    /**
+     * SplitMix64 finalizer
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+    
+    /**
+     * One plain Bloom filter sized for its capacity and error rate.
+     * Bit positions use double hashing: h1 + i * h2 for i in [0, k).
+     */
+    private static final class Stage {
+        private final long capacity;
+        private final double falsePositiveRate;
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int hashCount;
+        private final AtomicLong count = new AtomicLong();
+        
+        private Stage(long capacity, double falsePositiveRate) {
+            this.capacity = capacity;
+            this.falsePositiveRate = falsePositiveRate;
+            double optimalBits = -capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+            long words = Math.max(1L, (long) Math.ceil(optimalBits / Long.SIZE));
+            if (words > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Bloom filter stage too large");
+            }
+            this.bits = new AtomicLongArray((int) words);
+            this.bitCount = words * Long.SIZE;
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+        }
+        
+        private boolean mightContain(long hash1, long hash2) {
+            long combined = hash1;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Long.remainderUnsigned(combined, bitCount);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+                combined += hash2;
+            }
+            return true;
+        }
+        
+        private void add(long hash1, long hash2) {
+            long combined = hash1;
+            boolean changed = false;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Long.remainderUnsigned(combined, bitCount);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long current;
+                while (((current = bits.get(word)) & mask) == 0) {
+                    if (bits.compareAndSet(word, current, current | mask)) {
+                        changed = true;
+                        break;
+                    }
+                }
+                combined += hash2;
+            }
+            if (changed) {
+                count.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.gradientgeeks.aegis.sfe.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Compact encoding of the set of Android sensor types on a device.
+ * 
+ * Standard types (0-62, the SDK's Sensor.TYPE_* constants) are bits of a 64-bit
+ * mask. Bit 63 marks that the device also has vendor-specific types, which are
+ * kept separately as a sorted, comma-separated list.
+ */
+public final class SensorTypeSet {
+    
+    /** Sensor types below this value are stored in the mask */
+    public static final int MASK_TYPES = 63;
+    
+    private static final long EXTRA_TYPES_FLAG = 1L << MASK_TYPES;
+    
+    private SensorTypeSet() {}
+    
+    /**
+     * Mask of the given types; duplicates and nulls are ignored
+     */
+    public static long toMask(Collection<Integer> types) {
+        long mask = 0L;
+        if (types == null) {
+            return mask;
+        }
+        for (Integer type : types) {
+            if (type == null || type < 0) {
+                continue;
+            }
+            mask |= type < MASK_TYPES ? 1L << type : EXTRA_TYPES_FLAG;
+        }
+        return mask;
+    }
+    
+    /**
+     * Sorted, comma-separated types that do not fit the mask, or null if there are none
+     */
+    public static String toExtraTypes(Collection<Integer> types) {
+        if (types == null) {
+            return null;
+        }
+        TreeSet<Integer> extra = new TreeSet<>();
+        for (Integer type : types) {
+            if (type != null && type >= MASK_TYPES) {
+                extra.add(type);
+            }
+        }
+        if (extra.isEmpty()) {
+            return null;
+        }
+        StringBuilder encoded = new StringBuilder();
+        for (Integer type : extra) {
+            if (encoded.length() > 0) {
+                encoded.append(',');
+            }
+            encoded.append(type);
+        }
+        return encoded.toString();
+    }
+    
+    /**
+     * Distinct sensor types in ascending order
+     */
+    public static List<Integer> toList(long mask, String extraTypes) {
+        List<Integer> types = new ArrayList<>(Long.bitCount(mask));
+        long standard = mask & ~EXTRA_TYPES_FLAG;
+        while (standard != 0) {
+            types.add(Long.numberOfTrailingZeros(standard));
+            standard &= standard - 1;
+        }
+        if (extraTypes != null && !extraTypes.isEmpty()) {
+            for (String type : extraTypes.split(",")) {
+                types.add(Integer.parseInt(type.trim()));
+            }
+        }
+        return types;
+    }
+}
@@ -0,0 +1,244 @@
+package com.gradientgeeks.aegis.sfe.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving top-K sketch (Metwally et al.) backed by a Stream-Summary, so
+ * every {@link #offer(String)} is O(1).
+ * 
+ * The sketch keeps at most {@code capacity} counters. When a new item arrives
+ * and all counters are taken, the item with the smallest count is evicted and
+ * the newcomer inherits that count as its error. Guarantees, for a stream of N
+ * items and capacity k:
+ * <ul>
+ *   <li>every reported count over-estimates the true count by at most its
+ *       {@code error}, and {@code error <= N / k};</li>
+ *   <li>any item whose true frequency exceeds N / k is always present.</li>
+ * </ul>
+ * Instances are thread-safe.
+ */
+public class SpaceSavingSketch {
+    
+    private final int capacity;
+    private final Map<String, Counter> counters;
+    private Bucket minBucket;
+    private long totalCount;
+    
+    public SpaceSavingSketch(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+    
+    /**
+     * Counts one occurrence of an item
+     */
+    public synchronized void offer(String item) {
+        totalCount++;
+        
+        Counter counter = counters.get(item);
+        if (counter != null) {
+            increment(counter);
+            return;
+        }
+        
+        if (counters.size() < capacity) {
+            counter = new Counter(item);
+            counters.put(item, counter);
+            if (minBucket != null && minBucket.count == 1) {
+                minBucket.attach(counter);
+            } else {
+                Bucket bucket = new Bucket(1);
+                bucket.next = minBucket;
+                if (minBucket != null) {
+                    minBucket.prev = bucket;
+                }
+                minBucket = bucket;
+                bucket.attach(counter);
+            }
+            return;
+        }
+        
+        // Evict the least frequent item; the newcomer inherits its count as error
+        Counter victim = minBucket.head;
+        counters.remove(victim.item);
+        victim.item = item;
+        victim.error = minBucket.count;
+        counters.put(item, victim);
+        increment(victim);
+    }
+    
+    /**
+     * Total number of items offered
+     */
+    public synchronized long getTotalCount() {
+        return totalCount;
+    }
+    
+    /**
+     * Smallest monitored count, i.e. the upper bound on the count of any unmonitored item.
+     * Zero while the sketch still has free counters.
+     */
+    public synchronized long getMinCount() {
+        return counters.size() < capacity || minBucket == null ? 0 : minBucket.count;
+    }
+    
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    /**
+     * Snapshot of all monitored items
+     */
+    public synchronized List<Estimate> snapshot() {
+        List<Estimate> estimates = new ArrayList<>(counters.size());
+        for (Bucket bucket = minBucket; bucket != null; bucket = bucket.next) {
+            for (Counter counter = bucket.head; counter != null; counter = counter.next) {
+                estimates.add(new Estimate(counter.item, bucket.count, counter.error));
+            }
+        }
+        return estimates;
+    }
+    
+    /**
+     * Merges several sketches (e.g. consecutive time slices) and returns the top items.
+     * An item missing from a full sketch may still have occurred there up to that
+     * sketch's minimum count, so that amount is added to both its count and error.
+     * 
+     * @return Up to {@code limit} estimates ordered by count descending
+     */
+    public static List<Estimate> mergeTop(Collection<SpaceSavingSketch> sketches, int limit) {
+        List<List<Estimate>> snapshots = new ArrayList<>(sketches.size());
+        List<Long> minCounts = new ArrayList<>(sketches.size());
+        long totalMinCount = 0;
+        for (SpaceSavingSketch sketch : sketches) {
+            synchronized (sketch) {
+                snapshots.add(sketch.snapshot());
+                long minCount = sketch.getMinCount();
+                minCounts.add(minCount);
+                totalMinCount += minCount;
+            }
+        }
+        
+        // Per item: summed count, summed error, summed min count of the sketches it appears in
+        Map<String, long[]> merged = new HashMap<>();
+        for (int i = 0; i < snapshots.size(); i++) {
+            long minCount = minCounts.get(i);
+            for (Estimate estimate : snapshots.get(i)) {
+                long[] totals = merged.computeIfAbsent(estimate.item(), key -> new long[3]);
+                totals[0] += estimate.count();
+                totals[1] += estimate.error();
+                totals[2] += minCount;
+            }
+        }
+        
+        List<Estimate> result = new ArrayList<>(merged.size());
+        for (Map.Entry<String, long[]> entry : merged.entrySet()) {
+            long[] totals = entry.getValue();
+            long missingBound = totalMinCount - totals[2];
+            result.add(new Estimate(entry.getKey(), totals[0] + missingBound, totals[1] + missingBound));
+        }
+        
+        result.sort((a, b) -> Long.compare(b.count(), a.count()));
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+    
+    private void increment(Counter counter) {
+        Bucket bucket = counter.bucket;
+        long newCount = bucket.count + 1;
+        Bucket next = bucket.next;
+        
+        bucket.detach(counter);
+        if (next != null && next.count == newCount) {
+            next.attach(counter);
+        } else {
+            Bucket newBucket = new Bucket(newCount);
+            newBucket.prev = bucket;
+            newBucket.next = next;
+            bucket.next = newBucket;
+            if (next != null) {
+                next.prev = newBucket;
+            }
+            newBucket.attach(counter);
+        }
+        
+        if (bucket.head == null) {
+            unlink(bucket);
+        }
+    }
+    
+    private void unlink(Bucket bucket) {
+        if (bucket.prev != null) {
+            bucket.prev.next = bucket.next;
+        } else {
+            minBucket = bucket.next;
+        }
+        if (bucket.next != null) {
+            bucket.next.prev = bucket.prev;
+        }
+    }
+    
+    /**
+     * Estimated frequency of an item. The true count lies in [count - error, count].
+     */
+    public record Estimate(String item, long count, long error) {
+        public long guaranteedCount() {
+            return count - error;
+        }
+    }
+    
+    private static final class Counter {
+        private String item;
+        private long error;
+        private Bucket bucket;
+        private Counter prev;
+        private Counter next;
+        
+        Counter(String item) {
+            this.item = item;
+        }
+    }
+    
+    /**
+     * All counters sharing one count; buckets form a list in ascending count order
+     */
+    private static final class Bucket {
+        private final long count;
+        private Counter head;
+        private Bucket prev;
+        private Bucket next;
+        
+        Bucket(long count) {
+            this.count = count;
+        }
+        
+        void attach(Counter counter) {
+            counter.bucket = this;
+            counter.prev = null;
+            counter.next = head;
+            if (head != null) {
+                head.prev = counter;
+            }
+            head = counter;
+        }
+        
+        void detach(Counter counter) {
+            if (counter.prev != null) {
+                counter.prev.next = counter.next;
+            } else {
+                head = counter.next;
+            }
+            if (counter.next != null) {
+                counter.next.prev = counter.prev;
+            }
+            counter.prev = null;
+            counter.next = null;
+        }
+    }
+}
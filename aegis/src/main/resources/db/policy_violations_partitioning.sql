@@ -0,0 +1,24 @@
+-- Range-partition policy_violations by month of created_at (MySQL 8).
+--
+-- Partitioned InnoDB tables cannot have foreign keys, and every unique key must
+-- include the partitioning column. Run this once during a maintenance window;
+-- ViolationRetentionService then splits new monthly partitions out of `pmax`
+-- and drops partitions that are past every organization's retention window.
+
+-- 1. Drop the foreign keys created by earlier schema versions. Look up their names with:
+--    SELECT CONSTRAINT_NAME FROM information_schema.REFERENTIAL_CONSTRAINTS
+--    WHERE CONSTRAINT_SCHEMA = DATABASE() AND TABLE_NAME = 'policy_violations';
+-- ALTER TABLE policy_violations DROP FOREIGN KEY <constraint_name>;
+
+-- 2. Widen the primary key so it contains the partitioning column
+ALTER TABLE policy_violations
+    DROP PRIMARY KEY,
+    ADD PRIMARY KEY (id, created_at);
+
+-- 3. Partition by month. Replace the boundary with the first day of the current
+--    month; older rows stay in p_history until they expire.
+ALTER TABLE policy_violations
+    PARTITION BY RANGE (TO_DAYS(created_at)) (
+        PARTITION p_history VALUES LESS THAN (TO_DAYS('2025-01-01')),
+        PARTITION pmax VALUES LESS THAN MAXVALUE
+    );
@@ -0,0 +1,20 @@
+-- Drop the device_fingerprint_sensors join table once every node runs the
+-- version that stores sensor types in sensor_type_mask (see
+-- sensor_type_mask_migration.sql). Fingerprints registered by old nodes during
+-- the rolling deploy only wrote the join table, so encode those first.
+
+UPDATE device_fingerprints f
+JOIN (
+    SELECT fingerprint_id,
+           BIT_OR(CASE WHEN sensor_type < 63 THEN 1 << sensor_type ELSE 1 << 63 END) AS mask,
+           GROUP_CONCAT(DISTINCT CASE WHEN sensor_type >= 63 THEN sensor_type END
+                        ORDER BY sensor_type SEPARATOR ',') AS extra
+    FROM device_fingerprint_sensors
+    WHERE sensor_type >= 0
+    GROUP BY fingerprint_id
+) s ON s.fingerprint_id = f.id
+SET f.sensor_type_mask = CAST(s.mask AS SIGNED),
+    f.sensor_types_extra = s.extra
+WHERE f.sensor_type_mask = 0;
+
+DROP TABLE IF EXISTS device_fingerprint_sensors;
@@ -0,0 +1,28 @@
+-- Move fingerprint sensor types from the device_fingerprint_sensors join table
+-- into inline columns on device_fingerprints (MySQL 8 / MariaDB).
+--
+-- Types 0-62 become bits of sensor_type_mask; vendor-specific types (63 and up)
+-- set bit 63 and are listed in sensor_types_extra. Run once before deploying the
+-- version that no longer maps the join table. The join table is kept so nodes
+-- still running the previous version keep working; drop it afterwards with
+-- sensor_type_mask_cleanup.sql.
+
+-- 1. Add the new columns; skip this step if a previous run already added them
+ALTER TABLE device_fingerprints
+    ADD COLUMN sensor_type_mask BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN sensor_types_extra VARCHAR(512);
+
+-- 2. Encode the existing sensor types. BIT_OR is unsigned, so bit 63 is cast to
+--    the sign bit, matching Java's long.
+UPDATE device_fingerprints f
+JOIN (
+    SELECT fingerprint_id,
+           BIT_OR(CASE WHEN sensor_type < 63 THEN 1 << sensor_type ELSE 1 << 63 END) AS mask,
+           GROUP_CONCAT(DISTINCT CASE WHEN sensor_type >= 63 THEN sensor_type END
+                        ORDER BY sensor_type SEPARATOR ',') AS extra
+    FROM device_fingerprint_sensors
+    WHERE sensor_type >= 0
+    GROUP BY fingerprint_id
+) s ON s.fingerprint_id = f.id
+SET f.sensor_type_mask = CAST(s.mask AS SIGNED),
+    f.sensor_types_extra = s.extra;
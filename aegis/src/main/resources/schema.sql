@@ -30,10 +30,16 @@ CREATE TABLE IF NOT EXISTS registration_keys (
     organization VARCHAR(255) NOT NULL,
     is_active BOOLEAN DEFAULT true,
     expires_at TIMESTAMP NULL,
+    registration_rate_limit INT NULL,
+    registration_burst INT NULL,
     created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
 );
 
+-- Per-client registration admission limits for existing registration_keys tables
+ALTER TABLE registration_keys ADD COLUMN IF NOT EXISTS registration_rate_limit INT NULL;
+ALTER TABLE registration_keys ADD COLUMN IF NOT EXISTS registration_burst INT NULL;
+
 -- Create indexes for registration_keys
 CREATE INDEX IF NOT EXISTS idx_registration_keys_client_id ON registration_keys(client_id);
 CREATE INDEX IF NOT EXISTS idx_registration_keys_registration_key ON registration_keys(registration_key);
@@ -58,9 +64,19 @@ CREATE TABLE devices (
 CREATE INDEX idx_devices_device_id ON devices(device_id);
 CREATE INDEX idx_devices_client_id ON devices(client_id);
 CREATE INDEX idx_devices_status ON devices(status);
+-- Keyset pagination of device search (newest first)
+CREATE INDEX idx_devices_created_at_keyset ON devices(created_at, device_id, client_id);
+CREATE INDEX idx_devices_client_created_at ON devices(client_id, created_at);
 
 
 -- Drop the old tables if they exist to recreate with new structure (in correct order for foreign keys)
+DROP TABLE IF EXISTS fraud_rescore_verdicts;
+DROP TABLE IF EXISTS fraud_rescore_jobs;
+DROP TABLE IF EXISTS client_fraud_reports_daily;
+DROP TABLE IF EXISTS client_device_counters;
+DROP TABLE IF EXISTS hardware_cluster_hourly;
+DROP TABLE IF EXISTS hardware_cluster_stats;
+DROP TABLE IF EXISTS app_minhash_bands;
 DROP TABLE IF EXISTS device_fingerprint_sensors;
 DROP TABLE IF EXISTS device_app_info;
 DROP TABLE IF EXISTS device_app_fingerprints;
@@ -89,7 +105,9 @@ CREATE TABLE device_fingerprints (
     density_dpi INT NOT NULL,
     display_hash VARCHAR(64) NOT NULL,
     
-    -- Sensor information
+    -- Sensor information; types 0-62 as bits of the mask, vendor types in sensor_types_extra
+    sensor_type_mask BIGINT NOT NULL DEFAULT 0,
+    sensor_types_extra VARCHAR(512),
     sensor_count INT NOT NULL,
     sensor_hash VARCHAR(64) NOT NULL,
     
@@ -109,22 +127,13 @@ CREATE TABLE device_fingerprints (
     updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
 );
 
--- Create sensor types table for the @ElementCollection
-CREATE TABLE device_fingerprint_sensors (
-    fingerprint_id BIGINT NOT NULL,
-    sensor_type INT NOT NULL,
-    FOREIGN KEY (fingerprint_id) REFERENCES device_fingerprints(id) ON DELETE CASCADE
-);
-
 -- Create indexes for device_fingerprints
 CREATE INDEX IF NOT EXISTS idx_fingerprint_device_id ON device_fingerprints(device_id);
 CREATE INDEX IF NOT EXISTS idx_fingerprint_hardware_hash ON device_fingerprints(hardware_hash);
 CREATE INDEX IF NOT EXISTS idx_fingerprint_composite_hash ON device_fingerprints(composite_hash);
 CREATE INDEX IF NOT EXISTS idx_fingerprint_display_hash ON device_fingerprints(display_hash);
 CREATE INDEX IF NOT EXISTS idx_fingerprint_fraudulent ON device_fingerprints(is_fraudulent);
-
--- Create indexes for sensor types table
-CREATE INDEX IF NOT EXISTS idx_sensor_fingerprint_id ON device_fingerprint_sensors(fingerprint_id);
+CREATE INDEX IF NOT EXISTS idx_fingerprint_created_at ON device_fingerprints(created_at);
 
 -- App fingerprints table for enhanced device reinstall detection
 CREATE TABLE IF NOT EXISTS device_app_fingerprints (
@@ -134,6 +143,9 @@ CREATE TABLE IF NOT EXISTS device_app_fingerprints (
     user_app_count INT NOT NULL,
     system_app_count INT NOT NULL,
     app_hash VARCHAR(64) NOT NULL,
+    minhash_signature VARBINARY(512),
+    user_app_bitmap BLOB,
+    system_app_bitmap BLOB,
     created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (fingerprint_id) REFERENCES device_fingerprints(id) ON DELETE CASCADE
 );
@@ -154,4 +166,107 @@ CREATE TABLE IF NOT EXISTS device_app_info (
 CREATE INDEX IF NOT EXISTS idx_app_fingerprint_id ON device_app_fingerprints(fingerprint_id);
 CREATE INDEX IF NOT EXISTS idx_app_fingerprint_hash ON device_app_fingerprints(app_hash);
 CREATE INDEX IF NOT EXISTS idx_app_info_fingerprint_id ON device_app_info(app_fingerprint_id);
-CREATE INDEX IF NOT EXISTS idx_app_info_package_name ON device_app_info(package_name);
\ No newline at end of file
+CREATE INDEX IF NOT EXISTS idx_app_info_package_name ON device_app_info(package_name);
+
+-- Package name dictionary; app inventories are stored as bitmaps of these IDs
+CREATE TABLE IF NOT EXISTS app_packages (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    package_name VARCHAR(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL,
+    UNIQUE KEY idx_app_package_name (package_name)
+);
+
+-- LSH band keys of app inventory MinHash signatures
+CREATE TABLE IF NOT EXISTS app_minhash_bands (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    band_key BIGINT NOT NULL,
+    fingerprint_id BIGINT NOT NULL,
+    FOREIGN KEY (fingerprint_id) REFERENCES device_fingerprints(id) ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS idx_minhash_band_key ON app_minhash_bands(band_key, fingerprint_id);
+CREATE INDEX IF NOT EXISTS idx_minhash_band_fingerprint ON app_minhash_bands(fingerprint_id);
+
+-- Registration counters per hardware cluster (manufacturer, model, board, CPU architecture)
+CREATE TABLE IF NOT EXISTS hardware_cluster_stats (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    cluster_key VARCHAR(64) NOT NULL,
+    manufacturer VARCHAR(100),
+    model VARCHAR(100),
+    board VARCHAR(100),
+    cpu_architecture VARCHAR(200),
+    device_count BIGINT NOT NULL DEFAULT 0,
+    first_seen_at TIMESTAMP NULL,
+    last_seen_at TIMESTAMP NULL,
+    UNIQUE KEY idx_cluster_key (cluster_key)
+);
+
+CREATE TABLE IF NOT EXISTS hardware_cluster_hourly (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    cluster_key VARCHAR(64) NOT NULL,
+    hour_start TIMESTAMP NOT NULL,
+    registrations INT NOT NULL DEFAULT 0,
+    UNIQUE KEY idx_cluster_hour (cluster_key, hour_start)
+);
+
+CREATE INDEX IF NOT EXISTS idx_cluster_hour_start ON hardware_cluster_hourly(hour_start);
+
+-- Per-client device counters, maintained by DeviceCounterService and reconciled nightly
+CREATE TABLE IF NOT EXISTS client_device_counters (
+    client_id VARCHAR(100) PRIMARY KEY,
+    total_devices BIGINT NOT NULL DEFAULT 0,
+    active_devices BIGINT NOT NULL DEFAULT 0,
+    blocked_devices BIGINT NOT NULL DEFAULT 0,
+    fraudulent_devices BIGINT NOT NULL DEFAULT 0,
+    reconciled_at TIMESTAMP NULL
+);
+
+-- Devices first reported as fraudulent, per client and day
+CREATE TABLE IF NOT EXISTS client_fraud_reports_daily (
+    client_id VARCHAR(100) NOT NULL,
+    report_date DATE NOT NULL,
+    report_count INT NOT NULL DEFAULT 0,
+    PRIMARY KEY (client_id, report_date)
+);
+
+-- Devices linked to a fraudulent device, queued for manual review
+CREATE TABLE IF NOT EXISTS fraud_review_flags (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    device_id VARCHAR(255) NOT NULL,
+    source_device_id VARCHAR(255) NOT NULL,
+    hops INT NOT NULL,
+    link_path VARCHAR(500),
+    status VARCHAR(20) NOT NULL DEFAULT 'PENDING',
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    reviewed_at TIMESTAMP NULL,
+    UNIQUE KEY idx_review_flag_device_source (device_id, source_device_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_review_flag_status_created ON fraud_review_flags(status, created_at);
+
+-- Re-scoring of stored fingerprints against the fraudulent ones, with checkpointed progress
+CREATE TABLE IF NOT EXISTS fraud_rescore_jobs (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    status VARCHAR(20) NOT NULL DEFAULT 'RUNNING',
+    last_fingerprint_id BIGINT NOT NULL DEFAULT 0,
+    processed_count BIGINT NOT NULL DEFAULT 0,
+    changed_count BIGINT NOT NULL DEFAULT 0,
+    settings TEXT,
+    error_message VARCHAR(500),
+    started_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    completed_at TIMESTAMP NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_rescore_job_status ON fraud_rescore_jobs(status);
+
+-- Flagged or blocked verdicts per job, next to the current treatment of the device
+CREATE TABLE IF NOT EXISTS fraud_rescore_verdicts (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    job_id BIGINT NOT NULL,
+    fingerprint_id BIGINT NOT NULL,
+    device_id VARCHAR(255) NOT NULL,
+    verdict VARCHAR(10) NOT NULL,
+    current_verdict VARCHAR(10) NOT NULL,
+    score DOUBLE NOT NULL,
+    matched_device_id VARCHAR(255),
+    UNIQUE KEY idx_rescore_verdict_job_fingerprint (job_id, fingerprint_id)
+);
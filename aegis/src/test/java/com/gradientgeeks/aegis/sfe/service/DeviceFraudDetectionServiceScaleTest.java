@@ -0,0 +1,235 @@
+package com.gradientgeeks.aegis.sfe.service;
+
+import com.gradientgeeks.aegis.sfe.dto.AppFingerprintDto;
+import com.gradientgeeks.aegis.sfe.dto.AppInfoDto;
+import com.gradientgeeks.aegis.sfe.dto.DeviceFingerprintDto;
+import com.gradientgeeks.aegis.sfe.dto.DisplayFingerprintDto;
+import com.gradientgeeks.aegis.sfe.dto.HardwareFingerprintDto;
+import com.gradientgeeks.aegis.sfe.entity.DeviceAppFingerprint;
+import com.gradientgeeks.aegis.sfe.entity.DeviceFingerprint;
+import com.gradientgeeks.aegis.sfe.repository.DeviceAppFingerprintRepository;
+import com.gradientgeeks.aegis.sfe.repository.DeviceAppInfoRepository;
+import com.gradientgeeks.aegis.sfe.repository.DeviceFingerprintRepository;
+import com.gradientgeeks.aegis.sfe.repository.FraudReviewFlagRepository;
+import com.gradientgeeks.aegis.sfe.service.HardwareClusterStatsService.ClusterStats;
+import com.gradientgeeks.aegis.sfe.util.PackageBitmap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Registration analysis against a growing number of fraudulent fingerprints with
+ * the same hardware. Every repository call sleeps for a simulated database
+ * round-trip, so a query per candidate would show up as latency growing with
+ * the number of candidates.
+ */
+@ExtendWith(MockitoExtension.class)
+class DeviceFraudDetectionServiceScaleTest {
+    
+    private static final long ROUND_TRIP_MS = 5;
+    private static final int USER_APPS = 40;
+    private static final int SYSTEM_APPS = 20;
+    
+    @Mock private DeviceFingerprintRepository fingerprintRepository;
+    @Mock private DeviceAppFingerprintRepository appFingerprintRepository;
+    @Mock private DeviceAppInfoRepository appInfoRepository;
+    @Mock private FraudulentFingerprintIndex fraudulentFingerprintIndex;
+    @Mock private ClusterEventBus clusterEventBus;
+    @Mock private AppInventorySimilarityService appInventorySimilarityService;
+    @Mock private PackageDictionary packageDictionary;
+    @Mock private AppInventoryWriter appInventoryWriter;
+    @Mock private HardwareClusterStatsService hardwareClusterStatsService;
+    @Mock private FraudLinkageGraph fraudLinkageGraph;
+    @Mock private FraudReviewFlagRepository reviewFlagRepository;
+    @Mock private ExistenceFilterService existenceFilterService;
+    @Mock private FingerprintColumnStore fingerprintColumnStore;
+    @Mock private DeviceCounterService deviceCounterService;
+    @Mock private PlatformTransactionManager transactionManager;
+    
+    private DeviceFraudDetectionService service;
+    
+    @BeforeEach
+    void setUp() {
+        FingerprintScorer scorer = new FingerprintScorer();
+        ReflectionTestUtils.setField(scorer, "highSimilarityThreshold", 0.9);
+        ReflectionTestUtils.setField(scorer, "mediumSimilarityThreshold", 0.7);
+        ReflectionTestUtils.setField(scorer, "lowSimilarityThreshold", 0.5);
+        ReflectionTestUtils.setField(scorer, "hardwareWeight", 0.5);
+        ReflectionTestUtils.setField(scorer, "displayWeight", 0.25);
+        ReflectionTestUtils.setField(scorer, "appWeight", 0.25);
+        ReflectionTestUtils.setField(scorer, "hardwareWeightWithoutApps", 0.7);
+        ReflectionTestUtils.setField(scorer, "displayWeightWithoutApps", 0.3);
+        ReflectionTestUtils.setField(scorer, "appCountWeight", 0.3);
+        ReflectionTestUtils.setField(scorer, "appPackageWeight", 0.7);
+        ReflectionTestUtils.setField(scorer, "userPackageWeight", 0.7);
+        ReflectionTestUtils.setField(scorer, "systemPackageWeight", 0.3);
+        
+        service = new DeviceFraudDetectionService(fingerprintRepository, appFingerprintRepository, appInfoRepository,
+            fraudulentFingerprintIndex, clusterEventBus, appInventorySimilarityService, packageDictionary,
+            appInventoryWriter, hardwareClusterStatsService, fraudLinkageGraph, reviewFlagRepository,
+            existenceFilterService, scorer, fingerprintColumnStore, deviceCounterService, transactionManager, 4, 50, 10);
+        ReflectionTestUtils.setField(service, "analysisTimeoutMs", 60_000L);
+        ReflectionTestUtils.setField(service, "clusterMaxDevices", 10L);
+        ReflectionTestUtils.setField(service, "clusterSpikeMinRegistrations", 20L);
+        ReflectionTestUtils.setField(service, "clusterSpikeFactor", 5.0);
+        
+        when(hardwareClusterStatsService.getClusterStats(any(HardwareFingerprintDto.class)))
+            .thenReturn(new ClusterStats(1, 0, 0));
+        // Package "pkg.N" has dictionary ID N
+        when(packageDictionary.encodeKnown(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> names = invocation.getArgument(0);
+            return PackageBitmap.of(names.stream().mapToInt(name -> Integer.parseInt(name.substring(4))).toArray());
+        });
+        // Rows written before bitmaps existed, so package names are read from device_app_info as well
+        when(appFingerprintRepository.findByFingerprintIdIn(anyCollection())).thenAnswer(invocation -> {
+            roundTrip();
+            Collection<Long> fingerprintIds = invocation.getArgument(0);
+            return fingerprintIds.stream().map(DeviceFraudDetectionServiceScaleTest::appFingerprint)
+                .collect(Collectors.toList());
+        });
+        when(appInfoRepository.findPackageNamesByAppFingerprintIds(anyCollection())).thenAnswer(invocation -> {
+            roundTrip();
+            Collection<Long> appFingerprintIds = invocation.getArgument(0);
+            List<Object[]> rows = new ArrayList<>();
+            for (Long appFingerprintId : appFingerprintIds) {
+                for (int i = 0; i < USER_APPS + SYSTEM_APPS; i++) {
+                    rows.add(new Object[] {appFingerprintId, "pkg." + i, i >= USER_APPS});
+                }
+            }
+            return rows;
+        });
+    }
+    
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+    
+    @Test
+    void analysisLatencyStaysFlatAsMatchingFraudulentDevicesGrow() {
+        // Warm-up, so class loading and thread start-up do not count towards the first size
+        analyze(10);
+        
+        int[] sizes = {10, 100, 1000};
+        long[] elapsedMs = new long[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            clearInvocations(appFingerprintRepository, appInfoRepository);
+            
+            long start = System.nanoTime();
+            FraudDetectionResult result = analyze(sizes[i]);
+            elapsedMs[i] = (System.nanoTime() - start) / 1_000_000;
+            
+            assertTrue(result.isAllowed(), "Unexpected verdict for " + sizes[i] + " candidates: " + result.getReason());
+            // Same number of round-trips whatever the number of candidates
+            verify(appFingerprintRepository, times(1)).findByFingerprintIdIn(anyCollection());
+            verify(appInfoRepository, times(1)).findPackageNamesByAppFingerprintIds(anyCollection());
+        }
+        
+        // One round-trip per candidate would add at least 990 * ROUND_TRIP_MS between the smallest and largest size
+        long growthMs = elapsedMs[sizes.length - 1] - elapsedMs[0];
+        assertTrue(growthMs < 50 * ROUND_TRIP_MS,
+            "Latency grew by " + growthMs + " ms from " + sizes[0] + " to " + sizes[sizes.length - 1] + " candidates");
+    }
+    
+    private FraudDetectionResult analyze(int candidateCount) {
+        List<FingerprintSnapshot> candidates = IntStream.rangeClosed(1, candidateCount)
+            .mapToObj(id -> FingerprintSnapshot.from(fraudulentFingerprint(id)))
+            .collect(Collectors.toList());
+        when(fraudulentFingerprintIndex.findByHardware(anyString(), anyString(), anyString()))
+            .thenReturn(Optional.of(candidates));
+        return service.analyzeFingerprint("dev_incoming", incomingFingerprint());
+    }
+    
+    private static void roundTrip() throws InterruptedException {
+        Thread.sleep(ROUND_TRIP_MS);
+    }
+    
+    /**
+     * Same manufacturer, model and board as the incoming device, but a different
+     * device name, brand and display, so the score stays below the flag threshold
+     * and every candidate has to be scored.
+     */
+    private static DeviceFingerprint fraudulentFingerprint(long id) {
+        DeviceFingerprint fingerprint = new DeviceFingerprint();
+        fingerprint.setId(id);
+        fingerprint.setDeviceId("dev_fraud_" + id);
+        fingerprint.setManufacturer("samsung");
+        fingerprint.setModel("SM-A515F");
+        fingerprint.setBoard("exynos9611");
+        fingerprint.setDeviceName("a51x");
+        fingerprint.setBrand("samsung-x");
+        fingerprint.setCpuArchitecture("arm64-v8a");
+        fingerprint.setWidthPixels(720);
+        fingerprint.setHeightPixels(1600);
+        fingerprint.setDensityDpi(320);
+        fingerprint.setIsFraudulent(true);
+        return fingerprint;
+    }
+    
+    private static DeviceAppFingerprint appFingerprint(Long fingerprintId) {
+        DeviceAppFingerprint appFingerprint = new DeviceAppFingerprint(
+            fingerprintId, USER_APPS + SYSTEM_APPS, USER_APPS, SYSTEM_APPS, "hash-" + fingerprintId);
+        appFingerprint.setId(fingerprintId);
+        return appFingerprint;
+    }
+    
+    private static DeviceFingerprintDto incomingFingerprint() {
+        HardwareFingerprintDto hardware = new HardwareFingerprintDto();
+        hardware.setManufacturer("samsung");
+        hardware.setModel("SM-A515F");
+        hardware.setBoard("exynos9611");
+        hardware.setDevice("a51");
+        hardware.setBrand("samsung");
+        hardware.setCpuArchitecture("arm64-v8a");
+        
+        DisplayFingerprintDto display = new DisplayFingerprintDto();
+        display.setWidthPixels(1080);
+        display.setHeightPixels(2400);
+        display.setDensityDpi(420);
+        
+        AppFingerprintDto apps = new AppFingerprintDto();
+        apps.setUserApps(appInfos(0, USER_APPS));
+        apps.setSystemApps(appInfos(USER_APPS, SYSTEM_APPS));
+        apps.setUserAppCount(USER_APPS);
+        apps.setSystemAppCount(SYSTEM_APPS);
+        apps.setTotalAppCount(USER_APPS + SYSTEM_APPS);
+        
+        DeviceFingerprintDto fingerprint = new DeviceFingerprintDto();
+        fingerprint.setCompositeHash("composite-incoming");
+        fingerprint.setHardware(hardware);
+        fingerprint.setDisplay(display);
+        fingerprint.setApps(apps);
+        return fingerprint;
+    }
+    
+    private static List<AppInfoDto> appInfos(int firstId, int count) {
+        return IntStream.range(firstId, firstId + count)
+            .mapToObj(id -> {
+                AppInfoDto app = new AppInfoDto();
+                app.setPackageName("pkg." + id);
+                return app;
+            })
+            .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,275 @@
+package com.gradientgeeks.aegis.sfe.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Local Play Integrity verification against a JWKS file with one RSA and one
+ * P-256 key. Tokens are signed in the test with the matching private keys.
+ */
+class IntegrityValidationServiceTest {
+    
+    private static final String PACKAGE_NAME = "com.example.bank";
+    private static final long MAX_TOKEN_AGE_MS = 300_000L;
+    private static final Base64.Encoder BASE64_URL = Base64.getUrlEncoder().withoutPadding();
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    
+    private static KeyPair rsaKeys;
+    private static KeyPair ecKeys;
+    
+    @TempDir
+    Path tempDir;
+    
+    private IntegrityValidationService service;
+    
+    @BeforeAll
+    static void generateKeys() throws Exception {
+        KeyPairGenerator rsa = KeyPairGenerator.getInstance("RSA");
+        rsa.initialize(2048);
+        rsaKeys = rsa.generateKeyPair();
+        
+        KeyPairGenerator ec = KeyPairGenerator.getInstance("EC");
+        ec.initialize(new ECGenParameterSpec("secp256r1"));
+        ecKeys = ec.generateKeyPair();
+    }
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        RSAPublicKey rsaPublic = (RSAPublicKey) rsaKeys.getPublic();
+        ECPublicKey ecPublic = (ECPublicKey) ecKeys.getPublic();
+        Map<String, Object> jwks = Map.of("keys", List.of(
+            Map.of("kty", "RSA", "kid", "rsa-1",
+                   "n", base64Url(unsigned(rsaPublic.getModulus(), 0)),
+                   "e", base64Url(unsigned(rsaPublic.getPublicExponent(), 0))),
+            Map.of("kty", "EC", "kid", "ec-1", "crv", "P-256",
+                   "x", base64Url(unsigned(ecPublic.getW().getAffineX(), 32)),
+                   "y", base64Url(unsigned(ecPublic.getW().getAffineY(), 32)))));
+        Path jwksFile = tempDir.resolve("jwks.json");
+        Files.writeString(jwksFile, OBJECT_MAPPER.writeValueAsString(jwks));
+        
+        service = new IntegrityValidationService(new CryptographyService());
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "jwksPath", jwksFile.toString());
+        ReflectionTestUtils.setField(service, "decryptionKey", "");
+        ReflectionTestUtils.setField(service, "expectedPackageName", PACKAGE_NAME);
+        ReflectionTestUtils.setField(service, "requirePlayRecognized", true);
+        ReflectionTestUtils.setField(service, "requiredDeviceVerdict", "MEETS_DEVICE_INTEGRITY");
+        ReflectionTestUtils.setField(service, "maxTokenAgeMs", MAX_TOKEN_AGE_MS);
+        ReflectionTestUtils.setField(service, "verdictCacheSize", 100);
+        service.init();
+    }
+    
+    @Test
+    void acceptsValidRs256Token() throws Exception {
+        String token = rs256Token("rsa-1", payload(PACKAGE_NAME, System.currentTimeMillis()));
+        
+        assertTrue(service.validatePlayIntegrityToken(token));
+    }
+    
+    @Test
+    void acceptsValidEs256Token() throws Exception {
+        String token = es256Token("ec-1", payload(PACKAGE_NAME, System.currentTimeMillis()));
+        
+        assertTrue(service.validatePlayIntegrityToken(token));
+    }
+    
+    @Test
+    void rejectsExpiredToken() throws Exception {
+        long issuedAt = System.currentTimeMillis() - MAX_TOKEN_AGE_MS - 60_000L;
+        
+        assertFalse(service.validatePlayIntegrityToken(rs256Token("rsa-1", payload(PACKAGE_NAME, issuedAt))));
+        assertFalse(service.validatePlayIntegrityToken(es256Token("ec-1", payload(PACKAGE_NAME, issuedAt))));
+    }
+    
+    @Test
+    void rejectsTokenForAnotherPackage() throws Exception {
+        String token = es256Token("ec-1", payload("com.example.other", System.currentTimeMillis()));
+        
+        assertFalse(service.validatePlayIntegrityToken(token));
+    }
+    
+    @Test
+    void rejectsTokenWithUnknownOrMismatchedKid() throws Exception {
+        Map<String, Object> payload = payload(PACKAGE_NAME, System.currentTimeMillis());
+        
+        assertFalse(service.validatePlayIntegrityToken(rs256Token("rsa-unknown", payload)));
+        // Signed with the EC key, but the kid names the RSA key
+        assertFalse(service.validatePlayIntegrityToken(es256Token("rsa-1", payload)));
+    }
+    
+    @Test
+    void rejectsTamperedPayload() throws Exception {
+        String[] parts = es256Token("ec-1", payload(PACKAGE_NAME, System.currentTimeMillis())).split("\\.");
+        String tampered = parts[0] + "." + base64Url(OBJECT_MAPPER.writeValueAsBytes(
+            payload("com.example.other", System.currentTimeMillis()))) + "." + parts[2];
+        
+        assertFalse(service.validatePlayIntegrityToken(tampered));
+    }
+    
+    @Test
+    void decryptsEncryptedTokenBeforeVerifying() throws Exception {
+        KeyGenerator aes = KeyGenerator.getInstance("AES");
+        aes.init(256);
+        SecretKey decryptionKey = aes.generateKey();
+        String jws = es256Token("ec-1", payload(PACKAGE_NAME, System.currentTimeMillis()));
+        String jwe = encrypt(jws, decryptionKey);
+        
+        // Rejected while no decryption key is configured
+        assertFalse(service.validatePlayIntegrityToken(jwe));
+        
+        ReflectionTestUtils.setField(service, "decryptionKey",
+            Base64.getEncoder().encodeToString(decryptionKey.getEncoded()));
+        String otherJwe = encrypt(es256Token("ec-1", payload(PACKAGE_NAME, System.currentTimeMillis())), decryptionKey);
+        assertTrue(service.validatePlayIntegrityToken(otherJwe));
+    }
+    
+    @Test
+    void derSignatureMatchesJcaEncoding() throws Exception {
+        // Over many signatures R and S cover both a set high bit (needs a 0x00 pad) and leading zero bytes
+        for (int i = 0; i < 200; i++) {
+            Signature signer = Signature.getInstance("SHA256withECDSA");
+            signer.initSign(ecKeys.getPrivate());
+            signer.update(("message-" + i).getBytes(StandardCharsets.UTF_8));
+            byte[] der = signer.sign();
+            
+            assertArrayEquals(der, toDerSignature(toRawSignature(der)));
+        }
+    }
+    
+    @Test
+    void derSignatureEncodesMinimalIntegers() {
+        byte[] raw = new byte[64];
+        raw[31] = 0x01;
+        raw[32] = (byte) 0x80;
+        
+        byte[] der = toDerSignature(raw);
+        
+        // R = 1 in a single byte; S has its high bit set and gets a leading zero
+        assertArrayEquals(new byte[] {0x30, 0x26, 0x02, 0x01, 0x01, 0x02, 0x21, 0x00, (byte) 0x80},
+                          Arrays.copyOf(der, 9));
+        assertArrayEquals(new byte[31], Arrays.copyOfRange(der, 9, der.length));
+    }
+    
+    private static Map<String, Object> payload(String packageName, long issuedAtMillis) {
+        return Map.of(
+            "requestDetails", Map.of("requestPackageName", packageName, "timestampMillis", issuedAtMillis),
+            "appIntegrity", Map.of("appRecognitionVerdict", "PLAY_RECOGNIZED"),
+            "deviceIntegrity", Map.of("deviceRecognitionVerdict", List.of("MEETS_DEVICE_INTEGRITY")));
+    }
+    
+    private static String rs256Token(String kid, Map<String, Object> payload) throws Exception {
+        String signingInput = signingInput("RS256", kid, payload);
+        return signingInput + "." + base64Url(sign("SHA256withRSA", rsaKeys.getPrivate(), signingInput));
+    }
+    
+    private static String es256Token(String kid, Map<String, Object> payload) throws Exception {
+        String signingInput = signingInput("ES256", kid, payload);
+        byte[] der = sign("SHA256withECDSA", ecKeys.getPrivate(), signingInput);
+        return signingInput + "." + base64Url(toRawSignature(der));
+    }
+    
+    private static String signingInput(String algorithm, String kid, Map<String, Object> payload) throws Exception {
+        return base64Url(OBJECT_MAPPER.writeValueAsBytes(Map.of("alg", algorithm, "kid", kid))) + "."
+            + base64Url(OBJECT_MAPPER.writeValueAsBytes(payload));
+    }
+    
+    private static byte[] sign(String algorithm, PrivateKey key, String signingInput) throws Exception {
+        Signature signer = Signature.getInstance(algorithm);
+        signer.initSign(key);
+        signer.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+        return signer.sign();
+    }
+    
+    /**
+     * Compact JWE with A256KW key wrapping and A256GCM content encryption, as Play issues them
+     */
+    private static String encrypt(String jws, SecretKey decryptionKey) throws Exception {
+        KeyGenerator aes = KeyGenerator.getInstance("AES");
+        aes.init(256);
+        SecretKey contentKey = aes.generateKey();
+        
+        Cipher wrap = Cipher.getInstance("AESWrap");
+        wrap.init(Cipher.WRAP_MODE, decryptionKey);
+        byte[] encryptedKey = wrap.wrap(contentKey);
+        
+        byte[] iv = new byte[12];
+        new SecureRandom().nextBytes(iv);
+        String header = base64Url(OBJECT_MAPPER.writeValueAsBytes(Map.of("alg", "A256KW", "enc", "A256GCM")));
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, contentKey, new GCMParameterSpec(128, iv));
+        cipher.updateAAD(header.getBytes(StandardCharsets.US_ASCII));
+        byte[] sealed = cipher.doFinal(jws.getBytes(StandardCharsets.US_ASCII));
+        byte[] ciphertext = Arrays.copyOf(sealed, sealed.length - 16);
+        byte[] tag = Arrays.copyOfRange(sealed, sealed.length - 16, sealed.length);
+        
+        return header + "." + base64Url(encryptedKey) + "." + base64Url(iv) + "."
+            + base64Url(ciphertext) + "." + base64Url(tag);
+    }
+    
+    private static byte[] toDerSignature(byte[] raw) {
+        return ReflectionTestUtils.invokeMethod(IntegrityValidationService.class, "toDerSignature", raw);
+    }
+    
+    /**
+     * DER ECDSA signature to the JWS form, R || S with 32 bytes each
+     */
+    private static byte[] toRawSignature(byte[] der) {
+        byte[] raw = new byte[64];
+        int rLength = der[3];
+        copyInteger(der, 4, rLength, raw, 0);
+        int sLength = der[5 + rLength];
+        copyInteger(der, 6 + rLength, sLength, raw, 32);
+        return raw;
+    }
+    
+    private static void copyInteger(byte[] der, int offset, int length, byte[] raw, int rawOffset) {
+        int copied = Math.min(length, 32);
+        System.arraycopy(der, offset + length - copied, raw, rawOffset + 32 - copied, copied);
+    }
+    
+    private static byte[] unsigned(BigInteger value, int length) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        if (length == 0 || bytes.length == length) {
+            return bytes;
+        }
+        byte[] padded = new byte[length];
+        System.arraycopy(bytes, 0, padded, length - bytes.length, bytes.length);
+        return padded;
+    }
+    
+    private static String base64Url(byte[] bytes) {
+        return BASE64_URL.encodeToString(bytes);
+    }
+}
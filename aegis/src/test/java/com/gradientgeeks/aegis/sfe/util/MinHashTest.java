@@ -0,0 +1,126 @@
+package com.gradientgeeks.aegis.sfe.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Signatures and band keys are persisted in device_app_fingerprints and
+ * app_minhash_bands, so their values must not change between releases.
+ */
+class MinHashTest {
+    
+    private static final List<String> PACKAGES = List.of("com.whatsapp", "com.google.android.gm", "com.example.bank");
+    
+    @Test
+    void roundTripsThroughEncoding() {
+        int[] signature = MinHash.signature(PACKAGES);
+        
+        byte[] encoded = MinHash.encode(signature);
+        
+        assertEquals(MinHash.SIGNATURE_BYTES, encoded.length);
+        assertArrayEquals(signature, MinHash.decode(encoded));
+    }
+    
+    @Test
+    void encodesBigEndian() {
+        int[] signature = new int[MinHash.NUM_HASHES];
+        signature[0] = 0x01020304;
+        signature[MinHash.NUM_HASHES - 1] = Integer.MAX_VALUE;
+        
+        byte[] encoded = MinHash.encode(signature);
+        
+        assertArrayEquals(new byte[] {1, 2, 3, 4}, Arrays.copyOf(encoded, 4));
+        assertArrayEquals(new byte[] {0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF},
+                          Arrays.copyOfRange(encoded, encoded.length - 4, encoded.length));
+    }
+    
+    @Test
+    void rejectsSignaturesOfWrongLength() {
+        assertThrows(IllegalArgumentException.class, () -> MinHash.decode(null));
+        assertThrows(IllegalArgumentException.class, () -> MinHash.decode(new byte[MinHash.SIGNATURE_BYTES - 1]));
+        assertThrows(IllegalArgumentException.class, () -> MinHash.similarity(new int[1], new int[MinHash.NUM_HASHES]));
+    }
+    
+    @Test
+    void signatureIsStable() {
+        int[] signature = MinHash.signature(PACKAGES);
+        
+        // Recorded values; a change here invalidates every stored signature and band key
+        assertArrayEquals(new int[] {29815135, 102184597, 681667028, 1108148241}, Arrays.copyOf(signature, 4));
+        assertEquals(-919522036816113498L, MinHash.bandKeys(signature)[0]);
+    }
+    
+    @Test
+    void signatureIgnoresOrderAndDuplicates() {
+        int[] signature = MinHash.signature(PACKAGES);
+        
+        assertArrayEquals(signature, MinHash.signature(List.of("com.example.bank", "com.whatsapp",
+            "com.google.android.gm", "com.whatsapp")));
+    }
+    
+    @Test
+    void emptySetHasMaxValueSignature() {
+        int[] signature = MinHash.signature(Set.of());
+        
+        assertTrue(Arrays.stream(signature).allMatch(value -> value == Integer.MAX_VALUE));
+    }
+    
+    @Test
+    void bandKeysFollowBands() {
+        int[] signature = MinHash.signature(PACKAGES);
+        long[] keys = MinHash.bandKeys(signature);
+        
+        assertEquals(MinHash.BANDS, keys.length);
+        // Changing one row changes the key of its band only
+        int[] changed = signature.clone();
+        changed[MinHash.ROWS_PER_BAND * 3 + 1]++;
+        long[] changedKeys = MinHash.bandKeys(changed);
+        for (int band = 0; band < MinHash.BANDS; band++) {
+            if (band == 3) {
+                assertNotEquals(keys[band], changedKeys[band]);
+            } else {
+                assertEquals(keys[band], changedKeys[band]);
+            }
+        }
+    }
+    
+    @Test
+    void equalRowsInDifferentBandsGiveDifferentKeys() {
+        long[] keys = MinHash.bandKeys(new int[MinHash.NUM_HASHES]);
+        
+        assertEquals(MinHash.BANDS, Arrays.stream(keys).distinct().count());
+    }
+    
+    @Test
+    void similarityEstimatesJaccard() {
+        // 100 shared packages and 25 on each side: Jaccard 100 / 150
+        Set<String> shared = packages(0, 100);
+        Set<String> a = union(shared, packages(100, 125));
+        Set<String> b = union(shared, packages(200, 225));
+        
+        double similarity = MinHash.similarity(MinHash.signature(a), MinHash.signature(b));
+        
+        assertEquals(100.0 / 150.0, similarity, 0.15);
+        assertEquals(1.0, MinHash.similarity(MinHash.signature(a), MinHash.signature(a)));
+    }
+    
+    private static Set<String> packages(int from, int to) {
+        return IntStream.range(from, to).mapToObj(i -> "pkg." + i).collect(Collectors.toSet());
+    }
+    
+    private static Set<String> union(Set<String> a, Set<String> b) {
+        return Stream.concat(a.stream(), b.stream()).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,112 @@
+package com.gradientgeeks.aegis.sfe.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PackageBitmapTest {
+    
+    // IDs on both sides of 64-bit word boundaries, and in words far apart
+    private static final int[] BOUNDARY_IDS = {0, 63, 64, 127, 128, 191, 192, 4095, 4096, 1 << 20, Integer.MAX_VALUE};
+    
+    @Test
+    void roundTripsThroughEncoding() {
+        PackageBitmap bitmap = PackageBitmap.of(BOUNDARY_IDS);
+        
+        PackageBitmap decoded = PackageBitmap.decode(bitmap.encode());
+        
+        assertArrayEquals(BOUNDARY_IDS, decoded.toIds());
+        assertEquals(BOUNDARY_IDS.length, decoded.cardinality());
+        assertArrayEquals(bitmap.encode(), decoded.encode());
+    }
+    
+    @Test
+    void containsExactlyTheIdsAtWordBoundaries() {
+        PackageBitmap bitmap = PackageBitmap.of(BOUNDARY_IDS);
+        
+        for (int id : BOUNDARY_IDS) {
+            assertTrue(bitmap.contains(id), "Missing ID " + id);
+        }
+        for (int id : new int[] {1, 62, 65, 126, 129, 190, 193, 4094, 4097, Integer.MAX_VALUE - 1}) {
+            assertFalse(bitmap.contains(id), "Unexpected ID " + id);
+        }
+    }
+    
+    @Test
+    void sortsAndDeduplicatesInput() {
+        PackageBitmap bitmap = PackageBitmap.of(new int[] {128, 5, 64, 5, 63, 128});
+        
+        assertArrayEquals(new int[] {5, 63, 64, 128}, bitmap.toIds());
+        assertEquals(4, bitmap.cardinality());
+    }
+    
+    @Test
+    void handlesEmptyBitmaps() {
+        PackageBitmap empty = PackageBitmap.of(new int[0]);
+        PackageBitmap other = PackageBitmap.of(BOUNDARY_IDS);
+        
+        assertSame(PackageBitmap.empty(), empty);
+        assertTrue(empty.isEmpty());
+        assertEquals(0, empty.andCardinality(other));
+        assertEquals(0, other.andCardinality(empty));
+        assertEquals(other.cardinality(), empty.orCardinality(other));
+        assertArrayEquals(new int[0], PackageBitmap.decode(empty.encode()).toIds());
+        assertTrue(PackageBitmap.decode(null).isEmpty());
+        assertTrue(PackageBitmap.decode(new byte[0]).isEmpty());
+    }
+    
+    @Test
+    void intersectionAndUnionMatchHashSet() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            // Dense and sparse ranges, so some words are shared and some are not
+            int range = round % 2 == 0 ? 256 : 100_000;
+            int[] a = random.ints(random.nextInt(80), 0, range).toArray();
+            int[] b = random.ints(random.nextInt(80), 0, range).toArray();
+            Set<Integer> setA = toSet(a);
+            Set<Integer> setB = toSet(b);
+            Set<Integer> intersection = new HashSet<>(setA);
+            intersection.retainAll(setB);
+            Set<Integer> union = new HashSet<>(setA);
+            union.addAll(setB);
+            
+            PackageBitmap bitmapA = PackageBitmap.of(a);
+            PackageBitmap bitmapB = PackageBitmap.of(b);
+            
+            assertEquals(setA.size(), bitmapA.cardinality());
+            assertEquals(intersection.size(), bitmapA.andCardinality(bitmapB));
+            assertEquals(intersection.size(), bitmapB.andCardinality(bitmapA));
+            assertEquals(union.size(), bitmapA.orCardinality(bitmapB));
+        }
+    }
+    
+    @Test
+    void rejectsNegativeIds() {
+        assertThrows(IllegalArgumentException.class, () -> PackageBitmap.of(new int[] {3, -1}));
+    }
+    
+    @Test
+    void rejectsTruncatedEncoding() {
+        byte[] encoded = PackageBitmap.of(BOUNDARY_IDS).encode();
+        byte[] truncated = new byte[encoded.length - 3];
+        System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+        
+        assertThrows(IllegalArgumentException.class, () -> PackageBitmap.decode(truncated));
+    }
+    
+    private static Set<Integer> toSet(int[] ids) {
+        Set<Integer> set = new HashSet<>();
+        IntStream.of(ids).forEach(set::add);
+        return set;
+    }
+}